@@ -0,0 +1,86 @@
+package io.pivotal.android.push.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.model.analytics.AnalyticsEventList;
+
+/**
+ * Builds the inputs for the benchmarks.  The data is generated instead of read from files so that its size can
+ * be set with the benchmark parameters.
+ */
+public class BenchmarkData {
+
+    public static final String[] TAGS = new String[] { "ice cream", "pizza", "tacos", "sushi", "burgers" };
+
+    private static final long ONE_YEAR_IN_MILLISECONDS = 365L * 24L * 60L * 60L * 1000L;
+
+    public static AnalyticsEventList getAnalyticsEventList(int numberOfEvents) {
+        final List<AnalyticsEvent> events = new ArrayList<>(numberOfEvents);
+        for (int i = 0; i < numberOfEvents; i += 1) {
+            final AnalyticsEvent event = new AnalyticsEvent();
+            event.setEventType("pcf_push_event_type_push_notification_received");
+            event.setReceiptId(String.format(Locale.US, "RECEIPT-ID-%08d", i));
+            event.setEventTime(new Date());
+            event.setDeviceUuid("DEVICE-UUID-0123456789");
+            event.setSdkVersion("2.0.0");
+            event.setPlatformType("android");
+            event.setPlatformUuid("PLATFORM-UUID-0123456789");
+            event.setStatus(AnalyticsEvent.Status.NOT_POSTED);
+            events.add(event);
+        }
+        final AnalyticsEventList eventList = new AnalyticsEventList();
+        eventList.setEvents(events);
+        return eventList;
+    }
+
+    /**
+     * Builds the JSON of a geofence update from the server.  Geofence n has the tag TAGS[n % TAGS.length]
+     * and expires a year from now.
+     */
+    public static String getGeofenceResponseJson(int numberOfGeofences, int locationsPerGeofence) {
+        final long expiryTime = System.currentTimeMillis() + ONE_YEAR_IN_MILLISECONDS;
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"num\":").append(numberOfGeofences);
+        sb.append(",\"last_modified\":").append(System.currentTimeMillis());
+        sb.append(",\"geofences\":[");
+        for (int i = 0; i < numberOfGeofences; i += 1) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i + 1);
+            sb.append(",\"data\":{\"androidFcm\":{\"message\":\"Geofence message ").append(i + 1).append("\"}}");
+            sb.append(",\"tags\":[\"").append(TAGS[i % TAGS.length]).append("\"]");
+            sb.append(",\"trigger_type\":\"").append(i % 2 == 0 ? "enter" : "exit").append('"');
+            sb.append(",\"expiry_time\":").append(expiryTime);
+            sb.append(",\"locations\":[");
+            for (int j = 0; j < locationsPerGeofence; j += 1) {
+                if (j > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"id\":").append(i * locationsPerGeofence + j + 1);
+                sb.append(",\"name\":\"location_").append(i + 1).append('_').append(j + 1).append('"');
+                sb.append(",\"lat\":").append(43.0 + j * 0.01);
+                sb.append(",\"long\":").append(-79.0 - i * 0.01);
+                sb.append(",\"rad\":").append(100 + j);
+                sb.append('}');
+            }
+            sb.append("]}");
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    public static Set<String> getTags(int numberOfTags) {
+        final Set<String> tags = new HashSet<>();
+        for (int i = 0; i < numberOfTags; i += 1) {
+            tags.add(TAGS[i % TAGS.length] + (i / TAGS.length > 0 ? " " + (i / TAGS.length) : ""));
+        }
+        return tags;
+    }
+}
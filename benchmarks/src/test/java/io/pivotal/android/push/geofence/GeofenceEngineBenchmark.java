@@ -0,0 +1,124 @@
+package io.pivotal.android.push.geofence;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.android.push.benchmarks.BenchmarkData;
+import io.pivotal.android.push.model.geofence.PCFPushGeofenceDataList;
+import io.pivotal.android.push.model.geofence.PCFPushGeofenceLocationMap;
+import io.pivotal.android.push.model.geofence.PCFPushGeofenceResponseData;
+import io.pivotal.android.push.prefs.PushPreferences;
+import io.pivotal.android.push.util.GsonUtil;
+import io.pivotal.android.push.util.TimeProvider;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures merging a geofence update from the server with the stored geofences and selecting the locations to
+ * register.  The registrar and the store keep everything in memory, so only the engine itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GeofenceEngineBenchmark {
+
+    @Param({ "10", "100" })
+    public int numberOfGeofences;
+
+    private InMemoryGeofenceRegistrar registrar;
+    private GeofenceEngine engine;
+    private PCFPushGeofenceResponseData responseData;
+    private PCFPushGeofenceDataList storedGeofences;
+    private Set<String> subscribedTags;
+
+    private static class InMemoryGeofenceRegistrar extends GeofenceRegistrar {
+        int numberOfRegisteredLocations;
+
+        InMemoryGeofenceRegistrar(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void reset() {
+            numberOfRegisteredLocations = 0;
+        }
+
+        @Override
+        public void registerGeofences(PCFPushGeofenceLocationMap geofencesToRegister, PCFPushGeofenceDataList geofenceDataList) {
+            numberOfRegisteredLocations = geofencesToRegister.size();
+        }
+    }
+
+    // Always returns the same stored geofences, so that every call to the engine does the same work
+    private static class InMemoryGeofencePersistentStore extends GeofencePersistentStore {
+        private final PCFPushGeofenceDataList geofences;
+
+        InMemoryGeofencePersistentStore(Context context, PCFPushGeofenceDataList geofences) {
+            super(context, null);
+            this.geofences = geofences;
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public PCFPushGeofenceDataList getCurrentlyRegisteredGeofences() {
+            return geofences;
+        }
+
+        @Override
+        public void saveRegisteredGeofences(PCFPushGeofenceDataList geofences) {
+        }
+    }
+
+    @Setup
+    public void setup() {
+        final Context context = mock(Context.class);
+
+        // The stored geofences hold the first half of the geofences in the update
+        final PCFPushGeofenceResponseData allGeofences = getResponseData(numberOfGeofences);
+        storedGeofences = new PCFPushGeofenceDataList();
+        storedGeofences.addAll(allGeofences.getGeofences().subList(0, numberOfGeofences / 2));
+        responseData = getResponseData(numberOfGeofences);
+        subscribedTags = Collections.singleton(BenchmarkData.TAGS[0]);
+
+        registrar = new InMemoryGeofenceRegistrar(context);
+        engine = new GeofenceEngine(registrar, new InMemoryGeofencePersistentStore(context, storedGeofences), new TimeProvider(), new PushPreferences(context));
+    }
+
+    private static PCFPushGeofenceResponseData getResponseData(int numberOfGeofences) {
+        final String json = BenchmarkData.getGeofenceResponseJson(numberOfGeofences, 2);
+        return GsonUtil.getGson().fromJson(json, PCFPushGeofenceResponseData.class);
+    }
+
+    @Benchmark
+    public int processInitialResponseData() {
+        engine.processResponseData(0L, responseData, subscribedTags);
+        return registrar.numberOfRegisteredLocations;
+    }
+
+    @Benchmark
+    public int processUpdatedResponseData() {
+        engine.processResponseData(1L, responseData, subscribedTags);
+        return registrar.numberOfRegisteredLocations;
+    }
+}
@@ -0,0 +1,75 @@
+package io.pivotal.android.push.model.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.android.push.benchmarks.BenchmarkData;
+import io.pivotal.android.push.util.GsonUtil;
+
+/**
+ * Measures building the map of geofence locations that are registered with the location services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PCFPushGeofenceLocationMapBenchmark {
+
+    @Param({ "10", "100" })
+    public int numberOfGeofences;
+
+    @Param({ "1", "5" })
+    public int locationsPerGeofence;
+
+    private PCFPushGeofenceDataList geofences;
+    private PCFPushGeofenceLocationMap locationMap;
+
+    @Setup
+    public void setup() {
+        final String json = BenchmarkData.getGeofenceResponseJson(numberOfGeofences, locationsPerGeofence);
+        final PCFPushGeofenceResponseData responseData = GsonUtil.getGson().fromJson(json, PCFPushGeofenceResponseData.class);
+        geofences = new PCFPushGeofenceDataList();
+        geofences.addAll(responseData.getGeofences());
+        locationMap = new PCFPushGeofenceLocationMap();
+        locationMap.addAll(geofences);
+    }
+
+    @Benchmark
+    public PCFPushGeofenceLocationMap addAll() {
+        final PCFPushGeofenceLocationMap map = new PCFPushGeofenceLocationMap();
+        map.addAll(geofences);
+        return map;
+    }
+
+    @Benchmark
+    public PCFPushGeofenceLocationMap addFiltered() {
+        final PCFPushGeofenceLocationMap map = new PCFPushGeofenceLocationMap();
+        map.addFiltered(geofences, new PCFPushGeofenceLocationMap.Filter() {
+
+            @Override
+            public boolean filterItem(PCFPushGeofenceData geofence, PCFPushGeofenceLocation location) {
+                return geofence.getTags() != null && geofence.getTags().contains(BenchmarkData.TAGS[0]);
+            }
+        });
+        return map;
+    }
+
+    @Benchmark
+    public Set<PCFPushGeofenceLocationMap.LocationEntry> locationEntrySet() {
+        return locationMap.locationEntrySet();
+    }
+}
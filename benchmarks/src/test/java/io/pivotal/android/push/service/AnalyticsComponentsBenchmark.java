@@ -0,0 +1,70 @@
+package io.pivotal.android.push.service;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.android.push.PushParameters;
+import io.pivotal.android.push.analytics.jobs.JobParams;
+import io.pivotal.android.push.analytics.jobs.JobResultListener;
+import io.pivotal.android.push.prefs.Pivotal;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures getting the parameters for an analytics job from the shared {@link AnalyticsComponents} container,
+ * compared with building every component again for each job.  Run with "-prof gc" to see the bytes allocated
+ * per job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AnalyticsComponentsBenchmark {
+
+    private static final JobResultListener LISTENER = new JobResultListener() {
+        @Override
+        public void onJobComplete(int resultCode) {}
+    };
+
+    private Context context;
+    private AnalyticsComponents sharedComponents;
+
+    @Setup
+    public void setup() {
+        context = mock(Context.class);
+        AnalyticsEventService.setPushParameters(new PushParameters("PLATFORM-UUID-0123456789", "SECRET", "http://test.com", "android",
+                null, null, null, true, true, Pivotal.SslCertValidationMode.DEFAULT, null, null));
+        sharedComponents = new AnalyticsComponents(context);
+        sharedComponents.getJobParams(context, LISTENER);
+    }
+
+    @TearDown
+    public void tearDown() {
+        AnalyticsEventService.setPushParameters(null);
+    }
+
+    @Benchmark
+    public JobParams sharedContainer() {
+        return sharedComponents.getJobParams(context, LISTENER);
+    }
+
+    @Benchmark
+    public JobParams newContainerForEachJob() {
+        return new AnalyticsComponents(context).getJobParams(context, LISTENER);
+    }
+}
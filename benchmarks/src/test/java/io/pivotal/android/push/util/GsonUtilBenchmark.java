@@ -0,0 +1,93 @@
+package io.pivotal.android.push.util;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.android.push.benchmarks.BenchmarkData;
+import io.pivotal.android.push.model.analytics.AnalyticsEventList;
+import io.pivotal.android.push.model.geofence.PCFPushGeofenceResponseData;
+
+/**
+ * Measures the JSON serialization of the analytics events that are sent to the server, and of the geofence
+ * updates that are received from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GsonUtilBenchmark {
+
+    @Param({ "10", "500" })
+    public int size;
+
+    private Gson gson;
+    private AnalyticsEventList eventList;
+    private String geofenceResponseJson;
+    private PCFPushGeofenceResponseData geofenceResponseData;
+    private URL url;
+
+    @Setup
+    public void setup() throws IOException {
+        gson = GsonUtil.getGson();
+        eventList = BenchmarkData.getAnalyticsEventList(size);
+        geofenceResponseJson = BenchmarkData.getGeofenceResponseJson(size, 2);
+        geofenceResponseData = gson.fromJson(geofenceResponseJson, PCFPushGeofenceResponseData.class);
+        url = new URL("https://push.example.com/v1/geofences");
+
+        FakeHttpURLConnection.reset();
+        FakeHttpURLConnection.setResponseCode(200);
+        FakeHttpURLConnection.setResponseData(geofenceResponseJson);
+    }
+
+    @Benchmark
+    public Gson getGson() {
+        return GsonUtil.getGson();
+    }
+
+    @Benchmark
+    public String serializeAnalyticsEventList() {
+        return gson.toJson(eventList);
+    }
+
+    @Benchmark
+    public String serializeGeofenceResponseData() {
+        return gson.toJson(geofenceResponseData);
+    }
+
+    @Benchmark
+    public PCFPushGeofenceResponseData deserializeGeofenceResponseData() {
+        return gson.fromJson(geofenceResponseJson, PCFPushGeofenceResponseData.class);
+    }
+
+    // Reads the response from a connection, the way the geofence update request does
+    @Benchmark
+    public PCFPushGeofenceResponseData readGeofenceResponseFromConnection() throws IOException {
+        final FakeHttpURLConnection connection = new FakeHttpURLConnection(url);
+        final JsonReader jsonReader = new JsonReader(new InputStreamReader(new BufferedInputStream(connection.getInputStream()), "UTF-8"));
+        try {
+            return gson.fromJson(jsonReader, PCFPushGeofenceResponseData.class);
+        } finally {
+            jsonReader.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.pivotal.android.push.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.android.push.benchmarks.BenchmarkData;
+
+/**
+ * Measures working out which tags to subscribe to and unsubscribe from when the application changes its tags.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TagsHelperBenchmark {
+
+    @Param({ "5", "100" })
+    public int numberOfTags;
+
+    private Set<String> savedTags;
+    private Set<String> sameTags;
+    private Set<String> changedTags;
+
+    @Setup
+    public void setup() {
+        savedTags = BenchmarkData.getTags(numberOfTags);
+        sameTags = new HashSet<>(savedTags);
+
+        // Replace half of the tags
+        changedTags = new HashSet<>(savedTags);
+        final Iterator<String> iterator = changedTags.iterator();
+        for (int i = 0; i < numberOfTags / 2 && iterator.hasNext(); i += 1) {
+            iterator.next();
+            iterator.remove();
+        }
+        for (int i = 0; i < numberOfTags / 2; i += 1) {
+            changedTags.add("new tag " + i);
+        }
+    }
+
+    @Benchmark
+    public TagsHelper unchangedTags() {
+        return new TagsHelper(savedTags, sameTags);
+    }
+
+    @Benchmark
+    public TagsHelper changedTags() {
+        return new TagsHelper(savedTags, changedTags);
+    }
+
+    @Benchmark
+    public TagsHelper firstTags() {
+        return new TagsHelper(null, changedTags);
+    }
+}
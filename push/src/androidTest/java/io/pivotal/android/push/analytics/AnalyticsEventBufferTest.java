@@ -0,0 +1,139 @@
+package io.pivotal.android.push.analytics;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.test.AndroidTestCase;
+
+import java.util.List;
+
+import io.pivotal.android.push.analytics.jobs.EnqueueAnalyticsEventJob;
+import io.pivotal.android.push.analytics.jobs.SendAnalyticsEventsJob;
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.model.analytics.DummyEvent;
+import io.pivotal.android.push.service.AnalyticsEventService;
+import io.pivotal.android.push.util.FakeServiceStarter;
+import io.pivotal.android.push.util.ThreadUtil;
+
+public class AnalyticsEventBufferTest extends AndroidTestCase {
+
+    private static final SendAnalyticsEventsScheduler IMMEDIATE_SCHEDULER = new SendAnalyticsEventsScheduler(0, 0);
+
+    private FakeServiceStarter serviceStarter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        serviceStarter = new FakeServiceStarter();
+        serviceStarter.setReturnedComponentName(new ComponentName(getContext(), AnalyticsEventService.class));
+    }
+
+    public void testRequiresPositiveCapacity() {
+        try {
+            new AnalyticsEventBuffer(0, 1, 0);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // should have thrown
+        }
+    }
+
+    public void testRequiresFlushThresholdWithinCapacity() {
+        try {
+            new AnalyticsEventBuffer(10, 11, 0);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // should have thrown
+        }
+    }
+
+    public void testRequiresScheduler() {
+        try {
+            new AnalyticsEventBuffer(10, 1, 0, null);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // should have thrown
+        }
+    }
+
+    public void testFlushesAtThreshold() {
+        final AnalyticsEventBuffer buffer = new AnalyticsEventBuffer(10, 2, 60000L, IMMEDIATE_SCHEDULER);
+        buffer.add(getEvent("1"), getContext(), serviceStarter);
+        assertEquals(1, buffer.getNumberOfBufferedEvents());
+        assertFalse(serviceStarter.wasStarted());
+
+        buffer.add(getEvent("2"), getContext(), serviceStarter);
+        assertEquals(0, buffer.getNumberOfBufferedEvents());
+
+        final List<Intent> intents = serviceStarter.getStartedIntents();
+        assertEquals(2, intents.size());
+        final EnqueueAnalyticsEventJob job = intents.get(0).getParcelableExtra(AnalyticsEventService.KEY_JOB);
+        assertEquals(2, job.getEvents().size());
+        assertEquals("1", job.getEvents().get(0).getReceiptId());
+        assertEquals("2", job.getEvents().get(1).getReceiptId());
+        assertTrue(intents.get(1).getParcelableExtra(AnalyticsEventService.KEY_JOB) instanceof SendAnalyticsEventsJob);
+    }
+
+    public void testFlush() {
+        final AnalyticsEventBuffer buffer = new AnalyticsEventBuffer(3, 3, 60000L, IMMEDIATE_SCHEDULER);
+        buffer.add(getEvent("1"), getContext(), serviceStarter);
+        buffer.add(getEvent("2"), getContext(), serviceStarter);
+        assertEquals(2, buffer.getNumberOfBufferedEvents());
+        assertEquals(2, buffer.flush());
+        assertEquals(0, buffer.getNumberOfBufferedEvents());
+        assertEquals(2, serviceStarter.getStartedIntents().size());
+
+        // Nothing is sent when the buffer is empty
+        assertEquals(0, buffer.flush());
+        assertEquals(2, serviceStarter.getStartedIntents().size());
+    }
+
+    public void testFlushToServiceRequiresTheService() {
+        final AnalyticsEventBuffer buffer = new AnalyticsEventBuffer(10, 10, 60000L, IMMEDIATE_SCHEDULER);
+        buffer.add(getEvent("1"), getContext(), serviceStarter);
+        buffer.flush();
+        buffer.add(getEvent("2"), getContext(), serviceStarter);
+        assertEquals(1, buffer.flushToService());
+
+        final List<Intent> intents = serviceStarter.getStartedIntents();
+        assertEquals(4, intents.size());
+        assertFalse(intents.get(0).getBooleanExtra(AnalyticsEventService.KEY_SERVICE_REQUIRED, false));
+        assertTrue(intents.get(2).getBooleanExtra(AnalyticsEventService.KEY_SERVICE_REQUIRED, false));
+        final EnqueueAnalyticsEventJob job = intents.get(2).getParcelableExtra(AnalyticsEventService.KEY_JOB);
+        assertEquals("2", job.getEvents().get(0).getReceiptId());
+    }
+
+    public void testFlushesAfterDelay() {
+        final AnalyticsEventBuffer buffer = new AnalyticsEventBuffer(10, 10, 100L, IMMEDIATE_SCHEDULER);
+        buffer.add(getEvent("1"), getContext(), serviceStarter);
+        assertFalse(serviceStarter.wasStarted());
+
+        for (int i = 0; i < 50 && !serviceStarter.wasStarted(); i += 1) {
+            ThreadUtil.sleep(100);
+        }
+        assertTrue(serviceStarter.wasStarted());
+        assertEquals(0, buffer.getNumberOfBufferedEvents());
+    }
+
+    public void testFlushRequestsSendFromScheduler() {
+        final SendAnalyticsEventsScheduler scheduler = new SendAnalyticsEventsScheduler(60000L, 60000L);
+        final AnalyticsEventBuffer buffer = new AnalyticsEventBuffer(10, 10, 60000L, scheduler);
+        buffer.add(getEvent("1"), getContext(), serviceStarter);
+        buffer.flush();
+        buffer.add(getEvent("2"), getContext(), serviceStarter);
+        buffer.flush();
+
+        // Only the enqueue jobs have been started. The send is still waiting in the scheduler.
+        assertEquals(2, serviceStarter.getStartedIntents().size());
+        assertTrue(scheduler.isSendPending());
+
+        scheduler.sendNow();
+        final List<Intent> intents = serviceStarter.getStartedIntents();
+        assertEquals(3, intents.size());
+        assertTrue(intents.get(2).getParcelableExtra(AnalyticsEventService.KEY_JOB) instanceof SendAnalyticsEventsJob);
+    }
+
+    private static AnalyticsEvent getEvent(String receiptId) {
+        final AnalyticsEvent event = DummyEvent.getEvent("TEST-DEVICE-UUID");
+        event.setReceiptId(receiptId);
+        return event;
+    }
+}
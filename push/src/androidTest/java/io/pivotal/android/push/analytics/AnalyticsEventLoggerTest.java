@@ -74,6 +74,40 @@ public class AnalyticsEventLoggerTest extends AndroidTestCase {
         }
     }
 
+    public void testRequiresEventBuffer() {
+        try {
+            new AnalyticsEventLogger(serviceStarter, pushPreferences, getContext(), null);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // should have thrown
+        }
+    }
+
+    public void testLogEventsAreBuffered() {
+        final AnalyticsEventLogger eventLogger = new AnalyticsEventLogger(serviceStarter, pushPreferences, getContext(), new AnalyticsEventBuffer(10, 3, 60000L, new SendAnalyticsEventsScheduler(0, 0)));
+        eventLogger.logReceivedNotification(TEST_EVENT_RECEIPT_ID_VALUE);
+        eventLogger.logReceivedHeartbeat(TEST_EVENT_RECEIPT_ID_VALUE);
+        assertFalse(serviceStarter.wasStarted());
+
+        eventLogger.logOpenedNotification(TEST_EVENT_RECEIPT_ID_VALUE);
+        assertNumberOfServiceIntents(2);
+        final EnqueueAnalyticsEventJob job = getJob(0);
+        assertEquals(3, job.getEvents().size());
+        assertEquals(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_RECEIVED, job.getEvents().get(0).getEventType());
+        assertEquals(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_HEARTBEAT, job.getEvents().get(1).getEventType());
+        assertEquals(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_OPENED, job.getEvents().get(2).getEventType());
+        assertTrue(getJob(1) instanceof SendAnalyticsEventsJob);
+    }
+
+    public void testFlush() {
+        final AnalyticsEventLogger eventLogger = new AnalyticsEventLogger(serviceStarter, pushPreferences, getContext(), new AnalyticsEventBuffer(10, 10, 60000L, new SendAnalyticsEventsScheduler(0, 0)));
+        eventLogger.logReceivedNotification(TEST_EVENT_RECEIPT_ID_VALUE);
+        assertFalse(serviceStarter.wasStarted());
+        eventLogger.flush();
+        assertNumberOfServiceIntents(2);
+        assertEquals(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_RECEIVED, getLoggedEvent(0).getEventType());
+    }
+
     public void testRequiresContext() {
         try {
             new AnalyticsEventLogger(serviceStarter, pushPreferences, null);
@@ -180,12 +214,17 @@ public class AnalyticsEventLoggerTest extends AndroidTestCase {
 
     private AnalyticsEventLogger getEventLoggerWithAnalyticsDisabled() {
         when(pushPreferences.areAnalyticsEnabled()).thenReturn(false);
-        return new AnalyticsEventLogger(serviceStarter, pushPreferences, getContext());
+        return new AnalyticsEventLogger(serviceStarter, pushPreferences, getContext(), getUnbufferedEventBuffer());
     }
 
     private AnalyticsEventLogger getEventLoggerWithAnalyticsEnabled() {
         when(pushPreferences.areAnalyticsEnabled()).thenReturn(true);
-        return new AnalyticsEventLogger(serviceStarter, pushPreferences, getContext());
+        return new AnalyticsEventLogger(serviceStarter, pushPreferences, getContext(), getUnbufferedEventBuffer());
+    }
+
+    // Flushes every event as soon as it is logged
+    private static AnalyticsEventBuffer getUnbufferedEventBuffer() {
+        return new AnalyticsEventBuffer(1, 1, 0, new SendAnalyticsEventsScheduler(0, 0));
     }
 
     private AnalyticsEvent getLoggedEvent(int intentNumber) {
@@ -0,0 +1,83 @@
+package io.pivotal.android.push.analytics;
+
+import android.test.AndroidTestCase;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import io.pivotal.android.push.database.Database;
+import io.pivotal.android.push.database.DatabaseAnalyticsEventsStorage;
+import io.pivotal.android.push.database.DatabaseWrapper;
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.model.analytics.DummyEvent;
+
+public class AnalyticsMetricsRecorderTest extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DatabaseWrapper.createDatabaseInstance(getContext());
+        DatabaseWrapper.delete(Database.EVENTS_CONTENT_URI, null, null);
+        AnalyticsMetricsRecorder.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        DatabaseWrapper.delete(Database.EVENTS_CONTENT_URI, null, null);
+        AnalyticsMetricsRecorder.reset();
+        super.tearDown();
+    }
+
+    public void testCountsUploads() {
+        AnalyticsMetricsRecorder.uploadStarted();
+        AnalyticsMetricsRecorder.uploadSucceeded();
+        AnalyticsMetricsRecorder.uploadStarted();
+        AnalyticsMetricsRecorder.uploadFailed();
+        AnalyticsMetricsRecorder.uploadStarted();
+        AnalyticsMetricsRecorder.uploadRejected();
+        AnalyticsMetricsRecorder.uploadSent(2048);
+        AnalyticsMetricsRecorder.eventUploaded(30);
+
+        final AnalyticsMetrics metrics = AnalyticsMetricsRecorder.getMetrics();
+        assertEquals(3, metrics.getNumberOfUploadAttempts());
+        assertEquals(1, metrics.getNumberOfUploadSuccesses());
+        assertEquals(1, metrics.getNumberOfUploadFailures());
+        assertEquals(1, metrics.getNumberOfUploadRejections());
+        assertEquals(1, metrics.getUploadSizeInBytes().getCount());
+        assertEquals(2048, metrics.getUploadSizeInBytes().getSum());
+        assertEquals(30, metrics.getEventAgeAtUploadInSeconds().getMax());
+    }
+
+    public void testCountsSavedEventsAndQueueDepth() {
+        final AnalyticsEvent event1 = DummyEvent.getEvent("TEST-DEVICE-UUID-1");
+        final AnalyticsEvent event2 = DummyEvent.getEvent("TEST-DEVICE-UUID-2");
+        event2.setStatus(AnalyticsEvent.Status.POSTING_ERROR);
+        final List<AnalyticsEvent> events = new LinkedList<>();
+        events.add(event1);
+        events.add(event2);
+        assertNotNull(new DatabaseAnalyticsEventsStorage().saveEvents(events));
+
+        final AnalyticsMetrics metrics = AnalyticsMetricsRecorder.getMetrics();
+        assertEquals(2, metrics.getNumberOfSavedEvents());
+        assertEquals(1, metrics.getInsertLatencyInMilliseconds().getCount());
+        assertEquals(1, metrics.getQueueDepth(AnalyticsEvent.Status.NOT_POSTED));
+        assertEquals(1, metrics.getQueueDepth(AnalyticsEvent.Status.POSTING_ERROR));
+        assertEquals(0, metrics.getQueueDepth(AnalyticsEvent.Status.QUARANTINED));
+        assertEquals(2, metrics.getQueueDepth());
+        assertTrue(metrics.getDatabaseFileSizeInBytes() > 0);
+        assertTrue(metrics.getDatabaseUsedSizeInBytes() > 0);
+    }
+
+    public void testReset() {
+        AnalyticsMetricsRecorder.eventLogged(5000);
+        AnalyticsMetricsRecorder.eventsDropped(2);
+        AnalyticsMetricsRecorder.eventsEvicted(3);
+        AnalyticsMetricsRecorder.reset();
+
+        final AnalyticsMetrics metrics = AnalyticsMetricsRecorder.getMetrics();
+        assertEquals(0, metrics.getNumberOfLoggedEvents());
+        assertEquals(0, metrics.getNumberOfDroppedEvents());
+        assertEquals(0, metrics.getNumberOfEvictedEvents());
+        assertEquals(0, metrics.getEnqueueLatencyInMicroseconds().getCount());
+    }
+}
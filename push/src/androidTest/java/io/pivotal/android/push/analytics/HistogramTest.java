@@ -0,0 +1,108 @@
+package io.pivotal.android.push.analytics;
+
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+
+public class HistogramTest extends AndroidTestCase {
+
+    public void testRequiresBucketBounds() {
+        try {
+            new Histogram();
+            fail("should not have succeeded");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+
+    public void testRequiresAscendingBucketBounds() {
+        try {
+            new Histogram(10, 5);
+            fail("should not have succeeded");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+
+    public void testEmptySnapshot() {
+        final Histogram.Snapshot snapshot = new Histogram(10, 100).getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getSum());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean());
+        assertEquals(0, snapshot.getPercentile(50));
+        assertTrue(Arrays.equals(new long[] { 0, 0, 0 }, snapshot.getBucketCounts()));
+    }
+
+    public void testRecordsIntoBuckets() {
+        final Histogram histogram = new Histogram(10, 100);
+        histogram.record(1);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(1000);
+
+        final Histogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(4, snapshot.getCount());
+        assertEquals(1022, snapshot.getSum());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(255.5, snapshot.getMean());
+        assertTrue(Arrays.equals(new long[] { 10, 100 }, snapshot.getBucketBounds()));
+        assertTrue(Arrays.equals(new long[] { 2, 1, 1 }, snapshot.getBucketCounts()));
+    }
+
+    public void testPercentiles() {
+        final Histogram histogram = new Histogram(10, 100);
+        for (int i = 0; i < 90; i += 1) {
+            histogram.record(5);
+        }
+        for (int i = 0; i < 9; i += 1) {
+            histogram.record(50);
+        }
+        histogram.record(500);
+
+        final Histogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(10, snapshot.getPercentile(0));
+        assertEquals(10, snapshot.getPercentile(50));
+        assertEquals(100, snapshot.getPercentile(95));
+        assertEquals(500, snapshot.getPercentile(100));
+    }
+
+    public void testReset() {
+        final Histogram histogram = new Histogram(10, 100);
+        histogram.record(50);
+        histogram.reset();
+
+        final Histogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertTrue(Arrays.equals(new long[] { 0, 0, 0 }, snapshot.getBucketCounts()));
+    }
+
+    public void testRecordsFromManyThreads() throws InterruptedException {
+        final Histogram histogram = new Histogram(10, 100);
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i += 1) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j += 1) {
+                        histogram.record(j % 200);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        final Histogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(4000, snapshot.getCount());
+        assertEquals(199, snapshot.getMax());
+        long total = 0;
+        for (final long count : snapshot.getBucketCounts()) {
+            total += count;
+        }
+        assertEquals(4000, total);
+    }
+}
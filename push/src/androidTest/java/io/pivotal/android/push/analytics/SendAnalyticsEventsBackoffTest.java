@@ -0,0 +1,135 @@
+package io.pivotal.android.push.analytics;
+
+import android.test.AndroidTestCase;
+
+import java.util.Random;
+
+import io.pivotal.android.push.prefs.PushPreferences;
+import io.pivotal.android.push.util.TimeProvider;
+
+public class SendAnalyticsEventsBackoffTest extends AndroidTestCase {
+
+    private static final long TEST_CURRENT_TIME = 1000000L;
+
+    private PushPreferences pushPreferences;
+    private FakeTimeProvider timeProvider;
+    private FixedRandom random;
+
+    private static class FakeTimeProvider extends TimeProvider {
+        long currentTimeMillis = TEST_CURRENT_TIME;
+
+        @Override
+        public long currentTimeMillis() {
+            return currentTimeMillis;
+        }
+    }
+
+    private static class FixedRandom extends Random {
+        double value;
+
+        FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        pushPreferences = new PushPreferences(getContext());
+        pushPreferences.setAnalyticsSendBackoff(0, 0L);
+        timeProvider = new FakeTimeProvider();
+        random = new FixedRandom(0.5);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pushPreferences.setAnalyticsSendBackoff(0, 0L);
+        super.tearDown();
+    }
+
+    public void testRequiresPushPreferences() {
+        try {
+            new SendAnalyticsEventsBackoff(null, timeProvider);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // should have thrown
+        }
+    }
+
+    public void testRequiresTimeProvider() {
+        try {
+            new SendAnalyticsEventsBackoff(pushPreferences, null);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // should have thrown
+        }
+    }
+
+    public void testDelayLimitGrowsExponentiallyUpToTheMaximum() {
+        assertEquals(SendAnalyticsEventsBackoff.BASE_DELAY_IN_MILLISECONDS, SendAnalyticsEventsBackoff.getDelayLimit(1));
+        assertEquals(2 * SendAnalyticsEventsBackoff.BASE_DELAY_IN_MILLISECONDS, SendAnalyticsEventsBackoff.getDelayLimit(2));
+        assertEquals(4 * SendAnalyticsEventsBackoff.BASE_DELAY_IN_MILLISECONDS, SendAnalyticsEventsBackoff.getDelayLimit(3));
+        assertEquals(SendAnalyticsEventsBackoff.MAX_DELAY_IN_MILLISECONDS, SendAnalyticsEventsBackoff.getDelayLimit(20));
+        assertEquals(SendAnalyticsEventsBackoff.MAX_DELAY_IN_MILLISECONDS, SendAnalyticsEventsBackoff.getDelayLimit(Integer.MAX_VALUE));
+    }
+
+    public void testCanSendRightAwayWithoutFailures() {
+        final SendAnalyticsEventsBackoff backoff = new SendAnalyticsEventsBackoff(pushPreferences, timeProvider, random);
+        assertEquals(0, backoff.getMillisecondsUntilNextAttempt());
+    }
+
+    public void testFailuresUseFullJitter() {
+        final SendAnalyticsEventsBackoff backoff = new SendAnalyticsEventsBackoff(pushPreferences, timeProvider, random);
+        assertEquals(SendAnalyticsEventsBackoff.BASE_DELAY_IN_MILLISECONDS / 2, backoff.onFailure(0L));
+        assertEquals(SendAnalyticsEventsBackoff.BASE_DELAY_IN_MILLISECONDS, backoff.onFailure(0L));
+
+        random.value = 0.0;
+        assertEquals(0L, backoff.onFailure(0L));
+        assertEquals(3, pushPreferences.getAnalyticsSendFailures());
+    }
+
+    public void testStateIsPersisted() {
+        final long delay = new SendAnalyticsEventsBackoff(pushPreferences, timeProvider, random).onFailure(0L);
+
+        final SendAnalyticsEventsBackoff backoff = new SendAnalyticsEventsBackoff(pushPreferences, timeProvider, random);
+        assertEquals(delay, backoff.getMillisecondsUntilNextAttempt());
+        assertEquals(1, pushPreferences.getAnalyticsSendFailures());
+
+        timeProvider.currentTimeMillis += delay;
+        assertEquals(0, backoff.getMillisecondsUntilNextAttempt());
+    }
+
+    public void testHonoursRetryAfter() {
+        final SendAnalyticsEventsBackoff backoff = new SendAnalyticsEventsBackoff(pushPreferences, timeProvider, random);
+        assertEquals(120000L, backoff.onFailure(120000L));
+        assertEquals(120000L, backoff.getMillisecondsUntilNextAttempt());
+
+        // A Retry-After wait that is shorter than the jittered delay does not shorten it
+        assertEquals(SendAnalyticsEventsBackoff.BASE_DELAY_IN_MILLISECONDS, backoff.onFailure(1L));
+
+        // Nor is a very long Retry-After wait taken at face value
+        assertEquals(SendAnalyticsEventsBackoff.MAX_RETRY_AFTER_IN_MILLISECONDS, backoff.onFailure(Long.MAX_VALUE / 2));
+    }
+
+    public void testSuccessResetsTheBackoff() {
+        final SendAnalyticsEventsBackoff backoff = new SendAnalyticsEventsBackoff(pushPreferences, timeProvider, random);
+        backoff.onFailure(0L);
+        backoff.onFailure(0L);
+        backoff.onSuccess();
+        assertEquals(0, pushPreferences.getAnalyticsSendFailures());
+        assertEquals(0, backoff.getMillisecondsUntilNextAttempt());
+        assertEquals(SendAnalyticsEventsBackoff.BASE_DELAY_IN_MILLISECONDS / 2, backoff.onFailure(0L));
+    }
+
+    public void testIgnoresNextAttemptTimesFromAClockThatWasTurnedBack() {
+        final SendAnalyticsEventsBackoff backoff = new SendAnalyticsEventsBackoff(pushPreferences, timeProvider, random);
+        backoff.onFailure(0L);
+        timeProvider.currentTimeMillis -= 2 * SendAnalyticsEventsBackoff.MAX_RETRY_AFTER_IN_MILLISECONDS;
+        assertEquals(0, backoff.getMillisecondsUntilNextAttempt());
+    }
+}
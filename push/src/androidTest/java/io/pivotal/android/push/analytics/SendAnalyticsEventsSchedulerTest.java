@@ -0,0 +1,128 @@
+package io.pivotal.android.push.analytics;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import io.pivotal.android.push.analytics.jobs.SendAnalyticsEventsJob;
+import io.pivotal.android.push.service.AnalyticsEventService;
+import io.pivotal.android.push.util.FakeServiceStarter;
+import io.pivotal.android.push.util.ThreadUtil;
+
+public class SendAnalyticsEventsSchedulerTest extends AndroidTestCase {
+
+    private FakeServiceStarter serviceStarter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        serviceStarter = new FakeServiceStarter();
+        serviceStarter.setReturnedComponentName(new ComponentName(getContext(), AnalyticsEventService.class));
+    }
+
+    public void testRequiresNonNegativeSpacing() {
+        try {
+            new SendAnalyticsEventsScheduler(-1, 0);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // should have thrown
+        }
+    }
+
+    public void testRequiresMaxDelayOfAtLeastSpacing() {
+        try {
+            new SendAnalyticsEventsScheduler(100, 99);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // should have thrown
+        }
+    }
+
+    public void testAppliesMetaData() {
+        final SendAnalyticsEventsScheduler scheduler = new SendAnalyticsEventsScheduler(5000L, 30000L);
+        final Bundle metaData = new Bundle();
+        metaData.putInt(SendAnalyticsEventsScheduler.MIN_SPACING_META_DATA, 1000);
+        metaData.putInt(SendAnalyticsEventsScheduler.MAX_DELAY_META_DATA, 10000);
+        scheduler.applyMetaData(metaData);
+        assertEquals(1000L, scheduler.getMinSpacingInMilliseconds());
+        assertEquals(10000L, scheduler.getMaxDelayInMilliseconds());
+    }
+
+    public void testKeepsDefaultsForMissingMetaData() {
+        final SendAnalyticsEventsScheduler scheduler = new SendAnalyticsEventsScheduler(5000L, 30000L);
+        final Bundle metaData = new Bundle();
+        metaData.putInt(SendAnalyticsEventsScheduler.MAX_DELAY_META_DATA, 60000);
+        scheduler.applyMetaData(metaData);
+        scheduler.applyMetaData(null);
+        assertEquals(5000L, scheduler.getMinSpacingInMilliseconds());
+        assertEquals(60000L, scheduler.getMaxDelayInMilliseconds());
+    }
+
+    public void testIgnoresInvalidMetaData() {
+        final SendAnalyticsEventsScheduler scheduler = new SendAnalyticsEventsScheduler(5000L, 30000L);
+        final Bundle metaData = new Bundle();
+        metaData.putInt(SendAnalyticsEventsScheduler.MIN_SPACING_META_DATA, 10000);
+        metaData.putInt(SendAnalyticsEventsScheduler.MAX_DELAY_META_DATA, 1000);
+        scheduler.applyMetaData(metaData);
+        assertEquals(5000L, scheduler.getMinSpacingInMilliseconds());
+        assertEquals(30000L, scheduler.getMaxDelayInMilliseconds());
+    }
+
+    public void testZeroSpacingSendsImmediately() {
+        final SendAnalyticsEventsScheduler scheduler = new SendAnalyticsEventsScheduler(0, 0);
+        scheduler.requestSend(getContext(), serviceStarter);
+        scheduler.requestSend(getContext(), serviceStarter);
+        assertFalse(scheduler.isSendPending());
+        assertEquals(2, serviceStarter.getStartedIntents().size());
+    }
+
+    public void testCoalescesBurstOfRequests() {
+        final SendAnalyticsEventsScheduler scheduler = new SendAnalyticsEventsScheduler(200L, 5000L);
+        for (int i = 0; i < 20; i += 1) {
+            scheduler.requestSend(getContext(), serviceStarter);
+        }
+        assertTrue(scheduler.isSendPending());
+        assertFalse(serviceStarter.wasStarted());
+
+        waitForSend(scheduler, 5000L);
+        assertEquals(1, serviceStarter.getStartedIntents().size());
+        final Intent intent = serviceStarter.getStartedIntents().get(0);
+        assertTrue(intent.getParcelableExtra(AnalyticsEventService.KEY_JOB) instanceof SendAnalyticsEventsJob);
+    }
+
+    public void testSendsNoLaterThanMaxDelay() {
+        final SendAnalyticsEventsScheduler scheduler = new SendAnalyticsEventsScheduler(300L, 600L);
+        final long start = SystemClock.elapsedRealtime();
+
+        // Keep requesting more often than the minimum spacing so that only the maximum delay can trigger the send
+        while (!serviceStarter.wasStarted() && SystemClock.elapsedRealtime() - start < 5000L) {
+            scheduler.requestSend(getContext(), serviceStarter);
+            ThreadUtil.sleep(50);
+        }
+        final long elapsed = SystemClock.elapsedRealtime() - start;
+        assertTrue(serviceStarter.wasStarted());
+        assertTrue("elapsed: " + elapsed, elapsed < 2000L);
+    }
+
+    public void testSendNow() {
+        final SendAnalyticsEventsScheduler scheduler = new SendAnalyticsEventsScheduler(60000L, 60000L);
+        scheduler.sendNow();
+        assertFalse(serviceStarter.wasStarted());
+
+        scheduler.requestSend(getContext(), serviceStarter);
+        scheduler.requestSend(getContext(), serviceStarter);
+        scheduler.sendNow();
+        assertFalse(scheduler.isSendPending());
+        assertEquals(1, serviceStarter.getStartedIntents().size());
+    }
+
+    private void waitForSend(SendAnalyticsEventsScheduler scheduler, long timeoutInMilliseconds) {
+        final long start = SystemClock.elapsedRealtime();
+        while (scheduler.isSendPending() && SystemClock.elapsedRealtime() - start < timeoutInMilliseconds) {
+            ThreadUtil.sleep(50);
+        }
+        assertFalse(scheduler.isSendPending());
+    }
+}
@@ -8,6 +8,7 @@ import android.net.Uri;
 import android.support.test.runner.AndroidJUnit4;
 import android.test.MoreAsserts;
 
+import java.util.LinkedList;
 import java.util.List;
 
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
@@ -19,7 +20,7 @@ public class EnqueueAnalyticsEventJobTest extends JobTest {
 
     public void testRequiresEvent() {
         try {
-            new EnqueueAnalyticsEventJob(null);
+            new EnqueueAnalyticsEventJob((AnalyticsEvent) null);
             fail();
         } catch (IllegalArgumentException e) {
             // success
@@ -104,6 +105,54 @@ public class EnqueueAnalyticsEventJobTest extends JobTest {
         assertEquals(0, eventsStorage.getNumberOfEvents());
     }
 
+    @Test
+    public void testRequiresEvents() {
+        try {
+            new EnqueueAnalyticsEventJob(new LinkedList<AnalyticsEvent>());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+
+    @Test
+    public void testEnqueuesMultipleObjects() throws InterruptedException {
+
+        // Setup environment
+        assertEquals(0, eventsStorage.getNumberOfEvents());
+
+        // Run job
+        final List<AnalyticsEvent> events = new LinkedList<>();
+        events.add(event1);
+        events.add(heartbeatEvent);
+        final EnqueueAnalyticsEventJob job = new EnqueueAnalyticsEventJob(events);
+        job.run(getJobParams(new JobResultListener() {
+
+            @Override
+            public void onJobComplete(int resultCode) {
+                assertEquals(RESULT_SUCCESS, resultCode);
+                semaphore.release();
+            }
+        }));
+
+        semaphore.acquire();
+
+        // Ensure both events made it into the database
+        assertEquals(2, eventsStorage.getNumberOfEvents());
+    }
+
+    @Test
+    public void testParcelsMultipleEvents() {
+        final List<AnalyticsEvent> events = new LinkedList<>();
+        events.add(event1);
+        events.add(event2);
+        final EnqueueAnalyticsEventJob inputJob = new EnqueueAnalyticsEventJob(events);
+        final EnqueueAnalyticsEventJob outputJob = getJobViaParcel(inputJob);
+        assertNotNull(outputJob);
+        assertEquals(inputJob, outputJob);
+        assertEquals(2, outputJob.getEvents().size());
+    }
+
     @Test
     public void testEquals() {
         final EnqueueAnalyticsEventJob job1 = new EnqueueAnalyticsEventJob(event1);
@@ -4,14 +4,22 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.support.test.runner.AndroidJUnit4;
-import android.test.MoreAsserts;
+import io.pivotal.android.push.analytics.AnalyticsMetrics;
+import io.pivotal.android.push.analytics.AnalyticsMetricsRecorder;
 import io.pivotal.android.push.backend.analytics.FakePCFPushSendAnalyticsApiRequest;
+import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsApiRequest;
+import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsApiRequestProvider;
+import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsListener;
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import junit.framework.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -59,12 +67,10 @@ public class SendAnalyticsEventsJobTest extends JobTest {
 
                 @Override
                 public void onRequestMade(FakePCFPushSendAnalyticsApiRequest request,
-                    List<Uri> uris) {
-                    assertEquals(2, uris.size());
-                    final List<Uri> expectedUrisInRequest = new ArrayList<Uri>(2);
-                    expectedUrisInRequest.add(uri1);
-                    expectedUrisInRequest.add(uri3);
-                    MoreAsserts.assertContentsInAnyOrder(expectedUrisInRequest, uris);
+                    long[] eventIds) {
+                    assertEquals(2, eventIds.length);
+                    assertEquals(ContentUris.parseId(uri1), eventIds[0]);
+                    assertEquals(ContentUris.parseId(uri3), eventIds[1]);
 
                     // Checks that events have the POSTING status while they are being posted
                     assertEventHasStatus(uri1, AnalyticsEvent.Status.POSTING);
@@ -109,9 +115,9 @@ public class SendAnalyticsEventsJobTest extends JobTest {
 
                 @Override
                 public void onRequestMade(FakePCFPushSendAnalyticsApiRequest request,
-                    List<Uri> uris) {
-                    assertEquals(1, uris.size());
-                    assertEquals(uri, uris.get(0));
+                    long[] eventIds) {
+                    assertEquals(1, eventIds.length);
+                    assertEquals(ContentUris.parseId(uri), eventIds[0]);
                     assertEventHasStatus(uri, AnalyticsEvent.Status.POSTING);
                 }
             });
@@ -134,6 +140,255 @@ public class SendAnalyticsEventsJobTest extends JobTest {
         assertTrue(alarmProvider.isAlarmEnabled());
     }
 
+    @Test
+    public void testSendsInPages() throws InterruptedException {
+        for (int i = 0; i < 5; i += 1) {
+            saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED);
+        }
+        final PagedRequest request = new PagedRequest(Integer.MAX_VALUE);
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        final SendAnalyticsEventsJob job = new SendAnalyticsEventsJob(2, 1024 * 1024);
+        job.run(getJobParams(new JobResultListener() {
+
+            @Override
+            public void onJobComplete(int resultCode) {
+                assertEquals(RESULT_SUCCESS, resultCode);
+                semaphore.release();
+            }
+        }));
+
+        semaphore.acquire();
+        assertEquals(3, request.pageSizes.size());
+        assertEquals(2, (int) request.pageSizes.get(0));
+        assertEquals(2, (int) request.pageSizes.get(1));
+        assertEquals(1, (int) request.pageSizes.get(2));
+        assertEquals(0, eventsStorage.getNumberOfEvents());
+        assertFalse(alarmProvider.isAlarmEnabled());
+    }
+
+    @Test
+    public void testKeepsSentPagesWhenLaterPageFails() throws InterruptedException {
+        final List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < 5; i += 1) {
+            uris.add(saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED));
+        }
+        final PagedRequest request = new PagedRequest(1);
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        final SendAnalyticsEventsJob job = new SendAnalyticsEventsJob(2, 1024 * 1024);
+        job.run(getJobParams(new JobResultListener() {
+
+            @Override
+            public void onJobComplete(int resultCode) {
+                assertEquals(SendAnalyticsEventsJob.RESULT_FAILED_TO_SEND_RECEIPTS, resultCode);
+                semaphore.release();
+            }
+        }));
+
+        semaphore.acquire();
+        assertEquals(2, request.pageSizes.size());
+        assertEquals(3, eventsStorage.getNumberOfEvents());
+        assertEventNotInStorage(uris.get(0));
+        assertEventNotInStorage(uris.get(1));
+        assertEventHasStatus(uris.get(2), AnalyticsEvent.Status.POSTING_ERROR);
+        assertEventHasStatus(uris.get(3), AnalyticsEvent.Status.POSTING_ERROR);
+        assertEventHasStatus(uris.get(4), AnalyticsEvent.Status.NOT_POSTED);
+        assertTrue(alarmProvider.isAlarmEnabled());
+    }
+
+    @Test
+    public void testFailedSendSetsTheAlarmWithTheBackoffDelay() throws InterruptedException {
+        saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED);
+        sendAnalyticsApiRequest.setWillBeSuccessfulRequest(false);
+        sendAnalyticsApiRequest.setRetryAfterInMilliseconds(600000L);
+
+        final SendAnalyticsEventsJob job = new SendAnalyticsEventsJob();
+        job.run(getJobParams(new JobResultListener() {
+
+            @Override
+            public void onJobComplete(int resultCode) {
+                assertEquals(SendAnalyticsEventsJob.RESULT_FAILED_TO_SEND_RECEIPTS, resultCode);
+                semaphore.release();
+            }
+        }));
+
+        semaphore.acquire();
+        assertTrue(alarmProvider.isAlarmEnabled());
+        assertEquals(600000L, alarmProvider.getDelayInMilliseconds());
+    }
+
+    @Test
+    public void testDoesNotSendWhileBackingOff() throws InterruptedException {
+        saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED);
+        sendAnalyticsApiRequest.setWillBeSuccessfulRequest(true);
+        when(timeProvider.currentTimeMillis()).thenReturn(1000L);
+        when(pushPreferences.getAnalyticsSendFailures()).thenReturn(3);
+        when(pushPreferences.getAnalyticsNextSendTime()).thenReturn(61000L);
+
+        final SendAnalyticsEventsJob job = new SendAnalyticsEventsJob();
+        job.run(getJobParams(new JobResultListener() {
+
+            @Override
+            public void onJobComplete(int resultCode) {
+                assertEquals(SendAnalyticsEventsJob.RESULT_DEFERRED, resultCode);
+                semaphore.release();
+            }
+        }));
+
+        semaphore.acquire();
+        assertFalse(sendAnalyticsApiRequest.wasRequestAttempted());
+        assertEquals(1, eventsStorage.getNumberOfEvents());
+        assertTrue(alarmProvider.isAlarmEnabled());
+        assertEquals(60000L, alarmProvider.getDelayInMilliseconds());
+    }
+
+    @Test
+    public void testSendsTheRestOfAPageThatTheServerRejects() throws InterruptedException {
+        final List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < 5; i += 1) {
+            uris.add(saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED));
+        }
+        final RejectingRequest request = new RejectingRequest(ContentUris.parseId(uris.get(3)));
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        runJobWithResult(new SendAnalyticsEventsJob(), JobResultListener.RESULT_SUCCESS);
+
+        assertEquals(1, eventsStorage.getNumberOfEvents());
+        assertEventHasStatus(uris.get(3), AnalyticsEvent.Status.POSTING_ERROR);
+        assertEquals(1, request.numberOfRejectedEvents);
+        assertTrue(alarmProvider.isAlarmEnabled());
+    }
+
+    @Test
+    public void testQuarantinesAnEventThatIsRejectedTooManyTimes() throws InterruptedException {
+        final Uri poisonUri = saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED);
+        final RejectingRequest request = new RejectingRequest(ContentUris.parseId(poisonUri));
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        for (int i = 1; i < SendAnalyticsEventsJob.MAX_REJECTED_ATTEMPTS; i += 1) {
+            runJobWithResult(new SendAnalyticsEventsJob(), JobResultListener.RESULT_SUCCESS);
+            assertEventHasStatus(poisonUri, AnalyticsEvent.Status.POSTING_ERROR);
+        }
+        runJobWithResult(new SendAnalyticsEventsJob(), JobResultListener.RESULT_SUCCESS);
+        assertEventHasStatus(poisonUri, AnalyticsEvent.Status.QUARANTINED);
+        assertEquals(SendAnalyticsEventsJob.MAX_REJECTED_ATTEMPTS, request.numberOfRejectedEvents);
+
+        // The quarantined event is not sent again
+        saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED);
+        runJobWithResult(new SendAnalyticsEventsJob(), JobResultListener.RESULT_SUCCESS);
+        assertEquals(SendAnalyticsEventsJob.MAX_REJECTED_ATTEMPTS, request.numberOfRejectedEvents);
+        assertEquals(1, eventsStorage.getNumberOfEvents());
+        assertEventHasStatus(poisonUri, AnalyticsEvent.Status.QUARANTINED);
+        assertFalse(alarmProvider.isAlarmEnabled());
+    }
+
+    @Test
+    public void testFindsARejectedEventInEachHalfOfAPage() throws InterruptedException {
+        final List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < 4; i += 1) {
+            uris.add(saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED));
+        }
+        final RejectingRequest request = new RejectingRequest(ContentUris.parseId(uris.get(0)), ContentUris.parseId(uris.get(3)));
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        runJobWithResult(new SendAnalyticsEventsJob(), JobResultListener.RESULT_SUCCESS);
+
+        assertEquals(2, eventsStorage.getNumberOfEvents());
+        assertEventHasStatus(uris.get(0), AnalyticsEvent.Status.POSTING_ERROR);
+        assertEventHasStatus(uris.get(3), AnalyticsEvent.Status.POSTING_ERROR);
+        assertEquals(2, request.numberOfRejectedEvents);
+        assertTrue(alarmProvider.isAlarmEnabled());
+    }
+
+    @Test
+    public void testQuarantinesEveryEventWhenTheServerRejectsEverything() throws InterruptedException {
+        final List<Uri> uris = new ArrayList<>();
+        final long[] eventIds = new long[5];
+        for (int i = 0; i < eventIds.length; i += 1) {
+            uris.add(saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED));
+            eventIds[i] = ContentUris.parseId(uris.get(i));
+        }
+        final RejectingRequest request = new RejectingRequest(eventIds);
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        for (int i = 0; i < SendAnalyticsEventsJob.MAX_REJECTED_ATTEMPTS; i += 1) {
+            runJobWithResult(new SendAnalyticsEventsJob(), JobResultListener.RESULT_SUCCESS);
+        }
+
+        // Every event is found by splitting the page and is rejected on its own on each run
+        assertEquals(eventIds.length * SendAnalyticsEventsJob.MAX_REJECTED_ATTEMPTS, request.numberOfRejectedEvents);
+        assertEquals(eventIds.length, eventsStorage.getNumberOfEvents());
+        for (final Uri uri : uris) {
+            assertEventHasStatus(uri, AnalyticsEvent.Status.QUARANTINED);
+        }
+
+        runJobWithResult(new SendAnalyticsEventsJob(), SendAnalyticsEventsJob.RESULT_NO_WORK_TO_DO);
+        assertFalse(alarmProvider.isAlarmEnabled());
+    }
+
+    @Test
+    public void testStopsAfterTooManyRejectedRequests() throws InterruptedException {
+        final List<Long> rejectedEventIds = new ArrayList<>();
+        for (int i = 0; i < SendAnalyticsEventsJob.MAX_REJECTED_REQUESTS_PER_RUN; i += 1) {
+            saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED);
+            rejectedEventIds.add(ContentUris.parseId(saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED)));
+        }
+        final long[] eventIds = new long[rejectedEventIds.size()];
+        for (int i = 0; i < eventIds.length; i += 1) {
+            eventIds[i] = rejectedEventIds.get(i);
+        }
+        final RejectingRequest request = new RejectingRequest(eventIds);
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        // Each page of two events takes two rejected requests to find its rejected event
+        runJobWithResult(new SendAnalyticsEventsJob(2, 1024 * 1024), SendAnalyticsEventsJob.RESULT_FAILED_TO_SEND_RECEIPTS);
+        assertEquals(SendAnalyticsEventsJob.MAX_REJECTED_REQUESTS_PER_RUN + 1, request.numberOfRejectedRequests);
+        assertEquals(SendAnalyticsEventsJob.MAX_REJECTED_REQUESTS_PER_RUN / 2, request.numberOfRejectedEvents);
+        assertTrue(alarmProvider.isAlarmEnabled());
+    }
+
+    @Test
+    public void testSendsEveryBatchFromTheSameStackDepth() throws InterruptedException {
+        final List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < 8; i += 1) {
+            uris.add(saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED));
+        }
+        final RejectingRequest request = new RejectingRequest(ContentUris.parseId(uris.get(1)), ContentUris.parseId(uris.get(6)));
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        // The pages and the halves of the rejected pages are sent in a loop instead of from the listener
+        runJobWithResult(new SendAnalyticsEventsJob(4, 1024 * 1024), JobResultListener.RESULT_SUCCESS);
+        assertEquals(2, eventsStorage.getNumberOfEvents());
+        assertEquals(2, request.numberOfRejectedEvents);
+        assertEquals(1, request.stackDepths.size());
+    }
+
+    @Test
+    public void testRecordsUploadMetrics() throws InterruptedException {
+        AnalyticsMetricsRecorder.reset();
+        final List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < 2; i += 1) {
+            uris.add(saveEventWithStatus(AnalyticsEvent.Status.NOT_POSTED));
+        }
+        final RejectingRequest request = new RejectingRequest(ContentUris.parseId(uris.get(1)));
+        sendAnalyticsApiRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+
+        runJobWithResult(new SendAnalyticsEventsJob(), JobResultListener.RESULT_SUCCESS);
+
+        final AnalyticsMetrics metrics = AnalyticsMetricsRecorder.getMetrics();
+        assertEquals(3, metrics.getNumberOfUploadAttempts());
+        assertEquals(1, metrics.getNumberOfUploadSuccesses());
+        assertEquals(2, metrics.getNumberOfUploadRejections());
+        assertEquals(0, metrics.getNumberOfUploadFailures());
+        AnalyticsMetricsRecorder.reset();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiresNonNegativeLimits() {
+        new SendAnalyticsEventsJob(-1, 0);
+    }
+
     @Test
     public void testEquals() {
         final SendAnalyticsEventsJob job1 = new SendAnalyticsEventsJob();
@@ -142,6 +397,14 @@ public class SendAnalyticsEventsJobTest extends JobTest {
         assertEquals(job1, job2);
     }
 
+    @Test
+    public void testParcelsLimits() {
+        final SendAnalyticsEventsJob inputJob = new SendAnalyticsEventsJob(10, 2000);
+        final SendAnalyticsEventsJob outputJob = getJobViaParcel(inputJob);
+        assertEquals(inputJob, outputJob);
+        assertFalse(new SendAnalyticsEventsJob().equals(outputJob));
+    }
+
     @Test
     public void testParcelsData() {
         final SendAnalyticsEventsJob inputJob = new SendAnalyticsEventsJob();
@@ -149,4 +412,78 @@ public class SendAnalyticsEventsJobTest extends JobTest {
         assertNotNull(outputJob);
         assertEquals(inputJob, outputJob);
     }
+
+    private void runJobWithResult(SendAnalyticsEventsJob job, final int expectedResultCode) throws InterruptedException {
+        job.run(getJobParams(new JobResultListener() {
+
+            @Override
+            public void onJobComplete(int resultCode) {
+                assertEquals(expectedResultCode, resultCode);
+                semaphore.release();
+            }
+        }));
+        semaphore.acquire();
+    }
+
+    // Rejects every batch that holds one of the given events and accepts every other batch.
+    private static class RejectingRequest implements PCFPushSendAnalyticsApiRequest {
+
+        private final Set<Long> rejectedEventIds = new HashSet<>();
+        private final Set<Integer> stackDepths = new HashSet<>();
+        private int numberOfRejectedRequests;
+        private int numberOfRejectedEvents;
+
+        RejectingRequest(long... rejectedEventIds) {
+            for (final long eventId : rejectedEventIds) {
+                this.rejectedEventIds.add(eventId);
+            }
+        }
+
+        @Override
+        public void startSendEvents(long[] eventIds, PCFPushSendAnalyticsListener listener) {
+            stackDepths.add(new Throwable().getStackTrace().length);
+            for (final long eventId : eventIds) {
+                if (rejectedEventIds.contains(eventId)) {
+                    numberOfRejectedRequests += 1;
+                    if (eventIds.length == 1) {
+                        numberOfRejectedEvents += 1;
+                    }
+                    listener.onBackEndSendEventsRejected("The rejecting request rejected the events.");
+                    return;
+                }
+            }
+            listener.onBackEndSendEventsSuccess();
+        }
+
+        @Override
+        public PCFPushSendAnalyticsApiRequest copy() {
+            return this;
+        }
+    }
+
+    // Records the size of each page and succeeds for the given number of pages, then fails.
+    private static class PagedRequest implements PCFPushSendAnalyticsApiRequest {
+
+        private final List<Integer> pageSizes = new ArrayList<>();
+        private final int numberOfSuccessfulPages;
+
+        PagedRequest(int numberOfSuccessfulPages) {
+            this.numberOfSuccessfulPages = numberOfSuccessfulPages;
+        }
+
+        @Override
+        public void startSendEvents(long[] eventIds, PCFPushSendAnalyticsListener listener) {
+            pageSizes.add(eventIds.length);
+            if (pageSizes.size() <= numberOfSuccessfulPages) {
+                listener.onBackEndSendEventsSuccess();
+            } else {
+                listener.onBackEndSendEventsFailed("The paged request failed.", 0L);
+            }
+        }
+
+        @Override
+        public PCFPushSendAnalyticsApiRequest copy() {
+            return this;
+        }
+    }
 }
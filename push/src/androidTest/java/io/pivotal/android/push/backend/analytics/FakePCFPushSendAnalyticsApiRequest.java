@@ -1,20 +1,16 @@
 package io.pivotal.android.push.backend.analytics;
 
-import android.net.Uri;
-
-import java.util.Collections;
-import java.util.List;
-
 public class FakePCFPushSendAnalyticsApiRequest implements PCFPushSendAnalyticsApiRequest {
 
     private final FakePCFPushSendAnalyticsApiRequest originatingRequest;
     private boolean willBeSuccessfulRequest = false;
     private boolean wasRequestAttempted = false;
     private RequestHook requestHook = null;
-    private List<Uri> receivedUris = null;
+    private long[] receivedEventIds = null;
+    private long retryAfterInMilliseconds = 0L;
 
     public interface RequestHook {
-        public void onRequestMade(FakePCFPushSendAnalyticsApiRequest request, List<Uri> uris);
+        public void onRequestMade(FakePCFPushSendAnalyticsApiRequest request, long[] eventIds);
     }
 
     public FakePCFPushSendAnalyticsApiRequest(FakePCFPushSendAnalyticsApiRequest originatingRequest) {
@@ -27,7 +23,7 @@ public class FakePCFPushSendAnalyticsApiRequest implements PCFPushSendAnalyticsA
     }
 
     @Override
-    public void startSendEvents(List<Uri> eventUris, PCFPushSendAnalyticsListener listener) {
+    public void startSendEvents(long[] eventIds, PCFPushSendAnalyticsListener listener) {
 
         wasRequestAttempted = true;
         if (originatingRequest != null) {
@@ -35,17 +31,17 @@ public class FakePCFPushSendAnalyticsApiRequest implements PCFPushSendAnalyticsA
         }
 
         if (requestHook != null) {
-            requestHook.onRequestMade(this, eventUris);
+            requestHook.onRequestMade(this, eventIds);
         }
 
         if (willBeSuccessfulRequest) {
-            receivedUris = eventUris;
+            receivedEventIds = eventIds;
             if (originatingRequest != null) {
-                originatingRequest.receivedUris = eventUris;
+                originatingRequest.receivedEventIds = eventIds;
             }
             listener.onBackEndSendEventsSuccess();
         } else {
-            listener.onBackEndSendEventsFailed("The fake request failed fakely.");
+            listener.onBackEndSendEventsFailed("The fake request failed fakely.", retryAfterInMilliseconds);
         }
     }
 
@@ -53,6 +49,7 @@ public class FakePCFPushSendAnalyticsApiRequest implements PCFPushSendAnalyticsA
     public PCFPushSendAnalyticsApiRequest copy() {
         final FakePCFPushSendAnalyticsApiRequest newRequest = new FakePCFPushSendAnalyticsApiRequest(this);
         newRequest.willBeSuccessfulRequest = willBeSuccessfulRequest;
+        newRequest.retryAfterInMilliseconds = retryAfterInMilliseconds;
         return newRequest;
     }
 
@@ -64,19 +61,24 @@ public class FakePCFPushSendAnalyticsApiRequest implements PCFPushSendAnalyticsA
         this.willBeSuccessfulRequest = b;
     }
 
+    // The Retry-After wait that is passed to the listener when the request fails
+    public void setRetryAfterInMilliseconds(long retryAfterInMilliseconds) {
+        this.retryAfterInMilliseconds = retryAfterInMilliseconds;
+    }
+
     public void setRequestHook(RequestHook requestHook) {
         this.requestHook = requestHook;
     }
 
     public int numberOfEventsSent() {
-        if (receivedUris == null) {
+        if (receivedEventIds == null) {
             return 0;
         } else {
-            return receivedUris.size();
+            return receivedEventIds.length;
         }
     };
 
-    public List<Uri> getListOfReceivedUris() {
-        return Collections.unmodifiableList(receivedUris);
+    public long[] getReceivedEventIds() {
+        return receivedEventIds;
     }
 }
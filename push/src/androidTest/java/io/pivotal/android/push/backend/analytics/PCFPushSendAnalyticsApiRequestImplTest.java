@@ -3,26 +3,37 @@ package io.pivotal.android.push.backend.analytics;
 import static android.support.test.InstrumentationRegistry.getContext;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import io.pivotal.android.push.PushParameters;
 import io.pivotal.android.push.database.FakeAnalyticsEventsStorage;
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.model.analytics.AnalyticsEventList;
 import io.pivotal.android.push.model.analytics.AnalyticsEventTest;
 import io.pivotal.android.push.prefs.FakePushRequestHeaders;
 import io.pivotal.android.push.prefs.Pivotal;
 import io.pivotal.android.push.util.DelayedLoop;
 import io.pivotal.android.push.util.FakeHttpURLConnection;
 import io.pivotal.android.push.util.FakeNetworkWrapper;
+import io.pivotal.android.push.util.LocalHttpServer;
 import io.pivotal.android.push.util.NetworkWrapper;
+import io.pivotal.android.push.util.NetworkWrapperImpl;
+import io.pivotal.android.push.util.TimeProvider;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -42,8 +53,8 @@ public class PCFPushSendAnalyticsApiRequestImplTest {
     private FakePushRequestHeaders pushRequestHeaders;
     private static final long TEN_SECOND_TIMEOUT = 10000L;
 
-    private List<Uri> emptyList;
-    private List<Uri> listWithOneItem;
+    private long[] emptyList;
+    private long[] listWithOneItem;
 
     @Before
     public void setUp() throws Exception {
@@ -66,10 +77,9 @@ public class PCFPushSendAnalyticsApiRequestImplTest {
 
         pushRequestHeaders = new FakePushRequestHeaders();
         FakeHttpURLConnection.reset();
-        emptyList = new LinkedList<>();
-        listWithOneItem = new LinkedList<>();
+        emptyList = new long[0];
         final Uri uri = eventsStorage.saveEvent(AnalyticsEventTest.getEvent1());
-        listWithOneItem.add(uri);
+        listWithOneItem = new long[] { ContentUris.parseId(uri) };
     }
 
     @Test
@@ -100,6 +110,16 @@ public class PCFPushSendAnalyticsApiRequestImplTest {
             // Success
         }
     }
+    @Test
+    public void testRequiresTimeProvider() {
+        try {
+            new PCFPushSendAnalyticsApiRequestImpl(getContext(), parameters, eventsStorage, pushRequestHeaders, networkWrapper, (TimeProvider) null);
+            fail("Should not have succeeded");
+        } catch (IllegalArgumentException ex) {
+            // Success
+        }
+    }
+
     @Test
     public void testRequiresNetworkWrapper() {
         try {
@@ -149,6 +169,25 @@ public class PCFPushSendAnalyticsApiRequestImplTest {
         delayedLoop.startLoop();
         assertTrue(delayedLoop.isSuccess());
     }
+    @Test
+    public void testRequestBodyContainsEvents() {
+        final Uri uri = eventsStorage.saveEvent(AnalyticsEventTest.getEvent2());
+        final long[] listWithTwoItems = new long[] { listWithOneItem[0], ContentUris.parseId(uri) };
+
+        makeListenersForSuccessfulRequestFromNetwork(true, 200);
+        final PCFPushSendAnalyticsApiRequestImpl request = new PCFPushSendAnalyticsApiRequestImpl(getContext(), parameters, eventsStorage, pushRequestHeaders, networkWrapper);
+        request.startSendEvents(listWithTwoItems, listener);
+        delayedLoop.startLoop();
+        assertTrue(delayedLoop.isSuccess());
+
+        final String requestBody = new String(FakeHttpURLConnection.getRequestData());
+        final AnalyticsEventList eventList = new Gson().fromJson(requestBody, AnalyticsEventList.class);
+        final List<AnalyticsEvent> events = eventList.getEvents();
+        assertEquals(2, events.size());
+        assertEquals(AnalyticsEventTest.getEvent1(), events.get(0));
+        assertEquals(AnalyticsEventTest.getEvent2(), events.get(1));
+    }
+
     @Test
     public void testAreAnalyticsDisabled() {
         parameters = new PushParameters(
@@ -189,6 +228,286 @@ public class PCFPushSendAnalyticsApiRequestImplTest {
         assertTrue(delayedLoop.isSuccess());
     }
 
+    @Test
+    public void testListenerExceptionIsNotReportedAsAFailure() {
+        FakeHttpURLConnection.setResponseCode(200);
+        final int[] numberOfFailures = new int[] { 0 };
+        listener = new PCFPushSendAnalyticsListener() {
+
+            @Override
+            public void onBackEndSendEventsSuccess() {
+                throw new IllegalStateException("The listener is broken");
+            }
+
+            @Override
+            public void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds) {
+                numberOfFailures[0] += 1;
+            }
+
+            @Override
+            public void onBackEndSendEventsRejected(String reason) {
+                numberOfFailures[0] += 1;
+            }
+        };
+        final PCFPushSendAnalyticsApiRequestImpl request = new PCFPushSendAnalyticsApiRequestImpl(getContext(), parameters, eventsStorage, pushRequestHeaders, networkWrapper);
+        try {
+            request.startSendEvents(listWithOneItem, listener);
+            fail("Should not have succeeded");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+        assertEquals(0, numberOfFailures[0]);
+    }
+
+    @Test
+    public void testGzipRequestBodyIsSmallerAndRoundTrips() throws Exception {
+        final long[] eventIds = saveManyEvents(50);
+        final LocalHttpServer gzipServer = new LocalHttpServer(getResponder(200, 200));
+        final LocalHttpServer plainServer = new LocalHttpServer(getResponder(200, 200));
+        try {
+            new PCFPushSendAnalyticsApiRequestImpl(getContext(), getParameters(gzipServer.getUrl()), eventsStorage, pushRequestHeaders, new NetworkWrapperImpl(), true).startSendEvents(eventIds, getLocalServerListener());
+            new PCFPushSendAnalyticsApiRequestImpl(getContext(), getParameters(plainServer.getUrl()), eventsStorage, pushRequestHeaders, new NetworkWrapperImpl(), false).startSendEvents(eventIds, getLocalServerListener());
+
+            assertEquals(1, gzipServer.getRequests().size());
+            assertEquals(1, plainServer.getRequests().size());
+            final LocalHttpServer.Request gzipRequest = gzipServer.getRequests().get(0);
+            final LocalHttpServer.Request plainRequest = plainServer.getRequests().get(0);
+            assertEquals("gzip", gzipRequest.getHeader("Content-Encoding"));
+            assertNull(plainRequest.getHeader("Content-Encoding"));
+
+            // The repeated fields make the body compress very well
+            assertTrue("gzip: " + gzipRequest.body.length + " bytes, plain: " + plainRequest.body.length + " bytes", gzipRequest.body.length * 4 < plainRequest.body.length);
+
+            final String uncompressedBody = new String(gunzip(gzipRequest.body), "UTF-8");
+            assertEquals(new String(plainRequest.body, "UTF-8"), uncompressedBody);
+            final List<AnalyticsEvent> events = new Gson().fromJson(uncompressedBody, AnalyticsEventList.class).getEvents();
+            assertEquals(50, events.size());
+            assertEquals(AnalyticsEventTest.getEvent1(), events.get(0));
+        } finally {
+            gzipServer.shutdown();
+            plainServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testFallsBackToUncompressedBodyOn415() throws Exception {
+        final LocalHttpServer server = new LocalHttpServer(getResponder(415, 200));
+        try {
+            final PCFPushSendAnalyticsApiRequestImpl request = new PCFPushSendAnalyticsApiRequestImpl(getContext(), getParameters(server.getUrl()), eventsStorage, pushRequestHeaders, new NetworkWrapperImpl(), true);
+            final boolean[] wasSuccessful = new boolean[1];
+            request.startSendEvents(listWithOneItem, new PCFPushSendAnalyticsListener() {
+                @Override
+                public void onBackEndSendEventsSuccess() {
+                    wasSuccessful[0] = true;
+                }
+
+                @Override
+                public void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds) {
+                    fail("should have succeeded: " + reason);
+                }
+
+                @Override
+                public void onBackEndSendEventsRejected(String reason) {
+                    fail("should have succeeded: " + reason);
+                }
+            });
+            assertTrue(wasSuccessful[0]);
+
+            final List<LocalHttpServer.Request> requests = server.getRequests();
+            assertEquals(2, requests.size());
+            assertEquals("gzip", requests.get(0).getHeader("Content-Encoding"));
+            assertNull(requests.get(1).getHeader("Content-Encoding"));
+
+            // The server's answer is remembered, so later requests are not compressed
+            request.copy().startSendEvents(listWithOneItem, getLocalServerListener());
+            assertEquals(3, server.getRequests().size());
+            assertNull(server.getRequests().get(2).getHeader("Content-Encoding"));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testBadRequestRejectsTheEvents() {
+        assertEquals("rejected", getFailureKind(400));
+        assertEquals("rejected", getFailureKind(413));
+        assertEquals("rejected", getFailureKind(422));
+    }
+
+    @Test
+    public void testOtherFailuresDoNotRejectTheEvents() {
+        assertEquals("failed", getFailureKind(401));
+        assertEquals("failed", getFailureKind(403));
+        assertEquals("failed", getFailureKind(404));
+        assertEquals("failed", getFailureKind(408));
+        assertEquals("failed", getFailureKind(429));
+        assertEquals("failed", getFailureKind(500));
+        assertEquals("failed", getFailureKind(503));
+    }
+
+    // Returns which listener callback a response with the given status code leads to
+    private String getFailureKind(int statusCode) {
+        FakeHttpURLConnection.setResponseCode(statusCode);
+        final PCFPushSendAnalyticsApiRequestImpl request = new PCFPushSendAnalyticsApiRequestImpl(getContext(), parameters, eventsStorage, pushRequestHeaders, networkWrapper, false);
+        final String[] kind = new String[1];
+        request.startSendEvents(listWithOneItem, new PCFPushSendAnalyticsListener() {
+            @Override
+            public void onBackEndSendEventsSuccess() {
+                kind[0] = "succeeded";
+            }
+
+            @Override
+            public void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds) {
+                kind[0] = "failed";
+            }
+
+            @Override
+            public void onBackEndSendEventsRejected(String reason) {
+                kind[0] = "rejected";
+            }
+        });
+        return kind[0];
+    }
+
+    @Test
+    public void testReadsRetryAfterHeader() {
+        assertEquals(0L, PCFPushSendAnalyticsApiRequestImpl.getRetryAfterInMilliseconds(null, 0L));
+        assertEquals(0L, PCFPushSendAnalyticsApiRequestImpl.getRetryAfterInMilliseconds("", 0L));
+        assertEquals(0L, PCFPushSendAnalyticsApiRequestImpl.getRetryAfterInMilliseconds("soon", 0L));
+        assertEquals(0L, PCFPushSendAnalyticsApiRequestImpl.getRetryAfterInMilliseconds("-5", 0L));
+        assertEquals(120000L, PCFPushSendAnalyticsApiRequestImpl.getRetryAfterInMilliseconds(" 120 ", 0L));
+
+        // Wed, 21 Oct 2015 07:28:00 GMT is 1445412480 seconds after the epoch
+        final long now = 1445412480000L - 90000L;
+        assertEquals(90000L, PCFPushSendAnalyticsApiRequestImpl.getRetryAfterInMilliseconds("Wed, 21 Oct 2015 07:28:00 GMT", now));
+        assertEquals(0L, PCFPushSendAnalyticsApiRequestImpl.getRetryAfterInMilliseconds("Wed, 21 Oct 2015 07:28:00 GMT", now + 100000L));
+    }
+
+    @Test
+    public void testPassesRetryAfterToListener() throws Exception {
+        final LocalHttpServer server = new LocalHttpServer(getResponder(503, 503));
+        server.setResponseHeader("Retry-After", "30");
+        try {
+            final PCFPushSendAnalyticsApiRequestImpl request = new PCFPushSendAnalyticsApiRequestImpl(getContext(), getParameters(server.getUrl()), eventsStorage, pushRequestHeaders, new NetworkWrapperImpl(), false);
+            final long[] retryAfter = new long[] { -1L };
+            request.startSendEvents(listWithOneItem, new PCFPushSendAnalyticsListener() {
+                @Override
+                public void onBackEndSendEventsSuccess() {
+                    fail("should have failed");
+                }
+
+                @Override
+                public void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds) {
+                    retryAfter[0] = retryAfterInMilliseconds;
+                }
+
+                @Override
+                public void onBackEndSendEventsRejected(String reason) {
+                    fail("should not have been rejected");
+                }
+            });
+            assertEquals(30000L, retryAfter[0]);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadsRetryAfterDateWithTheTimeProvider() throws Exception {
+        final LocalHttpServer server = new LocalHttpServer(getResponder(503, 503));
+        server.setResponseHeader("Retry-After", "Wed, 21 Oct 2015 07:28:00 GMT");
+        final TimeProvider timeProvider = new TimeProvider() {
+            @Override
+            public long currentTimeMillis() {
+                return 1445412480000L - 90000L;
+            }
+        };
+        try {
+            final PCFPushSendAnalyticsApiRequestImpl request = new PCFPushSendAnalyticsApiRequestImpl(getContext(), getParameters(server.getUrl()), eventsStorage, pushRequestHeaders, new NetworkWrapperImpl(), timeProvider, false);
+            final long[] retryAfter = new long[] { -1L };
+            request.startSendEvents(listWithOneItem, new PCFPushSendAnalyticsListener() {
+                @Override
+                public void onBackEndSendEventsSuccess() {
+                    fail("should have failed");
+                }
+
+                @Override
+                public void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds) {
+                    retryAfter[0] = retryAfterInMilliseconds;
+                }
+
+                @Override
+                public void onBackEndSendEventsRejected(String reason) {
+                    fail("should not have been rejected");
+                }
+            });
+            assertEquals(90000L, retryAfter[0]);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private long[] saveManyEvents(int numberOfEvents) {
+        final long[] eventIds = new long[numberOfEvents];
+        for (int i = 0; i < numberOfEvents; i += 1) {
+            eventIds[i] = ContentUris.parseId(eventsStorage.saveEvent(AnalyticsEventTest.getEvent1()));
+        }
+        return eventIds;
+    }
+
+    private PushParameters getParameters(String serviceUrl) {
+        return new PushParameters(
+                TEST_PLATFORM_UUID,
+                TEST_PLATFORM_SECRET,
+                serviceUrl,
+            "android-baidu", TEST_DEVICE_ALIAS,
+                null,
+                null,
+                true,
+                true,
+                Pivotal.SslCertValidationMode.DEFAULT,
+                null,
+                null);
+    }
+
+    private static LocalHttpServer.Responder getResponder(final int gzipStatusCode, final int plainStatusCode) {
+        return new LocalHttpServer.Responder() {
+            @Override
+            public int getStatusCode(LocalHttpServer.Request request) {
+                return "gzip".equals(request.getHeader("Content-Encoding")) ? gzipStatusCode : plainStatusCode;
+            }
+        };
+    }
+
+    private static PCFPushSendAnalyticsListener getLocalServerListener() {
+        return new PCFPushSendAnalyticsListener() {
+            @Override
+            public void onBackEndSendEventsSuccess() {
+            }
+
+            @Override
+            public void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds) {
+                fail("should have succeeded: " + reason);
+            }
+
+            @Override
+            public void onBackEndSendEventsRejected(String reason) {
+                fail("should have succeeded: " + reason);
+            }
+        };
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        final GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
     private void makeListenersFromFailedRequestFromNetwork(String exceptionText,
         int expectedHttpStatusCode) {
         IOException exception = null;
@@ -225,7 +544,16 @@ public class PCFPushSendAnalyticsApiRequestImplTest {
             }
 
             @Override
-            public void onBackEndSendEventsFailed(String reason) {
+            public void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds) {
+                onFailure();
+            }
+
+            @Override
+            public void onBackEndSendEventsRejected(String reason) {
+                onFailure();
+            }
+
+            private void onFailure() {
                 assertFalse(isSuccessfulRequest);
                 assertTrue(
                     FakeHttpURLConnection.getRequestPropertiesMap().containsKey("Authorization"));
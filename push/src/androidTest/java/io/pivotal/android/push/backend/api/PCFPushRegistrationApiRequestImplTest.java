@@ -24,6 +24,8 @@ import io.pivotal.android.push.util.ApiRequestImpl;
 import io.pivotal.android.push.util.DelayedLoop;
 import io.pivotal.android.push.util.FakeHttpURLConnection;
 import io.pivotal.android.push.util.FakeNetworkWrapper;
+import io.pivotal.android.push.util.LocalHttpServer;
+import io.pivotal.android.push.util.NetworkWrapperImpl;
 
 public class PCFPushRegistrationApiRequestImplTest extends AndroidTestCase {
 
@@ -248,6 +250,46 @@ public class PCFPushRegistrationApiRequestImplTest extends AndroidTestCase {
         assertTrue(delayedLoop.isSuccess());
     }
 
+    public void testSendsTheRequestBodyWithAFixedLength() throws Exception {
+        final LocalHttpServer server = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public int getStatusCode(LocalHttpServer.Request request) {
+                return 200;
+            }
+        });
+        server.setResponseBody("{\"device_uuid\" : \"" + TEST_PCF_PUSH_DEVICE_REGISTRATION_ID + "\"}");
+        try {
+            final String deviceAlias = "Caf\u00e9 \u2603";
+            final PushParameters parameters = new PushParameters(TEST_PLATFORM_UUID, TEST_PLATFORM_SECRET, server.getUrl(), "android-baidu",
+                    deviceAlias, TEST_CUSTOM_USER_ID, null, true, true, Pivotal.SslCertValidationMode.DEFAULT, null, null);
+            final String[] deviceUuid = new String[1];
+            final PCFPushRegistrationApiRequestImpl request = new PCFPushRegistrationApiRequestImpl(getContext(), new NetworkWrapperImpl());
+            request.startNewDeviceRegistration(TEST_FCM_TOKEN_ID, null, parameters, new PCFPushRegistrationListener() {
+
+                @Override
+                public void onPCFPushRegistrationSuccess(String result) {
+                    deviceUuid[0] = result;
+                }
+
+                @Override
+                public void onPCFPushRegistrationFailed(String reason) {
+                    fail("Registration should have succeeded: " + reason);
+                }
+            });
+
+            assertEquals(TEST_PCF_PUSH_DEVICE_REGISTRATION_ID, deviceUuid[0]);
+
+            final LocalHttpServer.Request receivedRequest = server.getRequests().get(0);
+            assertNull(receivedRequest.getHeader("Transfer-Encoding"));
+            assertEquals(String.valueOf(receivedRequest.body.length), receivedRequest.getHeader("Content-Length"));
+            final PCFPushApiRegistrationPostRequestData requestData = new Gson().fromJson(new String(receivedRequest.body, "UTF-8"), PCFPushApiRegistrationPostRequestData.class);
+            assertEquals(deviceAlias, requestData.getDeviceAlias());
+            assertEquals(TEST_FCM_TOKEN_ID, requestData.getRegistrationToken());
+        } finally {
+            server.shutdown();
+        }
+    }
+
     public void testNewDeviceRegistrationNullResponse() {
         makeListenersForSuccessfulNullResultFromNetwork(HTTP_POST, null, null, null);
         final PCFPushRegistrationApiRequestImpl request = new PCFPushRegistrationApiRequestImpl(getContext(), networkWrapper);
@@ -547,7 +589,7 @@ public class PCFPushRegistrationApiRequestImplTest extends AndroidTestCase {
         List<String> pinnedSslCertificateNames = null;
         if (sslCertValidationMode == Pivotal.SslCertValidationMode.PINNED) {
             pinnedSslCertificateNames = new LinkedList<>();
-            pinnedSslCertificateNames.add("DUMMY CERT");
+            pinnedSslCertificateNames.add("test_ca_certificate.pem");
         }
         return new PushParameters(TEST_PLATFORM_UUID, TEST_PLATFORM_SECRET, TEST_SERVICE_URL, "android-baidu",
             TEST_DEVICE_ALIAS, TEST_CUSTOM_USER_ID, null, true, true, sslCertValidationMode, pinnedSslCertificateNames, null);
@@ -0,0 +1,242 @@
+package io.pivotal.android.push.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.test.AndroidTestCase;
+import android.test.MoreAsserts;
+import android.test.RenamingDelegatingContext;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.model.analytics.DummyEvent;
+import io.pivotal.android.push.util.Logger;
+
+public class AnalyticsEventStatementsTest extends AndroidTestCase {
+
+    private static final String TEST_DEVICE_UUID_1 = "TEST-DEVICE-UUID-1";
+    private static final int BENCHMARK_EVENT_COUNT = 500;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DatabaseWrapper.createDatabaseInstance(getContext());
+        DatabaseWrapper.delete(Database.EVENTS_CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        DatabaseWrapper.delete(Database.EVENTS_CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testInsertEvent() {
+        final AnalyticsEvent event = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        event.setReceiptId("RECEIPT-ID");
+        final Uri uri = DatabaseWrapper.insertEvent(event);
+        assertNotNull(uri);
+        assertEquals(event, readEvent(uri));
+    }
+
+    public void testInsertEventWithNullFields() {
+        final AnalyticsEvent event = new AnalyticsEvent();
+        event.setEventType(DummyEvent.EVENT_TYPE);
+        final Uri uri = DatabaseWrapper.insertEvent(event);
+        assertNotNull(uri);
+        assertEquals(event, readEvent(uri));
+    }
+
+    public void testInsertMatchesContentValuesInsert() {
+        final AnalyticsEvent event = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        final Uri uri1 = DatabaseWrapper.insertEvent(event);
+        final Uri uri2 = DatabaseWrapper.insert(Database.EVENTS_CONTENT_URI, event.getContentValues(Database.DATABASE_VERSION));
+        assertEquals(readEvent(uri2), readEvent(uri1));
+    }
+
+    public void testEventsWithTheSameAttributesShareOneAttributesRow() {
+        final int numberOfAttributes = DatabaseWrapper.getNumberOfRowsInTable(Database.EVENT_ATTRIBUTES_TABLE_NAME);
+        final AnalyticsEvent event1 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        final AnalyticsEvent event2 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        event2.setPlatformUuid(event1.getPlatformUuid());
+        final Uri uri1 = DatabaseWrapper.insertEvent(event1);
+        final Uri uri2 = DatabaseWrapper.insertEvent(event2);
+        final Uri uri3 = DatabaseWrapper.insert(Database.EVENTS_CONTENT_URI, event1.getContentValues(Database.DATABASE_VERSION));
+        assertEquals(numberOfAttributes + 1, DatabaseWrapper.getNumberOfRowsInTable(Database.EVENT_ATTRIBUTES_TABLE_NAME));
+        assertEquals(event1, readEvent(uri1));
+        assertEquals(event2, readEvent(uri2));
+        assertEquals(event1, readEvent(uri3));
+    }
+
+    public void testAttributesFromARolledBackTransactionAreNotCached() {
+        final Context context = new RenamingDelegatingContext(getContext(), "test_statements_rollback_");
+        context.deleteDatabase(Database.DATABASE_FILENAME);
+        final SQLiteDatabase database = new Database(context, null, Database.DATABASE_VERSION).getWritableDatabase();
+        final AnalyticsEventStatements statements = new AnalyticsEventStatements(database);
+        try {
+            assertTrue(statements.transactionStarted());
+            database.beginTransaction();
+            statements.getAttributesId("DEVICE-UUID", "SDK-VERSION", "PLATFORM-TYPE", "PLATFORM-UUID");
+            database.endTransaction(); // rolled back
+            statements.transactionEnded(false);
+
+            final long id = statements.getAttributesId("DEVICE-UUID", "SDK-VERSION", "PLATFORM-TYPE", "PLATFORM-UUID");
+            assertEquals(1, DatabaseUtils.queryNumEntries(database, Database.EVENT_ATTRIBUTES_TABLE_NAME, BaseColumns._ID + " = " + id));
+        } finally {
+            statements.close();
+            database.close();
+            context.deleteDatabase(Database.DATABASE_FILENAME);
+        }
+    }
+
+    public void testAttributesFromACommittedTransactionAreCached() {
+        final Context context = new RenamingDelegatingContext(getContext(), "test_statements_commit_");
+        context.deleteDatabase(Database.DATABASE_FILENAME);
+        final SQLiteDatabase database = new Database(context, null, Database.DATABASE_VERSION).getWritableDatabase();
+        final AnalyticsEventStatements statements = new AnalyticsEventStatements(database);
+        try {
+            assertTrue(statements.transactionStarted());
+            assertFalse(statements.transactionStarted()); // nested
+            database.beginTransaction();
+            final long id1 = statements.getAttributesId("DEVICE-UUID", "SDK-VERSION", "PLATFORM-TYPE", "PLATFORM-UUID");
+            database.setTransactionSuccessful();
+            database.endTransaction();
+            statements.transactionEnded(true);
+
+            database.delete(Database.EVENT_ATTRIBUTES_TABLE_NAME, null, null); // only the cache knows the key now
+            assertEquals(id1, statements.getAttributesId("DEVICE-UUID", "SDK-VERSION", "PLATFORM-TYPE", "PLATFORM-UUID"));
+        } finally {
+            statements.close();
+            database.close();
+            context.deleteDatabase(Database.DATABASE_FILENAME);
+        }
+    }
+
+    public void testCachedAttributesCanBeReadWhileAnotherThreadWaitsForTheDatabase() throws Exception {
+        final Context context = new RenamingDelegatingContext(getContext(), "test_statements_lock_");
+        context.deleteDatabase(Database.DATABASE_FILENAME);
+        final SQLiteDatabase database = new Database(context, null, Database.DATABASE_VERSION).getWritableDatabase();
+        final AnalyticsEventStatements statements = new AnalyticsEventStatements(database);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final long cachedId = statements.getAttributesId("DEVICE-UUID-1", "SDK-VERSION", "PLATFORM-TYPE", "PLATFORM-UUID");
+            final CountDownLatch transactionStarted = new CountDownLatch(1);
+            final CountDownLatch writerStarted = new CountDownLatch(1);
+
+            // Holds the database lock while the writer waits for it, then reads the cached attributes
+            final Future<Long> reader = executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    database.beginTransaction();
+                    try {
+                        transactionStarted.countDown();
+                        writerStarted.await();
+                        Thread.sleep(200);
+                        return statements.getAttributesId("DEVICE-UUID-1", "SDK-VERSION", "PLATFORM-TYPE", "PLATFORM-UUID");
+                    } finally {
+                        database.endTransaction();
+                    }
+                }
+            });
+            assertTrue(transactionStarted.await(5, TimeUnit.SECONDS));
+            final Future<Long> writer = executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    writerStarted.countDown();
+                    return statements.getAttributesId("DEVICE-UUID-2", "SDK-VERSION", "PLATFORM-TYPE", "PLATFORM-UUID");
+                }
+            });
+
+            assertEquals(cachedId, (long) reader.get(5, TimeUnit.SECONDS));
+            MoreAsserts.assertNotEqual(cachedId, writer.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+            statements.close();
+            database.close();
+            context.deleteDatabase(Database.DATABASE_FILENAME);
+        }
+    }
+
+    public void testUpdateEventStatus() {
+        final Uri uri = DatabaseWrapper.insertEvent(DummyEvent.getEvent(TEST_DEVICE_UUID_1));
+        assertEquals(1, DatabaseWrapper.updateEventStatus(uri, AnalyticsEvent.Status.POSTED));
+        assertEquals(AnalyticsEvent.Status.POSTED, readEvent(uri).getStatus());
+    }
+
+    public void testUpdateStatusOfMissingEvent() {
+        final Uri uri = Uri.withAppendedPath(Database.EVENTS_CONTENT_URI, "999999");
+        assertEquals(0, DatabaseWrapper.updateEventStatus(uri, AnalyticsEvent.Status.POSTED));
+    }
+
+    public void testDeleteEvents() {
+        final Uri uri1 = DatabaseWrapper.insertEvent(DummyEvent.getEvent(TEST_DEVICE_UUID_1));
+        final Uri uri2 = DatabaseWrapper.insertEvent(DummyEvent.getEvent(TEST_DEVICE_UUID_1));
+        final Uri uri3 = DatabaseWrapper.insertEvent(DummyEvent.getEvent(TEST_DEVICE_UUID_1));
+        final List<Uri> uris = new LinkedList<>();
+        uris.add(uri1);
+        uris.add(uri3);
+        DatabaseWrapper.deleteEvents(uris);
+        assertEquals(1, DatabaseWrapper.getNumberOfRowsInTable(Database.EVENTS_TABLE_NAME));
+        assertNotNull(readEvent(uri2));
+    }
+
+    // Compares the insert throughput of ContentValues with the compiled insert statement. The
+    // results are written to the log since they depend on the device.
+    public void testInsertThroughput() {
+        final List<AnalyticsEvent> events = new LinkedList<>();
+        for (int i = 0; i < BENCHMARK_EVENT_COUNT; i += 1) {
+            events.add(DummyEvent.getEvent(TEST_DEVICE_UUID_1));
+        }
+
+        final long contentValuesStart = System.nanoTime();
+        for (final AnalyticsEvent event : events) {
+            assertNotNull(DatabaseWrapper.insert(Database.EVENTS_CONTENT_URI, event.getContentValues(Database.DATABASE_VERSION)));
+        }
+        final long contentValuesNanos = System.nanoTime() - contentValuesStart;
+
+        DatabaseWrapper.delete(Database.EVENTS_CONTENT_URI, null, null);
+
+        final long compiledStart = System.nanoTime();
+        for (final AnalyticsEvent event : events) {
+            assertNotNull(DatabaseWrapper.insertEvent(event));
+        }
+        final long compiledNanos = System.nanoTime() - compiledStart;
+
+        assertEquals(BENCHMARK_EVENT_COUNT, DatabaseWrapper.getNumberOfRowsInTable(Database.EVENTS_TABLE_NAME));
+        Logger.i(String.format("Insert throughput for %d events: ContentValues %.0f events/s, compiled statement %.0f events/s",
+                BENCHMARK_EVENT_COUNT,
+                eventsPerSecond(contentValuesNanos),
+                eventsPerSecond(compiledNanos)));
+
+        // The compiled statement skips building the ContentValues and compiling the SQL for every event
+        assertTrue(compiledNanos < contentValuesNanos);
+    }
+
+    private static double eventsPerSecond(long nanos) {
+        return BENCHMARK_EVENT_COUNT * 1e9 / Math.max(nanos, 1L);
+    }
+
+    private static AnalyticsEvent readEvent(Uri uri) {
+        Cursor cursor = null;
+        try {
+            cursor = DatabaseWrapper.query(uri, null, null, null, null);
+            assertNotNull(cursor);
+            assertTrue(cursor.moveToFirst());
+            return new AnalyticsEvent(cursor);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package io.pivotal.android.push.database;
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.test.AndroidTestCase;
+import android.test.MoreAsserts;
 
 import junit.framework.Assert;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
+import io.pivotal.android.push.analytics.AnalyticsEventLogger;
 import io.pivotal.android.push.model.analytics.DummyEvent;
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 
@@ -63,6 +67,29 @@ public class DatabaseAnalyticsEventsStorageTest extends AndroidTestCase {
         assertEquals(EVENT_1, fileContents);
     }
 
+    public void testReadEvents() throws IOException {
+        final Uri uri1 = storage.saveEvent(EVENT_1);
+        storage.saveEvent(EVENT_2);
+        final Uri uri3 = storage.saveEvent(EVENT_3);
+        final List<Uri> uris = new LinkedList<Uri>();
+        uris.add(uri3);
+        uris.add(uri1);
+        uris.add(NON_EXISTENT_FILE_1);
+
+        final List<AnalyticsEvent> events = new LinkedList<AnalyticsEvent>();
+        storage.readEvents(uris, new AnalyticsEventsStorage.EventCallback() {
+
+            @Override
+            public void onEvent(AnalyticsEvent event) {
+                events.add(event);
+            }
+        });
+
+        assertEquals(2, events.size());
+        assertEquals(EVENT_1, events.get(0));
+        assertEquals(EVENT_3, events.get(1));
+    }
+
     public void testReadNonExistentFile() {
         boolean exceptionThrown = false;
         try {
@@ -145,6 +172,168 @@ public class DatabaseAnalyticsEventsStorageTest extends AndroidTestCase {
         Assert.assertEquals(AnalyticsEvent.Status.POSTED, storage.readEvent(uri1).getStatus());
     }
 
+    public void testSetStatusForMultipleEvents() {
+
+        final Uri uri1 = storage.saveEvent(EVENT_1);
+        final Uri uri2 = storage.saveEvent(EVENT_2);
+        final Uri uri3 = storage.saveEvent(EVENT_3);
+        final List<Uri> uris = new LinkedList<Uri>();
+        uris.add(uri1);
+        uris.add(uri3);
+
+        storage.setEventStatus(uris, AnalyticsEvent.Status.POSTING);
+        Assert.assertEquals(AnalyticsEvent.Status.POSTING, storage.readEvent(uri1).getStatus());
+        Assert.assertEquals(AnalyticsEvent.Status.NOT_POSTED, storage.readEvent(uri2).getStatus());
+        Assert.assertEquals(AnalyticsEvent.Status.POSTING, storage.readEvent(uri3).getStatus());
+    }
+
+    public void testSetStatusForManyEvents() {
+
+        final List<Uri> uris = new LinkedList<Uri>();
+        for (int i = 0; i < 1200; i += 1) {
+            uris.add(storage.saveEvent(EVENT_1));
+        }
+
+        storage.setEventStatus(uris, AnalyticsEvent.Status.POSTING_ERROR);
+        Assert.assertEquals(1200, storage.getEventUrisWithStatus(AnalyticsEvent.Status.POSTING_ERROR).size());
+        Assert.assertEquals(0, storage.getEventUrisWithStatus(AnalyticsEvent.Status.NOT_POSTED).size());
+    }
+
+    public void testSetStatusWhere() {
+
+        EVENT_1.setStatus(AnalyticsEvent.Status.POSTING);
+        EVENT_3.setStatus(AnalyticsEvent.Status.POSTING);
+        final Uri uri1 = storage.saveEvent(EVENT_1);
+        final Uri uri2 = storage.saveEvent(EVENT_2);
+        final Uri uri3 = storage.saveEvent(EVENT_3);
+
+        Assert.assertEquals(2, storage.setStatusWhere(AnalyticsEvent.Status.POSTING, AnalyticsEvent.Status.NOT_POSTED));
+        Assert.assertEquals(AnalyticsEvent.Status.NOT_POSTED, storage.readEvent(uri1).getStatus());
+        Assert.assertEquals(AnalyticsEvent.Status.NOT_POSTED, storage.readEvent(uri2).getStatus());
+        Assert.assertEquals(AnalyticsEvent.Status.NOT_POSTED, storage.readEvent(uri3).getStatus());
+
+        Assert.assertEquals(0, storage.setStatusWhere(AnalyticsEvent.Status.POSTING, AnalyticsEvent.Status.NOT_POSTED));
+    }
+
+    public void testSaveEvents() {
+        final List<AnalyticsEvent> events = new LinkedList<>();
+        events.add(EVENT_1);
+        events.add(EVENT_2);
+        events.add(EVENT_3);
+        final List<Uri> uris = storage.saveEvents(events);
+        assertNotNull(uris);
+        Assert.assertEquals(3, uris.size());
+        Assert.assertEquals(3, storage.getNumberOfEvents());
+        Assert.assertEquals(EVENT_1, storage.readEvent(uris.get(0)));
+        Assert.assertEquals(EVENT_2, storage.readEvent(uris.get(1)));
+        Assert.assertEquals(EVENT_3, storage.readEvent(uris.get(2)));
+    }
+
+    public void testDuplicateEventIsSuppressed() {
+        final AnalyticsEvent opened = getOpenedEvent("RECEIPT-ID-1");
+        final long numberOfSuppressedDuplicates = storage.getNumberOfSuppressedDuplicates();
+
+        final Uri uri1 = storage.saveEvent(opened);
+        final Uri uri2 = storage.saveEvent(new AnalyticsEvent(opened));
+        assertNotNull(uri1);
+        assertEquals(uri1, uri2);
+        assertEquals(1, storage.getNumberOfEvents());
+        assertEquals(numberOfSuppressedDuplicates + 1, storage.getNumberOfSuppressedDuplicates());
+
+        // The duplicate is not counted, so the counts do not have to be read from the database again
+        assertFalse(AnalyticsEventCounts.isStale());
+        assertEquals(1, storage.countByStatus(opened.getStatus()));
+
+        final Uri uri3 = storage.saveEvent(getOpenedEvent("RECEIPT-ID-2"));
+        MoreAsserts.assertNotEqual(uri1, uri3);
+        assertEquals(2, storage.getNumberOfEvents());
+    }
+
+    public void testDuplicateEventsInOneBatchAreSuppressed() {
+        final AnalyticsEvent opened = getOpenedEvent("RECEIPT-ID-1");
+        final List<AnalyticsEvent> events = new LinkedList<>();
+        events.add(opened);
+        events.add(EVENT_1);
+        events.add(new AnalyticsEvent(opened));
+        events.add(new AnalyticsEvent(EVENT_1));
+
+        final List<Uri> uris = storage.saveEvents(events);
+        assertEquals(4, uris.size());
+        assertEquals(uris.get(0), uris.get(2));
+        MoreAsserts.assertNotEqual(uris.get(1), uris.get(3)); // events without a receipt ID are not deduplicated
+        assertEquals(3, storage.getNumberOfEvents());
+        assertEquals(3, storage.getEventUris().size());
+        assertFalse(AnalyticsEventCounts.isStale());
+    }
+
+    private static AnalyticsEvent getOpenedEvent(String receiptId) {
+        final AnalyticsEvent event = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        event.setEventType(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_OPENED);
+        event.setReceiptId(receiptId);
+        return event;
+    }
+
+    public void testCountByStatus() {
+        EVENT_1.setStatus(AnalyticsEvent.Status.POSTING);
+        EVENT_3.setStatus(AnalyticsEvent.Status.POSTING_ERROR);
+        final Uri uri1 = storage.saveEvent(EVENT_1);
+        final Uri uri2 = storage.saveEvent(EVENT_2);
+        storage.saveEvent(EVENT_3);
+
+        assertCounts(1, 1, 0, 1);
+
+        storage.setStatusWhere(AnalyticsEvent.Status.POSTING, AnalyticsEvent.Status.NOT_POSTED);
+        assertCounts(2, 0, 0, 1);
+
+        final List<Uri> uris = new LinkedList<>();
+        uris.add(uri1);
+        uris.add(uri2);
+        storage.setEventStatus(uris, AnalyticsEvent.Status.POSTED);
+        assertCounts(0, 0, 2, 1);
+
+        storage.deleteEvents(uris);
+        assertCounts(0, 0, 0, 1);
+        Assert.assertEquals(1, storage.getNumberOfEvents());
+
+        storage.reset();
+        assertCounts(0, 0, 0, 0);
+    }
+
+    public void testCountsAreReconciledWithDatabase() {
+        storage.saveEvent(EVENT_1);
+        DatabaseWrapper.insert(Database.EVENTS_CONTENT_URI, EVENT_2.getContentValues(Database.DATABASE_VERSION)); // bypasses the counts
+
+        DatabaseWrapper.removeDatabaseInstance();
+        DatabaseWrapper.createDatabaseInstance(getContext());
+
+        Assert.assertEquals(2, storage.getNumberOfEvents());
+        Assert.assertEquals(2, storage.countByStatus(AnalyticsEvent.Status.NOT_POSTED));
+    }
+
+    public void testBulkChangesUpdateTheCountsInMemory() {
+        final long id1 = ContentUris.parseId(storage.saveEvent(EVENT_1));
+        final long id2 = ContentUris.parseId(storage.saveEvent(EVENT_2));
+        DatabaseWrapper.insert(Database.EVENTS_CONTENT_URI, EVENT_3.getContentValues(Database.DATABASE_VERSION)); // bypasses the counts
+
+        // The counts would include the third event if they had been read from the database again
+        storage.setEventStatus(new long[] { id1, id2 }, AnalyticsEvent.Status.POSTING);
+        assertCounts(0, 2, 0, 0);
+
+        storage.setEventStatus(ContentUris.withAppendedId(Database.EVENTS_CONTENT_URI, id2), AnalyticsEvent.Status.POSTING_ERROR);
+        assertCounts(0, 1, 0, 1);
+
+        storage.deleteEvents(new long[] { id1, id2 });
+        assertCounts(0, 0, 0, 0);
+    }
+
+    private void assertCounts(int notPosted, int posting, int posted, int postingError) {
+        Assert.assertEquals(notPosted, storage.countByStatus(AnalyticsEvent.Status.NOT_POSTED));
+        Assert.assertEquals(posting, storage.countByStatus(AnalyticsEvent.Status.POSTING));
+        Assert.assertEquals(posted, storage.countByStatus(AnalyticsEvent.Status.POSTED));
+        Assert.assertEquals(postingError, storage.countByStatus(AnalyticsEvent.Status.POSTING_ERROR));
+        Assert.assertEquals(notPosted + posting + posted + postingError, storage.getNumberOfEvents());
+    }
+
     public void testGetMessageReceiptEventUrisWithStatus() {
         EVENT_1.setStatus(AnalyticsEvent.Status.POSTED);
         EVENT_2.setStatus(AnalyticsEvent.Status.POSTING_ERROR);
@@ -182,4 +371,95 @@ public class DatabaseAnalyticsEventsStorageTest extends AndroidTestCase {
         assertEquals(1, uris3.size());
         assertEquals(uri2, uris3.get(0));
     }
+
+    public void testGetEventIdsPage() {
+        final int[] statuses = new int[] { AnalyticsEvent.Status.NOT_POSTED, AnalyticsEvent.Status.POSTING_ERROR };
+        EVENT_2.setStatus(AnalyticsEvent.Status.POSTING);
+        EVENT_3.setStatus(AnalyticsEvent.Status.POSTING_ERROR);
+        final long id1 = ContentUris.parseId(storage.saveEvent(EVENT_1));
+        storage.saveEvent(EVENT_2);
+        final long id3 = ContentUris.parseId(storage.saveEvent(EVENT_3));
+        final long id4 = ContentUris.parseId(storage.saveEvent(EVENT_1));
+
+        final long[] page1 = storage.getEventIdsPage(statuses, 0, 2, Long.MAX_VALUE);
+        assertEquals(2, page1.length);
+        assertEquals(id1, page1[0]);
+        assertEquals(id3, page1[1]);
+
+        final long[] page2 = storage.getEventIdsPage(statuses, id3, 2, Long.MAX_VALUE);
+        assertEquals(1, page2.length);
+        assertEquals(id4, page2[0]);
+
+        assertEquals(0, storage.getEventIdsPage(statuses, id4, 2, Long.MAX_VALUE).length);
+    }
+
+    public void testGetEventIdsPageIsLimitedByBytes() {
+        final int[] statuses = new int[] { AnalyticsEvent.Status.NOT_POSTED };
+        final long id1 = ContentUris.parseId(storage.saveEvent(EVENT_1));
+        storage.saveEvent(EVENT_2);
+
+        // The first event is always returned, even when it is larger than the limit
+        final long[] page = storage.getEventIdsPage(statuses, 0, 10, 1);
+        assertEquals(1, page.length);
+        assertEquals(id1, page[0]);
+
+        assertEquals(2, storage.getEventIdsPage(statuses, 0, 10, 100000).length);
+    }
+
+    public void testEventIdOperations() throws IOException {
+        final long id1 = ContentUris.parseId(storage.saveEvent(EVENT_1));
+        final long id2 = ContentUris.parseId(storage.saveEvent(EVENT_2));
+        final long id3 = ContentUris.parseId(storage.saveEvent(EVENT_3));
+
+        storage.setEventStatus(new long[] { id1, id3 }, AnalyticsEvent.Status.POSTING);
+        final long[] posting = storage.getEventIdsWithStatus(AnalyticsEvent.Status.POSTING);
+        assertEquals(2, posting.length);
+        assertEquals(id1, posting[0]);
+        assertEquals(id3, posting[1]);
+
+        final List<AnalyticsEvent> events = new LinkedList<>();
+        storage.readEvents(posting, new AnalyticsEventsStorage.EventCallback() {
+            @Override
+            public void onEvent(AnalyticsEvent event) {
+                events.add(event);
+            }
+        });
+        assertEquals(2, events.size());
+        assertEquals(TEST_DEVICE_UUID_1, events.get(0).getDeviceUuid());
+        assertEquals(TEST_DEVICE_UUID_3, events.get(1).getDeviceUuid());
+
+        storage.deleteEvents(posting);
+        assertEquals(1, storage.getNumberOfEvents());
+        assertEquals(id2, storage.getEventIdsWithStatus(AnalyticsEvent.Status.NOT_POSTED)[0]);
+    }
+
+    public void testReadManyEvents() throws IOException {
+        final long[] ids = new long[1200];
+        for (int i = 0; i < ids.length; i += 1) {
+            ids[ids.length - 1 - i] = ContentUris.parseId(storage.saveEvent(DummyEvent.getEvent("TEST-DEVICE-UUID-" + i)));
+        }
+
+        final List<AnalyticsEvent> events = new LinkedList<>();
+        storage.readEvents(ids, new AnalyticsEventsStorage.EventCallback() {
+            @Override
+            public void onEvent(AnalyticsEvent event) {
+                events.add(event);
+            }
+        });
+        assertEquals(1200, events.size());
+        assertEquals("TEST-DEVICE-UUID-0", events.get(0).getDeviceUuid());
+        assertEquals("TEST-DEVICE-UUID-1199", events.get(1199).getDeviceUuid());
+    }
+
+    public void testIncrementRejectedAttempts() {
+        final long id1 = ContentUris.parseId(storage.saveEvent(EVENT_1));
+        final long id2 = ContentUris.parseId(storage.saveEvent(EVENT_2));
+
+        assertEquals(1, storage.incrementRejectedAttempts(id1));
+        assertEquals(2, storage.incrementRejectedAttempts(id1));
+        assertEquals(1, storage.incrementRejectedAttempts(id2));
+
+        storage.deleteEvents(new long[] { id1 });
+        assertEquals(-1, storage.incrementRejectedAttempts(id1));
+    }
 }
@@ -0,0 +1,179 @@
+package io.pivotal.android.push.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.model.analytics.DummyEvent;
+import io.pivotal.android.push.util.Logger;
+
+public class DatabaseSettingsTest extends AndroidTestCase {
+
+    private static final String TEST_DEVICE_UUID_1 = "TEST-DEVICE-UUID-1";
+    private static final int BENCHMARK_EVENT_COUNT = 300;
+
+    public void testDefaultSettings() {
+        final DatabaseSettings settings = DatabaseSettings.getDefaultSettings();
+        assertFalse(settings.isWriteAheadLoggingEnabled());
+        assertNull(settings.getSynchronous());
+        assertTrue(settings.getWalAutoCheckpoint() < 0);
+    }
+
+    public void testNullMetaData() {
+        final DatabaseSettings settings = DatabaseSettings.fromMetaData(null);
+        assertFalse(settings.isWriteAheadLoggingEnabled());
+        assertNull(settings.getSynchronous());
+    }
+
+    public void testReadsMetaData() {
+        final Bundle metaData = new Bundle();
+        metaData.putBoolean(DatabaseSettings.WRITE_AHEAD_LOGGING_META_DATA, true);
+        metaData.putString(DatabaseSettings.SYNCHRONOUS_META_DATA, "normal");
+        metaData.putInt(DatabaseSettings.WAL_AUTO_CHECKPOINT_META_DATA, 0);
+
+        final DatabaseSettings settings = DatabaseSettings.fromMetaData(metaData);
+        assertTrue(settings.isWriteAheadLoggingEnabled());
+        assertEquals(DatabaseSettings.SYNCHRONOUS_NORMAL, settings.getSynchronous());
+        assertEquals(DatabaseSettings.MAX_WAL_AUTO_CHECKPOINT, settings.getWalAutoCheckpoint());
+    }
+
+    public void testWalAutoCheckpointIsBounded() {
+        assertEquals(DatabaseSettings.MAX_WAL_AUTO_CHECKPOINT, new DatabaseSettings(true, null, 0).getWalAutoCheckpoint());
+        assertEquals(DatabaseSettings.MAX_WAL_AUTO_CHECKPOINT, new DatabaseSettings(true, null, 100000).getWalAutoCheckpoint());
+        assertEquals(100, new DatabaseSettings(true, null, 100).getWalAutoCheckpoint());
+    }
+
+    public void testInvalidSynchronousLevel() {
+        try {
+            new DatabaseSettings(true, "SOMETIMES", 0);
+            fail("should not have succeeded");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+
+    public void testDefaultSettingsUseRollbackJournal() {
+        final Context context = new RenamingDelegatingContext(getContext(), "test_settings_default_");
+        final SQLiteDatabase database = openDatabase(context, DatabaseSettings.getDefaultSettings());
+        try {
+            assertFalse("wal".equalsIgnoreCase(DatabaseUtils.stringForQuery(database, "PRAGMA journal_mode;", null)));
+        } finally {
+            closeDatabase(context, database);
+        }
+    }
+
+    public void testApplyWriteAheadLogging() {
+        final Context context = new RenamingDelegatingContext(getContext(), "test_settings_wal_");
+        final SQLiteDatabase database = openDatabase(context, new DatabaseSettings(true, DatabaseSettings.SYNCHRONOUS_NORMAL, 100));
+        try {
+            assertEquals("wal", DatabaseUtils.stringForQuery(database, "PRAGMA journal_mode;", null).toLowerCase());
+            assertEquals(1, DatabaseUtils.longForQuery(database, "PRAGMA synchronous;", null)); // 1 is NORMAL
+            assertEquals(100, DatabaseUtils.longForQuery(database, "PRAGMA wal_autocheckpoint;", null));
+        } finally {
+            closeDatabase(context, database);
+        }
+    }
+
+    // Measures the enqueue latency of a writer and the read latency of a reader that run at the same time,
+    // with and without write-ahead logging.  The results are written to the log since they depend on the device.
+    public void testConcurrentLatency() throws Exception {
+        final Latency rollback = measureConcurrentLatency("test_settings_rollback_", DatabaseSettings.getDefaultSettings());
+        final Latency wal = measureConcurrentLatency("test_settings_wal_benchmark_", new DatabaseSettings(true, DatabaseSettings.SYNCHRONOUS_NORMAL, 1000));
+        Logger.i("Concurrent database latency with rollback journal: " + rollback);
+        Logger.i("Concurrent database latency with write-ahead logging: " + wal);
+
+        // A commit in WAL mode with synchronous=NORMAL does not wait for the disk to sync
+        assertTrue(wal.meanWriteNanos < rollback.meanWriteNanos);
+    }
+
+    private static class Latency {
+        final double meanWriteNanos;
+        final double meanReadNanos;
+        final long numberOfReads;
+
+        Latency(double meanWriteNanos, double meanReadNanos, long numberOfReads) {
+            this.meanWriteNanos = meanWriteNanos;
+            this.meanReadNanos = meanReadNanos;
+            this.numberOfReads = numberOfReads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mean enqueue %.3f ms, mean read %.3f ms over %d reads", meanWriteNanos / 1e6, meanReadNanos / 1e6, numberOfReads);
+        }
+    }
+
+    private Latency measureConcurrentLatency(String prefix, DatabaseSettings settings) throws Exception {
+        final Context context = new RenamingDelegatingContext(getContext(), prefix);
+        final SQLiteDatabase database = openDatabase(context, settings);
+        try {
+            final AtomicBoolean isWriting = new AtomicBoolean(true);
+            final AtomicLong readNanos = new AtomicLong();
+            final AtomicLong numberOfReads = new AtomicLong();
+            final CountDownLatch readerFinished = new CountDownLatch(1);
+
+            final Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (isWriting.get()) {
+                            final long start = System.nanoTime();
+                            final Cursor cursor = database.query(Database.EVENTS_VIEW_NAME, null, AnalyticsEvent.Columns.STATUS + " = ?", new String[] { String.valueOf(AnalyticsEvent.Status.NOT_POSTED) }, null, null, null);
+                            try {
+                                while (cursor.moveToNext()) {
+                                    new AnalyticsEvent(cursor);
+                                }
+                            } finally {
+                                cursor.close();
+                            }
+                            readNanos.addAndGet(System.nanoTime() - start);
+                            numberOfReads.incrementAndGet();
+                        }
+                    } finally {
+                        readerFinished.countDown();
+                    }
+                }
+            });
+            reader.start();
+
+            final AnalyticsEventStatements statements = new AnalyticsEventStatements(database);
+            long writeNanos = 0;
+            for (int i = 0; i < BENCHMARK_EVENT_COUNT; i += 1) {
+                final long start = System.nanoTime();
+                statements.insert(DummyEvent.getEvent(TEST_DEVICE_UUID_1));
+                writeNanos += System.nanoTime() - start;
+            }
+            isWriting.set(false);
+            readerFinished.await();
+            statements.close();
+
+            final long reads = Math.max(numberOfReads.get(), 1L);
+            return new Latency((double) writeNanos / BENCHMARK_EVENT_COUNT, (double) readNanos.get() / reads, numberOfReads.get());
+        } finally {
+            closeDatabase(context, database);
+        }
+    }
+
+    private static SQLiteDatabase openDatabase(Context context, DatabaseSettings settings) {
+        context.deleteDatabase(Database.DATABASE_FILENAME);
+        final Database helper = new Database(context, null, Database.DATABASE_VERSION);
+        final SQLiteDatabase database = helper.getWritableDatabase();
+        assertNotNull(database);
+        settings.apply(database);
+        return database;
+    }
+
+    private static void closeDatabase(Context context, SQLiteDatabase database) {
+        database.close();
+        context.deleteDatabase(Database.DATABASE_FILENAME);
+    }
+}
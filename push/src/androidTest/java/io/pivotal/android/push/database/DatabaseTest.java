@@ -1,5 +1,6 @@
 package io.pivotal.android.push.database;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -7,6 +8,7 @@ import android.test.AndroidTestCase;
 import android.test.MoreAsserts;
 import android.test.RenamingDelegatingContext;
 
+import io.pivotal.android.push.analytics.AnalyticsEventLogger;
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 import io.pivotal.android.push.model.analytics.DummyEvent;
 
@@ -23,6 +25,7 @@ public class DatabaseTest extends AndroidTestCase {
     protected void setUp() throws Exception {
         super.setUp();
         context = new RenamingDelegatingContext(getContext(), TEST_FILE_PREFIX);
+        context.deleteDatabase(Database.DATABASE_FILENAME);
     }
 
     public void testDatabaseSettings() {
@@ -48,7 +51,7 @@ public class DatabaseTest extends AndroidTestCase {
     public void testInsertOneRow() {
         database = getWritableDatabase(Database.DATABASE_VERSION);
         final AnalyticsEvent event = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
-        long rowId = database.insert(TABLE_NAME, null, event.getContentValues(Database.DATABASE_VERSION));
+        long rowId = insertEvent(event);
         MoreAsserts.assertNotEqual(-1, rowId);
         assertTableRowCount(1, TABLE_NAME);
     }
@@ -57,16 +60,40 @@ public class DatabaseTest extends AndroidTestCase {
         database = getWritableDatabase(Database.DATABASE_VERSION);
 
         final AnalyticsEvent event1 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
-        long rowId1 = database.insert(TABLE_NAME, null, event1.getContentValues(Database.DATABASE_VERSION));
+        long rowId1 = insertEvent(event1);
         MoreAsserts.assertNotEqual(-1, rowId1);
 
         final AnalyticsEvent event2 = DummyEvent.getEvent(TEST_DEVICE_UUID_2);
-        long rowId2 = database.insert(TABLE_NAME, null, event2.getContentValues(Database.DATABASE_VERSION));
+        long rowId2 = insertEvent(event2);
         MoreAsserts.assertNotEqual(-1, rowId2);
 
         assertTableRowCount(2, TABLE_NAME);
     }
 
+    public void testEventsWithTheSameAttributesShareOneAttributesRow() {
+        database = getWritableDatabase(Database.DATABASE_VERSION);
+
+        final AnalyticsEvent event1 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        final AnalyticsEvent event2 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        event2.setPlatformUuid(event1.getPlatformUuid());
+        final AnalyticsEvent event3 = DummyEvent.getEvent(TEST_DEVICE_UUID_2);
+        event3.setPlatformUuid(null);
+        final AnalyticsEvent event4 = DummyEvent.getEvent(TEST_DEVICE_UUID_2);
+        event4.setPlatformUuid(null);
+
+        final long rowId1 = insertEvent(event1);
+        final long rowId2 = insertEvent(event2);
+        final long rowId3 = insertEvent(event3);
+        final long rowId4 = insertEvent(event4);
+
+        assertTableRowCount(4, TABLE_NAME);
+        assertTableRowCount(2, Database.EVENT_ATTRIBUTES_TABLE_NAME);
+        assertEventFromView(rowId1, event1);
+        assertEventFromView(rowId2, event2);
+        assertEventFromView(rowId3, event3);
+        assertEventFromView(rowId4, event4);
+    }
+
     public void testMigrateFromVersion1ToVersion2() {
 
         database = getWritableDatabase(1);
@@ -148,6 +175,314 @@ public class DatabaseTest extends AndroidTestCase {
         assertTableRowCount(1, TABLE_NAME);  // Assert that the database did not drop the row added above
     }
 
+    public void testMigrateFromVersion3ToVersion4() {
+
+        database = getWritableDatabase(3);
+        assertEquals(3, database.getVersion());
+
+        final String schema3 = getTableSchema();
+        assertTrue(schema3.contains("'eventTime' TEXT"));
+
+        final AnalyticsEvent event1 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        long rowId1 = database.insert(TABLE_NAME, null, event1.getContentValues(3));
+        MoreAsserts.assertNotEqual(-1, rowId1);
+        assertTableRowCount(1, TABLE_NAME);
+
+        database = getWritableDatabase(4);
+
+        assertEquals(4, database.getVersion());
+
+        final String schema4 = getTableSchema();
+        assertTrue(schema4.contains("'eventTime' INTEGER"));
+        assertEquals(3, getIndexCount());
+
+        assertTableRowCount(1, TABLE_NAME);  // Assert that the database did not drop the row added above
+        assertEventTime(rowId1, event1.getEventTime());
+    }
+
+    public void testMigrateFromVersion1ToVersion4() {
+
+        database = getWritableDatabase(1);
+        assertEquals(1, database.getVersion());
+
+        final AnalyticsEvent event1 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        long rowId1 = database.insert(TABLE_NAME, null, event1.getContentValues(1));
+        MoreAsserts.assertNotEqual(-1, rowId1);
+        assertTableRowCount(1, TABLE_NAME);
+
+        database = getWritableDatabase(4);
+
+        assertEquals(4, database.getVersion());
+
+        final String schema4 = getTableSchema();
+        assertTrue(schema4.contains("sdkVersion"));
+        assertTrue(schema4.contains("platformType"));
+        assertTrue(schema4.contains("platformUuid"));
+        assertTrue(schema4.contains("'eventTime' INTEGER"));
+        assertEquals(3, getIndexCount());
+
+        assertTableRowCount(1, TABLE_NAME);  // Assert that the database did not drop the row added above
+        assertEventTime(rowId1, event1.getEventTime());
+    }
+
+    public void testMigrateFromVersion4ToVersion5() {
+
+        database = getWritableDatabase(4);
+        assertEquals(4, database.getVersion());
+
+        final AnalyticsEvent event1 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        final AnalyticsEvent event2 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        event2.setPlatformUuid(event1.getPlatformUuid());
+        final AnalyticsEvent event3 = DummyEvent.getEvent(TEST_DEVICE_UUID_2);
+        event3.setSdkVersion(null);
+        long rowId1 = database.insert(TABLE_NAME, null, event1.getContentValues(4));
+        long rowId2 = database.insert(TABLE_NAME, null, event2.getContentValues(4));
+        long rowId3 = database.insert(TABLE_NAME, null, event3.getContentValues(4));
+        MoreAsserts.assertNotEqual(-1, rowId1);
+        MoreAsserts.assertNotEqual(-1, rowId2);
+        MoreAsserts.assertNotEqual(-1, rowId3);
+
+        database = getWritableDatabase(5);
+
+        assertEquals(5, database.getVersion());
+
+        final String schema5 = getTableSchema();
+        assertFalse(schema5.contains("deviceUuid"));
+        assertFalse(schema5.contains("sdkVersion"));
+        assertTrue(schema5.contains("'attributesId' INTEGER"));
+        assertEquals(3, getIndexCount());
+
+        assertTableRowCount(3, TABLE_NAME);  // Assert that the database did not drop the rows added above
+        assertTableRowCount(2, Database.EVENT_ATTRIBUTES_TABLE_NAME);
+        assertEventTime(rowId1, event1.getEventTime());
+        assertEventFromView(rowId1, event1);
+        assertEventFromView(rowId2, event2);
+        assertEventFromView(rowId3, event3);
+
+        // New events reuse the attributes that were moved over
+        database = getWritableDatabase(Database.DATABASE_VERSION);
+        final AnalyticsEvent event4 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        event4.setPlatformUuid(event1.getPlatformUuid());
+        assertEventFromView(insertEvent(event4), event4);
+        assertTableRowCount(2, Database.EVENT_ATTRIBUTES_TABLE_NAME);
+    }
+
+    public void testMigrateFromVersion1ToVersion5() {
+
+        database = getWritableDatabase(1);
+        assertEquals(1, database.getVersion());
+
+        final AnalyticsEvent event1 = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        long rowId1 = database.insert(TABLE_NAME, null, event1.getContentValues(1));
+        MoreAsserts.assertNotEqual(-1, rowId1);
+
+        database = getWritableDatabase(5);
+
+        assertEquals(5, database.getVersion());
+        assertEquals(3, getIndexCount());
+        assertTableRowCount(1, TABLE_NAME);
+        assertTableRowCount(1, Database.EVENT_ATTRIBUTES_TABLE_NAME);
+
+        // Version 1 did not have the SDK version or platform columns
+        event1.setSdkVersion(null);
+        event1.setPlatformType(null);
+        event1.setPlatformUuid(null);
+        assertEventFromView(rowId1, event1);
+    }
+
+    public void testDowngradeFromVersion5DropsAttributes() {
+        database = getWritableDatabase(5);
+        insertVersion5Event(DummyEvent.getEvent(TEST_DEVICE_UUID_1));
+
+        database = getWritableDatabase(4);
+        assertEquals(4, database.getVersion());
+        assertTableEmpty(TABLE_NAME);
+        assertTrue(getTableSchema().contains("deviceUuid"));
+        final Cursor c = database.rawQuery("SELECT name FROM sqlite_master WHERE name IN (?, ?)", new String[] { Database.EVENT_ATTRIBUTES_TABLE_NAME, Database.EVENTS_VIEW_NAME });
+        try {
+            assertEquals(0, c.getCount());
+        } finally {
+            c.close();
+        }
+    }
+
+    public void testMigrateFromVersion5ToVersion6() {
+
+        database = getWritableDatabase(5);
+        insertVersion5Event(DummyEvent.getEvent(TEST_DEVICE_UUID_1));
+
+        database = getWritableDatabase(6);
+
+        assertEquals(6, database.getVersion());
+        assertTrue(getTableSchema().contains("'dedupKey' TEXT"));
+        assertEquals(4, getIndexCount());
+        assertTableRowCount(1, TABLE_NAME);
+    }
+
+    public void testMigrateFromVersion6ToVersion7() {
+
+        database = getWritableDatabase(6);
+        final ContentValues values = new ContentValues();
+        values.put(AnalyticsEvent.Columns.EVENT_TYPE, DummyEvent.EVENT_TYPE);
+        values.put(AnalyticsEvent.Columns.STATUS, AnalyticsEvent.Status.NOT_POSTED);
+        final long rowId1 = database.insert(TABLE_NAME, null, values);
+        MoreAsserts.assertNotEqual(-1, rowId1);
+
+        database = getWritableDatabase(7);
+
+        assertEquals(7, database.getVersion());
+        assertTrue(getTableSchema().contains("'rejectedAttempts' INTEGER NOT NULL DEFAULT 0"));
+        assertEquals(4, getIndexCount());
+        assertTableRowCount(1, TABLE_NAME);
+        assertRejectedAttempts(rowId1, 0);
+    }
+
+    public void testCreateVersion7CountsNoRejectedAttempts() {
+        database = getWritableDatabase(Database.DATABASE_VERSION);
+        assertRejectedAttempts(insertEvent(DummyEvent.getEvent(TEST_DEVICE_UUID_1)), 0);
+    }
+
+    public void testDedupKeyIsUnique() {
+        database = getWritableDatabase(Database.DATABASE_VERSION);
+        final AnalyticsEvent event = DummyEvent.getEvent(TEST_DEVICE_UUID_1);
+        event.setEventType(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_RECEIVED);
+        event.setReceiptId("RECEIPT-ID-1");
+
+        MoreAsserts.assertNotEqual(-1, insertEvent(event));
+        final AnalyticsEventStatements statements = new AnalyticsEventStatements(database);
+        try {
+            assertEquals(-1, statements.insert(event));
+        } finally {
+            statements.close();
+        }
+        assertTableRowCount(1, TABLE_NAME);
+    }
+
+    public void testCreateVersion4HasIndexes() {
+        database = getWritableDatabase(4);
+        assertEquals(3, getIndexCount());
+    }
+
+    public void testStatusQueryUsesIndex() {
+        database = getWritableDatabase(Database.DATABASE_VERSION);
+        final String plan = getQueryPlan("SELECT _id FROM " + TABLE_NAME + " WHERE status = ? ORDER BY _id", String.valueOf(AnalyticsEvent.Status.NOT_POSTED));
+        assertTrue(plan, plan.contains("INDEX"));
+    }
+
+    public void testEventTypeQueryUsesIndex() {
+        database = getWritableDatabase(Database.DATABASE_VERSION);
+        final String plan = getQueryPlan("SELECT _id FROM " + TABLE_NAME + " WHERE eventType = ?", DummyEvent.EVENT_TYPE);
+        assertTrue(plan, plan.contains("INDEX"));
+    }
+
+    private String getQueryPlan(String sql, String argument) {
+        final StringBuilder sb = new StringBuilder();
+        Cursor c = null;
+        try {
+            c = database.rawQuery("EXPLAIN QUERY PLAN " + sql, new String[] { argument });
+            assertNotNull(c);
+            final int detailColumn = c.getColumnIndexOrThrow("detail");
+            while (c.moveToNext()) {
+                sb.append(c.getString(detailColumn));
+                sb.append('\n');
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return sb.toString();
+    }
+
+    private int getIndexCount() {
+        Cursor c = null;
+        try {
+            c = database.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND tbl_name=? AND sql IS NOT NULL", new String[] { TABLE_NAME });
+            assertNotNull(c);
+            return c.getCount();
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    private void assertEventTime(final long rowId, final String expectedEventTime) {
+        Cursor c = null;
+        try {
+            c = database.rawQuery("SELECT eventTime, typeof(eventTime) FROM " + TABLE_NAME + " WHERE _id = ?", new String[] { String.valueOf(rowId) });
+            assertNotNull(c);
+            assertTrue(c.moveToFirst());
+            assertEquals(expectedEventTime, c.getString(0));
+            assertEquals("integer", c.getString(1));
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    private long insertEvent(final AnalyticsEvent event) {
+        final AnalyticsEventStatements statements = new AnalyticsEventStatements(database);
+        try {
+            final long rowId = statements.insert(event);
+            MoreAsserts.assertNotEqual(-1, rowId);
+            return rowId;
+        } finally {
+            statements.close();
+        }
+    }
+
+    // The compiled insert statement writes the columns of the current version, so events are written to a
+    // version 5 table directly.
+    private long insertVersion5Event(final AnalyticsEvent event) {
+        final ContentValues attributes = new ContentValues();
+        attributes.put(AnalyticsEvent.Columns.DEVICE_UUID, event.getDeviceUuid());
+        attributes.put(AnalyticsEvent.Columns.SDK_VERSION, event.getSdkVersion());
+        attributes.put(AnalyticsEvent.Columns.PLATFORM_TYPE, event.getPlatformType());
+        attributes.put(AnalyticsEvent.Columns.PLATFORM_UUID, event.getPlatformUuid());
+        final long attributesId = database.insert(Database.EVENT_ATTRIBUTES_TABLE_NAME, null, attributes);
+        MoreAsserts.assertNotEqual(-1, attributesId);
+
+        final ContentValues values = event.getContentValues(5);
+        values.remove(AnalyticsEvent.Columns.DEVICE_UUID);
+        values.remove(AnalyticsEvent.Columns.SDK_VERSION);
+        values.remove(AnalyticsEvent.Columns.PLATFORM_TYPE);
+        values.remove(AnalyticsEvent.Columns.PLATFORM_UUID);
+        values.put(AnalyticsEvent.Columns.ATTRIBUTES_ID, attributesId);
+        final long rowId = database.insert(TABLE_NAME, null, values);
+        MoreAsserts.assertNotEqual(-1, rowId);
+        return rowId;
+    }
+
+    private void assertRejectedAttempts(final long rowId, final int expectedRejectedAttempts) {
+        Cursor c = null;
+        try {
+            c = database.rawQuery("SELECT rejectedAttempts FROM " + TABLE_NAME + " WHERE _id = ?", new String[] { String.valueOf(rowId) });
+            assertNotNull(c);
+            assertTrue(c.moveToFirst());
+            assertEquals(expectedRejectedAttempts, c.getInt(0));
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    private void assertEventFromView(final long rowId, final AnalyticsEvent expectedEvent) {
+        Cursor c = null;
+        try {
+            c = database.query(Database.EVENTS_VIEW_NAME, null, "_id = ?", new String[] { String.valueOf(rowId) }, null, null, null);
+            assertNotNull(c);
+            assertTrue(c.moveToFirst());
+            assertEquals(expectedEvent, new AnalyticsEvent(c));
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
     private String getTableSchema() {
         final String sql = "SELECT sql FROM sqlite_master WHERE type='table' AND name=?";
         final Cursor cursor = database.rawQuery(sql, new String[] { Database.EVENTS_TABLE_NAME });
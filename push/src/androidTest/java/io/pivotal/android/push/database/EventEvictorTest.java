@@ -0,0 +1,154 @@
+package io.pivotal.android.push.database;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import io.pivotal.android.push.analytics.AnalyticsEventLogger;
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.model.analytics.DummyEvent;
+
+public class EventEvictorTest extends AndroidTestCase {
+
+    private static final String TEST_DEVICE_UUID = "TEST-DEVICE-UUID";
+    private static final long NOW_IN_SECONDS = 1500000000L;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DatabaseWrapper.createDatabaseInstance(getContext());
+        new DatabaseAnalyticsEventsStorage().reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new DatabaseAnalyticsEventsStorage().reset();
+        super.tearDown();
+    }
+
+    public void testRequiresPolicies() {
+        try {
+            new EventEvictor(null, EventEvictor.getDefaultEventTypePriorities());
+            fail("should not have succeeded");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+
+    public void testMaxEventsEvictsLowestPriorityFirst() {
+        final Uri opened = saveEvent(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_OPENED, NOW_IN_SECONDS, AnalyticsEvent.Status.NOT_POSTED);
+        final Uri heartbeat = saveEvent(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_HEARTBEAT, NOW_IN_SECONDS, AnalyticsEvent.Status.NOT_POSTED);
+        final Uri received = saveEvent(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_RECEIVED, NOW_IN_SECONDS, AnalyticsEvent.Status.NOT_POSTED);
+
+        final DatabaseAnalyticsEventsStorage storage = getStorage(new MaxEventsEvictionPolicy(1));
+        assertEquals(2, storage.evictEvents(EventEvictor.DEFAULT_BATCH_SIZE));
+
+        final List<Uri> remaining = storage.getEventUris();
+        assertEquals(1, remaining.size());
+        assertEquals(opened, remaining.get(0));
+        assertFalse(remaining.contains(heartbeat));
+        assertFalse(remaining.contains(received));
+        assertEquals(1, storage.getNumberOfEvents());
+    }
+
+    public void testMaxAgeEvictsOldEvents() {
+        saveEvent(DummyEvent.EVENT_TYPE, NOW_IN_SECONDS - 1000, AnalyticsEvent.Status.NOT_POSTED);
+        saveEvent(DummyEvent.EVENT_TYPE, NOW_IN_SECONDS - 1000, AnalyticsEvent.Status.POSTING_ERROR);
+        final Uri recent = saveEvent(DummyEvent.EVENT_TYPE, NOW_IN_SECONDS - 10, AnalyticsEvent.Status.NOT_POSTED);
+
+        final EventEvictor evictor = new EventEvictor(policies(new MaxAgeEvictionPolicy(100)), EventEvictor.getDefaultEventTypePriorities());
+        assertEquals(2, evictor.evict(EventEvictor.DEFAULT_BATCH_SIZE, NOW_IN_SECONDS));
+
+        final List<Uri> remaining = new DatabaseAnalyticsEventsStorage().getEventUris();
+        assertEquals(1, remaining.size());
+        assertEquals(recent, remaining.get(0));
+    }
+
+    public void testEvictsInBatches() {
+        for (int i = 0; i < 10; i += 1) {
+            saveEvent(DummyEvent.EVENT_TYPE, NOW_IN_SECONDS, AnalyticsEvent.Status.NOT_POSTED);
+        }
+        final DatabaseAnalyticsEventsStorage storage = getStorage(new MaxEventsEvictionPolicy(2));
+        assertEquals(3, storage.evictEvents(3));
+        assertEquals(7, storage.getNumberOfEvents());
+        assertEquals(5, storage.evictEvents(EventEvictor.DEFAULT_BATCH_SIZE));
+        assertEquals(2, storage.getNumberOfEvents());
+        assertEquals(0, storage.evictEvents(EventEvictor.DEFAULT_BATCH_SIZE));
+    }
+
+    public void testDoesNotEvictEventsBeingPosted() {
+        saveEvent(DummyEvent.EVENT_TYPE, NOW_IN_SECONDS, AnalyticsEvent.Status.POSTING);
+        saveEvent(DummyEvent.EVENT_TYPE, NOW_IN_SECONDS, AnalyticsEvent.Status.POSTING);
+        final DatabaseAnalyticsEventsStorage storage = getStorage(new MaxEventsEvictionPolicy(1));
+        assertEquals(0, storage.evictEvents(EventEvictor.DEFAULT_BATCH_SIZE));
+        assertEquals(2, storage.getNumberOfEvents());
+    }
+
+    public void testNoPolicies() {
+        saveEvent(DummyEvent.EVENT_TYPE, NOW_IN_SECONDS, AnalyticsEvent.Status.NOT_POSTED);
+        final EventEvictor evictor = new EventEvictor(new LinkedList<EvictionPolicy>(), new HashMap<String, Integer>());
+        assertEquals(0, evictor.evict(EventEvictor.DEFAULT_BATCH_SIZE, NOW_IN_SECONDS));
+    }
+
+    public void testMaxSizePolicy() {
+        final MaxSizeEvictionPolicy policy = new MaxSizeEvictionPolicy(1000);
+        assertNull(policy.getEvictionParams(10, 1000, NOW_IN_SECONDS));
+        assertEquals(1, policy.getEvictionParams(10, 1001, NOW_IN_SECONDS).numberOfEvents);
+        assertEquals(5, policy.getEvictionParams(10, 2000, NOW_IN_SECONDS).numberOfEvents);
+        assertEquals(10, policy.getEvictionParams(10, 100000, NOW_IN_SECONDS).numberOfEvents);
+    }
+
+    public void testFromMetaData() {
+        final Bundle metaData = new Bundle();
+        metaData.putInt(EventEvictor.MAX_EVENT_AGE_META_DATA, 3600);
+        metaData.putInt(EventEvictor.MAX_EVENTS_META_DATA, 500);
+        metaData.putInt(EventEvictor.MAX_SIZE_META_DATA, 512 * 1024);
+        final EventEvictor evictor = EventEvictor.fromMetaData(metaData, 1024 * 1024);
+        assertEquals(3, evictor.getPolicies().size());
+        assertTrue(evictor.getPolicies().get(0) instanceof MaxAgeEvictionPolicy);
+        assertTrue(evictor.getPolicies().get(1) instanceof MaxEventsEvictionPolicy);
+        assertTrue(evictor.getPolicies().get(2) instanceof MaxSizeEvictionPolicy);
+    }
+
+    public void testFromNullMetaDataHasNoPolicies() {
+        final EventEvictor evictor = EventEvictor.fromMetaData(null, 1024 * 1024);
+        assertTrue(evictor.getPolicies().isEmpty());
+    }
+
+    public void testFromEmptyMetaDataHasNoPolicies() {
+        final EventEvictor evictor = EventEvictor.fromMetaData(new Bundle(), 1024 * 1024);
+        assertTrue(evictor.getPolicies().isEmpty());
+    }
+
+    public void testMaxSizeIsCappedAtTheDatabaseSize() {
+        final Bundle metaData = new Bundle();
+        metaData.putInt(EventEvictor.MAX_SIZE_META_DATA, 4 * 1024 * 1024);
+        final EventEvictor evictor = EventEvictor.fromMetaData(metaData, 1024 * 1024);
+        assertEquals(1, evictor.getPolicies().size());
+        assertEquals("max 1024 kB", evictor.getPolicies().get(0).toString());
+    }
+
+    private static Uri saveEvent(String eventType, long eventTimeInSeconds, int status) {
+        final AnalyticsEvent event = DummyEvent.getEvent(TEST_DEVICE_UUID, new Date(eventTimeInSeconds * 1000L));
+        event.setEventType(eventType);
+        event.setStatus(status);
+        final Uri uri = new DatabaseAnalyticsEventsStorage().saveEvent(event);
+        assertNotNull(uri);
+        return uri;
+    }
+
+    private static DatabaseAnalyticsEventsStorage getStorage(EvictionPolicy policy) {
+        return new DatabaseAnalyticsEventsStorage(new EventEvictor(policies(policy), EventEvictor.getDefaultEventTypePriorities()));
+    }
+
+    private static List<EvictionPolicy> policies(EvictionPolicy policy) {
+        final List<EvictionPolicy> policies = new LinkedList<>();
+        policies.add(policy);
+        return policies;
+    }
+}
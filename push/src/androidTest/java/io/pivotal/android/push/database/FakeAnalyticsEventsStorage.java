@@ -1,11 +1,17 @@
 package io.pivotal.android.push.database;
 
+import android.content.ContentUris;
 import android.net.Uri;
 
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 
@@ -13,8 +19,10 @@ import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 public class FakeAnalyticsEventsStorage implements AnalyticsEventsStorage {
 
     private final Map<Uri, AnalyticsEvent> events;
+    private static final Gson gson = new Gson();
     private static int fileId = 0;
     private boolean willSaveFail;
+    private final Map<Long, Integer> rejectedAttempts = new HashMap<>();
 
     public FakeAnalyticsEventsStorage() {
         events = new HashMap<>();
@@ -40,6 +48,21 @@ public class FakeAnalyticsEventsStorage implements AnalyticsEventsStorage {
         return uri;
     }
 
+    /**
+     * Saves the {@link AnalyticsEvent} objects into the fake filesystem.  Either all of the events are saved or none are.
+     */
+    @Override
+    public List<Uri> saveEvents(List<AnalyticsEvent> eventsToSave) {
+        if (willSaveFail) {
+            return null;
+        }
+        final List<Uri> uris = new LinkedList<>();
+        for (final AnalyticsEvent event : eventsToSave) {
+            uris.add(saveEvent(event));
+        }
+        return uris;
+    }
+
     /**
      * Gets the filenames for all the {@link AnalyticsEvent} objects currently in the fake filesystem.
      */
@@ -60,6 +83,52 @@ public class FakeAnalyticsEventsStorage implements AnalyticsEventsStorage {
         return result;
     }
 
+    /**
+     * Gets the filenames of the {@link AnalyticsEvent} objects currently in the fake filesystem that match the given status, in order.
+     */
+    @Override
+    public long[] getEventIdsWithStatus(int status) {
+        return getEventIdsPage(new int[] { status }, 0, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the next page of {@link AnalyticsEvent} objects currently in the fake filesystem that match one of the given
+     * statuses, in filename order.  The size of each event is estimated from its JSON serialization.
+     */
+    @Override
+    public long[] getEventIdsPage(int[] statuses, long afterRowId, int maxEvents, long maxBytes) {
+        final TreeMap<Long, AnalyticsEvent> sortedEvents = new TreeMap<>();
+        for (final Uri uri : events.keySet()) {
+            final long rowId = ContentUris.parseId(uri);
+            if (rowId > afterRowId && hasStatus(events.get(uri), statuses)) {
+                sortedEvents.put(rowId, events.get(uri));
+            }
+        }
+        final long[] ids = new long[Math.min(sortedEvents.size(), maxEvents)];
+        int numberOfIds = 0;
+        long pageSizeInBytes = 0;
+        for (final Map.Entry<Long, AnalyticsEvent> entry : sortedEvents.entrySet()) {
+            if (numberOfIds >= ids.length) {
+                break;
+            }
+            pageSizeInBytes += gson.toJson(entry.getValue()).length();
+            if (numberOfIds > 0 && pageSizeInBytes > maxBytes) {
+                break;
+            }
+            ids[numberOfIds++] = entry.getKey();
+        }
+        return Arrays.copyOf(ids, numberOfIds);
+    }
+
+    private static boolean hasStatus(AnalyticsEvent event, int[] statuses) {
+        for (final int status : statuses) {
+            if (event.getStatus() == status) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public List<Uri> getEventUrisWithType(String eventType) {
         final List<Uri> result = new LinkedList<>();
@@ -93,6 +162,34 @@ public class FakeAnalyticsEventsStorage implements AnalyticsEventsStorage {
         }
     }
 
+    /**
+     * Passes the {@link AnalyticsEvent} objects with the given filenames to the callback.  Missing files are skipped.
+     */
+    @Override
+    public void readEvents(List<Uri> eventUris, EventCallback callback) throws IOException {
+        for (final Uri uri : eventUris) {
+            if (events.containsKey(uri)) {
+                callback.onEvent(events.get(uri));
+            }
+        }
+    }
+
+    /**
+     * Passes the {@link AnalyticsEvent} objects with the given file IDs to the callback.  Missing files are skipped.
+     */
+    @Override
+    public void readEvents(long[] eventIds, EventCallback callback) throws IOException {
+        readEvents(getUris(eventIds), callback);
+    }
+
+    /**
+     * Deletes the {@link AnalyticsEvent} objects from the fake filesystem with the given file IDs.
+     */
+    @Override
+    public void deleteEvents(long[] eventIds) {
+        deleteEvents(getUris(eventIds));
+    }
+
     /**
      * Deletes the {@link AnalyticsEvent} objects from the fake filesystem with the given list of filenames.
      */
@@ -112,6 +209,28 @@ public class FakeAnalyticsEventsStorage implements AnalyticsEventsStorage {
         return events.size();
     }
 
+    /**
+     * Returns the number of {@link AnalyticsEvent} objects currently in the fake filesystem with the given status.
+     */
+    @Override
+    public int countByStatus(int status) {
+        int count = 0;
+        for (final AnalyticsEvent event : events.values()) {
+            if (event.getStatus() == status) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The fake filesystem has no eviction policies, so nothing is ever evicted.
+     */
+    @Override
+    public int evictEvents(int maxEvents) {
+        return 0;
+    }
+
     /**
      * Clears all {@link AnalyticsEvent} objects from the fake filesystem.
      */
@@ -122,7 +241,7 @@ public class FakeAnalyticsEventsStorage implements AnalyticsEventsStorage {
 
     private static Uri getNextFileId() {
         Uri baseUri = Database.EVENTS_CONTENT_URI;
-        return Uri.withAppendedPath(baseUri, String.valueOf(fileId++));
+        return Uri.withAppendedPath(baseUri, String.valueOf(++fileId));
     }
 
     @Override
@@ -130,4 +249,42 @@ public class FakeAnalyticsEventsStorage implements AnalyticsEventsStorage {
         final AnalyticsEvent event = readEvent(eventUri);
         event.setStatus(status);
     }
+
+    @Override
+    public void setEventStatus(List<Uri> eventUris, int status) {
+        for (final Uri uri : eventUris) {
+            setEventStatus(uri, status);
+        }
+    }
+
+    @Override
+    public void setEventStatus(long[] eventIds, int status) {
+        setEventStatus(getUris(eventIds), status);
+    }
+
+    private static List<Uri> getUris(long[] eventIds) {
+        final List<Uri> uris = new LinkedList<>();
+        for (final long id : eventIds) {
+            uris.add(ContentUris.withAppendedId(Database.EVENTS_CONTENT_URI, id));
+        }
+        return uris;
+    }
+
+    @Override
+    public int incrementRejectedAttempts(long eventId) {
+        if (!events.containsKey(ContentUris.withAppendedId(Database.EVENTS_CONTENT_URI, eventId))) {
+            return -1;
+        }
+        final Integer previousAttempts = rejectedAttempts.get(eventId);
+        final int attempts = (previousAttempts == null ? 0 : previousAttempts) + 1;
+        rejectedAttempts.put(eventId, attempts);
+        return attempts;
+    }
+
+    @Override
+    public int setStatusWhere(int fromStatus, int toStatus) {
+        final List<Uri> uris = getEventUrisWithStatus(fromStatus);
+        setEventStatus(uris, toStatus);
+        return uris.size();
+    }
 }
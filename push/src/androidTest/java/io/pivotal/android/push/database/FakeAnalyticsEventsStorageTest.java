@@ -157,6 +157,48 @@ public class FakeAnalyticsEventsStorageTest extends AndroidTestCase {
         assertEventStatus(uri1, AnalyticsEvent.Status.POSTED);
 	}
 
+	public void testSetStatusForMultipleEvents() {
+
+		final Uri uri1 = storage.saveEvent(EVENT_1);
+		final Uri uri2 = storage.saveEvent(EVENT_2);
+		final Uri uri3 = storage.saveEvent(EVENT_3);
+		final List<Uri> uris = new LinkedList<Uri>();
+		uris.add(uri1);
+		uris.add(uri3);
+
+		storage.setEventStatus(uris, AnalyticsEvent.Status.POSTING);
+		assertEventStatus(uri1, AnalyticsEvent.Status.POSTING);
+		assertEventStatus(uri2, AnalyticsEvent.Status.NOT_POSTED);
+		assertEventStatus(uri3, AnalyticsEvent.Status.POSTING);
+	}
+
+	public void testSetStatusWhere() {
+
+		EVENT_1.setStatus(AnalyticsEvent.Status.POSTING);
+		EVENT_3.setStatus(AnalyticsEvent.Status.POSTING);
+		final Uri uri1 = storage.saveEvent(EVENT_1);
+		final Uri uri2 = storage.saveEvent(EVENT_2);
+		final Uri uri3 = storage.saveEvent(EVENT_3);
+
+		assertEquals(2, storage.setStatusWhere(AnalyticsEvent.Status.POSTING, AnalyticsEvent.Status.NOT_POSTED));
+		assertEventStatus(uri1, AnalyticsEvent.Status.NOT_POSTED);
+		assertEventStatus(uri2, AnalyticsEvent.Status.NOT_POSTED);
+		assertEventStatus(uri3, AnalyticsEvent.Status.NOT_POSTED);
+
+		assertEquals(0, storage.setStatusWhere(AnalyticsEvent.Status.POSTING, AnalyticsEvent.Status.NOT_POSTED));
+	}
+
+	public void testCountByStatus() {
+		EVENT_1.setStatus(AnalyticsEvent.Status.POSTING);
+		storage.saveEvent(EVENT_1);
+		storage.saveEvent(EVENT_2);
+		storage.saveEvent(EVENT_3);
+
+		assertEquals(2, storage.countByStatus(AnalyticsEvent.Status.NOT_POSTED));
+		assertEquals(1, storage.countByStatus(AnalyticsEvent.Status.POSTING));
+		assertEquals(0, storage.countByStatus(AnalyticsEvent.Status.POSTED));
+	}
+
     private void assertEventStatus(Uri uri, int expectedStatus) {
         final AnalyticsEvent event = storage.readEvent(uri);
         assertEquals(expectedStatus, event.getStatus());
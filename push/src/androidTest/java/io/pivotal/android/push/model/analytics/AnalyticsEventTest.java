@@ -120,6 +120,19 @@ public class AnalyticsEventTest extends AndroidTestCase {
         MoreAsserts.assertNotEqual(model2, model1);
     }
 
+    public void testSetStatus() {
+        final AnalyticsEvent model = new AnalyticsEvent();
+        model.setStatus(AnalyticsEvent.Status.QUARANTINED);
+        assertEquals(AnalyticsEvent.Status.QUARANTINED, model.getStatus());
+
+        try {
+            model.setStatus(AnalyticsEvent.Status.QUARANTINED + 1);
+            fail("should have failed");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+
     public void testNotEqualsNull() {
         final AnalyticsEvent model1 = getEvent1();
         assertFalse(model1.equals(null));
@@ -190,6 +203,61 @@ public class AnalyticsEventTest extends AndroidTestCase {
         assertEquals(1, AnalyticsEvent.getDatabaseMigrationCommands(1, 2).size());
         assertEquals(2, AnalyticsEvent.getDatabaseMigrationCommands(2, 3).size());
         assertEquals(3, AnalyticsEvent.getDatabaseMigrationCommands(1, 3).size());
+        assertEquals(0, AnalyticsEvent.getDatabaseMigrationCommands(4, 4).size());
+        assertEquals(7, AnalyticsEvent.getDatabaseMigrationCommands(3, 4).size());
+        assertEquals(9, AnalyticsEvent.getDatabaseMigrationCommands(2, 4).size());
+        assertEquals(10, AnalyticsEvent.getDatabaseMigrationCommands(1, 4).size());
+        assertNull(AnalyticsEvent.getDatabaseMigrationCommands(4, 3));
+        assertEquals(0, AnalyticsEvent.getDatabaseMigrationCommands(5, 5).size());
+        assertEquals(10, AnalyticsEvent.getDatabaseMigrationCommands(4, 5).size());
+        assertEquals(17, AnalyticsEvent.getDatabaseMigrationCommands(3, 5).size());
+        assertEquals(20, AnalyticsEvent.getDatabaseMigrationCommands(1, 5).size());
+        assertNull(AnalyticsEvent.getDatabaseMigrationCommands(5, 4));
+        assertEquals(2, AnalyticsEvent.getDatabaseMigrationCommands(5, 6).size());
+        assertEquals(12, AnalyticsEvent.getDatabaseMigrationCommands(4, 6).size());
+        assertEquals(22, AnalyticsEvent.getDatabaseMigrationCommands(1, 6).size());
+        assertEquals(0, AnalyticsEvent.getDatabaseMigrationCommands(7, 7).size());
+        assertEquals(1, AnalyticsEvent.getDatabaseMigrationCommands(6, 7).size());
+        assertEquals(3, AnalyticsEvent.getDatabaseMigrationCommands(5, 7).size());
+        assertEquals(23, AnalyticsEvent.getDatabaseMigrationCommands(1, 7).size());
+    }
+
+    public void testDedupKey() {
+        final AnalyticsEvent event = getEvent1();
+        assertNull(event.getDedupKey());
+
+        event.setEventType(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_OPENED);
+        final AnalyticsEvent received = new AnalyticsEvent(event);
+        received.setEventType(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_RECEIVED);
+        final AnalyticsEvent otherReceipt = new AnalyticsEvent(event);
+        otherReceipt.setReceiptId(TEST_RECEIPT_ID_2);
+        final AnalyticsEvent sameReceipt = new AnalyticsEvent(event);
+        sameReceipt.setEventTime(getTestDate2());
+        sameReceipt.setDeviceUuid(TEST_MESSAGE_UUID_2);
+
+        assertNotNull(event.getDedupKey());
+        assertEquals(event.getDedupKey(), sameReceipt.getDedupKey());
+        MoreAsserts.assertNotEqual(event.getDedupKey(), received.getDedupKey());
+        MoreAsserts.assertNotEqual(event.getDedupKey(), otherReceipt.getDedupKey());
+        assertEquals(event.getDedupKey(), event.getContentValues(6).getAsString(AnalyticsEvent.Columns.DEDUP_KEY));
+        assertFalse(event.getContentValues(5).containsKey(AnalyticsEvent.Columns.DEDUP_KEY));
+
+        event.setReceiptId(null);
+        assertNull(event.getDedupKey());
+    }
+
+    public void testGeofenceEventsHaveNoDedupKey() {
+        final AnalyticsEvent event = getEvent1();
+        event.setEventType(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_GEOFENCE_LOCATION_TRIGGERED);
+        event.setGeofenceId("5");
+        event.setLocationId("7");
+        assertNull(event.getDedupKey());
+    }
+
+    public void testContentValuesStoreEventTimeAsInteger() {
+        final AnalyticsEvent event = getEvent1();
+        assertTrue(event.getContentValues(4).get(AnalyticsEvent.Columns.EVENT_TIME) instanceof Long);
+        assertTrue(event.getContentValues(3).get(AnalyticsEvent.Columns.EVENT_TIME) instanceof String);
     }
 
     public static AnalyticsEvent getEvent1() {
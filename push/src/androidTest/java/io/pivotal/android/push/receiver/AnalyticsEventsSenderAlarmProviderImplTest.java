@@ -1,6 +1,7 @@
 package io.pivotal.android.push.receiver;
 
 import android.app.AlarmManager;
+import android.app.PendingIntent;
 import android.test.AndroidTestCase;
 
 public class AnalyticsEventsSenderAlarmProviderImplTest extends AndroidTestCase {
@@ -16,4 +17,23 @@ public class AnalyticsEventsSenderAlarmProviderImplTest extends AndroidTestCase
             assertTrue("Bad trigger offset " + offset, offset <=  TRIGGER_UPPER_BOUND);
         }
     }
+
+    public void testRetryUsesItsOwnAlarm() {
+        final AnalyticsEventsSenderAlarmProviderImpl alarmProvider = new AnalyticsEventsSenderAlarmProviderImpl(getContext());
+        alarmProvider.disableAlarm();
+        try {
+            alarmProvider.enableAlarm(60000L);
+            assertTrue(alarmProvider.isAlarmEnabled());
+            assertNotNull(AnalyticsEventsSenderAlarmReceiver.getRetryPendingIntent(getContext(), PendingIntent.FLAG_NO_CREATE));
+        } finally {
+            alarmProvider.disableAlarm();
+        }
+        assertFalse(alarmProvider.isAlarmEnabled());
+        assertNull(AnalyticsEventsSenderAlarmReceiver.getRetryPendingIntent(getContext(), PendingIntent.FLAG_NO_CREATE));
+    }
+
+    public void testRetryWindow() {
+        assertEquals(0L, AnalyticsEventsSenderAlarmProviderImpl.getRetryWindowMillis(0L));
+        assertEquals(15000L, AnalyticsEventsSenderAlarmProviderImpl.getRetryWindowMillis(60000L));
+    }
 }
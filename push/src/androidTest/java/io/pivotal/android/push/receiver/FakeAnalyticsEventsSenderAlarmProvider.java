@@ -3,10 +3,18 @@ package io.pivotal.android.push.receiver;
 public class FakeAnalyticsEventsSenderAlarmProvider implements AnalyticsEventsSenderAlarmProvider {
 
     private boolean isAlarmEnabled = false;
+    private long delayInMilliseconds = -1;
 
     @Override
     public synchronized void enableAlarm() {
         isAlarmEnabled = true;
+        delayInMilliseconds = -1;
+    }
+
+    @Override
+    public synchronized void enableAlarm(long delayInMilliseconds) {
+        isAlarmEnabled = true;
+        this.delayInMilliseconds = delayInMilliseconds;
     }
 
     @Override
@@ -25,4 +33,9 @@ public class FakeAnalyticsEventsSenderAlarmProvider implements AnalyticsEventsSe
             enableAlarm();
         }
     }
+
+    // The delay given to the last call to enableAlarm, or -1 if it was called without one
+    public synchronized long getDelayInMilliseconds() {
+        return delayInMilliseconds;
+    }
 }
@@ -0,0 +1,118 @@
+package io.pivotal.android.push.service;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import io.pivotal.android.push.PushParameters;
+import io.pivotal.android.push.analytics.jobs.JobParams;
+import io.pivotal.android.push.analytics.jobs.JobResultListener;
+import io.pivotal.android.push.backend.analytics.FakePCFPushSendAnalyticsApiRequest;
+import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsApiRequestProvider;
+import io.pivotal.android.push.database.FakeAnalyticsEventsStorage;
+import io.pivotal.android.push.prefs.Pivotal;
+import io.pivotal.android.push.util.FakeNetworkWrapper;
+import io.pivotal.android.push.util.FakeServiceStarter;
+
+public class AnalyticsComponentsTest extends AndroidTestCase {
+
+    private static final JobResultListener LISTENER = new JobResultListener() {
+        @Override
+        public void onJobComplete(int resultCode) {}
+    };
+
+    private static final PushParameters PARAMETERS = new PushParameters("PLATFORM_UUID", "SECRET", "http://test.com", "android",
+            null, null, null, true, true, Pivotal.SslCertValidationMode.DEFAULT, null, null);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        AnalyticsEventService.setPushParameters(PARAMETERS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        AnalyticsComponents.setInstance(null);
+        AnalyticsEventService.setPushParameters(null);
+        super.tearDown();
+    }
+
+    public void testRequiresContext() {
+        try {
+            new AnalyticsComponents(null);
+            fail("should not have succeeded");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+
+    public void testReusesComponentsBetweenJobs() {
+        final AnalyticsComponents components = new AnalyticsComponents(getContext());
+        final JobParams params1 = components.getJobParams(getContext(), LISTENER);
+        final JobParams params2 = components.getJobParams(getContext(), LISTENER);
+        assertSame(params1.timeProvider, params2.timeProvider);
+        assertSame(params1.networkWrapper, params2.networkWrapper);
+        assertSame(params1.serviceStarter, params2.serviceStarter);
+        assertSame(params1.eventsStorage, params2.eventsStorage);
+        assertSame(params1.pushPreferences, params2.pushPreferences);
+        assertSame(params1.alarmProvider, params2.alarmProvider);
+        assertSame(params1.sendAnalyticsRequestProvider, params2.sendAnalyticsRequestProvider);
+    }
+
+    public void testUsesComponentsThatArePassedIn() {
+        final FakeNetworkWrapper networkWrapper = new FakeNetworkWrapper();
+        final FakeServiceStarter serviceStarter = new FakeServiceStarter();
+        final FakeAnalyticsEventsStorage eventsStorage = new FakeAnalyticsEventsStorage();
+        final PCFPushSendAnalyticsApiRequestProvider requestProvider = new PCFPushSendAnalyticsApiRequestProvider(new FakePCFPushSendAnalyticsApiRequest());
+        final AnalyticsComponents components = new AnalyticsComponents(getContext(), null, networkWrapper, serviceStarter, eventsStorage, null, null, null, requestProvider);
+
+        final JobParams params = components.getJobParams(getContext(), LISTENER);
+        assertSame(networkWrapper, params.networkWrapper);
+        assertSame(serviceStarter, params.serviceStarter);
+        assertSame(eventsStorage, params.eventsStorage);
+        assertSame(requestProvider, params.sendAnalyticsRequestProvider);
+        assertNotNull(params.timeProvider);
+        assertNotNull(params.alarmProvider);
+    }
+
+    public void testSetInstance() {
+        final AnalyticsComponents components = new AnalyticsComponents(getContext());
+        AnalyticsComponents.setInstance(components);
+        assertSame(components, AnalyticsComponents.getInstance(getContext()));
+
+        AnalyticsComponents.setInstance(null);
+        final AnalyticsComponents newComponents = AnalyticsComponents.getInstance(getContext());
+        assertNotNull(newComponents);
+        assertNotSame(components, newComponents);
+        assertSame(newComponents, AnalyticsComponents.getInstance(getContext()));
+    }
+
+    public void testRebuildsTheSendRequestWhenTheParametersChange() {
+        final AnalyticsComponents components = new AnalyticsComponents(getContext());
+        final JobParams params1 = components.getJobParams(getContext(), LISTENER);
+
+        AnalyticsEventService.setPushParameters(new PushParameters("OTHER_PLATFORM_UUID", "SECRET", "http://test.com", "android",
+                null, null, null, true, true, Pivotal.SslCertValidationMode.DEFAULT, null, null));
+        final JobParams params2 = components.getJobParams(getContext(), LISTENER);
+        assertNotSame(params1.sendAnalyticsRequestProvider, params2.sendAnalyticsRequestProvider);
+        assertSame(params1.eventsStorage, params2.eventsStorage);
+    }
+
+    // Once the components have been created, dispatching a job should only allocate its JobParams.  The cost of
+    // building a new container for every job instead is measured by AnalyticsComponentsBenchmark.
+    @SuppressWarnings("deprecation")
+    public void testDispatchOnlyAllocatesTheJobParams() {
+        final AnalyticsComponents components = new AnalyticsComponents(getContext());
+        components.getJobParams(getContext(), LISTENER); // creates the components
+
+        final JobParams params;
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            params = components.getJobParams(getContext(), LISTENER);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        assertNotNull(params);
+        assertEquals(1, Debug.getThreadAllocCount());
+    }
+}
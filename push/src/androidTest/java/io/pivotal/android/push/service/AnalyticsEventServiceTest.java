@@ -73,25 +73,26 @@ public class AnalyticsEventServiceTest extends ServiceTestCase<AnalyticsEventSer
         FakeAnalyticsEventsSenderAlarmProvider alarmProvider = new FakeAnalyticsEventsSenderAlarmProvider();
         alarmProvider.enableAlarm();
 
+        // Open the database ahead of time so that the service doesn't run a PrepareDatabaseJob before each test job
+        DatabaseWrapper.createDatabaseInstance(getContext());
+
         AnalyticsEventService.semaphore = new Semaphore(0);
-        AnalyticsEventService.networkWrapper = networkWrapper;
-        AnalyticsEventService.serviceStarter = serviceStarter;
-        AnalyticsEventService.eventsStorage = eventsStorage;
-        AnalyticsEventService.pushPreferences = pushPreferences;
-        AnalyticsEventService.sendAnalyticsRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(apiRequest);
-        AnalyticsEventService.alarmProvider = alarmProvider;
         AnalyticsEventService.listOfCompletedJobs = listOfCompletedJobs;
+        AnalyticsComponents.setInstance(new AnalyticsComponents(getContext(),
+                null,
+                networkWrapper,
+                serviceStarter,
+                eventsStorage,
+                pushPreferences,
+                null,
+                alarmProvider,
+                new PCFPushSendAnalyticsApiRequestProvider(apiRequest)));
     }
 
     @Override
     protected void tearDown() throws Exception {
         AnalyticsEventService.semaphore = null;
-        AnalyticsEventService.networkWrapper = null;
-        AnalyticsEventService.serviceStarter = null;
-        AnalyticsEventService.eventsStorage = null;
-        AnalyticsEventService.pushPreferences = null;
-        AnalyticsEventService.alarmProvider = null;
-        AnalyticsEventService.sendAnalyticsRequestProvider = null;
+        AnalyticsComponents.setInstance(null);
 
         reset(pushPreferences);
         super.tearDown();
@@ -179,7 +180,6 @@ public class AnalyticsEventServiceTest extends ServiceTestCase<AnalyticsEventSer
     }
 
     public void testRunsPrepareDatabaseJobIfReceivingAFreshDatabaseInstanceAndAnalyticsAreEnabled() throws InterruptedException {
-        AnalyticsEventService.eventsStorage = null;
         DatabaseWrapper.removeDatabaseInstance();
         final DummyJob inputJob = new DummyJob();
         final Intent intent = AnalyticsEventService.getIntentToRunJob(getContext(), inputJob);
@@ -194,7 +194,6 @@ public class AnalyticsEventServiceTest extends ServiceTestCase<AnalyticsEventSer
     public void testDoesNotRunPrepareDatabaseJobIfReceivingAFreshDatabaseInstanceAndAnalyticsAreDisabled() throws InterruptedException {
         when(pushPreferences.areAnalyticsEnabled()).thenReturn(false);
 
-        AnalyticsEventService.eventsStorage = null;
         DatabaseWrapper.removeDatabaseInstance();
         final DummyJob inputJob = new DummyJob();
         final Intent intent = AnalyticsEventService.getIntentToRunJob(getContext(), inputJob);
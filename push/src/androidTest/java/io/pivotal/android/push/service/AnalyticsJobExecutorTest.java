@@ -0,0 +1,107 @@
+package io.pivotal.android.push.service;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.ResultReceiver;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.android.push.analytics.jobs.BaseJob;
+import io.pivotal.android.push.analytics.jobs.DummyJob;
+import io.pivotal.android.push.analytics.jobs.JobParams;
+import io.pivotal.android.push.analytics.jobs.JobResultListener;
+import io.pivotal.android.push.prefs.PushPreferences;
+import io.pivotal.android.push.receiver.AnalyticsEventsSenderAlarmReceiver;
+import io.pivotal.android.push.util.FakeServiceStarter;
+
+public class AnalyticsJobExecutorTest extends AndroidTestCase {
+
+    private PushPreferences pushPreferences;
+    private boolean wereAnalyticsEnabled;
+
+    // Counts down when it runs.  It is never parcelled, so it does not need a CREATOR.
+    private static class LatchJob extends BaseJob {
+
+        private final CountDownLatch latch;
+        private volatile Thread thread;
+
+        LatchJob(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run(JobParams jobParams) {
+            thread = Thread.currentThread();
+            latch.countDown();
+            jobParams.listener.onJobComplete(JobResultListener.RESULT_SUCCESS);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        pushPreferences = new PushPreferences(getContext());
+        wereAnalyticsEnabled = pushPreferences.areAnalyticsEnabled();
+        pushPreferences.setAreAnalyticsEnabled(true);
+        AnalyticsComponents.setInstance(new AnalyticsComponents(getContext(), null, null, new FakeServiceStarter(), null, pushPreferences, null, null, null));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pushPreferences.setAreAnalyticsEnabled(wereAnalyticsEnabled);
+        AnalyticsComponents.setInstance(null);
+        super.tearDown();
+    }
+
+    public void testRequiresContext() {
+        try {
+            new AnalyticsJobExecutor(null);
+            fail("should not have succeeded");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+
+    public void testRunsJobsInProcess() throws InterruptedException {
+        final AnalyticsJobExecutor executor = new AnalyticsJobExecutor(getContext());
+        final CountDownLatch latch = new CountDownLatch(2);
+        final LatchJob job1 = new LatchJob(latch);
+        final LatchJob job2 = new LatchJob(latch);
+
+        assertTrue(executor.execute(AnalyticsEventService.getIntentToRunJob(getContext(), job1)));
+        executor.execute(job2);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotNull(job1.thread);
+        assertSame(job1.thread, job2.thread);
+        assertNotSame(Thread.currentThread(), job1.thread);
+    }
+
+    public void testDoesNotRunJobsWhenAnalyticsAreDisabled() throws InterruptedException {
+        pushPreferences.setAreAnalyticsEnabled(false);
+        final AnalyticsJobExecutor executor = new AnalyticsJobExecutor(getContext());
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        executor.execute(new LatchJob(latch));
+
+        assertFalse(latch.await(500, TimeUnit.MILLISECONDS));
+    }
+
+    public void testLeavesOtherIntentsToTheService() {
+        final AnalyticsJobExecutor executor = new AnalyticsJobExecutor(getContext());
+
+        assertFalse(executor.execute((Intent) null));
+        assertFalse(executor.execute(AnalyticsEventService.getIntentToRunJob(getContext(), null)));
+        assertFalse(executor.execute(new Intent(getContext(), AnalyticsEventsSenderAlarmReceiver.class).putExtra(AnalyticsEventService.KEY_JOB, new DummyJob())));
+
+        final Intent intentWithResultReceiver = AnalyticsEventService.getIntentToRunJob(getContext(), new DummyJob());
+        intentWithResultReceiver.putExtra(AnalyticsEventService.KEY_RESULT_RECEIVER, new ResultReceiver(new Handler(getContext().getMainLooper())));
+        assertFalse(executor.execute(intentWithResultReceiver));
+
+        final Intent intentRequiringTheService = AnalyticsEventService.getIntentToRunJob(getContext(), new DummyJob());
+        intentRequiringTheService.putExtra(AnalyticsEventService.KEY_SERVICE_REQUIRED, true);
+        assertFalse(executor.execute(intentRequiringTheService));
+    }
+}
@@ -26,4 +26,14 @@ public class FakeNetworkWrapper implements NetworkWrapper {
     public HttpURLConnection getHttpURLConnection(URL url) throws IOException {
         return new FakeHttpURLConnection(url);
     }
+
+    @Override
+    public void releaseHttpURLConnection(HttpURLConnection urlConnection) {
+        urlConnection.disconnect();
+    }
+
+    @Override
+    public void abortHttpURLConnection(HttpURLConnection urlConnection) {
+        urlConnection.disconnect();
+    }
 }
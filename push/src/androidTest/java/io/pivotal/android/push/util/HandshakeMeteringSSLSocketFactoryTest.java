@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import android.test.AndroidTestCase;
+
+import org.mockito.ArgumentCaptor;
+
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HandshakeMeteringSSLSocketFactoryTest extends AndroidTestCase {
+
+    private static final String TEST_HOST = "push.example.com";
+    private static final int TEST_PORT = 443;
+
+    private SSLSocketFactory delegate;
+    private SSLSocket sslSocket;
+    private Socket plainSocket;
+    private HandshakeMeteringSSLSocketFactory socketFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TlsHandshakeMetrics.reset();
+        delegate = mock(SSLSocketFactory.class);
+        sslSocket = mock(SSLSocket.class);
+        plainSocket = mock(Socket.class);
+        when(delegate.createSocket(plainSocket, TEST_HOST, TEST_PORT, true)).thenReturn(sslSocket);
+        socketFactory = new HandshakeMeteringSSLSocketFactory(delegate);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TlsHandshakeMetrics.reset();
+        super.tearDown();
+    }
+
+    public void testReturnsTheSocketOfTheDelegate() throws Exception {
+        assertSame(sslSocket, socketFactory.createSocket(plainSocket, TEST_HOST, TEST_PORT, true));
+        assertSame(delegate, socketFactory.getDelegate());
+    }
+
+    public void testCountsFullHandshakes() throws Exception {
+        completeHandshake(System.currentTimeMillis() + 1000L);
+
+        assertEquals(1, TlsHandshakeMetrics.getNumberOfFullHandshakes());
+        assertEquals(0, TlsHandshakeMetrics.getNumberOfResumedHandshakes());
+        assertEquals(1, TlsHandshakeMetrics.getFullHandshakeTime().getCount());
+        assertEquals(0, TlsHandshakeMetrics.getResumedHandshakeTime().getCount());
+    }
+
+    public void testCountsResumedHandshakes() throws Exception {
+        // The session was set up before this socket was made
+        completeHandshake(System.currentTimeMillis() - 60000L);
+
+        assertEquals(0, TlsHandshakeMetrics.getNumberOfFullHandshakes());
+        assertEquals(1, TlsHandshakeMetrics.getNumberOfResumedHandshakes());
+        assertEquals(0, TlsHandshakeMetrics.getFullHandshakeTime().getCount());
+        assertEquals(1, TlsHandshakeMetrics.getResumedHandshakeTime().getCount());
+    }
+
+    public void testCachedSocketFactoriesAreMetered() throws Exception {
+        SslSocketFactoryCache.reset();
+        try {
+            assertTrue(SslSocketFactoryCache.getTrustAllSocketFactory() instanceof HandshakeMeteringSSLSocketFactory);
+        } finally {
+            SslSocketFactoryCache.reset();
+        }
+    }
+
+    private void completeHandshake(long sessionCreationTime) throws Exception {
+        socketFactory.createSocket(plainSocket, TEST_HOST, TEST_PORT, true);
+
+        final ArgumentCaptor<HandshakeCompletedListener> listener = ArgumentCaptor.forClass(HandshakeCompletedListener.class);
+        verify(sslSocket).addHandshakeCompletedListener(listener.capture());
+
+        final SSLSession session = mock(SSLSession.class);
+        when(session.getCreationTime()).thenReturn(sessionCreationTime);
+        when(session.getPeerHost()).thenReturn(TEST_HOST);
+        listener.getValue().handshakeCompleted(new HandshakeCompletedEvent(sslSocket, session));
+    }
+}
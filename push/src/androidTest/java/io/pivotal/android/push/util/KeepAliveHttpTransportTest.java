@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.pivotal.android.push.PushParameters;
+import io.pivotal.android.push.backend.api.PCFPushUnregisterDeviceApiRequestImpl;
+import io.pivotal.android.push.backend.api.PCFPushUnregisterDeviceListener;
+import io.pivotal.android.push.prefs.Pivotal;
+
+public class KeepAliveHttpTransportTest extends AndroidTestCase {
+
+    private static final String RESPONSE_BODY = "{\"status\":\"ok\"}";
+
+    private LocalHttpServer server;
+    private KeepAliveHttpTransport transport;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public int getStatusCode(LocalHttpServer.Request request) {
+                return request.requestLine.contains("/error") ? 500 : 200;
+            }
+        });
+        server.setKeepAlive(true);
+        server.setResponseBody(RESPONSE_BODY);
+        transport = KeepAliveHttpTransport.getInstance();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.shutdown();
+        FakeHttpURLConnection.reset();
+        super.tearDown();
+    }
+
+    public void testReusesTheConnectionAfterTheResponseIsRead() throws IOException {
+        for (int i = 0; i < 3; i += 1) {
+            final HttpURLConnection urlConnection = transport.openConnection(new URL(server.getUrl() + "/ok"));
+            assertEquals(200, urlConnection.getResponseCode());
+            assertEquals(RESPONSE_BODY, readResponse(urlConnection));
+            transport.releaseConnection(urlConnection);
+        }
+        assertEquals(3, server.getRequests().size());
+        assertEquals(1, server.getNumberOfConnections());
+    }
+
+    public void testReusesTheConnectionWhenTheResponseIsNotRead() throws IOException {
+        for (int i = 0; i < 3; i += 1) {
+            final HttpURLConnection urlConnection = transport.openConnection(new URL(server.getUrl() + "/ok"));
+            assertEquals(200, urlConnection.getResponseCode());
+            transport.releaseConnection(urlConnection);
+        }
+        assertEquals(3, server.getRequests().size());
+        assertEquals(1, server.getNumberOfConnections());
+    }
+
+    public void testReusesTheConnectionAfterAnErrorResponse() throws IOException {
+        for (int i = 0; i < 3; i += 1) {
+            final HttpURLConnection urlConnection = transport.openConnection(new URL(server.getUrl() + "/error"));
+            assertEquals(500, urlConnection.getResponseCode());
+            transport.releaseConnection(urlConnection);
+        }
+        assertEquals(3, server.getRequests().size());
+        assertEquals(1, server.getNumberOfConnections());
+    }
+
+    public void testOpensANewConnectionWhenTheServerClosesIt() throws IOException {
+        server.setKeepAlive(false);
+        for (int i = 0; i < 3; i += 1) {
+            final HttpURLConnection urlConnection = transport.openConnection(new URL(server.getUrl() + "/ok"));
+            assertEquals(200, urlConnection.getResponseCode());
+            transport.releaseConnection(urlConnection);
+        }
+        assertEquals(3, server.getRequests().size());
+        assertEquals(3, server.getNumberOfConnections());
+    }
+
+    public void testReleasingNullDoesNothing() {
+        transport.releaseConnection(null);
+    }
+
+    public void testAbortingClosesTheConnection() throws IOException {
+        for (int i = 0; i < 2; i += 1) {
+            final HttpURLConnection urlConnection = transport.openConnection(new URL(server.getUrl() + "/ok"));
+            assertEquals(200, urlConnection.getResponseCode());
+            transport.abortConnection(urlConnection);
+        }
+        assertEquals(2, server.getRequests().size());
+        assertEquals(2, server.getNumberOfConnections());
+    }
+
+    public void testApiRequestsAbortTheConnectionWhenTheRequestFails() {
+        final PushParameters parameters = new PushParameters("TEST_PLATFORM_UUID", "TEST_PLATFORM_SECRET", server.getUrl(), "android",
+                "TEST_DEVICE_ALIAS", null, null, true, true, Pivotal.SslCertValidationMode.DEFAULT, null, null);
+        final AtomicInteger numberOfReleases = new AtomicInteger();
+        final AtomicInteger numberOfAborts = new AtomicInteger();
+        final NetworkWrapper networkWrapper = new FakeNetworkWrapper() {
+            @Override
+            public void releaseHttpURLConnection(HttpURLConnection urlConnection) {
+                numberOfReleases.incrementAndGet();
+            }
+
+            @Override
+            public void abortHttpURLConnection(HttpURLConnection urlConnection) {
+                numberOfAborts.incrementAndGet();
+            }
+        };
+        FakeHttpURLConnection.setConnectionException(new IOException("fake connection failure"));
+        FakeHttpURLConnection.willThrowConnectionException(true);
+
+        final AtomicInteger numberOfFailures = new AtomicInteger();
+        final PCFPushUnregisterDeviceApiRequestImpl request = new PCFPushUnregisterDeviceApiRequestImpl(getContext(), networkWrapper);
+        request.startUnregisterDevice("DEVICE_REGISTRATION_ID", parameters, new PCFPushUnregisterDeviceListener() {
+            @Override
+            public void onPCFPushUnregisterDeviceSuccess() {
+                fail("Unregistration should have failed");
+            }
+
+            @Override
+            public void onPCFPushUnregisterDeviceFailed(String reason) {
+                numberOfFailures.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, numberOfFailures.get());
+        assertEquals(0, numberOfReleases.get());
+        assertEquals(1, numberOfAborts.get());
+    }
+
+    public void testApiRequestsShareTheConnection() {
+        final PushParameters parameters = new PushParameters("TEST_PLATFORM_UUID", "TEST_PLATFORM_SECRET", server.getUrl(), "android",
+                "TEST_DEVICE_ALIAS", null, null, true, true, Pivotal.SslCertValidationMode.DEFAULT, null, null);
+        final AtomicInteger numberOfSuccesses = new AtomicInteger();
+        final PCFPushUnregisterDeviceListener listener = new PCFPushUnregisterDeviceListener() {
+            @Override
+            public void onPCFPushUnregisterDeviceSuccess() {
+                numberOfSuccesses.incrementAndGet();
+            }
+
+            @Override
+            public void onPCFPushUnregisterDeviceFailed(String reason) {
+                fail("Unregistration should have succeeded: " + reason);
+            }
+        };
+
+        for (int i = 0; i < 3; i += 1) {
+            final PCFPushUnregisterDeviceApiRequestImpl request = new PCFPushUnregisterDeviceApiRequestImpl(getContext(), new NetworkWrapperImpl());
+            request.startUnregisterDevice("DEVICE_REGISTRATION_ID_" + i, parameters, listener);
+        }
+
+        assertEquals(3, numberOfSuccesses.get());
+        assertEquals(3, server.getRequests().size());
+        assertEquals(1, server.getNumberOfConnections());
+    }
+
+    public void testNetworkWrapperRequiresTransport() {
+        try {
+            new NetworkWrapperImpl(null);
+            fail("Should not have succeeded");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    private static String readResponse(HttpURLConnection urlConnection) throws IOException {
+        final InputStream inputStream = urlConnection.getInputStream();
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[256];
+            for (int n = inputStream.read(buffer); n >= 0; n = inputStream.read(buffer)) {
+                outputStream.write(buffer, 0, n);
+            }
+            return outputStream.toString("UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package io.pivotal.android.push.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface that stands in for the back-end server in tests.
+ * It records the headers and the raw (possibly compressed) body of every request it receives, and answers
+ * each one with the status code returned by its {@link Responder}.  Chunked and fixed-length request bodies
+ * are both supported.  Every connection is closed after one request unless keep-alive is turned on, in which
+ * case each connection is served on its own thread until the client closes it.
+ */
+public class LocalHttpServer {
+
+    public interface Responder {
+        int getStatusCode(Request request);
+    }
+
+    public static class Request {
+        public final String requestLine;
+        public final Map<String, String> headers;
+        public final byte[] body;
+
+        Request(String requestLine, Map<String, String> headers, byte[] body) {
+            this.requestLine = requestLine;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final Responder responder;
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+    private final Map<String, String> responseHeaders = Collections.synchronizedMap(new HashMap<String, String>());
+    private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+    private final AtomicInteger numberOfConnections = new AtomicInteger();
+    private final Thread thread;
+    private volatile boolean isKeepAlive;
+    private volatile byte[] responseBody = new byte[0];
+
+    public LocalHttpServer(Responder responder) throws IOException {
+        this.responder = responder;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "LocalHttpServer");
+        this.thread.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    // Adds a header to every response
+    public void setResponseHeader(String name, String value) {
+        responseHeaders.put(name, value);
+    }
+
+    public void setKeepAlive(boolean isKeepAlive) {
+        this.isKeepAlive = isKeepAlive;
+    }
+
+    // Sends the given body with every response
+    public void setResponseBody(String responseBody) throws IOException {
+        this.responseBody = responseBody.getBytes("UTF-8");
+    }
+
+    // The number of TCP connections that clients have opened to the server
+    public int getNumberOfConnections() {
+        return numberOfConnections.get();
+    }
+
+    public List<Request> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    public void shutdown() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {}
+        synchronized (sockets) {
+            for (final Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {}
+            }
+        }
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {}
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // The server was shut down
+                return;
+            }
+            numberOfConnections.incrementAndGet();
+            sockets.add(socket);
+            if (isKeepAlive) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                }, "LocalHttpServer connection").start();
+            } else {
+                serveConnection(socket);
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            final InputStream in = socket.getInputStream();
+            while (handleRequest(socket, in)) {
+            }
+        } catch (IOException e) {
+            // The server was shut down, or the client went away
+        } finally {
+            sockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    // Returns true if the connection is kept open for another request
+    private boolean handleRequest(Socket socket, InputStream in) throws IOException {
+        final boolean isKeepAlive = this.isKeepAlive;
+        final String requestLine = readLine(in);
+        final Map<String, String> headers = new HashMap<>();
+        for (String line = readLine(in); line.length() > 0; line = readLine(in)) {
+            final int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+
+        final byte[] body;
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            body = readChunkedBody(in);
+        } else if (headers.containsKey("content-length")) {
+            body = readBytes(in, Integer.parseInt(headers.get("content-length")));
+        } else {
+            body = new byte[0];
+        }
+
+        final Request request = new Request(requestLine, headers, body);
+        requests.add(request);
+
+        final int statusCode = responder.getStatusCode(request);
+        final OutputStream out = socket.getOutputStream();
+        final StringBuilder response = new StringBuilder("HTTP/1.1 " + statusCode + " Status\r\n");
+        synchronized (responseHeaders) {
+            for (Map.Entry<String, String> header : responseHeaders.entrySet()) {
+                response.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        final byte[] responseBody = this.responseBody;
+        response.append("Content-Length: ").append(responseBody.length).append("\r\n");
+        response.append(isKeepAlive ? "Connection: keep-alive\r\n\r\n" : "Connection: close\r\n\r\n");
+        out.write(response.toString().getBytes("US-ASCII"));
+        out.write(responseBody);
+        out.flush();
+        return isKeepAlive;
+    }
+
+    private static byte[] readChunkedBody(InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            final String sizeLine = readLine(in);
+            final int semicolon = sizeLine.indexOf(';');
+            final int size = Integer.parseInt((semicolon >= 0 ? sizeLine.substring(0, semicolon) : sizeLine).trim(), 16);
+            if (size == 0) {
+                // Skip any trailers
+                while (readLine(in).length() > 0) {
+                }
+                return body.toByteArray();
+            }
+            body.write(readBytes(in, size));
+            readLine(in);
+        }
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            final int numberOfBytesRead = in.read(bytes, offset, length - offset);
+            if (numberOfBytesRead < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+            offset += numberOfBytesRead;
+        }
+        return bytes;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        while (true) {
+            final int c = in.read();
+            if (c < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r') {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+}
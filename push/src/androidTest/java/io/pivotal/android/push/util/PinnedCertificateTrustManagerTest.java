@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import android.test.AndroidTestCase;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import javax.net.ssl.SSLSocketFactory;
+
+public class PinnedCertificateTrustManagerTest extends AndroidTestCase {
+
+    // The certificate of push.example.com is issued by the test CA
+    private static final String CA_CERTIFICATE = "test_ca_certificate.pem";
+    private static final String SERVER_CERTIFICATE = "test_server_certificate.pem";
+
+    // The base64-encoded SHA-256 hash of the SubjectPublicKeyInfo of the server certificate, as worked out by
+    // openssl x509 -pubkey -noout | openssl pkey -pubin -outform der | openssl dgst -sha256 -binary | base64
+    private static final String SERVER_CERTIFICATE_PIN = "5HUQDqpyb54t+jM7Jmq9cdKvLGvKnWLKJkMEkYYqHB4=";
+
+    private X509Certificate caCertificate;
+    private X509Certificate serverCertificate;
+    private X509Certificate[] serverChain;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        caCertificate = readCertificate(CA_CERTIFICATE);
+        serverCertificate = readCertificate(SERVER_CERTIFICATE);
+        serverChain = new X509Certificate[] { serverCertificate, caCertificate };
+        SslSocketFactoryCache.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SslSocketFactoryCache.reset();
+        super.tearDown();
+    }
+
+    public void testPinIsTheSha256HashOfTheSubjectPublicKeyInfo() throws Exception {
+        final byte[] pin = PinnedCertificateTrustManager.getPin(serverCertificate.getPublicKey());
+        assertEquals(SERVER_CERTIFICATE_PIN, Base64.encodeToString(pin, Base64.NO_WRAP));
+    }
+
+    public void testTrustsTheServerWhenItsCertificateIsPinned() throws Exception {
+        final PinnedCertificateTrustManager trustManager = new PinnedCertificateTrustManager(getKeyStore(caCertificate, serverCertificate));
+        trustManager.checkServerTrusted(serverChain, "ECDHE_RSA");
+    }
+
+    public void testDoesNotTrustTheServerWhenOnlyItsIssuerIsPinned() throws Exception {
+        final PinnedCertificateTrustManager trustManager = new PinnedCertificateTrustManager(getKeyStore(caCertificate));
+        try {
+            trustManager.checkServerTrusted(serverChain, "ECDHE_RSA");
+            fail("Should not have succeeded");
+        } catch (CertificateException e) {
+            // Success
+        }
+    }
+
+    public void testDoesNotTrustAChainThatDoesNotLeadToAPinnedCertificate() throws Exception {
+        final PinnedCertificateTrustManager trustManager = new PinnedCertificateTrustManager(getKeyStore(serverCertificate));
+        try {
+            trustManager.checkServerTrusted(new X509Certificate[] { caCertificate }, "ECDHE_RSA");
+            fail("Should not have succeeded");
+        } catch (CertificateException e) {
+            // Success
+        }
+    }
+
+    public void testRequiresChain() throws Exception {
+        final PinnedCertificateTrustManager trustManager = new PinnedCertificateTrustManager(getKeyStore(serverCertificate));
+        try {
+            trustManager.checkServerTrusted(new X509Certificate[0], "ECDHE_RSA");
+            fail("Should not have succeeded");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    public void testCachesThePinnedSocketFactory() throws Exception {
+        final SSLSocketFactory socketFactory = SslSocketFactoryCache.getPinnedSocketFactory(getContext(), Arrays.asList(CA_CERTIFICATE, SERVER_CERTIFICATE));
+        assertSame(socketFactory, SslSocketFactoryCache.getPinnedSocketFactory(getContext(), Arrays.asList(CA_CERTIFICATE, SERVER_CERTIFICATE)));
+        assertNotSame(socketFactory, SslSocketFactoryCache.getPinnedSocketFactory(getContext(), Arrays.asList(SERVER_CERTIFICATE)));
+    }
+
+    public void testDoesNotCacheWhenACertificateCanNotBeRead() throws Exception {
+        for (int i = 0; i < 2; i += 1) {
+            try {
+                SslSocketFactoryCache.getPinnedSocketFactory(getContext(), Arrays.asList(CA_CERTIFICATE, "missing_certificate.der"));
+                fail("Should not have succeeded");
+            } catch (IOException e) {
+                // Success
+            }
+        }
+    }
+
+    public void testCachesTheTrustAllSocketFactory() throws Exception {
+        final SSLSocketFactory socketFactory = SslSocketFactoryCache.getTrustAllSocketFactory();
+        assertSame(socketFactory, SslSocketFactoryCache.getTrustAllSocketFactory());
+    }
+
+    private X509Certificate readCertificate(String assetName) throws IOException, GeneralSecurityException {
+        final InputStream inputStream = getContext().getAssets().open(assetName);
+        try {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static KeyStore getKeyStore(X509Certificate... certificates) throws IOException, GeneralSecurityException {
+        final KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        for (int i = 0; i < certificates.length; i += 1) {
+            keyStore.setCertificateEntry(String.valueOf(i), certificates[i]);
+        }
+        return keyStore;
+    }
+}
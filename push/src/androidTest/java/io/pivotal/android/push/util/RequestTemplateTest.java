@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import android.test.AndroidTestCase;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.pivotal.android.push.PushParameters;
+import io.pivotal.android.push.prefs.Pivotal;
+
+public class RequestTemplateTest extends AndroidTestCase {
+
+    private static final String TEST_SERVICE_URL = "http://test.com";
+    private static final Map<String, String> TEST_REQUEST_HEADERS = Collections.singletonMap("CUSTOM_HEADER", "CUSTOM_VALUE");
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        RequestTemplate.reset();
+        FakeHttpURLConnection.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        RequestTemplate.reset();
+        FakeHttpURLConnection.reset();
+        super.tearDown();
+    }
+
+    public void testReusesTheTemplateForTheSameSettings() {
+        final RequestTemplate template1 = RequestTemplate.getInstance(getContext(), getParameters("SECRET", TEST_REQUEST_HEADERS, Pivotal.SslCertValidationMode.DEFAULT));
+        final RequestTemplate template2 = RequestTemplate.getInstance(getContext(), getParameters("SECRET", new HashMap<>(TEST_REQUEST_HEADERS), Pivotal.SslCertValidationMode.DEFAULT));
+        assertSame(template1, template2);
+    }
+
+    public void testIgnoresTheTagsAndDeviceAlias() {
+        final Set<String> tags = new HashSet<>();
+        tags.add("TAG");
+        final PushParameters otherParameters = new PushParameters("PLATFORM_UUID", "SECRET", TEST_SERVICE_URL, "android",
+                "OTHER_DEVICE_ALIAS", "CUSTOM_USER_ID", tags, true, true, Pivotal.SslCertValidationMode.DEFAULT, null, TEST_REQUEST_HEADERS);
+
+        final RequestTemplate template1 = RequestTemplate.getInstance(getContext(), getParameters("SECRET", TEST_REQUEST_HEADERS, Pivotal.SslCertValidationMode.DEFAULT));
+        final RequestTemplate template2 = RequestTemplate.getInstance(getContext(), otherParameters);
+        assertSame(template1, template2);
+    }
+
+    public void testRebuildsTheTemplateWhenTheSecretChanges() {
+        final RequestTemplate template1 = RequestTemplate.getInstance(getContext(), getParameters("SECRET", null, Pivotal.SslCertValidationMode.DEFAULT));
+        final RequestTemplate template2 = RequestTemplate.getInstance(getContext(), getParameters("OTHER_SECRET", null, Pivotal.SslCertValidationMode.DEFAULT));
+        assertNotSame(template1, template2);
+        assertEquals(ApiRequestImpl.getBasicAuthorizationValue(getParameters("OTHER_SECRET", null, Pivotal.SslCertValidationMode.DEFAULT)), template2.getAuthorizationValue());
+    }
+
+    public void testRebuildsTheTemplateWhenTheRequestHeadersChange() {
+        final RequestTemplate template1 = RequestTemplate.getInstance(getContext(), getParameters("SECRET", null, Pivotal.SslCertValidationMode.DEFAULT));
+        final RequestTemplate template2 = RequestTemplate.getInstance(getContext(), getParameters("SECRET", TEST_REQUEST_HEADERS, Pivotal.SslCertValidationMode.DEFAULT));
+        assertNotSame(template1, template2);
+    }
+
+    public void testAuthorizationValue() {
+        final PushParameters parameters = getParameters("SECRET", null, Pivotal.SslCertValidationMode.DEFAULT);
+        final RequestTemplate template = RequestTemplate.getInstance(getContext(), parameters);
+        assertEquals(ApiRequestImpl.getBasicAuthorizationValue(parameters), template.getAuthorizationValue());
+    }
+
+    public void testUrls() throws MalformedURLException {
+        final RequestTemplate template = RequestTemplate.getInstance(getContext(), getParameters("SECRET", null, Pivotal.SslCertValidationMode.DEFAULT));
+        assertEquals(TEST_SERVICE_URL, template.getServiceUrl());
+        assertEquals(new URL(TEST_SERVICE_URL + "/" + Const.PCF_PUSH_REGISTRATION_REQUEST_ENDPOINT), template.getRegistrationUrl());
+        assertEquals(new URL(TEST_SERVICE_URL + "/" + Const.PCF_PUSH_REGISTRATION_REQUEST_ENDPOINT + "/DEVICE_ID"), template.getDeviceRegistrationUrl("DEVICE_ID"));
+        assertEquals(new URL(TEST_SERVICE_URL + "/" + Const.PCF_PUSH_ANALYTICS_REQUEST_ENDPOINT), template.getAnalyticsUrl());
+    }
+
+    public void testMalformedServiceUrl() {
+        final PushParameters parameters = new PushParameters("PLATFORM_UUID", "SECRET", "not a url", "android",
+                null, null, null, true, true, Pivotal.SslCertValidationMode.DEFAULT, null, null);
+        final RequestTemplate template = RequestTemplate.getInstance(getContext(), parameters);
+        try {
+            template.getRegistrationUrl();
+            fail("Should not have succeeded");
+        } catch (MalformedURLException e) {
+            // Success
+        }
+    }
+
+    public void testApplyAddsTheRequestHeaders() throws Exception {
+        final RequestTemplate template = RequestTemplate.getInstance(getContext(), getParameters("SECRET", TEST_REQUEST_HEADERS, Pivotal.SslCertValidationMode.DEFAULT));
+        template.apply(new FakeHttpURLConnection(new URL(TEST_SERVICE_URL)));
+        assertEquals("CUSTOM_VALUE", FakeHttpURLConnection.getRequestPropertiesMap().get("CUSTOM_HEADER"));
+        assertFalse(FakeHttpURLConnection.didCallSetSSLSocketFactory());
+    }
+
+    public void testApplySetsTheSocketFactoryWhenTrustingAllCertificates() throws Exception {
+        final RequestTemplate template = RequestTemplate.getInstance(getContext(), getParameters("SECRET", null, Pivotal.SslCertValidationMode.TRUST_ALL));
+        template.apply(new FakeHttpURLConnection(new URL(TEST_SERVICE_URL)));
+        assertTrue(FakeHttpURLConnection.didCallSetSSLSocketFactory());
+    }
+
+    private static PushParameters getParameters(String platformSecret, Map<String, String> requestHeaders, Pivotal.SslCertValidationMode sslCertValidationMode) {
+        return new PushParameters("PLATFORM_UUID", platformSecret, TEST_SERVICE_URL, "android",
+                "DEVICE_ALIAS", null, null, true, true, sslCertValidationMode, null, requestHeaders);
+    }
+}
@@ -32,6 +32,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import io.pivotal.android.push.analytics.AnalyticsEventLogger;
+import io.pivotal.android.push.analytics.AnalyticsMetrics;
+import io.pivotal.android.push.analytics.AnalyticsMetricsRecorder;
 import io.pivotal.android.push.prefs.Pivotal;
 import io.pivotal.android.push.prefs.PushRequestHeaders;
 import io.pivotal.android.push.baidu.RegistrationEngine;
@@ -436,4 +438,17 @@ public class Push {
         return BuildConfig.VERSION_NAME;
     }
 
+    /**
+     * Call this method to read the metrics of the analytics pipeline: how many events have been logged, saved, evicted and
+     * sent since the process started, how many are waiting to be sent, how large the events database is, and how long
+     * logging, saving and sending the events took.
+     *
+     * The number of waiting events may need a query of the events database, so do not call this method on the main thread.
+     *
+     * @return a snapshot of the analytics metrics
+     */
+    public AnalyticsMetrics getAnalyticsMetrics() {
+        return AnalyticsMetricsRecorder.getMetrics();
+    }
+
 }
@@ -3,10 +3,17 @@ package io.pivotal.android.push.baidu;
 import android.content.Context;
 import com.baidu.android.pushservice.PushMessageReceiver;
 import io.pivotal.android.push.Push;
+import io.pivotal.android.push.analytics.AnalyticsEventBuffer;
 import io.pivotal.android.push.prefs.PushPreferencesBaidu;
 import io.pivotal.android.push.util.Logger;
 import java.util.List;
 
+/**
+ * Receives the messages from the Baidu push service.  The process may be stopped as soon as a broadcast has been
+ * handled, so any analytics events that were buffered while handling it are handed to the analytics service
+ * before each callback returns.  Subclasses that override the message and notification callbacks should call
+ * the super method.
+ */
 public class BaiduPushReceiver extends PushMessageReceiver {
 
     @Override
@@ -41,15 +48,22 @@ public class BaiduPushReceiver extends PushMessageReceiver {
     @Override
     public void onMessage(Context context, String message, String customContentString) {
         Logger.d("onMessage: message: " + message + ", custom content: " + customContentString);
+        flushAnalyticsEvents();
     }
 
     @Override
     public void onNotificationClicked(Context context, String title, String description, String customContentString) {
         Logger.d(String.format("onNotificationClicked - title: %s, description: %s, customContentString: %s", title, description, customContentString));
+        flushAnalyticsEvents();
     }
 
     @Override
     public void onNotificationArrived(Context context, String title, String description, String customContentString) {
         Logger.d("onNotificationArrived - title: " + title + ", description: " + description + ", customContentString: " + customContentString);
+        flushAnalyticsEvents();
+    }
+
+    private void flushAnalyticsEvents() {
+        AnalyticsEventBuffer.getInstance().flushToService();
     }
 }
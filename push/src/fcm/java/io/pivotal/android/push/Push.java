@@ -28,6 +28,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import io.pivotal.android.push.analytics.AnalyticsEventLogger;
+import io.pivotal.android.push.analytics.AnalyticsMetrics;
+import io.pivotal.android.push.analytics.AnalyticsMetricsRecorder;
 import io.pivotal.android.push.analytics.jobs.PrepareDatabaseJob;
 import io.pivotal.android.push.backend.api.PCFPushUnregisterDeviceApiRequest;
 import io.pivotal.android.push.backend.api.PCFPushUnregisterDeviceApiRequestImpl;
@@ -528,6 +530,19 @@ public class Push {
         return BuildConfig.VERSION_NAME;
     }
 
+    /**
+     * Call this method to read the metrics of the analytics pipeline: how many events have been logged, saved, evicted and
+     * sent since the process started, how many are waiting to be sent, how large the events database is, and how long
+     * logging, saving and sending the events took.
+     *
+     * The number of waiting events may need a query of the events database, so do not call this method on the main thread.
+     *
+     * @return a snapshot of the analytics metrics
+     */
+    public AnalyticsMetrics getAnalyticsMetrics() {
+        return AnalyticsMetricsRecorder.getMetrics();
+    }
+
     /**
      * Call this method to read the current geofence monitoring status.  If an error occurs while geofences are being updated in the background
      * then this status object is the only way to check the status at runtime.  A BroadcastReceiver is triggered whenever this geofence status
@@ -10,6 +10,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import io.pivotal.android.push.analytics.AnalyticsEventBuffer;
 import io.pivotal.android.push.analytics.AnalyticsEventLogger;
 import io.pivotal.android.push.service.GeofenceService;
 import io.pivotal.android.push.util.Logger;
@@ -55,6 +56,14 @@ public class FcmMessagingService extends FirebaseMessagingService {
         handleReceivedMessage(remoteMessage.getNotification(), new HashMap<>(remoteMessage.getData()));
     }
 
+    // The process may be stopped soon after the service is destroyed, so hand any buffered analytics
+    // events to the analytics service now.
+    @Override
+    public void onDestroy() {
+        AnalyticsEventBuffer.getInstance().flushToService();
+        super.onDestroy();
+    }
+
     @Override
     public final void onDeletedMessages() {
         super.onDeletedMessages();
@@ -13,6 +13,7 @@ import com.google.android.gms.location.Geofence;
 import io.pivotal.android.push.prefs.PushPreferencesFCM;
 import java.util.Map;
 
+import io.pivotal.android.push.analytics.AnalyticsEventBuffer;
 import io.pivotal.android.push.analytics.AnalyticsEventLogger;
 import io.pivotal.android.push.backend.geofence.PCFPushGetGeofenceUpdatesApiRequest;
 import io.pivotal.android.push.geofence.GeofenceEngine;
@@ -71,6 +72,14 @@ public class GeofenceService extends IntentService {
         return GeofenceService.class;
     }
 
+    // The process may be stopped soon after the service is destroyed, so hand any buffered analytics
+    // events to the analytics service now.
+    @Override
+    public void onDestroy() {
+        AnalyticsEventBuffer.getInstance().flushToService();
+        super.onDestroy();
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
         Logger.setup(this);
@@ -0,0 +1,227 @@
+package io.pivotal.android.push.analytics;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.pivotal.android.push.analytics.jobs.EnqueueAnalyticsEventJob;
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.service.AnalyticsEventService;
+import io.pivotal.android.push.util.Logger;
+import io.pivotal.android.push.util.ServiceStarter;
+
+/**
+ * A bounded, in-memory ring buffer of analytics events that have been logged but not yet handed to the
+ * {@link AnalyticsEventService}.
+ *
+ * Adding an event never blocks.  The buffered events are flushed to the service as a single
+ * {@link EnqueueAnalyticsEventJob}, which saves them in one transaction, followed by a request to the
+ * {@link SendAnalyticsEventsScheduler} to send them.  A flush happens when the number of buffered events reaches the flush
+ * threshold, or a short time after the first event was buffered.  If the buffer fills up before it can be
+ * flushed then the oldest events are dropped.
+ *
+ * The buffer is also flushed when the system asks the application to trim its memory, since the process
+ * may be killed soon afterwards.  Those flushes, and the ones made with {@link #flushToService()}, always
+ * start the {@link AnalyticsEventService} itself so that the events are not left in an in-process job queue
+ * that dies with the process.
+ */
+public class AnalyticsEventBuffer {
+
+    public static final int DEFAULT_CAPACITY = 500;
+    public static final int DEFAULT_FLUSH_THRESHOLD = 50;
+    public static final long DEFAULT_FLUSH_DELAY_IN_MILLISECONDS = 2000L;
+
+    private static AnalyticsEventBuffer instance;
+
+    private final Object lock = new Object();
+    private final AnalyticsEvent[] ring;
+    private final int flushThreshold;
+    private final long flushDelayInMilliseconds;
+    private final SendAnalyticsEventsScheduler scheduler;
+    private final Handler handler;
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private int head = 0;
+    private int size = 0;
+    private int numberOfDroppedEvents = 0;
+    private boolean isFlushScheduled = false;
+    private boolean areComponentCallbacksRegistered = false;
+    private Context context;
+    private ServiceStarter serviceStarter;
+
+    public static AnalyticsEventBuffer getInstance() {
+        synchronized (AnalyticsEventBuffer.class) {
+            if (instance == null) {
+                instance = new AnalyticsEventBuffer(DEFAULT_CAPACITY, DEFAULT_FLUSH_THRESHOLD, DEFAULT_FLUSH_DELAY_IN_MILLISECONDS);
+            }
+            return instance;
+        }
+    }
+
+    public AnalyticsEventBuffer(int capacity, int flushThreshold, long flushDelayInMilliseconds) {
+        this(capacity, flushThreshold, flushDelayInMilliseconds, SendAnalyticsEventsScheduler.getInstance());
+    }
+
+    public AnalyticsEventBuffer(int capacity, int flushThreshold, long flushDelayInMilliseconds, SendAnalyticsEventsScheduler scheduler) {
+        verifyArguments(capacity, flushThreshold, flushDelayInMilliseconds, scheduler);
+        this.ring = new AnalyticsEvent[capacity];
+        this.flushThreshold = flushThreshold;
+        this.flushDelayInMilliseconds = flushDelayInMilliseconds;
+        this.scheduler = scheduler;
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    private void verifyArguments(int capacity, int flushThreshold, long flushDelayInMilliseconds, SendAnalyticsEventsScheduler scheduler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+        if (flushThreshold <= 0 || flushThreshold > capacity) {
+            throw new IllegalArgumentException("flushThreshold must be greater than zero and no more than the capacity");
+        }
+        if (flushDelayInMilliseconds < 0) {
+            throw new IllegalArgumentException("flushDelayInMilliseconds may not be negative");
+        }
+        if (scheduler == null) {
+            throw new IllegalArgumentException("scheduler may not be null");
+        }
+    }
+
+    /**
+     * Adds the given event to the buffer.  The event will be handed to the {@link AnalyticsEventService}
+     * with the given context and service starter when the buffer is flushed.
+     */
+    public void add(AnalyticsEvent event, Context context, ServiceStarter serviceStarter) {
+        final boolean shouldFlushNow;
+        synchronized (lock) {
+            this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+            this.serviceStarter = serviceStarter;
+            registerComponentCallbacks();
+
+            if (size == ring.length) {
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size -= 1;
+                numberOfDroppedEvents += 1;
+                AnalyticsMetricsRecorder.eventsDropped(1);
+            }
+            ring[(head + size) % ring.length] = event;
+            size += 1;
+
+            shouldFlushNow = size >= flushThreshold;
+            if (!shouldFlushNow && !isFlushScheduled) {
+                isFlushScheduled = true;
+                handler.postDelayed(flushRunnable, flushDelayInMilliseconds);
+            }
+        }
+        if (shouldFlushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands all of the buffered events to the {@link AnalyticsEventService}.
+     *
+     * @return the number of events flushed.
+     */
+    public int flush() {
+        return flush(false);
+    }
+
+    /**
+     * Hands all of the buffered events to the {@link AnalyticsEventService}, making sure that the service
+     * itself is started rather than the job being run in the process.  Use this from components that are about
+     * to be torn down: the started service keeps the process alive until the events have been saved.
+     *
+     * @return the number of events flushed.
+     */
+    public int flushToService() {
+        return flush(true);
+    }
+
+    private int flush(boolean isServiceRequired) {
+        final List<AnalyticsEvent> events;
+        final Context flushContext;
+        final ServiceStarter flushServiceStarter;
+        final int droppedEvents;
+        synchronized (lock) {
+            if (isFlushScheduled) {
+                handler.removeCallbacks(flushRunnable);
+                isFlushScheduled = false;
+            }
+            if (size == 0) {
+                return 0;
+            }
+            events = new ArrayList<>(size);
+            for (int i = 0; i < size; i += 1) {
+                final int index = (head + i) % ring.length;
+                events.add(ring[index]);
+                ring[index] = null;
+            }
+            head = 0;
+            size = 0;
+            droppedEvents = numberOfDroppedEvents;
+            numberOfDroppedEvents = 0;
+            flushContext = context;
+            flushServiceStarter = serviceStarter;
+        }
+
+        if (droppedEvents > 0) {
+            Logger.w("AnalyticsEventBuffer: dropped " + droppedEvents + " event(s) because the buffer was full.");
+        }
+        Logger.fd("AnalyticsEventBuffer: flushing %d event(s).", events.size());
+        startService(flushContext, flushServiceStarter, new EnqueueAnalyticsEventJob(events), isServiceRequired);
+        scheduler.requestSend(flushContext, flushServiceStarter);
+        return events.size();
+    }
+
+    public int getNumberOfBufferedEvents() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    private static void startService(Context context, ServiceStarter serviceStarter, EnqueueAnalyticsEventJob job, boolean isServiceRequired) {
+        final Intent intent = AnalyticsEventService.getIntentToRunJob(context, job);
+        if (isServiceRequired) {
+            intent.putExtra(AnalyticsEventService.KEY_SERVICE_REQUIRED, true);
+        }
+        serviceStarter.startService(context, intent);
+    }
+
+    // Flushes the buffer when the process is likely to be killed soon.
+    private void registerComponentCallbacks() {
+        if (areComponentCallbacksRegistered) {
+            return;
+        }
+        areComponentCallbacksRegistered = true;
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                    flushToService();
+                }
+            }
+
+            @Override
+            public void onLowMemory() {
+                flushToService();
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+    }
+}
@@ -1,7 +1,6 @@
 package io.pivotal.android.push.analytics;
 
 import android.content.Context;
-import android.content.Intent;
 
 import io.pivotal.android.push.prefs.PushPreferences;
 import java.util.Date;
@@ -9,10 +8,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import io.pivotal.android.push.BuildConfig;
-import io.pivotal.android.push.analytics.jobs.EnqueueAnalyticsEventJob;
-import io.pivotal.android.push.analytics.jobs.SendAnalyticsEventsJob;
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
-import io.pivotal.android.push.service.AnalyticsEventService;
 import io.pivotal.android.push.util.Logger;
 import io.pivotal.android.push.util.ServiceStarter;
 
@@ -26,10 +22,19 @@ public class AnalyticsEventLogger {
     private Context context;
     private ServiceStarter serviceStarter;
     private PushPreferences preferencesProvider;
+    private AnalyticsEventBuffer eventBuffer;
 
     public AnalyticsEventLogger(ServiceStarter serviceStarter, PushPreferences preferencesProvider, Context context) {
+        this(serviceStarter, preferencesProvider, context, AnalyticsEventBuffer.getInstance());
+    }
+
+    public AnalyticsEventLogger(ServiceStarter serviceStarter, PushPreferences preferencesProvider, Context context, AnalyticsEventBuffer eventBuffer) {
         verifyArguments(serviceStarter, preferencesProvider, context);
+        if (eventBuffer == null) {
+            throw new IllegalArgumentException("eventBuffer may not be null");
+        }
         saveArguments(serviceStarter, preferencesProvider, context);
+        this.eventBuffer = eventBuffer;
     }
 
     private void verifyArguments(ServiceStarter serviceStarter, PushPreferences preferencesProvider, Context context) {
@@ -81,9 +86,11 @@ public class AnalyticsEventLogger {
 
     public void logEvent(String eventType, Map<String, String> fields) {
         if (preferencesProvider.areAnalyticsEnabled()) {
+            final long start = System.nanoTime();
             final AnalyticsEvent event = getEvent(eventType, fields);
-            enqueueAnalyticsEventJob(event);
-            enqueueSendEventsJob();
+            Logger.i("Logging analytics event: " + event);
+            eventBuffer.add(event, context, serviceStarter);
+            AnalyticsMetricsRecorder.eventLogged(System.nanoTime() - start);
         } else {
             Logger.w("Event not logged. Analytics is either not set up or disabled.");
         }
@@ -104,17 +111,18 @@ public class AnalyticsEventLogger {
         return event;
     }
 
-    private void enqueueAnalyticsEventJob(AnalyticsEvent event) {
-        Logger.i("Logging analytics event: " + event);
-        final EnqueueAnalyticsEventJob job = new EnqueueAnalyticsEventJob(event);
-        final Intent intent = AnalyticsEventService.getIntentToRunJob(context, job);
-        serviceStarter.startService(context, intent);
+    /**
+     * Hands any buffered events to the analytics service right away.
+     */
+    public void flush() {
+        eventBuffer.flush();
     }
 
-    private void enqueueSendEventsJob() {
-        Logger.i("Enqueueing SendAnalyticsEventsJob.");
-        final SendAnalyticsEventsJob job = new SendAnalyticsEventsJob();
-        final Intent intent = AnalyticsEventService.getIntentToRunJob(context, job);
-        serviceStarter.startService(context, intent);
+    /**
+     * Hands any buffered events to the analytics service right away, starting the service itself.  Meant for
+     * components that are about to be destroyed.
+     */
+    public void flushToService() {
+        eventBuffer.flushToService();
     }
-}
\ No newline at end of file
+}
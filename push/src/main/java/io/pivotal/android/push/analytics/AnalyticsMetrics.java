@@ -0,0 +1,235 @@
+package io.pivotal.android.push.analytics;
+
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+
+/**
+ * A snapshot of the metrics of the analytics pipeline, as returned by <code>Push.getAnalyticsMetrics()</code>.
+ * The counts cover the life of the process.
+ */
+public class AnalyticsMetrics {
+
+    private final long numberOfLoggedEvents;
+    private final long numberOfDroppedEvents;
+    private final long numberOfSavedEvents;
+    private final long numberOfSuppressedDuplicates;
+    private final long numberOfEvictedEvents;
+    private final long numberOfUploadAttempts;
+    private final long numberOfUploadSuccesses;
+    private final long numberOfUploadFailures;
+    private final long numberOfUploadRejections;
+    private final int[] statuses;
+    private final int[] queueDepths;
+    private final long databaseFileSizeInBytes;
+    private final long databaseUsedSizeInBytes;
+    private final Histogram.Snapshot enqueueLatencyInMicroseconds;
+    private final Histogram.Snapshot insertLatencyInMilliseconds;
+    private final Histogram.Snapshot uploadSizeInBytes;
+    private final Histogram.Snapshot eventAgeAtUploadInSeconds;
+
+    public AnalyticsMetrics(long numberOfLoggedEvents,
+                            long numberOfDroppedEvents,
+                            long numberOfSavedEvents,
+                            long numberOfSuppressedDuplicates,
+                            long numberOfEvictedEvents,
+                            long numberOfUploadAttempts,
+                            long numberOfUploadSuccesses,
+                            long numberOfUploadFailures,
+                            long numberOfUploadRejections,
+                            int[] statuses,
+                            int[] queueDepths,
+                            long databaseFileSizeInBytes,
+                            long databaseUsedSizeInBytes,
+                            Histogram.Snapshot enqueueLatencyInMicroseconds,
+                            Histogram.Snapshot insertLatencyInMilliseconds,
+                            Histogram.Snapshot uploadSizeInBytes,
+                            Histogram.Snapshot eventAgeAtUploadInSeconds) {
+        this.numberOfLoggedEvents = numberOfLoggedEvents;
+        this.numberOfDroppedEvents = numberOfDroppedEvents;
+        this.numberOfSavedEvents = numberOfSavedEvents;
+        this.numberOfSuppressedDuplicates = numberOfSuppressedDuplicates;
+        this.numberOfEvictedEvents = numberOfEvictedEvents;
+        this.numberOfUploadAttempts = numberOfUploadAttempts;
+        this.numberOfUploadSuccesses = numberOfUploadSuccesses;
+        this.numberOfUploadFailures = numberOfUploadFailures;
+        this.numberOfUploadRejections = numberOfUploadRejections;
+        this.statuses = statuses;
+        this.queueDepths = queueDepths;
+        this.databaseFileSizeInBytes = databaseFileSizeInBytes;
+        this.databaseUsedSizeInBytes = databaseUsedSizeInBytes;
+        this.enqueueLatencyInMicroseconds = enqueueLatencyInMicroseconds;
+        this.insertLatencyInMilliseconds = insertLatencyInMilliseconds;
+        this.uploadSizeInBytes = uploadSizeInBytes;
+        this.eventAgeAtUploadInSeconds = eventAgeAtUploadInSeconds;
+    }
+
+    /**
+     * The number of events logged by the application and the SDK.
+     * @return the number of logged events.
+     */
+    public long getNumberOfLoggedEvents() {
+        return numberOfLoggedEvents;
+    }
+
+    /**
+     * The number of logged events that were dropped before they were saved because the event buffer was full.
+     * @return the number of dropped events.
+     */
+    public long getNumberOfDroppedEvents() {
+        return numberOfDroppedEvents;
+    }
+
+    /**
+     * The number of events saved in the events database.
+     * @return the number of saved events.
+     */
+    public long getNumberOfSavedEvents() {
+        return numberOfSavedEvents;
+    }
+
+    /**
+     * The number of events that were not saved because the same event was already stored.
+     * @return the number of suppressed duplicate events.
+     */
+    public long getNumberOfSuppressedDuplicates() {
+        return numberOfSuppressedDuplicates;
+    }
+
+    /**
+     * The number of events deleted by the eviction policies before they could be sent.
+     * @return the number of evicted events.
+     */
+    public long getNumberOfEvictedEvents() {
+        return numberOfEvictedEvents;
+    }
+
+    /**
+     * The number of requests made to send events to the server.
+     * @return the number of upload attempts.
+     */
+    public long getNumberOfUploadAttempts() {
+        return numberOfUploadAttempts;
+    }
+
+    /**
+     * The number of requests that the server accepted.
+     * @return the number of successful uploads.
+     */
+    public long getNumberOfUploadSuccesses() {
+        return numberOfUploadSuccesses;
+    }
+
+    /**
+     * The number of requests that failed, e.g. because of a network error or a server error.
+     * @return the number of failed uploads.
+     */
+    public long getNumberOfUploadFailures() {
+        return numberOfUploadFailures;
+    }
+
+    /**
+     * The number of requests that the server refused because of the events they held.
+     * @return the number of rejected uploads.
+     */
+    public long getNumberOfUploadRejections() {
+        return numberOfUploadRejections;
+    }
+
+    /**
+     * The number of stored events with the given status.
+     * @param status an {@link AnalyticsEvent.Status} value.
+     * @return the number of events with the given status, or -1 if it is not known.
+     */
+    public int getQueueDepth(int status) {
+        for (int i = 0; i < statuses.length; i += 1) {
+            if (statuses[i] == status) {
+                return queueDepths[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The number of stored events that are still waiting to be sent.
+     * @return the number of events waiting to be sent, or -1 if it is not known.
+     */
+    public int getQueueDepth() {
+        final int notPosted = getQueueDepth(AnalyticsEvent.Status.NOT_POSTED);
+        final int posting = getQueueDepth(AnalyticsEvent.Status.POSTING);
+        final int postingError = getQueueDepth(AnalyticsEvent.Status.POSTING_ERROR);
+        if (notPosted < 0 || posting < 0 || postingError < 0) {
+            return -1;
+        }
+        return notPosted + posting + postingError;
+    }
+
+    /**
+     * The size of the events database files on disk.
+     * @return the size of the database files in bytes, or -1 if it is not known.
+     */
+    public long getDatabaseFileSizeInBytes() {
+        return databaseFileSizeInBytes;
+    }
+
+    /**
+     * The space used by the data in the events database.  Unlike the file size, this goes down when events are deleted.
+     * @return the space used in bytes, or -1 if it is not known.
+     */
+    public long getDatabaseUsedSizeInBytes() {
+        return databaseUsedSizeInBytes;
+    }
+
+    /**
+     * How long it took to log an event, i.e. to hand it to the event buffer on the calling thread.
+     * @return the enqueue latencies, in microseconds.
+     */
+    public Histogram.Snapshot getEnqueueLatencyInMicroseconds() {
+        return enqueueLatencyInMicroseconds;
+    }
+
+    /**
+     * How long it took to save each batch of events in the events database.
+     * @return the insert latencies, in milliseconds.
+     */
+    public Histogram.Snapshot getInsertLatencyInMilliseconds() {
+        return insertLatencyInMilliseconds;
+    }
+
+    /**
+     * The number of bytes written to the network for each upload, after any compression.
+     * @return the upload sizes, in bytes.
+     */
+    public Histogram.Snapshot getUploadSizeInBytes() {
+        return uploadSizeInBytes;
+    }
+
+    /**
+     * The age of each event accepted by the server, from the time it was logged.
+     * @return the event ages, in seconds.
+     */
+    public Histogram.Snapshot getEventAgeAtUploadInSeconds() {
+        return eventAgeAtUploadInSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "AnalyticsMetrics{" +
+                "logged=" + numberOfLoggedEvents +
+                ", dropped=" + numberOfDroppedEvents +
+                ", saved=" + numberOfSavedEvents +
+                ", suppressedDuplicates=" + numberOfSuppressedDuplicates +
+                ", evicted=" + numberOfEvictedEvents +
+                ", uploadAttempts=" + numberOfUploadAttempts +
+                ", uploadSuccesses=" + numberOfUploadSuccesses +
+                ", uploadFailures=" + numberOfUploadFailures +
+                ", uploadRejections=" + numberOfUploadRejections +
+                ", queueDepth=" + getQueueDepth() +
+                ", quarantined=" + getQueueDepth(AnalyticsEvent.Status.QUARANTINED) +
+                ", databaseFileSize=" + databaseFileSizeInBytes +
+                ", databaseUsedSize=" + databaseUsedSizeInBytes +
+                ", enqueueLatencyUs={" + enqueueLatencyInMicroseconds + "}" +
+                ", insertLatencyMs={" + insertLatencyInMilliseconds + "}" +
+                ", uploadSizeBytes={" + uploadSizeInBytes + "}" +
+                ", eventAgeAtUploadS={" + eventAgeAtUploadInSeconds + "}" +
+                '}';
+    }
+}
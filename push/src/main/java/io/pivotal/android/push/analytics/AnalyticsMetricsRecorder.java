@@ -0,0 +1,173 @@
+package io.pivotal.android.push.analytics;
+
+import android.database.SQLException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.pivotal.android.push.database.DatabaseAnalyticsEventsStorage;
+import io.pivotal.android.push.database.DatabaseWrapper;
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.util.Logger;
+
+/**
+ * Counts what happens to analytics events on their way through the SDK, from the moment they are logged until
+ * they are sent to the server.  The counters and histograms are updated without taking a lock, so recording a
+ * value is cheap enough for the paths that log, save and send events.
+ *
+ * The values cover the life of the process.  They are read with {@link #getMetrics()}.
+ */
+public class AnalyticsMetricsRecorder {
+
+    // Microseconds
+    private static final long[] ENQUEUE_LATENCY_BUCKETS = new long[] { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    // Milliseconds
+    private static final long[] INSERT_LATENCY_BUCKETS = new long[] { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000 };
+
+    // Bytes
+    private static final long[] UPLOAD_SIZE_BUCKETS = new long[] { 1024, 4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024 };
+
+    // Seconds
+    private static final long[] EVENT_AGE_BUCKETS = new long[] { 10, 60, 5 * 60, 15 * 60, 60 * 60, 6 * 60 * 60, 24 * 60 * 60, 7 * 24 * 60 * 60 };
+
+    private static final int[] STATUSES = new int[] {
+            AnalyticsEvent.Status.NOT_POSTED,
+            AnalyticsEvent.Status.POSTING,
+            AnalyticsEvent.Status.POSTED,
+            AnalyticsEvent.Status.POSTING_ERROR,
+            AnalyticsEvent.Status.QUARANTINED
+    };
+
+    private static final AtomicLong numberOfLoggedEvents = new AtomicLong();
+    private static final AtomicLong numberOfDroppedEvents = new AtomicLong();
+    private static final AtomicLong numberOfSavedEvents = new AtomicLong();
+    private static final AtomicLong numberOfSuppressedDuplicates = new AtomicLong();
+    private static final AtomicLong numberOfEvictedEvents = new AtomicLong();
+    private static final AtomicLong numberOfUploadAttempts = new AtomicLong();
+    private static final AtomicLong numberOfUploadSuccesses = new AtomicLong();
+    private static final AtomicLong numberOfUploadFailures = new AtomicLong();
+    private static final AtomicLong numberOfUploadRejections = new AtomicLong();
+    private static final Histogram enqueueLatency = new Histogram(ENQUEUE_LATENCY_BUCKETS);
+    private static final Histogram insertLatency = new Histogram(INSERT_LATENCY_BUCKETS);
+    private static final Histogram uploadSize = new Histogram(UPLOAD_SIZE_BUCKETS);
+    private static final Histogram eventAgeAtUpload = new Histogram(EVENT_AGE_BUCKETS);
+
+    /**
+     * Records an event being logged, and how long it took to hand it to the event buffer.
+     */
+    public static void eventLogged(long elapsedNanos) {
+        numberOfLoggedEvents.incrementAndGet();
+        enqueueLatency.record(elapsedNanos / 1000L);
+    }
+
+    /**
+     * Records events being dropped because the event buffer was full.
+     */
+    public static void eventsDropped(int numberOfEvents) {
+        numberOfDroppedEvents.addAndGet(numberOfEvents);
+    }
+
+    /**
+     * Records a batch of events being saved in the database, and how long the transaction took.
+     */
+    public static void eventsSaved(int numberOfEvents, long elapsedNanos) {
+        numberOfSavedEvents.addAndGet(numberOfEvents);
+        insertLatency.record(elapsedNanos / 1000000L);
+    }
+
+    public static void duplicatesSuppressed(int numberOfEvents) {
+        numberOfSuppressedDuplicates.addAndGet(numberOfEvents);
+    }
+
+    public static void eventsEvicted(int numberOfEvents) {
+        numberOfEvictedEvents.addAndGet(numberOfEvents);
+    }
+
+    public static void uploadStarted() {
+        numberOfUploadAttempts.incrementAndGet();
+    }
+
+    public static void uploadSucceeded() {
+        numberOfUploadSuccesses.incrementAndGet();
+    }
+
+    public static void uploadFailed() {
+        numberOfUploadFailures.incrementAndGet();
+    }
+
+    public static void uploadRejected() {
+        numberOfUploadRejections.incrementAndGet();
+    }
+
+    /**
+     * Records the number of bytes written to the network for one upload, after any compression.
+     */
+    public static void uploadSent(long numberOfBytes) {
+        uploadSize.record(numberOfBytes);
+    }
+
+    /**
+     * Records the age of an event that the server accepted, from the time it was logged.
+     */
+    public static void eventUploaded(long ageInSeconds) {
+        eventAgeAtUpload.record(Math.max(ageInSeconds, 0));
+    }
+
+    /**
+     * Reads the metrics.  The queue depths are only known once the events database has been opened in this
+     * process; until then, or if the events cannot be counted, they are reported as -1.  The depths may need a query of the database, so this
+     * method should not be called on the main thread.
+     */
+    public static AnalyticsMetrics getMetrics() {
+        final int[] queueDepths = new int[STATUSES.length];
+        final boolean isDatabaseOpen = DatabaseWrapper.hasDatabaseInstance();
+        final DatabaseAnalyticsEventsStorage storage = new DatabaseAnalyticsEventsStorage();
+        for (int i = 0; i < STATUSES.length; i += 1) {
+            queueDepths[i] = isDatabaseOpen ? getQueueDepth(storage, STATUSES[i]) : -1;
+        }
+        return new AnalyticsMetrics(numberOfLoggedEvents.get(),
+                numberOfDroppedEvents.get(),
+                numberOfSavedEvents.get(),
+                numberOfSuppressedDuplicates.get(),
+                numberOfEvictedEvents.get(),
+                numberOfUploadAttempts.get(),
+                numberOfUploadSuccesses.get(),
+                numberOfUploadFailures.get(),
+                numberOfUploadRejections.get(),
+                STATUSES,
+                queueDepths,
+                isDatabaseOpen ? DatabaseWrapper.getFileSizeInBytes() : -1,
+                isDatabaseOpen ? DatabaseWrapper.getUsedSizeInBytes() : -1,
+                enqueueLatency.getSnapshot(),
+                insertLatency.getSnapshot(),
+                uploadSize.getSnapshot(),
+                eventAgeAtUpload.getSnapshot());
+    }
+
+    // Reports -1 if the events could not be counted
+    private static int getQueueDepth(DatabaseAnalyticsEventsStorage storage, int status) {
+        try {
+            return storage.countByStatus(status);
+        } catch (SQLException e) {
+            Logger.ex("Could not count the events in the database", e);
+            return -1;
+        }
+    }
+
+    // Used by unit tests
+    public static void reset() {
+        numberOfLoggedEvents.set(0);
+        numberOfDroppedEvents.set(0);
+        numberOfSavedEvents.set(0);
+        numberOfSuppressedDuplicates.set(0);
+        numberOfEvictedEvents.set(0);
+        numberOfUploadAttempts.set(0);
+        numberOfUploadSuccesses.set(0);
+        numberOfUploadFailures.set(0);
+        numberOfUploadRejections.set(0);
+        enqueueLatency.reset();
+        insertLatency.reset();
+        uploadSize.reset();
+        eventAgeAtUpload.reset();
+    }
+}
@@ -0,0 +1,170 @@
+package io.pivotal.android.push.analytics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram with a fixed set of buckets that can be recorded to from any thread without taking a lock.
+ *
+ * Each bucket counts the values that are no larger than its upper bound and larger than the bound of the
+ * bucket before it.  Values larger than the last bound are counted in an extra overflow bucket.
+ */
+public class Histogram {
+
+    private final long[] bucketBounds;
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param bucketBounds the upper bounds of the buckets, in ascending order.
+     */
+    public Histogram(long... bucketBounds) {
+        verifyArguments(bucketBounds);
+        this.bucketBounds = Arrays.copyOf(bucketBounds, bucketBounds.length);
+        this.bucketCounts = new AtomicLongArray(bucketBounds.length + 1);
+    }
+
+    private void verifyArguments(long[] bucketBounds) {
+        if (bucketBounds == null || bucketBounds.length == 0) {
+            throw new IllegalArgumentException("bucketBounds may not be null or empty");
+        }
+        for (int i = 1; i < bucketBounds.length; i += 1) {
+            if (bucketBounds[i] <= bucketBounds[i - 1]) {
+                throw new IllegalArgumentException("bucketBounds must be in ascending order");
+            }
+        }
+    }
+
+    public void record(long value) {
+        bucketCounts.incrementAndGet(getBucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < bucketCounts.length(); i += 1) {
+            bucketCounts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * Reads the histogram.  The fields are read one at a time, so values that are recorded while the snapshot is
+     * being taken may be missing from some of them.
+     */
+    public Snapshot getSnapshot() {
+        final long[] counts = new long[bucketCounts.length()];
+        for (int i = 0; i < counts.length; i += 1) {
+            counts[i] = bucketCounts.get(i);
+        }
+        final long currentCount = count.get();
+        return new Snapshot(bucketBounds, counts, currentCount, sum.get(), currentCount > 0 ? max.get() : 0);
+    }
+
+    private int getBucketIndex(long value) {
+        final int index = Arrays.binarySearch(bucketBounds, value);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    public static class Snapshot {
+
+        private final long[] bucketBounds;
+        private final long[] bucketCounts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        public Snapshot(long[] bucketBounds, long[] bucketCounts, long count, long sum, long max) {
+            this.bucketBounds = bucketBounds;
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of recorded values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the sum of the recorded values.
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * @return the largest recorded value, or zero if nothing was recorded.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return the mean of the recorded values, or zero if nothing was recorded.
+         */
+        public double getMean() {
+            return count > 0 ? (double) sum / count : 0.0;
+        }
+
+        /**
+         * @return the upper bounds of the buckets.  There is one more bucket count than there are bounds.
+         */
+        public long[] getBucketBounds() {
+            return Arrays.copyOf(bucketBounds, bucketBounds.length);
+        }
+
+        /**
+         * @return the number of values in each bucket.  The last count is of the values larger than every bound.
+         */
+        public long[] getBucketCounts() {
+            return Arrays.copyOf(bucketCounts, bucketCounts.length);
+        }
+
+        /**
+         * Estimates a percentile from the buckets.
+         *
+         * @param percentile a number from 0 to 100.
+         * @return the upper bound of the bucket that holds the given percentile, the largest recorded value if the
+         * percentile falls in the overflow bucket, or zero if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+            long total = 0;
+            for (final long bucketCount : bucketCounts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            final long rank = Math.max((long) Math.ceil(percentile / 100.0 * total), 1);
+            long seen = 0;
+            for (int i = 0; i < bucketBounds.length; i += 1) {
+                seen += bucketCounts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketBounds[i], max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%.1f, p50=%d, p95=%d, max=%d", count, getMean(), getPercentile(50), getPercentile(95), max);
+        }
+    }
+}
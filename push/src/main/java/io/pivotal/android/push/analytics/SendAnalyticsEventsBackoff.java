@@ -0,0 +1,100 @@
+package io.pivotal.android.push.analytics;
+
+import java.util.Random;
+
+import io.pivotal.android.push.prefs.PushPreferences;
+import io.pivotal.android.push.util.Logger;
+import io.pivotal.android.push.util.TimeProvider;
+
+/**
+ * Decides how long to wait before trying to send the analytics events again after a failed upload.
+ *
+ * The wait grows exponentially with the number of failures in a row, up to a maximum, and is then chosen at random
+ * between zero and that limit ("full jitter").  That way the devices that failed during the same back-end outage
+ * do not all come back at the same moment.  If the server asked for a longer wait with a Retry-After header then
+ * that wait is used instead.
+ *
+ * The number of failures and the time of the next attempt are kept in the {@link PushPreferences}, so they
+ * survive the process being killed.  Both are cleared by the next successful upload.
+ */
+public class SendAnalyticsEventsBackoff {
+
+    public static final long BASE_DELAY_IN_MILLISECONDS = 30 * 1000L; // 30 seconds
+    public static final long MAX_DELAY_IN_MILLISECONDS = 6 * 60 * 60 * 1000L; // 6 hours
+    public static final long MAX_RETRY_AFTER_IN_MILLISECONDS = 24 * 60 * 60 * 1000L; // 1 day
+
+    private static final Random sharedRandom = new Random();
+
+    private final PushPreferences pushPreferences;
+    private final TimeProvider timeProvider;
+    private final Random random;
+
+    public SendAnalyticsEventsBackoff(PushPreferences pushPreferences, TimeProvider timeProvider) {
+        this(pushPreferences, timeProvider, sharedRandom);
+    }
+
+    public SendAnalyticsEventsBackoff(PushPreferences pushPreferences, TimeProvider timeProvider, Random random) {
+        verifyArguments(pushPreferences, timeProvider, random);
+        this.pushPreferences = pushPreferences;
+        this.timeProvider = timeProvider;
+        this.random = random;
+    }
+
+    private void verifyArguments(PushPreferences pushPreferences, TimeProvider timeProvider, Random random) {
+        if (pushPreferences == null) {
+            throw new IllegalArgumentException("pushPreferences may not be null");
+        }
+        if (timeProvider == null) {
+            throw new IllegalArgumentException("timeProvider may not be null");
+        }
+        if (random == null) {
+            throw new IllegalArgumentException("random may not be null");
+        }
+    }
+
+    /**
+     * @return how long to wait before the next attempt to send the events, or zero if they can be sent now.
+     */
+    public long getMillisecondsUntilNextAttempt() {
+        final long nextSendTime = pushPreferences.getAnalyticsNextSendTime();
+        if (nextSendTime <= 0) {
+            return 0;
+        }
+        final long wait = nextSendTime - timeProvider.currentTimeMillis();
+        if (wait > MAX_RETRY_AFTER_IN_MILLISECONDS) {
+            // The clock must have been turned back since the time was saved
+            return 0;
+        }
+        return Math.max(wait, 0);
+    }
+
+    /**
+     * Records a failed attempt to send the events.
+     *
+     * @param retryAfterInMilliseconds the wait that the server asked for, or zero if it did not ask for one.
+     * @return how long to wait before the next attempt.
+     */
+    public long onFailure(long retryAfterInMilliseconds) {
+        final int numberOfFailures = pushPreferences.getAnalyticsSendFailures() + 1;
+        final long jitteredDelay = (long) (random.nextDouble() * getDelayLimit(numberOfFailures));
+        final long delay = Math.max(jitteredDelay, Math.min(retryAfterInMilliseconds, MAX_RETRY_AFTER_IN_MILLISECONDS));
+        pushPreferences.setAnalyticsSendBackoff(numberOfFailures, timeProvider.currentTimeMillis() + delay);
+        Logger.fd("SendAnalyticsEventsBackoff: failure number %d. Waiting %d ms before the next attempt.", numberOfFailures, delay);
+        return delay;
+    }
+
+    /**
+     * Records a successful attempt to send the events, so the next failure starts over with the base delay.
+     */
+    public void onSuccess() {
+        if (pushPreferences.getAnalyticsSendFailures() != 0 || pushPreferences.getAnalyticsNextSendTime() != 0) {
+            pushPreferences.setAnalyticsSendBackoff(0, 0L);
+        }
+    }
+
+    // The upper bound of the random delay after the given number of failures in a row
+    /* package */ static long getDelayLimit(int numberOfFailures) {
+        final int exponent = Math.min(Math.max(numberOfFailures - 1, 0), 30);
+        return Math.min(BASE_DELAY_IN_MILLISECONDS << exponent, MAX_DELAY_IN_MILLISECONDS);
+    }
+}
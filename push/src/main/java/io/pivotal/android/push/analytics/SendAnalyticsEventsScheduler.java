@@ -0,0 +1,208 @@
+package io.pivotal.android.push.analytics;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import io.pivotal.android.push.analytics.jobs.SendAnalyticsEventsJob;
+import io.pivotal.android.push.service.AnalyticsEventService;
+import io.pivotal.android.push.util.Logger;
+import io.pivotal.android.push.util.ServiceStarter;
+
+/**
+ * Collapses requests to send analytics events into a single {@link SendAnalyticsEventsJob}.
+ *
+ * A request does not start the job right away.  The job is started once no new request has arrived for the
+ * minimum spacing, or once the maximum delay has passed since the first pending request, whichever comes
+ * first.  A burst of logged events therefore results in one upload run instead of one per event.
+ *
+ * If the minimum spacing is zero then every request starts the job right away.
+ *
+ * The instance returned by {@link #getInstance()} reads the minimum spacing and maximum delay from the
+ * <code>io.pivotal.android.push.AnalyticsSendMinSpacingMilliseconds</code> and
+ * <code>io.pivotal.android.push.AnalyticsSendMaxDelayMilliseconds</code> meta-data elements in the application's
+ * manifest, the first time that a send is requested.
+ */
+public class SendAnalyticsEventsScheduler {
+
+    public static final String MIN_SPACING_META_DATA = "io.pivotal.android.push.AnalyticsSendMinSpacingMilliseconds";
+    public static final String MAX_DELAY_META_DATA = "io.pivotal.android.push.AnalyticsSendMaxDelayMilliseconds";
+    public static final long DEFAULT_MIN_SPACING_IN_MILLISECONDS = 5000L;
+    public static final long DEFAULT_MAX_DELAY_IN_MILLISECONDS = 30000L;
+
+    private static SendAnalyticsEventsScheduler instance;
+
+    private final Object lock = new Object();
+    private final Handler handler;
+    private long minSpacingInMilliseconds;
+    private long maxDelayInMilliseconds;
+    private boolean isMetaDataRead;
+    private final Runnable sendRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sendNow();
+        }
+    };
+
+    private boolean isSendPending = false;
+    private long firstRequestTime;
+    private int numberOfCoalescedRequests;
+    private Context context;
+    private ServiceStarter serviceStarter;
+
+    public static SendAnalyticsEventsScheduler getInstance() {
+        synchronized (SendAnalyticsEventsScheduler.class) {
+            if (instance == null) {
+                instance = new SendAnalyticsEventsScheduler(DEFAULT_MIN_SPACING_IN_MILLISECONDS, DEFAULT_MAX_DELAY_IN_MILLISECONDS, false);
+            }
+            return instance;
+        }
+    }
+
+    public SendAnalyticsEventsScheduler(long minSpacingInMilliseconds, long maxDelayInMilliseconds) {
+        this(minSpacingInMilliseconds, maxDelayInMilliseconds, true);
+    }
+
+    private SendAnalyticsEventsScheduler(long minSpacingInMilliseconds, long maxDelayInMilliseconds, boolean isMetaDataRead) {
+        verifyArguments(minSpacingInMilliseconds, maxDelayInMilliseconds);
+        this.minSpacingInMilliseconds = minSpacingInMilliseconds;
+        this.maxDelayInMilliseconds = maxDelayInMilliseconds;
+        this.isMetaDataRead = isMetaDataRead;
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    private void verifyArguments(long minSpacingInMilliseconds, long maxDelayInMilliseconds) {
+        if (minSpacingInMilliseconds < 0) {
+            throw new IllegalArgumentException("minSpacingInMilliseconds may not be negative");
+        }
+        if (maxDelayInMilliseconds < minSpacingInMilliseconds) {
+            throw new IllegalArgumentException("maxDelayInMilliseconds may not be less than minSpacingInMilliseconds");
+        }
+    }
+
+    /**
+     * Requests that the analytics events be sent to the server.  The request is merged with any other
+     * request that is already pending.
+     */
+    public void requestSend(Context context, ServiceStarter serviceStarter) {
+        synchronized (lock) {
+            if (!isMetaDataRead) {
+                isMetaDataRead = true;
+                applyMetaData(getMetaData(context));
+            }
+            if (minSpacingInMilliseconds > 0) {
+                scheduleSend(context, serviceStarter);
+                return;
+            }
+        }
+        startSendEventsJob(context, serviceStarter);
+    }
+
+    private void scheduleSend(Context context, ServiceStarter serviceStarter) {
+        synchronized (lock) {
+            this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+            this.serviceStarter = serviceStarter;
+
+            final long now = SystemClock.elapsedRealtime();
+            if (!isSendPending) {
+                isSendPending = true;
+                firstRequestTime = now;
+                numberOfCoalescedRequests = 0;
+            } else {
+                numberOfCoalescedRequests += 1;
+                handler.removeCallbacks(sendRunnable);
+            }
+
+            final long deadline = firstRequestTime + maxDelayInMilliseconds;
+            final long sendTime = Math.min(now + minSpacingInMilliseconds, deadline);
+            handler.postDelayed(sendRunnable, Math.max(sendTime - now, 0L));
+        }
+    }
+
+    /**
+     * Starts any pending send right away.
+     */
+    public void sendNow() {
+        final Context sendContext;
+        final ServiceStarter sendServiceStarter;
+        synchronized (lock) {
+            if (!isSendPending) {
+                return;
+            }
+            handler.removeCallbacks(sendRunnable);
+            isSendPending = false;
+            sendContext = context;
+            sendServiceStarter = serviceStarter;
+            if (numberOfCoalescedRequests > 0) {
+                Logger.fd("SendAnalyticsEventsScheduler: merged %d send request(s) into one.", numberOfCoalescedRequests + 1);
+            }
+        }
+        startSendEventsJob(sendContext, sendServiceStarter);
+    }
+
+    public boolean isSendPending() {
+        synchronized (lock) {
+            return isSendPending;
+        }
+    }
+
+    public long getMinSpacingInMilliseconds() {
+        synchronized (lock) {
+            return minSpacingInMilliseconds;
+        }
+    }
+
+    public long getMaxDelayInMilliseconds() {
+        synchronized (lock) {
+            return maxDelayInMilliseconds;
+        }
+    }
+
+    /**
+     * Sets the minimum spacing and maximum delay from the given application meta-data.  Values that are missing
+     * are left as they are.  Invalid values are ignored.
+     *
+     * @param metaData the application meta-data.  May be null.
+     */
+    /* package */ void applyMetaData(Bundle metaData) {
+        if (metaData == null) {
+            return;
+        }
+        synchronized (lock) {
+            final long minSpacing = metaData.getInt(MIN_SPACING_META_DATA, (int) minSpacingInMilliseconds);
+            final long maxDelay = metaData.getInt(MAX_DELAY_META_DATA, (int) maxDelayInMilliseconds);
+            if (minSpacing < 0 || maxDelay < minSpacing) {
+                Logger.w("Ignoring the analytics send spacing in the application meta-data. The spacing may not be negative and the maximum delay may not be less than the spacing.");
+                return;
+            }
+            minSpacingInMilliseconds = minSpacing;
+            maxDelayInMilliseconds = maxDelay;
+        }
+    }
+
+    // Returns the meta-data of the application, or null if it can not be read.
+    private static Bundle getMetaData(Context context) {
+        try {
+            final PackageManager manager = context.getPackageManager();
+            final ApplicationInfo applicationInfo = manager.getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            if (applicationInfo != null) {
+                return applicationInfo.metaData;
+            }
+        } catch (Exception e) {
+            Logger.ex("Could not read the analytics send spacing from the application meta-data", e);
+        }
+        return null;
+    }
+
+    private static void startSendEventsJob(Context context, ServiceStarter serviceStarter) {
+        Logger.i("Enqueueing SendAnalyticsEventsJob.");
+        final SendAnalyticsEventsJob job = new SendAnalyticsEventsJob();
+        final Intent intent = AnalyticsEventService.getIntentToRunJob(context, job);
+        serviceStarter.startService(context, intent);
+    }
+}
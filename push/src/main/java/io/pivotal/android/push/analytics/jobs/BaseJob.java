@@ -1,8 +1,12 @@
 package io.pivotal.android.push.analytics.jobs;
 
+import android.database.SQLException;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import io.pivotal.android.push.database.EventEvictor;
+import io.pivotal.android.push.util.Logger;
+
 public abstract class BaseJob implements Job, Parcelable {
 
     public BaseJob() {
@@ -12,6 +16,21 @@ public abstract class BaseJob implements Job, Parcelable {
         jobParams.listener.onJobComplete(resultCode);
     }
 
+    // Evicts a small batch of events, so that the events store is pruned a little at a time while the
+    // service is not busy sending or saving events.
+    protected void evictEvents(JobParams jobParams) {
+        final int numberOfEvictedEvents;
+        try {
+            numberOfEvictedEvents = jobParams.eventsStorage.evictEvents(EventEvictor.DEFAULT_BATCH_SIZE);
+        } catch (SQLException e) {
+            Logger.ex(toString() + ": could not evict events from the events store", e);
+            return;
+        }
+        if (numberOfEvictedEvents > 0) {
+            Logger.fd("%s: evicted %d event(s) from the events store.", toString(), numberOfEvictedEvents);
+        }
+    }
+
     // Parcelable stuff
 
     protected BaseJob(Parcel in) {
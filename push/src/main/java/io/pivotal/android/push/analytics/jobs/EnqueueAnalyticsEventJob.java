@@ -3,6 +3,10 @@ package io.pivotal.android.push.analytics.jobs;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 import io.pivotal.android.push.util.Logger;
 
@@ -10,12 +14,18 @@ public class EnqueueAnalyticsEventJob extends BaseJob {
 
     public static final int RESULT_COULD_NOT_SAVE_EVENT_TO_STORAGE = 200;
 
-    private AnalyticsEvent event;
+    private List<AnalyticsEvent> events;
 
     public EnqueueAnalyticsEventJob(AnalyticsEvent event) {
         super();
         verifyArguments(event);
-        saveArguments(event);
+        saveArguments(Collections.singletonList(event));
+    }
+
+    public EnqueueAnalyticsEventJob(List<AnalyticsEvent> events) {
+        super();
+        verifyArguments(events);
+        saveArguments(events);
     }
 
     private void verifyArguments(AnalyticsEvent event) {
@@ -24,32 +34,50 @@ public class EnqueueAnalyticsEventJob extends BaseJob {
         }
     }
 
-    private void saveArguments(AnalyticsEvent event) {
-        this.event = event;
+    private void verifyArguments(List<AnalyticsEvent> events) {
+        if (events == null || events.isEmpty()) {
+            throw new IllegalArgumentException("events may not be null or empty");
+        }
+        for (final AnalyticsEvent event : events) {
+            verifyArguments(event);
+        }
+    }
+
+    private void saveArguments(List<AnalyticsEvent> events) {
+        this.events = new ArrayList<>(events);
     }
 
     public AnalyticsEvent getEvent() {
-        return this.event;
+        return this.events.get(0);
+    }
+
+    public List<AnalyticsEvent> getEvents() {
+        return Collections.unmodifiableList(this.events);
     }
 
     @Override
     public void run(final JobParams jobParams) {
-        if (saveEvent(jobParams)) {
+        if (saveEvents(jobParams)) {
             sendJobResult(JobResultListener.RESULT_SUCCESS, jobParams);
         } else {
             sendJobResult(EnqueueAnalyticsEventJob.RESULT_COULD_NOT_SAVE_EVENT_TO_STORAGE, jobParams);
         }
     }
 
-    private boolean saveEvent(JobParams jobParams) {
-        if (jobParams.eventsStorage.saveEvent(event) != null) {
-            Logger.fd("EnqueueEventJob: Enqueuing event with type '%s'. There are now %d events queued to send to the server.",
-                    event.getEventType(),
-                    jobParams.eventsStorage.getNumberOfEvents());
-            return true;
+    private boolean saveEvents(JobParams jobParams) {
+        final boolean wasSaved;
+        if (events.size() == 1) {
+            wasSaved = jobParams.eventsStorage.saveEvent(events.get(0)) != null;
         } else {
-            return false;
+            wasSaved = jobParams.eventsStorage.saveEvents(events) != null;
+        }
+        if (wasSaved) {
+            Logger.fd("EnqueueEventJob: Enqueuing %d event(s) with type '%s'. There are now %d events queued to send to the server.",
+                    events.size(),
+                    events.get(0).getEventType(),
+                    jobParams.eventsStorage.getNumberOfEvents());
         }
+        return wasSaved;
     }
 
     @Override
@@ -64,13 +92,13 @@ public class EnqueueAnalyticsEventJob extends BaseJob {
 
         final EnqueueAnalyticsEventJob otherJob = (EnqueueAnalyticsEventJob) o;
 
-        if (event == null && otherJob.event != null) {
+        if (events == null && otherJob.events != null) {
             return false;
         }
-        if (event != null && otherJob.event == null) {
+        if (events != null && otherJob.events == null) {
             return false;
         }
-        if (event != null && otherJob.event != null && !event.equals(otherJob.event)) {
+        if (events != null && otherJob.events != null && !events.equals(otherJob.events)) {
             return false;
         }
 
@@ -92,16 +120,16 @@ public class EnqueueAnalyticsEventJob extends BaseJob {
 
     private EnqueueAnalyticsEventJob(Parcel in) {
         super(in);
-        event = readEventFromParcel(in);
+        events = readEventsFromParcel(in);
     }
 
-    private AnalyticsEvent readEventFromParcel(Parcel parcel) {
-        return parcel.readParcelable(AnalyticsEvent.class.getClassLoader());
+    private List<AnalyticsEvent> readEventsFromParcel(Parcel parcel) {
+        return parcel.createTypedArrayList(AnalyticsEvent.CREATOR);
     }
 
     @Override
     public void writeToParcel(Parcel out, int flags) {
         super.writeToParcel(out, flags);
-        out.writeParcelable(event, flags);
+        out.writeTypedList(events);
     }
 }
@@ -1,12 +1,9 @@
 package io.pivotal.android.push.analytics.jobs;
 
 import android.content.Intent;
-import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import java.util.List;
-
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 import io.pivotal.android.push.service.AnalyticsEventService;
 import io.pivotal.android.push.util.Logger;
@@ -33,35 +30,33 @@ public class PrepareDatabaseJob extends BaseJob {
         int numberOfFixedEvents = 0;
         numberOfFixedEvents += fixEventsWithStatus(AnalyticsEvent.Status.POSTING, jobParams);
         numberOfFixedEvents += deleteEventsWithStatus(AnalyticsEvent.Status.POSTED, jobParams);
+        evictEvents(jobParams);
         if (numberOfFixedEvents <= 0) {
             Logger.fd("PrepareDatabaseJob: no events in the database that need to be cleaned.", numberOfFixedEvents);
         }
     }
 
     private int fixEventsWithStatus(int status, JobParams jobParams) {
-        final List<Uri> uris = jobParams.eventsStorage.getEventUrisWithStatus(status);
-        if (uris.size() > 0) {
-            for (final Uri uri : uris) {
-                jobParams.eventsStorage.setEventStatus(uri, AnalyticsEvent.Status.NOT_POSTED);
-            }
-            Logger.fd("PrepareDatabaseJob: set %d '%s' events to status '%s'", uris.size(), AnalyticsEvent.statusString(status), AnalyticsEvent.statusString(AnalyticsEvent.Status.NOT_POSTED));
+        final int numberOfFixedEvents = jobParams.eventsStorage.setStatusWhere(status, AnalyticsEvent.Status.NOT_POSTED);
+        if (numberOfFixedEvents > 0) {
+            Logger.fd("PrepareDatabaseJob: set %d '%s' events to status '%s'", numberOfFixedEvents, AnalyticsEvent.statusString(status), AnalyticsEvent.statusString(AnalyticsEvent.Status.NOT_POSTED));
         }
-        return uris.size();
+        return numberOfFixedEvents;
     }
 
     private int deleteEventsWithStatus(int status, JobParams jobParams) {
-        final List<Uri> uris = jobParams.eventsStorage.getEventUrisWithStatus(status);
-        jobParams.eventsStorage.deleteEvents(uris);
-        if (uris.size() > 0) {
-            Logger.fd("PrepareDatabaseJob: deleted %d events with status '%s'", uris.size(), AnalyticsEvent.statusString(status));
+        final long[] eventIds = jobParams.eventsStorage.getEventIdsWithStatus(status);
+        jobParams.eventsStorage.deleteEvents(eventIds);
+        if (eventIds.length > 0) {
+            Logger.fd("PrepareDatabaseJob: deleted %d events with status '%s'", eventIds.length, AnalyticsEvent.statusString(status));
         }
-        return uris.size();
+        return eventIds.length;
     }
 
     private void sendEventsIfRequired(JobParams jobParams) {
         int numberOfPendingMessageReceipts = 0;
-        numberOfPendingMessageReceipts += jobParams.eventsStorage.getEventUrisWithStatus(AnalyticsEvent.Status.NOT_POSTED).size();
-        numberOfPendingMessageReceipts += jobParams.eventsStorage.getEventUrisWithStatus(AnalyticsEvent.Status.POSTING_ERROR).size();
+        numberOfPendingMessageReceipts += jobParams.eventsStorage.countByStatus(AnalyticsEvent.Status.NOT_POSTED);
+        numberOfPendingMessageReceipts += jobParams.eventsStorage.countByStatus(AnalyticsEvent.Status.POSTING_ERROR);
         if (numberOfPendingMessageReceipts > 0) {
             Logger.fd("PrepareDatabaseJob: There are %d events(s) queued for sending. Enqueueing SendAnalyticsEventsJob.", numberOfPendingMessageReceipts);
             enqueueSendEventsJob(jobParams);
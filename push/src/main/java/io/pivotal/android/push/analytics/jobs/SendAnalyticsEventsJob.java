@@ -1,67 +1,281 @@
 package io.pivotal.android.push.analytics.jobs;
 
-import android.net.Uri;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 
+import io.pivotal.android.push.analytics.AnalyticsMetricsRecorder;
+import io.pivotal.android.push.analytics.SendAnalyticsEventsBackoff;
 import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsApiRequest;
 import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsListener;
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 import io.pivotal.android.push.util.Logger;
 
+/**
+ * Sends the events that have not been posted yet to the server.
+ *
+ * The events are sent in pages, in the order they were saved.  Each page holds at most a maximum number of
+ * events and a maximum (estimated) number of bytes, so that a large backlog never turns into one huge request.
+ * Each page is deleted as soon as the server accepts it, so the pages that were sent are not sent again if a
+ * later page fails or the process is killed.  Sending stops at the first page that fails.
+ *
+ * If the server rejects a page (e.g. with 400 Bad Request) then the page is split in halves, and the halves are
+ * sent separately, until the events that the server rejects are found.  The other events in the page are sent as
+ * usual.  An event that is rejected on its own {@link #MAX_REJECTED_ATTEMPTS} times is set to
+ * {@link AnalyticsEvent.Status#QUARANTINED} and is not sent again.  If the server rejects more than
+ * {@link #MAX_REJECTED_REQUESTS_PER_RUN} requests in one run then the run fails as if the request had failed.
+ * The events that were rejected on their own before then are still counted, so a page with several bad events
+ * makes progress over later runs.
+ *
+ * The page limits can be set with the <code>io.pivotal.android.push.AnalyticsMaxEventsPerRequest</code> and
+ * <code>io.pivotal.android.push.AnalyticsMaxBytesPerRequest</code> meta-data elements in the application's manifest.
+ *
+ * After a failure the events sender alarm is set to try again after a delay chosen by the
+ * {@link SendAnalyticsEventsBackoff}.  Until that delay has passed the job does not send anything.
+ */
 public class SendAnalyticsEventsJob extends BaseJob {
 
     public static final int RESULT_NO_WORK_TO_DO = 100;
     public static final int RESULT_FAILED_TO_SEND_RECEIPTS = 101;
+    public static final int RESULT_DEFERRED = 102;
+
+    public static final int MAX_REJECTED_ATTEMPTS = 3;
+    public static final int MAX_REJECTED_REQUESTS_PER_RUN = 20;
+
+    public static final String MAX_EVENTS_PER_REQUEST_META_DATA = "io.pivotal.android.push.AnalyticsMaxEventsPerRequest";
+    public static final String MAX_BYTES_PER_REQUEST_META_DATA = "io.pivotal.android.push.AnalyticsMaxBytesPerRequest";
+    public static final int DEFAULT_MAX_EVENTS_PER_REQUEST = 500;
+    public static final int DEFAULT_MAX_BYTES_PER_REQUEST = 256 * 1024;
+
+    private static final int[] UNPOSTED_STATUSES = new int[] { AnalyticsEvent.Status.NOT_POSTED, AnalyticsEvent.Status.POSTING_ERROR };
+
+    // Zero means that the limit is read from the application meta-data
+    private int maxEventsPerRequest;
+    private int maxBytesPerRequest;
 
     public SendAnalyticsEventsJob() {
+        this(0, 0);
+    }
+
+    public SendAnalyticsEventsJob(int maxEventsPerRequest, int maxBytesPerRequest) {
         super();
+        verifyArguments(maxEventsPerRequest, maxBytesPerRequest);
+        this.maxEventsPerRequest = maxEventsPerRequest;
+        this.maxBytesPerRequest = maxBytesPerRequest;
+    }
+
+    private void verifyArguments(int maxEventsPerRequest, int maxBytesPerRequest) {
+        if (maxEventsPerRequest < 0) {
+            throw new IllegalArgumentException("maxEventsPerRequest may not be negative");
+        }
+        if (maxBytesPerRequest < 0) {
+            throw new IllegalArgumentException("maxBytesPerRequest may not be negative");
+        }
     }
 
     @Override
     public void run(JobParams jobParams) {
 
-        final List<Uri> uris = getUnpostedEvents(jobParams);
-        Logger.fd("SendAnalyticsEventsJob: package %s: events available to send: %d", getPackageName(jobParams), uris.size());
+        final SendAnalyticsEventsBackoff backoff = getBackoff(jobParams);
+        final long millisecondsUntilNextAttempt = backoff.getMillisecondsUntilNextAttempt();
+        if (millisecondsUntilNextAttempt > 0) {
+            Logger.fd("SendAnalyticsEventsJob: backing off after a failure. Next attempt in %d ms.", millisecondsUntilNextAttempt);
+            jobParams.alarmProvider.enableAlarm(millisecondsUntilNextAttempt);
+            sendJobResult(RESULT_DEFERRED, jobParams);
+            return;
+        }
+
+        final Bundle metaData = getMetaData(jobParams);
+        final int maxEvents = maxEventsPerRequest > 0 ? maxEventsPerRequest : getLimit(metaData, MAX_EVENTS_PER_REQUEST_META_DATA, DEFAULT_MAX_EVENTS_PER_REQUEST);
+        final int maxBytes = maxBytesPerRequest > 0 ? maxBytesPerRequest : getLimit(metaData, MAX_BYTES_PER_REQUEST_META_DATA, DEFAULT_MAX_BYTES_PER_REQUEST);
 
-        if (uris.size() > 0) {
-            setStatusForEvents(jobParams, uris, AnalyticsEvent.Status.POSTING);
-            sendEvents(jobParams, uris);
+        final long[] eventIds = getUnpostedEvents(jobParams, 0, maxEvents, maxBytes);
+        Logger.fd("SendAnalyticsEventsJob: package %s: events available to send in first page: %d", getPackageName(jobParams), eventIds.length);
+
+        if (eventIds.length > 0) {
+            sendPages(new SendState(jobParams, backoff, maxEvents, maxBytes), eventIds);
         } else {
+            backoff.onSuccess();
             jobParams.alarmProvider.disableAlarm();
             sendJobResult(RESULT_NO_WORK_TO_DO, jobParams);
         }
     }
 
-    private void setStatusForEvents(JobParams jobParams, List<Uri> uris, int status) {
-        for (final Uri uri : uris) {
-            jobParams.eventsStorage.setEventStatus(uri, status);
+    private void setStatusForEvents(JobParams jobParams, long[] eventIds, int status) {
+        jobParams.eventsStorage.setEventStatus(eventIds, status);
+    }
+
+    // What a run of the job knows about the page being sent
+    private static class SendState {
+        final JobParams jobParams;
+        final SendAnalyticsEventsBackoff backoff;
+        final int maxEvents;
+        final int maxBytes;
+        final Deque<long[]> batches = new ArrayDeque<>();
+        int pageNumber;
+        long lastRowId;
+        int numberOfRejectedRequests;
+        boolean hasSentEvents;
+        boolean hasRejectedEvents;
+
+        SendState(JobParams jobParams, SendAnalyticsEventsBackoff backoff, int maxEvents, int maxBytes) {
+            this.jobParams = jobParams;
+            this.backoff = backoff;
+            this.maxEvents = maxEvents;
+            this.maxBytes = maxBytes;
         }
     }
 
-    private void sendEvents(final JobParams jobParams, final List<Uri> uris) {
+    // The outcome of sending one batch.  The request calls its listener before it returns.
+    private static class BatchResult implements PCFPushSendAnalyticsListener {
+        boolean isFinished;
+        boolean isSuccessful;
+        boolean isRejected;
+        long retryAfterInMilliseconds;
 
-        final PCFPushSendAnalyticsApiRequest request = jobParams.sendAnalyticsRequestProvider.getRequest();
-        request.startSendEvents(uris, new PCFPushSendAnalyticsListener() {
+        @Override
+        public void onBackEndSendEventsSuccess() {
+            AnalyticsMetricsRecorder.uploadSucceeded();
+            isFinished = true;
+            isSuccessful = true;
+        }
+
+        @Override
+        public void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds) {
+            AnalyticsMetricsRecorder.uploadFailed();
+            isFinished = true;
+            this.retryAfterInMilliseconds = retryAfterInMilliseconds;
+        }
+
+        @Override
+        public void onBackEndSendEventsRejected(String reason) {
+            AnalyticsMetricsRecorder.uploadRejected();
+            isFinished = true;
+            isRejected = true;
+        }
+    }
+
+    // Each page starts out as one batch.  A batch that the server rejects is split in two until the rejected
+    // events are found, so that the rest of the page can still be sent.  The pages and the batches are sent in a
+    // loop, so the number of requests in a run does not affect the depth of the stack.
+    private void sendPages(final SendState state, final long[] firstPageEventIds) {
+        final JobParams jobParams = state.jobParams;
+        long[] pageEventIds = firstPageEventIds;
+        while (pageEventIds.length > 0) {
+            setStatusForEvents(jobParams, pageEventIds, AnalyticsEvent.Status.POSTING);
+            state.pageNumber += 1;
+            state.lastRowId = pageEventIds[pageEventIds.length - 1];
+            state.batches.add(pageEventIds);
 
-            public void onBackEndSendEventsSuccess() {
-                if (uris != null) {
-                    jobParams.eventsStorage.deleteEvents(uris);
+            long[] eventIds;
+            while ((eventIds = state.batches.poll()) != null) {
+                final BatchResult result = sendBatch(jobParams, eventIds);
+                if (result.isSuccessful) {
+                    jobParams.eventsStorage.deleteEvents(eventIds);
+                    state.hasSentEvents = true;
+                    Logger.fd("SendAnalyticsEventsJob: sent %d event(s) from page %d.", eventIds.length, state.pageNumber);
+                } else if (result.isRejected) {
+                    if (!onBatchRejected(state, eventIds)) {
+                        return;
+                    }
+                } else {
+                    Logger.fd("SendAnalyticsEventsJob: page %d failed. Stopping until the next attempt.", state.pageNumber);
+                    onSendFailed(state, eventIds, result.retryAfterInMilliseconds);
+                    return;
                 }
-                jobParams.alarmProvider.disableAlarm();
-                sendJobResult(JobResultListener.RESULT_SUCCESS, jobParams);
             }
 
-            @Override
-            public void onBackEndSendEventsFailed(String reason) {
-                setStatusForEvents(jobParams, uris, AnalyticsEvent.Status.POSTING_ERROR);
-                jobParams.alarmProvider.enableAlarmIfDisabled();
-                sendJobResult(RESULT_FAILED_TO_SEND_RECEIPTS, jobParams);
-            }
-        });
+            pageEventIds = getUnpostedEvents(jobParams, state.lastRowId, state.maxEvents, state.maxBytes);
+        }
+        onAllPagesSent(state);
+    }
+
+    private BatchResult sendBatch(JobParams jobParams, long[] eventIds) {
+        final PCFPushSendAnalyticsApiRequest request = jobParams.sendAnalyticsRequestProvider.getRequest();
+        final BatchResult result = new BatchResult();
+        AnalyticsMetricsRecorder.uploadStarted();
+        request.startSendEvents(eventIds, result);
+        if (!result.isFinished) {
+            Logger.w("SendAnalyticsEventsJob: the request returned without a result. Treating it as a failure.");
+        }
+        return result;
+    }
+
+    // Returns false if the run was stopped
+    private boolean onBatchRejected(SendState state, long[] eventIds) {
+        state.numberOfRejectedRequests += 1;
+        if (state.numberOfRejectedRequests > MAX_REJECTED_REQUESTS_PER_RUN) {
+            Logger.w("SendAnalyticsEventsJob: the server rejected " + state.numberOfRejectedRequests + " requests. Stopping until the next attempt.");
+            onSendFailed(state, eventIds, 0L);
+            return false;
+        }
+
+        if (eventIds.length > 1) {
+            // Both halves are sent, so that every rejected event is found and counted even if there are several
+            final int half = eventIds.length / 2;
+            Logger.fd("SendAnalyticsEventsJob: the server rejected %d event(s) from page %d. Sending them in two halves.", eventIds.length, state.pageNumber);
+            state.batches.addFirst(Arrays.copyOfRange(eventIds, half, eventIds.length));
+            state.batches.addFirst(Arrays.copyOfRange(eventIds, 0, half));
+        } else {
+            onEventRejected(state.jobParams, eventIds[0]);
+            state.hasRejectedEvents = true;
+        }
+        return true;
+    }
+
+    // Stops the run and leaves the unsent events to be sent again once the backoff delay has passed
+    private void onSendFailed(SendState state, long[] eventIds, long retryAfterInMilliseconds) {
+        final JobParams jobParams = state.jobParams;
+        setStatusForEvents(jobParams, eventIds, AnalyticsEvent.Status.POSTING_ERROR);
+        for (final long[] unsentEventIds : state.batches) {
+            setStatusForEvents(jobParams, unsentEventIds, AnalyticsEvent.Status.POSTING_ERROR);
+        }
+        jobParams.alarmProvider.enableAlarm(state.backoff.onFailure(retryAfterInMilliseconds));
+        evictEvents(jobParams);
+        sendJobResult(RESULT_FAILED_TO_SEND_RECEIPTS, jobParams);
+    }
+
+    private void onAllPagesSent(SendState state) {
+        final JobParams jobParams = state.jobParams;
+
+        // A run in which the server only rejected events does not show that the server is working again
+        if (state.hasSentEvents || !state.hasRejectedEvents) {
+            state.backoff.onSuccess();
+        }
+        if (state.hasRejectedEvents) {
+            // Give the rejected events another chance later on, until they are quarantined
+            jobParams.alarmProvider.enableAlarmIfDisabled();
+        } else {
+            jobParams.alarmProvider.disableAlarm();
+        }
+        evictEvents(jobParams);
+        sendJobResult(JobResultListener.RESULT_SUCCESS, jobParams);
+    }
+
+    // An event that the server rejects on its own is sent again on later runs, in case the server was at fault.
+    // Once it has been rejected too many times it is quarantined so that it is never sent again.
+    private void onEventRejected(JobParams jobParams, long eventId) {
+        final int rejectedAttempts = jobParams.eventsStorage.incrementRejectedAttempts(eventId);
+        if (rejectedAttempts < 0) {
+            return; // The event was deleted in the meantime
+        }
+        if (rejectedAttempts >= MAX_REJECTED_ATTEMPTS) {
+            Logger.w("SendAnalyticsEventsJob: the server rejected event " + eventId + " " + rejectedAttempts + " times. Quarantining it.");
+            setStatusForEvents(jobParams, new long[] { eventId }, AnalyticsEvent.Status.QUARANTINED);
+        } else {
+            Logger.fd("SendAnalyticsEventsJob: the server rejected event %d (%d time(s)).", eventId, rejectedAttempts);
+            setStatusForEvents(jobParams, new long[] { eventId }, AnalyticsEvent.Status.POSTING_ERROR);
+        }
+    }
+
+    private static SendAnalyticsEventsBackoff getBackoff(JobParams jobParams) {
+        return new SendAnalyticsEventsBackoff(jobParams.pushPreferences, jobParams.timeProvider);
     }
 
     private String getPackageName(JobParams jobParams) {
@@ -69,12 +283,32 @@ public class SendAnalyticsEventsJob extends BaseJob {
         return packageName;
     }
 
-    private List<Uri> getUnpostedEvents(JobParams jobParams) {
-        final List<Uri> uris1 = jobParams.eventsStorage.getEventUrisWithStatus(AnalyticsEvent.Status.NOT_POSTED);
-        final List<Uri> uris2 = jobParams.eventsStorage.getEventUrisWithStatus(AnalyticsEvent.Status.POSTING_ERROR);
-        final List<Uri> uris = new ArrayList<>(uris1);
-        uris.addAll(uris2);
-        return uris;
+    private long[] getUnpostedEvents(JobParams jobParams, long afterRowId, int maxEvents, int maxBytes) {
+        return jobParams.eventsStorage.getEventIdsPage(UNPOSTED_STATUSES, afterRowId, maxEvents, maxBytes);
+    }
+
+    private static int getLimit(Bundle metaData, String key, int defaultValue) {
+        if (metaData != null) {
+            final int value = metaData.getInt(key, defaultValue);
+            if (value > 0) {
+                return value;
+            }
+        }
+        return defaultValue;
+    }
+
+    // Returns the meta-data of the application, or null if it can not be read.
+    private static Bundle getMetaData(JobParams jobParams) {
+        try {
+            final PackageManager manager = jobParams.context.getPackageManager();
+            final ApplicationInfo applicationInfo = manager.getApplicationInfo(jobParams.context.getPackageName(), PackageManager.GET_META_DATA);
+            if (applicationInfo != null) {
+                return applicationInfo.metaData;
+            }
+        } catch (Exception e) {
+            Logger.ex("Could not read the request limits from the application meta-data", e);
+        }
+        return null;
     }
 
     @Override
@@ -85,7 +319,8 @@ public class SendAnalyticsEventsJob extends BaseJob {
         if (!(o instanceof SendAnalyticsEventsJob)) {
             return false;
         }
-        return true;
+        final SendAnalyticsEventsJob other = (SendAnalyticsEventsJob) o;
+        return maxEventsPerRequest == other.maxEventsPerRequest && maxBytesPerRequest == other.maxBytesPerRequest;
     }
 
     // Parcelable stuff
@@ -103,10 +338,14 @@ public class SendAnalyticsEventsJob extends BaseJob {
 
     private SendAnalyticsEventsJob(Parcel in) {
         super(in);
+        maxEventsPerRequest = in.readInt();
+        maxBytesPerRequest = in.readInt();
     }
 
     @Override
     public void writeToParcel(Parcel out, int flags) {
         super.writeToParcel(out, flags);
+        out.writeInt(maxEventsPerRequest);
+        out.writeInt(maxBytesPerRequest);
     }
 }
@@ -1,11 +1,10 @@
 package io.pivotal.android.push.backend.analytics;
 
-import android.net.Uri;
-
-import java.util.List;
-
 public interface PCFPushSendAnalyticsApiRequest {
 
-    void startSendEvents(List<Uri> eventUris, PCFPushSendAnalyticsListener listener);
+    /**
+     * Sends the given events.  Exactly one method of the listener is called, before this method returns.
+     */
+    void startSendEvents(long[] eventIds, PCFPushSendAnalyticsListener listener);
     PCFPushSendAnalyticsApiRequest copy();
 }
@@ -1,36 +1,96 @@
 package io.pivotal.android.push.backend.analytics;
 
 import android.content.Context;
-import android.net.Uri;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 
-import io.pivotal.android.push.prefs.PushPreferences;
 import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.LinkedList;
-import java.util.List;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
 
 import io.pivotal.android.push.PushParameters;
+import io.pivotal.android.push.analytics.AnalyticsMetricsRecorder;
 import io.pivotal.android.push.database.AnalyticsEventsStorage;
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 import io.pivotal.android.push.model.analytics.AnalyticsEventList;
 import io.pivotal.android.push.prefs.PushRequestHeaders;
 import io.pivotal.android.push.util.ApiRequestImpl;
-import io.pivotal.android.push.util.Const;
 import io.pivotal.android.push.util.Logger;
 import io.pivotal.android.push.util.NetworkWrapper;
+import io.pivotal.android.push.util.RequestTemplate;
+import io.pivotal.android.push.util.TimeProvider;
 
 public class PCFPushSendAnalyticsApiRequestImpl extends ApiRequestImpl implements PCFPushSendAnalyticsApiRequest {
 
+    public static final String GZIP_ENABLED_META_DATA = "io.pivotal.android.push.AnalyticsGzipEnabled";
+
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final Gson gson = new Gson();
+
+    private static final String RFC_1123_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    // The status code and Retry-After wait of a response from the back-end server, along with the times of the
+    // events that were sent in the request
+    private static class Response {
+        final int statusCode;
+        final long retryAfterInMilliseconds;
+        final long[] eventTimesInSeconds;
+
+        Response(int statusCode, long retryAfterInMilliseconds, long[] eventTimesInSeconds) {
+            this.statusCode = statusCode;
+            this.retryAfterInMilliseconds = retryAfterInMilliseconds;
+            this.eventTimesInSeconds = eventTimesInSeconds;
+        }
+    }
+
+    // Counts the bytes written to the network
+    private static class CountingOutputStream extends FilterOutputStream {
+        long numberOfBytes;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            numberOfBytes += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            numberOfBytes += len;
+        }
+    }
+
+    // The service URLs of the servers that have answered a compressed request with 415 Unsupported Media Type.
+    // Requests to these servers are not compressed again until the process restarts.
+    private static final Set<String> serversRejectingGzip = Collections.synchronizedSet(new HashSet<String>());
+
     private Context context;
     private AnalyticsEventsStorage eventsStorage;
     private PushRequestHeaders pushRequestHeaders;
     private PushParameters parameters;
+    private TimeProvider timeProvider;
+    private boolean isGzipEnabled;
 
     public PCFPushSendAnalyticsApiRequestImpl(
             Context context,
@@ -38,13 +98,48 @@ public class PCFPushSendAnalyticsApiRequestImpl extends ApiRequestImpl implement
             AnalyticsEventsStorage eventsStorage,
             PushRequestHeaders pushRequestHeaders,
             NetworkWrapper networkWrapper
+    ) {
+        this(context, parameters, eventsStorage, pushRequestHeaders, networkWrapper, new TimeProvider());
+    }
+
+    public PCFPushSendAnalyticsApiRequestImpl(
+            Context context,
+            PushParameters parameters,
+            AnalyticsEventsStorage eventsStorage,
+            PushRequestHeaders pushRequestHeaders,
+            NetworkWrapper networkWrapper,
+            TimeProvider timeProvider
+    ) {
+        this(context, parameters, eventsStorage, pushRequestHeaders, networkWrapper, timeProvider, context != null && isGzipEnabled(context));
+    }
+
+    public PCFPushSendAnalyticsApiRequestImpl(
+            Context context,
+            PushParameters parameters,
+            AnalyticsEventsStorage eventsStorage,
+            PushRequestHeaders pushRequestHeaders,
+            NetworkWrapper networkWrapper,
+            boolean isGzipEnabled
+    ) {
+        this(context, parameters, eventsStorage, pushRequestHeaders, networkWrapper, new TimeProvider(), isGzipEnabled);
+    }
+
+    public PCFPushSendAnalyticsApiRequestImpl(
+            Context context,
+            PushParameters parameters,
+            AnalyticsEventsStorage eventsStorage,
+            PushRequestHeaders pushRequestHeaders,
+            NetworkWrapper networkWrapper,
+            TimeProvider timeProvider,
+            boolean isGzipEnabled
     ) {
         super(context, networkWrapper);
-        verifyArguments(context, eventsStorage, parameters, pushRequestHeaders);
-        saveArguments(context, eventsStorage, parameters, pushRequestHeaders);
+        verifyArguments(context, eventsStorage, parameters, pushRequestHeaders, timeProvider);
+        saveArguments(context, eventsStorage, parameters, pushRequestHeaders, timeProvider);
+        this.isGzipEnabled = isGzipEnabled;
     }
 
-    private void verifyArguments(Context context, AnalyticsEventsStorage eventsStorage, PushParameters parameters, PushRequestHeaders pushRequestHeaders) {
+    private void verifyArguments(Context context, AnalyticsEventsStorage eventsStorage, PushParameters parameters, PushRequestHeaders pushRequestHeaders, TimeProvider timeProvider) {
         if (context == null) {
             throw new IllegalArgumentException("context may not be null");
         }
@@ -57,59 +152,99 @@ public class PCFPushSendAnalyticsApiRequestImpl extends ApiRequestImpl implement
         if (pushRequestHeaders == null) {
             throw new IllegalArgumentException("pushRequestHeaders may not be null");
         }
+        if (timeProvider == null) {
+            throw new IllegalArgumentException("timeProvider may not be null");
+        }
 
     }
 
-    private void saveArguments(Context context, AnalyticsEventsStorage eventsStorage, PushParameters parameters, PushRequestHeaders pushRequestHeaders) {
+    private void saveArguments(Context context, AnalyticsEventsStorage eventsStorage, PushParameters parameters, PushRequestHeaders pushRequestHeaders, TimeProvider timeProvider) {
         this.context = context;
         this.eventsStorage = eventsStorage;
         this.parameters = parameters;
         this.pushRequestHeaders = pushRequestHeaders;
+        this.timeProvider = timeProvider;
     }
 
     @Override
-    public void startSendEvents(List<Uri> eventUris, PCFPushSendAnalyticsListener listener) {
-        verifyRequestArguments(eventUris, listener);
-        processRequest(eventUris, listener);
+    public void startSendEvents(long[] eventIds, PCFPushSendAnalyticsListener listener) {
+        verifyRequestArguments(eventIds, listener);
+        processRequest(eventIds, listener);
     }
 
-    private void verifyRequestArguments(List<Uri> uris, PCFPushSendAnalyticsListener listener) {
-        if (uris == null || uris.isEmpty()) {
-            throw new IllegalArgumentException("uris may not be null or empty");
+    private void verifyRequestArguments(long[] eventIds, PCFPushSendAnalyticsListener listener) {
+        if (eventIds == null || eventIds.length == 0) {
+            throw new IllegalArgumentException("eventIds may not be null or empty");
         }
         if (listener == null) {
             throw new IllegalArgumentException("listener may not be null");
         }
     }
 
-    private void processRequest(List<Uri> uris, PCFPushSendAnalyticsListener listener) {
-        OutputStream outputStream = null;
-
+    // The listener is only called once the request is over, so that an exception thrown by the listener is not
+    // taken for a failure of the request after the outcome has already been reported.
+    private void processRequest(long[] eventIds, PCFPushSendAnalyticsListener listener) {
+        Response response = null;
+        String failureReason = null;
         try {
 
-            final URL url = getUrl(parameters);
-            final HttpURLConnection urlConnection = getHttpURLConnection(url, parameters);
+            final RequestTemplate template = getRequestTemplate(parameters);
+            final boolean useGzip = isGzipEnabled && !serversRejectingGzip.contains(parameters.getServiceUrl());
 
+            response = postEvents(template, eventIds, useGzip);
+
+            if (useGzip && response.statusCode == HTTP_UNSUPPORTED_MEDIA_TYPE) {
+                Logger.w("The back-end server does not accept compressed event data. Sending it uncompressed instead.");
+                serversRejectingGzip.add(parameters.getServiceUrl());
+                response = postEvents(template, eventIds, false);
+            }
+
+        } catch (Exception e) {
+            Logger.ex("Sending event data to back-end server failed", e);
+            response = null;
+            failureReason = e.getLocalizedMessage();
+        }
+
+        if (response != null) {
+            onSuccessfulNetworkRequest(response, listener);
+        } else {
+            listener.onBackEndSendEventsFailed(failureReason, 0L);
+        }
+    }
+
+    // Posts the given events and returns the status code and Retry-After wait of the response.
+    private Response postEvents(RequestTemplate template, long[] eventIds, boolean useGzip) throws Exception {
+        final HttpURLConnection urlConnection = getHttpURLConnection(template.getAnalyticsUrl(), template);
+        OutputStream outputStream = null;
+        boolean isResponseHandled = false;
+
+        try {
             urlConnection.addRequestProperty("Content-Type", "application/json");
-            urlConnection.addRequestProperty("Authorization", getBasicAuthorizationValue(parameters));
+            if (useGzip) {
+                urlConnection.addRequestProperty("Content-Encoding", "gzip");
+            }
+            urlConnection.addRequestProperty("Authorization", template.getAuthorizationValue());
             urlConnection.setRequestMethod("POST");
+            urlConnection.setDoOutput(true);
             urlConnection.setDoInput(true);
+            // The events are streamed from the database, so the length of the body is not known up front
+            urlConnection.setChunkedStreamingMode(0);
             urlConnection.connect();
 
-            outputStream = new BufferedOutputStream(urlConnection.getOutputStream());
+            final CountingOutputStream countingStream = new CountingOutputStream(urlConnection.getOutputStream());
+            outputStream = new BufferedOutputStream(countingStream);
+            if (useGzip) {
+                outputStream = new GZIPOutputStream(outputStream);
+            }
 
-            final String requestBodyData = getRequestBodyData(uris);
-            Logger.v("Making network request to post event data to the back-end server: " + requestBodyData);
-            writeOutput(requestBodyData, outputStream);
+            Logger.v("Making network request to post " + eventIds.length + " event(s) to the back-end server" + (useGzip ? " (gzip)." : "."));
+            final long[] eventTimesInSeconds = writeRequestBody(eventIds, outputStream);
+            AnalyticsMetricsRecorder.uploadSent(countingStream.numberOfBytes);
 
             final int statusCode = urlConnection.getResponseCode();
-            urlConnection.disconnect();
-
-            onSuccessfulNetworkRequest(statusCode, listener);
-
-        } catch (Exception e) {
-            Logger.ex("Sending event data to back-end server failed", e);
-            listener.onBackEndSendEventsFailed(e.getLocalizedMessage());
+            final long retryAfterInMilliseconds = getRetryAfterInMilliseconds(urlConnection.getHeaderField("Retry-After"), timeProvider.currentTimeMillis());
+            isResponseHandled = true;
+            return new Response(statusCode, retryAfterInMilliseconds, eventTimesInSeconds);
 
         } finally {
             if (outputStream != null) {
@@ -117,50 +252,122 @@ public class PCFPushSendAnalyticsApiRequestImpl extends ApiRequestImpl implement
                     outputStream.close();
                 } catch (IOException e) {}
             }
+            releaseHttpURLConnection(urlConnection, isResponseHandled);
         }
     }
 
-    private URL getUrl(PushParameters parameters) throws MalformedURLException {
+    // Streams the events straight from the storage cursor into the request body so that
+    // the size of the batch does not affect the amount of memory used.  Returns the times of the
+    // events that were written, in seconds since the epoch.
+    private long[] writeRequestBody(long[] eventIds, OutputStream outputStream) throws IOException {
+        final long[] eventTimesInSeconds = new long[eventIds.length];
+        final int[] numberOfEvents = new int[] { 0 };
+        final JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        jsonWriter.beginObject();
+        jsonWriter.name(AnalyticsEventList.EVENTS);
+        jsonWriter.beginArray();
+        eventsStorage.readEvents(eventIds, new AnalyticsEventsStorage.EventCallback() {
+
+            @Override
+            public void onEvent(AnalyticsEvent event) throws IOException {
+                gson.toJson(event, AnalyticsEvent.class, jsonWriter);
+                final long eventTime = getEventTimeInSeconds(event);
+                if (eventTime > 0 && numberOfEvents[0] < eventTimesInSeconds.length) {
+                    eventTimesInSeconds[numberOfEvents[0]++] = eventTime;
+                }
+            }
+        });
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+        jsonWriter.close();
+        return Arrays.copyOf(eventTimesInSeconds, numberOfEvents[0]);
+    }
 
+    private static long getEventTimeInSeconds(AnalyticsEvent event) {
         try {
-            return new URL(parameters.getServiceUrl() + "/" + Const.PCF_PUSH_ANALYTICS_REQUEST_ENDPOINT);
-        } catch (MalformedURLException e) {
-            return null;
+            return event.getEventTime() != null ? Long.parseLong(event.getEventTime()) : 0L;
+        } catch (NumberFormatException e) {
+            return 0L;
         }
     }
 
-    private String getRequestBodyData(List<Uri> uris) {
-        final List<AnalyticsEvent> events = getEvents(uris);
-        final AnalyticsEventList eventList = new AnalyticsEventList();
-        eventList.setEvents(events);
-        final Gson gson = new Gson();
-        final String requestBodyData = gson.toJson(eventList);
-        return requestBodyData;
-    }
+    private void onSuccessfulNetworkRequest(Response response, PCFPushSendAnalyticsListener listener) {
 
-    private List<AnalyticsEvent> getEvents(List<Uri> uris) {
-        final List<AnalyticsEvent> events = new LinkedList<>();
-        for (final Uri uri : uris) {
-            final AnalyticsEvent event = eventsStorage.readEvent(uri);
-            events.add(event);
+        final int statusCode = response.statusCode;
+        if (isRejectedStatusCode(statusCode)) {
+            Logger.e("Sending event data to back-end server failed: server rejected the events with HTTP status " + statusCode);
+            listener.onBackEndSendEventsRejected("Sending event data to back-end server returned HTTP status " + statusCode);
+            return;
         }
-        return events;
-    }
-
-    private void onSuccessfulNetworkRequest(int statusCode, PCFPushSendAnalyticsListener listener) {
 
         if (isFailureStatusCode(statusCode)) {
             Logger.e("Sending event data to back-end server failed: server returned HTTP status " + statusCode);
-            listener.onBackEndSendEventsFailed("Sending event data to back-end server returned HTTP status " + statusCode);
+            listener.onBackEndSendEventsFailed("Sending event data to back-end server returned HTTP status " + statusCode, response.retryAfterInMilliseconds);
             return;
         }
 
         Logger.i("Sending event data to back-end server succeeded.");
+        final long nowInSeconds = timeProvider.currentTimeMillis() / 1000L;
+        for (final long eventTime : response.eventTimesInSeconds) {
+            AnalyticsMetricsRecorder.eventUploaded(nowInSeconds - eventTime);
+        }
         listener.onBackEndSendEventsSuccess();
     }
 
+    // Client errors that are not caused by the credentials, the URL or the timing of the request mean that the
+    // server refused the events themselves.
+    private boolean isRejectedStatusCode(int statusCode) {
+        if (!isFatalStatusCode(statusCode)) {
+            return false;
+        }
+        switch (statusCode) {
+            case HttpURLConnection.HTTP_UNAUTHORIZED:
+            case HttpURLConnection.HTTP_FORBIDDEN:
+            case HttpURLConnection.HTTP_NOT_FOUND:
+            case HttpURLConnection.HTTP_CLIENT_TIMEOUT:
+            case HTTP_TOO_MANY_REQUESTS:
+                return false;
+        }
+        return true;
+    }
+
+    // Reads a Retry-After header, which holds either a number of seconds or an HTTP date.
+    // Returns zero if there is no header or it can not be read.
+    /* package */ static long getRetryAfterInMilliseconds(String headerValue, long currentTimeMillis) {
+        if (headerValue == null || headerValue.trim().isEmpty()) {
+            return 0L;
+        }
+        final String value = headerValue.trim();
+        try {
+            return Math.max(Long.parseLong(value) * 1000L, 0L);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so try it as a date
+        }
+        try {
+            final SimpleDateFormat format = new SimpleDateFormat(RFC_1123_DATE_FORMAT, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return Math.max(format.parse(value).getTime() - currentTimeMillis, 0L);
+        } catch (ParseException e) {
+            Logger.w("Could not read the Retry-After header from the back-end server: " + value);
+            return 0L;
+        }
+    }
+
+    private static boolean isGzipEnabled(Context context) {
+        try {
+            final PackageManager manager = context.getPackageManager();
+            final ApplicationInfo applicationInfo = manager.getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            if (applicationInfo != null && applicationInfo.metaData != null) {
+                return applicationInfo.metaData.getBoolean(GZIP_ENABLED_META_DATA, false);
+            }
+        } catch (Exception e) {
+            Logger.ex("Could not read the gzip setting from the application meta-data", e);
+        }
+        return false;
+    }
+
     @Override
     public PCFPushSendAnalyticsApiRequest copy() {
-        return new PCFPushSendAnalyticsApiRequestImpl(context, parameters, eventsStorage, pushRequestHeaders, networkWrapper);
+        return new PCFPushSendAnalyticsApiRequestImpl(context, parameters, eventsStorage, pushRequestHeaders, networkWrapper, timeProvider, isGzipEnabled);
     }
 }
@@ -2,5 +2,16 @@ package io.pivotal.android.push.backend.analytics;
 
 public interface PCFPushSendAnalyticsListener {
     void onBackEndSendEventsSuccess();
-    void onBackEndSendEventsFailed(String reason);
+
+    /**
+     * @param retryAfterInMilliseconds how long the server asked us to wait before trying again, via its
+     *                                 Retry-After header.  Zero if it did not say.
+     */
+    void onBackEndSendEventsFailed(String reason, long retryAfterInMilliseconds);
+
+    /**
+     * Called when the server refuses the events themselves (e.g. with 400 Bad Request), so that sending the same
+     * events again would fail again.
+     */
+    void onBackEndSendEventsRejected(String reason);
 }
@@ -8,10 +8,7 @@ import android.os.Build;
 
 import com.google.gson.Gson;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -24,9 +21,9 @@ import io.pivotal.android.push.model.api.PCFPushApiRegistrationPostRequestData;
 import io.pivotal.android.push.model.api.PCFPushApiRegistrationPutRequestData;
 import io.pivotal.android.push.model.api.PCFPushApiRegistrationResponseData;
 import io.pivotal.android.push.util.ApiRequestImpl;
-import io.pivotal.android.push.util.Const;
 import io.pivotal.android.push.util.Logger;
 import io.pivotal.android.push.util.NetworkWrapper;
+import io.pivotal.android.push.util.RequestTemplate;
 import io.pivotal.android.push.util.TagsHelper;
 import io.pivotal.android.push.util.Util;
 
@@ -35,6 +32,8 @@ import io.pivotal.android.push.util.Util;
  */
 public class PCFPushRegistrationApiRequestImpl extends ApiRequestImpl implements PCFPushRegistrationApiRequest {
 
+    private static final Gson gson = new Gson();
+
     public PCFPushRegistrationApiRequestImpl(Context context, NetworkWrapper networkWrapper) {
         super(context, networkWrapper);
     }
@@ -97,35 +96,42 @@ public class PCFPushRegistrationApiRequestImpl extends ApiRequestImpl implements
 
         OutputStream outputStream = null;
         try {
-            final URL url = getURL(isUpdate, previousPCFPushDeviceRegistrationId, parameters);
-            final HttpURLConnection urlConnection = getHttpURLConnection(url, parameters);
-
-            urlConnection.setDoOutput(true);
-            urlConnection.setDoInput(true);
-            urlConnection.setRequestMethod(getRequestMethod(isUpdate));
-            urlConnection.addRequestProperty("Content-Type", "application/json");
-            urlConnection.addRequestProperty("Authorization", getBasicAuthorizationValue(parameters));
-            urlConnection.connect();
-
-            outputStream = new BufferedOutputStream(urlConnection.getOutputStream());
-
-            final String requestBodyData = getRequestBodyData(
-                    fcmDeviceRegistrationId,
-                    savedTags,
-                    parameters,
-                    isUpdate);
-
-            Logger.v("Making network request to register this device with the PCF Push server: " + requestBodyData);
-            writeOutput(requestBodyData, outputStream);
-
-            final int statusCode = urlConnection.getResponseCode();
-
-            final InputStream inputStream = new BufferedInputStream(urlConnection.getInputStream());
-            final String responseString = readInput(inputStream);
-
-            urlConnection.disconnect();
+            final RequestTemplate template = getRequestTemplate(parameters);
+            final URL url = getURL(isUpdate, previousPCFPushDeviceRegistrationId, template);
+            final HttpURLConnection urlConnection = getHttpURLConnection(url, template);
+
+            final int statusCode;
+            final PCFPushApiRegistrationResponseData responseData;
+            boolean isResponseHandled = false;
+            try {
+                final String requestBodyData = getRequestBodyData(
+                        fcmDeviceRegistrationId,
+                        savedTags,
+                        parameters,
+                        isUpdate);
+                final byte[] requestBody = requestBodyData.getBytes("UTF-8");
+
+                urlConnection.setDoOutput(true);
+                urlConnection.setDoInput(true);
+                urlConnection.setFixedLengthStreamingMode(requestBody.length);
+                urlConnection.setRequestMethod(getRequestMethod(isUpdate));
+                urlConnection.addRequestProperty("Content-Type", "application/json");
+                urlConnection.addRequestProperty("Authorization", template.getAuthorizationValue());
+                urlConnection.connect();
+
+                outputStream = urlConnection.getOutputStream();
+
+                Logger.v("Making network request to register this device with the PCF Push server: " + requestBodyData);
+                writeOutput(requestBody, outputStream);
+
+                statusCode = urlConnection.getResponseCode();
+                responseData = isFailureStatusCode(statusCode) ? null : readJsonResponse(urlConnection, gson, PCFPushApiRegistrationResponseData.class);
+                isResponseHandled = true;
+            } finally {
+                releaseHttpURLConnection(urlConnection, isResponseHandled);
+            }
 
-            onSuccessfulNetworkRequest(statusCode, responseString, listener);
+            onSuccessfulNetworkRequest(statusCode, responseData, listener);
 
         } catch (Exception e) {
             Logger.ex("PCF Push device registration attempt failed", e);
@@ -151,12 +157,12 @@ public class PCFPushRegistrationApiRequestImpl extends ApiRequestImpl implements
 
     private URL getURL(boolean isUpdate,
                        String previousPCFPushDeviceRegistrationId,
-                       PushParameters parameters) throws MalformedURLException {
+                       RequestTemplate template) throws MalformedURLException {
 
         if (isUpdate) {
-            return new URL(parameters.getServiceUrl() + "/" + Const.PCF_PUSH_REGISTRATION_REQUEST_ENDPOINT + "/" +  previousPCFPushDeviceRegistrationId);
+            return template.getDeviceRegistrationUrl(previousPCFPushDeviceRegistrationId);
         } else {
-            return new URL(parameters.getServiceUrl() + "/" + Const.PCF_PUSH_REGISTRATION_REQUEST_ENDPOINT);
+            return template.getRegistrationUrl();
         }
     }
 
@@ -169,7 +175,7 @@ public class PCFPushRegistrationApiRequestImpl extends ApiRequestImpl implements
     }
 
     public void onSuccessfulNetworkRequest(int statusCode,
-                                           String responseString,
+                                           PCFPushApiRegistrationResponseData responseData,
                                            final PCFPushRegistrationListener listener) {
 
         if (isFailureStatusCode(statusCode)) {
@@ -178,25 +184,12 @@ public class PCFPushRegistrationApiRequestImpl extends ApiRequestImpl implements
             return;
         }
 
-        if (responseString == null) {
+        if (responseData == null) {
             Logger.e("PCF Push server registration failed: server response empty");
             listener.onPCFPushRegistrationFailed("PCF Push server response empty");
             return;
         }
 
-        final Gson gson = new Gson();
-        final PCFPushApiRegistrationResponseData responseData;
-        try {
-            responseData = gson.fromJson(responseString, PCFPushApiRegistrationResponseData.class);
-            if (responseData == null) {
-                throw new Exception("unable to parse server response");
-            }
-        } catch (Exception e) {
-            Logger.e("PCF Push server registration failed: " + e.getLocalizedMessage());
-            listener.onPCFPushRegistrationFailed(e.getLocalizedMessage());
-            return;
-        }
-
         final String deviceUuid = responseData.getDeviceUuid();
         if (deviceUuid == null || deviceUuid.isEmpty()) {
             Logger.e("PCF Push server registration failed: did not return device_uuid");
@@ -222,7 +215,6 @@ public class PCFPushRegistrationApiRequestImpl extends ApiRequestImpl implements
                 parameters,
                 isUpdate);
 
-        final Gson gson = new Gson();
         return gson.toJson(data);
     }
 
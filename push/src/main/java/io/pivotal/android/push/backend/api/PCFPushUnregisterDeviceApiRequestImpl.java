@@ -10,9 +10,9 @@ import java.net.URL;
 
 import io.pivotal.android.push.PushParameters;
 import io.pivotal.android.push.util.ApiRequestImpl;
-import io.pivotal.android.push.util.Const;
 import io.pivotal.android.push.util.Logger;
 import io.pivotal.android.push.util.NetworkWrapper;
+import io.pivotal.android.push.util.RequestTemplate;
 
 /**
  * API request for unregistering a device from the Pivotal CF Mobile Services Push server.
@@ -30,16 +30,22 @@ public class PCFPushUnregisterDeviceApiRequestImpl extends ApiRequestImpl implem
 
         try {
             Logger.v("Making network request to the PCF Push server to unregister the device ID:" + pcfPushDeviceRegistrationId);
-            final URL url = new URL(parameters.getServiceUrl() + "/" + Const.PCF_PUSH_REGISTRATION_REQUEST_ENDPOINT + "/" + pcfPushDeviceRegistrationId);
-            final HttpURLConnection urlConnection = getHttpURLConnection(url, parameters);
-
-            urlConnection.setRequestMethod("DELETE");
-            urlConnection.addRequestProperty("Authorization", ApiRequestImpl.getBasicAuthorizationValue(parameters));
-            urlConnection.connect();
-
-            final int statusCode = urlConnection.getResponseCode();
-
-            urlConnection.disconnect();
+            final RequestTemplate template = getRequestTemplate(parameters);
+            final URL url = template.getDeviceRegistrationUrl(pcfPushDeviceRegistrationId);
+            final HttpURLConnection urlConnection = getHttpURLConnection(url, template);
+
+            final int statusCode;
+            boolean isResponseHandled = false;
+            try {
+                urlConnection.setRequestMethod("DELETE");
+                urlConnection.addRequestProperty("Authorization", template.getAuthorizationValue());
+                urlConnection.connect();
+
+                statusCode = urlConnection.getResponseCode();
+                isResponseHandled = true;
+            } finally {
+                releaseHttpURLConnection(urlConnection, isResponseHandled);
+            }
 
             onSuccessfulRequest(statusCode, listener);
 
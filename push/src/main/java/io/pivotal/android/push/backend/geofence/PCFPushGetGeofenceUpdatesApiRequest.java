@@ -5,12 +5,6 @@ package io.pivotal.android.push.backend.geofence;
 
 import android.content.Context;
 
-import com.google.gson.Gson;
-
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -22,6 +16,7 @@ import io.pivotal.android.push.util.Const;
 import io.pivotal.android.push.util.GsonUtil;
 import io.pivotal.android.push.util.Logger;
 import io.pivotal.android.push.util.NetworkWrapper;
+import io.pivotal.android.push.util.RequestTemplate;
 
 public class PCFPushGetGeofenceUpdatesApiRequest extends ApiRequestImpl {
 
@@ -54,43 +49,41 @@ public class PCFPushGetGeofenceUpdatesApiRequest extends ApiRequestImpl {
     }
 
     private void handleRequest(long timestamp, String deviceUuid, PushParameters parameters, PCFPushGetGeofenceUpdatesListener listener) {
-        OutputStream outputStream = null;
         try {
-            final URL url = getURL(timestamp, deviceUuid, parameters);
-            final HttpURLConnection urlConnection = getHttpURLConnection(url, parameters);
-
-            urlConnection.setDoInput(true);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.addRequestProperty("Authorization", getBasicAuthorizationValue(parameters));
-            urlConnection.connect();
-
-            Logger.v("Making network request to get updated geofences with url: " + url.toString());
-
-            final int statusCode = urlConnection.getResponseCode();
-
-            final InputStream inputStream = new BufferedInputStream(urlConnection.getInputStream());
-            final String responseString = readInput(inputStream);
-
-            urlConnection.disconnect();
+            final RequestTemplate template = getRequestTemplate(parameters);
+            final URL url = getURL(timestamp, deviceUuid, template);
+            final HttpURLConnection urlConnection = getHttpURLConnection(url, template);
+
+            final int statusCode;
+            final PCFPushGeofenceResponseData responseData;
+            boolean isResponseHandled = false;
+            try {
+                urlConnection.setDoInput(true);
+                urlConnection.setRequestMethod("GET");
+                urlConnection.addRequestProperty("Authorization", template.getAuthorizationValue());
+                urlConnection.connect();
+
+                Logger.v("Making network request to get updated geofences with url: " + url.toString());
+
+                statusCode = urlConnection.getResponseCode();
+
+                // Geofence responses can be large, so they are parsed while they are being downloaded
+                responseData = isFailureStatusCode(statusCode) ? null : readJsonResponse(urlConnection, GsonUtil.getGson(), PCFPushGeofenceResponseData.class);
+                isResponseHandled = true;
+            } finally {
+                releaseHttpURLConnection(urlConnection, isResponseHandled);
+            }
 
-            onSuccessfulNetworkRequest(statusCode, responseString, listener);
+            onSuccessfulNetworkRequest(statusCode, responseData, listener);
 
         } catch (Exception e) {
             Logger.ex("PCF Push get geofence updates request failed", e);
             listener.onPCFPushGetGeofenceUpdatesFailed(e.getClass().getCanonicalName() + " " + e.getLocalizedMessage());
         }
-
-        finally {
-            if (outputStream != null) {
-                try {
-                    outputStream.close();
-                } catch (IOException e) {}
-            }
-        }
     }
 
     public void onSuccessfulNetworkRequest(int statusCode,
-                                           String responseString,
+                                           PCFPushGeofenceResponseData responseData,
                                            final PCFPushGetGeofenceUpdatesListener listener) {
 
         if (isFailureStatusCode(statusCode)) {
@@ -99,36 +92,23 @@ public class PCFPushGetGeofenceUpdatesApiRequest extends ApiRequestImpl {
             return;
         }
 
-        if (responseString == null) {
+        if (responseData == null) {
             Logger.e("PCF Push get geofence updates failed: server response empty");
             listener.onPCFPushGetGeofenceUpdatesFailed("PCF Push server response empty");
             return;
         }
 
-        final Gson gson = GsonUtil.getGson();
-        final PCFPushGeofenceResponseData responseData;
-        try {
-            responseData = gson.fromJson(responseString, PCFPushGeofenceResponseData.class);
-            if (responseData == null) {
-                throw new Exception("unable to parse server response");
-            }
-        } catch (Exception e) {
-            Logger.e("PCF Push get geofence updates failed: " + e.getLocalizedMessage());
-            listener.onPCFPushGetGeofenceUpdatesFailed(e.getLocalizedMessage());
-            return;
-        }
-
         Logger.i("PCF Push get geofence updates succeeded.");
         listener.onPCFPushGetGeofenceUpdatesSuccess(responseData);
     }
 
     private URL getURL(long timestamp,
                        String deviceUuid,
-                       PushParameters parameters) throws MalformedURLException {
+                       RequestTemplate template) throws MalformedURLException {
 
         final StringBuilder builder = new StringBuilder();
 
-        addUrlToRequest(parameters, builder);
+        addUrlToRequest(template, builder);
         addEndpointToRequest(builder);
         addTimestampToRequest(timestamp, builder);
         addDeviceUuidToRequest(deviceUuid, builder);
@@ -137,8 +117,8 @@ public class PCFPushGetGeofenceUpdatesApiRequest extends ApiRequestImpl {
         return new URL(builder.toString());
     }
 
-    private void addUrlToRequest(PushParameters parameters, StringBuilder builder) {
-        builder.append(parameters.getServiceUrl());
+    private void addUrlToRequest(RequestTemplate template, StringBuilder builder) {
+        builder.append(template.getServiceUrl());
     }
 
     private void addEndpointToRequest(StringBuilder builder) {
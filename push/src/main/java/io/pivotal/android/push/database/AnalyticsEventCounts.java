@@ -0,0 +1,180 @@
+package io.pivotal.android.push.database;
+
+import android.database.Cursor;
+import android.util.SparseIntArray;
+
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+
+/**
+ * Keeps the number of events in each {@link AnalyticsEvent.Status} in memory so that the queue depth
+ * can be read without querying the events table.
+ *
+ * The counts are adjusted by the storage after every change.  The bulk status updates and deletes read the
+ * statuses of the affected events inside the same transaction, so they know their exact effect.  Changes with
+ * an unknown effect (e.g. a failed update, or the cleanup of a full database) mark the counts as stale, and the
+ * next read reconciles them with a single "SELECT status, COUNT(*) ... GROUP BY status" query.
+ */
+/* package */ class AnalyticsEventCounts {
+
+    private static final Object lock = new Object();
+    private static final SparseIntArray counts = new SparseIntArray();
+    private static boolean isStale = true;
+    private static long modificationCount = 0;
+    private static long numberOfSuppressedDuplicates = 0;
+
+    public static int getCount(int status) {
+        synchronized (lock) {
+            if (!isStale) {
+                return counts.get(status, 0);
+            }
+        }
+        return reconcile().get(status, 0);
+    }
+
+    public static int getTotal() {
+        synchronized (lock) {
+            if (!isStale) {
+                return sum(counts);
+            }
+        }
+        return sum(reconcile());
+    }
+
+    public static void eventAdded(int status) {
+        synchronized (lock) {
+            counts.put(status, counts.get(status, 0) + 1);
+            modificationCount += 1;
+        }
+    }
+
+    public static void eventsMoved(int fromStatus, int toStatus, int numberOfEvents) {
+        if (numberOfEvents <= 0 || fromStatus == toStatus) {
+            return;
+        }
+        synchronized (lock) {
+            counts.put(fromStatus, Math.max(counts.get(fromStatus, 0) - numberOfEvents, 0));
+            counts.put(toStatus, counts.get(toStatus, 0) + numberOfEvents);
+            modificationCount += 1;
+        }
+    }
+
+    /**
+     * Records that events were moved to the given status.
+     *
+     * @param previousStatusCounts the number of moved events in each status, as they were before the move
+     */
+    public static void eventsMoved(SparseIntArray previousStatusCounts, int toStatus) {
+        synchronized (lock) {
+            for (int i = 0; i < previousStatusCounts.size(); i += 1) {
+                final int fromStatus = previousStatusCounts.keyAt(i);
+                final int numberOfEvents = previousStatusCounts.valueAt(i);
+                if (fromStatus != toStatus && numberOfEvents > 0) {
+                    counts.put(fromStatus, Math.max(counts.get(fromStatus, 0) - numberOfEvents, 0));
+                    counts.put(toStatus, counts.get(toStatus, 0) + numberOfEvents);
+                }
+            }
+            modificationCount += 1;
+        }
+    }
+
+    /**
+     * Records that events were deleted.
+     *
+     * @param deletedStatusCounts the number of deleted events in each status
+     */
+    public static void eventsRemoved(SparseIntArray deletedStatusCounts) {
+        synchronized (lock) {
+            for (int i = 0; i < deletedStatusCounts.size(); i += 1) {
+                final int status = deletedStatusCounts.keyAt(i);
+                counts.put(status, Math.max(counts.get(status, 0) - deletedStatusCounts.valueAt(i), 0));
+            }
+            modificationCount += 1;
+        }
+    }
+
+    /**
+     * Records that the given number of events were dropped as duplicates of stored events.  The storage
+     * only counts the events that were inserted, so the counts stay as they are.
+     */
+    public static void duplicatesSuppressed(int numberOfDuplicates) {
+        synchronized (lock) {
+            numberOfSuppressedDuplicates += numberOfDuplicates;
+        }
+    }
+
+    public static long getNumberOfSuppressedDuplicates() {
+        synchronized (lock) {
+            return numberOfSuppressedDuplicates;
+        }
+    }
+
+    public static void clear() {
+        synchronized (lock) {
+            counts.clear();
+            isStale = false;
+            modificationCount += 1;
+        }
+    }
+
+    public static void invalidate() {
+        synchronized (lock) {
+            isStale = true;
+            modificationCount += 1;
+        }
+    }
+
+    // Used by unit tests
+    public static boolean isStale() {
+        synchronized (lock) {
+            return isStale;
+        }
+    }
+
+    /**
+     * Reads the counts from the database.  If the counts are modified while the query is running then
+     * they are left stale so that the next read tries again.
+     *
+     * @return the counts read from the database
+     * @throws android.database.SQLException if the events could not be counted.  The counts are left stale.
+     */
+    public static SparseIntArray reconcile() {
+        final long modificationCountAtStart;
+        synchronized (lock) {
+            modificationCountAtStart = modificationCount;
+        }
+
+        final SparseIntArray databaseCounts = new SparseIntArray();
+        Cursor cursor = null;
+        try {
+            cursor = DatabaseWrapper.query(Database.EVENTS_CONTENT_URI, new String[] { AnalyticsEvent.Columns.STATUS, "COUNT(*)" }, null, null, AnalyticsEvent.Columns.STATUS, null);
+            if (cursor != null) {
+                for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                    databaseCounts.put(cursor.getInt(0), cursor.getInt(1));
+                }
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        synchronized (lock) {
+            if (modificationCount == modificationCountAtStart) {
+                counts.clear();
+                for (int i = 0; i < databaseCounts.size(); i += 1) {
+                    counts.put(databaseCounts.keyAt(i), databaseCounts.valueAt(i));
+                }
+                isStale = false;
+            }
+        }
+        return databaseCounts;
+    }
+
+    private static int sum(SparseIntArray array) {
+        int total = 0;
+        for (int i = 0; i < array.size(); i += 1) {
+            total += array.valueAt(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,236 @@
+package io.pivotal.android.push.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+
+/**
+ * Holds compiled statements for the fixed shapes of SQL that are run against the events table, so
+ * that writing an event only has to bind its arguments instead of building ContentValues and compiling
+ * the SQL again on every call.
+ *
+ * A {@link SQLiteStatement} may not be used by two threads at once, so each statement is guarded by its
+ * own lock.
+ *
+ * The attribute columns of an event are stored once per distinct combination in the attributes table.  The keys of
+ * the combinations that have already been looked up are cached, so inserting an event normally costs a single
+ * statement.  Keys that are looked up inside a transaction are kept apart, for the thread that runs the transaction,
+ * and are only added to the shared cache once the transaction commits.  Otherwise another thread could use the key
+ * of an attributes row that is then rolled back.  The shared cache has its own lock, which is never held while a
+ * statement runs, so that a thread that holds the database lock can always read the cache.
+ */
+public class AnalyticsEventStatements {
+
+    private final SQLiteStatement insertStatement;
+    private final SQLiteStatement updateStatusStatement;
+    private final SQLiteStatement deleteStatement;
+    private final SQLiteStatement selectIdByDedupKeyStatement;
+    private final SQLiteStatement selectAttributesIdStatement;
+    private final SQLiteStatement insertAttributesStatement;
+    private final Map<List<String>, Long> attributesIds = new HashMap<>();
+    private final ThreadLocal<Map<List<String>, Long>> transactionAttributesIds = new ThreadLocal<>();
+
+    public AnalyticsEventStatements(SQLiteDatabase database) {
+        insertStatement = database.compileStatement(AnalyticsEvent.getInsertSqlStatement());
+        updateStatusStatement = database.compileStatement("UPDATE '" + Database.EVENTS_TABLE_NAME + "' SET '" + AnalyticsEvent.Columns.STATUS + "' = ? WHERE " + BaseColumns._ID + " = ?;");
+        deleteStatement = database.compileStatement("DELETE FROM '" + Database.EVENTS_TABLE_NAME + "' WHERE " + BaseColumns._ID + " = ?;");
+        selectIdByDedupKeyStatement = database.compileStatement(AnalyticsEvent.getSelectIdByDedupKeySqlStatement());
+        selectAttributesIdStatement = database.compileStatement(AnalyticsEvent.getSelectAttributesIdSqlStatement());
+        insertAttributesStatement = database.compileStatement(AnalyticsEvent.getInsertAttributesSqlStatement());
+    }
+
+    /**
+     * Inserts the given event.
+     *
+     * @param event The event to insert.
+     * @return the row ID of the new event, or -1 if it was not inserted because an event with the same
+     * {@link AnalyticsEvent#getDedupKey() dedup key} is already stored.
+     */
+    public long insert(AnalyticsEvent event) {
+        final long attributesId = getAttributesId(event.getDeviceUuid(), event.getSdkVersion(), event.getPlatformType(), event.getPlatformUuid());
+        synchronized (insertStatement) {
+            event.bindInsertArguments(insertStatement, attributesId);
+            return insertStatement.executeInsert();
+        }
+    }
+
+    /**
+     * Gets the row ID of the stored event that has the same {@link AnalyticsEvent#getDedupKey() dedup key} as the
+     * given event.
+     *
+     * @return the row ID of the stored event, or -1 if there is none.
+     */
+    public long getDuplicateId(AnalyticsEvent event) {
+        final String dedupKey = event.getDedupKey();
+        if (dedupKey == null) {
+            return -1;
+        }
+        synchronized (selectIdByDedupKeyStatement) {
+            selectIdByDedupKeyStatement.bindString(1, dedupKey);
+            try {
+                return selectIdByDedupKeyStatement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Gets the key of the row in the attributes table with the given values, adding the row if there is none yet.
+     *
+     * @return the row ID of the attributes.
+     */
+    public long getAttributesId(String deviceUuid, String sdkVersion, String platformType, String platformUuid) {
+        final List<String> attributes = Arrays.asList(deviceUuid, sdkVersion, platformType, platformUuid);
+        synchronized (attributesIds) {
+            final Long cachedId = attributesIds.get(attributes);
+            if (cachedId != null) {
+                return cachedId;
+            }
+        }
+        final Map<List<String>, Long> transactionIds = transactionAttributesIds.get();
+        if (transactionIds != null && transactionIds.containsKey(attributes)) {
+            return transactionIds.get(attributes);
+        }
+
+        final long id = selectOrInsertAttributes(attributes);
+        if (transactionIds != null) {
+            transactionIds.put(attributes, id);
+        } else {
+            synchronized (attributesIds) {
+                attributesIds.put(attributes, id);
+            }
+        }
+        return id;
+    }
+
+    private long selectOrInsertAttributes(List<String> attributes) {
+        final long selectedId = selectAttributesId(attributes);
+        if (selectedId >= 0) {
+            return selectedId;
+        }
+        synchronized (insertAttributesStatement) {
+            // Another thread may have added the same attributes while this one was waiting
+            final long addedId = selectAttributesId(attributes);
+            if (addedId >= 0) {
+                return addedId;
+            }
+            bindAttributes(insertAttributesStatement, attributes);
+            final long id = insertAttributesStatement.executeInsert();
+            if (id < 0) {
+                throw new SQLiteException("Could not insert event attributes " + attributes);
+            }
+            return id;
+        }
+    }
+
+    // Returns -1 if there is no row with the given attributes
+    private long selectAttributesId(List<String> attributes) {
+        synchronized (selectAttributesIdStatement) {
+            bindAttributes(selectAttributesIdStatement, attributes);
+            try {
+                return selectAttributesIdStatement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Must be called before the calling thread begins a transaction.
+     *
+     * @return true if this is the outermost transaction on the thread.  Only the outermost transaction should
+     * call {@link #transactionEnded(boolean)}.
+     */
+    public boolean transactionStarted() {
+        if (transactionAttributesIds.get() != null) {
+            return false;
+        }
+        transactionAttributesIds.set(new HashMap<List<String>, Long>());
+        return true;
+    }
+
+    /**
+     * Must be called after the outermost transaction on the calling thread has ended.  The attribute keys that
+     * were looked up during the transaction are added to the shared cache if it was committed, and are forgotten
+     * if it was rolled back.
+     */
+    public void transactionEnded(boolean isCommitted) {
+        final Map<List<String>, Long> transactionIds = transactionAttributesIds.get();
+        transactionAttributesIds.remove();
+        if (isCommitted && transactionIds != null) {
+            synchronized (attributesIds) {
+                attributesIds.putAll(transactionIds);
+            }
+        }
+    }
+
+    // Arguments that are left unbound after clearBindings are NULL.
+    private static void bindAttributes(SQLiteStatement statement, List<String> attributes) {
+        statement.clearBindings();
+        for (int i = 0; i < attributes.size(); i += 1) {
+            final String value = attributes.get(i);
+            if (value != null) {
+                statement.bindString(i + 1, value);
+            }
+        }
+    }
+
+    /**
+     * Sets the status of the event with the given row ID.
+     *
+     * @return the number of rows updated.
+     */
+    public int updateStatus(long id, int status) {
+        synchronized (updateStatusStatement) {
+            updateStatusStatement.bindLong(1, status);
+            updateStatusStatement.bindLong(2, id);
+            return updateStatusStatement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Deletes the event with the given row ID.
+     *
+     * @return the number of rows deleted.
+     */
+    public int delete(long id) {
+        synchronized (deleteStatement) {
+            deleteStatement.bindLong(1, id);
+            return deleteStatement.executeUpdateDelete();
+        }
+    }
+
+    public void close() {
+        synchronized (insertStatement) {
+            insertStatement.close();
+        }
+        synchronized (updateStatusStatement) {
+            updateStatusStatement.close();
+        }
+        synchronized (deleteStatement) {
+            deleteStatement.close();
+        }
+        synchronized (selectIdByDedupKeyStatement) {
+            selectIdByDedupKeyStatement.close();
+        }
+        synchronized (selectAttributesIdStatement) {
+            selectAttributesIdStatement.close();
+        }
+        synchronized (insertAttributesStatement) {
+            insertAttributesStatement.close();
+        }
+        synchronized (attributesIds) {
+            attributesIds.clear();
+        }
+    }
+}
@@ -2,12 +2,20 @@ package io.pivotal.android.push.database;
 
 import android.net.Uri;
 
+import java.io.IOException;
 import java.util.List;
 
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 
 public interface AnalyticsEventsStorage {
 
+    /**
+     * Receives the {@link AnalyticsEvent} objects read by {@link #readEvents}, one at a time.
+     */
+    public interface EventCallback {
+        public void onEvent(AnalyticsEvent event) throws IOException;
+    }
+
     /**
      * Saves the given event object to the backing store.
      * @param event  the {@link AnalyticsEvent} object to save
@@ -15,6 +23,13 @@ public interface AnalyticsEventsStorage {
      */
     public Uri saveEvent(AnalyticsEvent event);
 
+    /**
+     * Saves the given event objects to the backing store in one transaction.  Either all of the events are saved or none are.
+     * @param events  the {@link AnalyticsEvent} objects to save
+     * @return the list of {@link android.net.Uri}s of the newly created {@link AnalyticsEvent}s, in the same order, if created successfully.  Otherwise null.
+     */
+    public List<Uri> saveEvents(List<AnalyticsEvent> events);
+
     /**
      * Gets the list of Event URIs from the backing store.
      *
@@ -31,6 +46,28 @@ public interface AnalyticsEventsStorage {
      */
     public List<Uri> getEventUrisWithStatus(int status);
 
+    /**
+     * Gets the row IDs of the {@link AnalyticsEvent}s in the backing store with the given status, in row ID order.
+     *
+     * @param status     a {@link AnalyticsEvent.Status} value to query
+     * @return  the row IDs of the {@link AnalyticsEvent}s currently in the backing store with the given {@link AnalyticsEvent.Status}.
+     */
+    public long[] getEventIdsWithStatus(int status);
+
+    /**
+     * Gets the next page of {@link AnalyticsEvent} row IDs from the backing store that have one of the given statuses,
+     * in row ID order, starting after the given row ID.  The page is cut off once it holds <code>maxEvents</code> events
+     * or once the estimated size of the serialized events would exceed <code>maxBytes</code>.  The first event is always
+     * returned, even if it alone is larger than <code>maxBytes</code>, so that one large event can not block the rest.
+     *
+     * @param statuses    the {@link AnalyticsEvent.Status} values to query
+     * @param afterRowId  only events with a row ID greater than this one are returned.  Use 0 for the first page.
+     * @param maxEvents   the most events to return
+     * @param maxBytes    the most bytes the serialized events should take up
+     * @return  the row IDs of the {@link AnalyticsEvent}s in the page, in ascending order.  Empty if there are no more events.
+     */
+    public long[] getEventIdsPage(int[] statuses, long afterRowId, int maxEvents, long maxBytes);
+
     /**
      * Gets the list of {@link AnalyticsEvent} URIs from the backing store with
      * the given type.
@@ -47,18 +84,58 @@ public interface AnalyticsEventsStorage {
      */
     public AnalyticsEvent readEvent(Uri uri);
 
+    /**
+     * Reads the {@link AnalyticsEvent}s with the given {@link Uri}s from the backing store and passes them to
+     * the given callback one at a time, so that the whole list never needs to be held in memory at once.
+     * Events that can not be found are skipped.
+     * @param eventUris  the list of {@link android.net.Uri}s of the {@link AnalyticsEvent} objects to read
+     * @param callback   the {@link EventCallback} that receives each {@link AnalyticsEvent}
+     * @throws IOException if the callback fails
+     */
+    public void readEvents(List<Uri> eventUris, EventCallback callback) throws IOException;
+
+    /**
+     * Reads the {@link AnalyticsEvent}s with the given row IDs from the backing store and passes them to the given
+     * callback one at a time, in row ID order.  Events that can not be found are skipped.
+     * @param eventIds  the row IDs of the {@link AnalyticsEvent} objects to read
+     * @param callback  the {@link EventCallback} that receives each {@link AnalyticsEvent}
+     * @throws IOException if the callback fails
+     */
+    public void readEvents(long[] eventIds, EventCallback callback) throws IOException;
+
     /**
      * Deletes the given {@link AnalyticsEvent} (with the given {@link Uri}s from the backing store
      * @param eventUris  the list of {@link android.net.Uri}s of {@link AnalyticsEvent} object to delete from the backing store.
      */
     public void deleteEvents(List<Uri> eventUris);
 
+    /**
+     * Deletes the {@link AnalyticsEvent}s with the given row IDs from the backing store in one transaction.
+     * @param eventIds  the row IDs of the {@link AnalyticsEvent} objects to delete from the backing store.
+     */
+    public void deleteEvents(long[] eventIds);
+
     /**
      * Gets the number of {@link AnalyticsEvent} currently in the backing store.
      * @return the number of {@link AnalyticsEvent} currently in the backing store.
      */
     public int getNumberOfEvents();
 
+    /**
+     * Gets the number of {@link AnalyticsEvent} currently in the backing store with the given status.
+     * @param status a {@link AnalyticsEvent.Status} value to count
+     * @return the number of {@link AnalyticsEvent} currently in the backing store with the given status.
+     */
+    public int countByStatus(int status);
+
+    /**
+     * Deletes up to <code>maxEvents</code> {@link AnalyticsEvent}s that the backing store's eviction policies
+     * select (e.g. events that are too old, or the lowest priority events when the store is too large).
+     * @param maxEvents the most {@link AnalyticsEvent}s to delete
+     * @return the number of {@link AnalyticsEvent}s deleted
+     */
+    public int evictEvents(int maxEvents);
+
     /**
      * Deletes all {@link AnalyticsEvent}s from the backing store
      */
@@ -70,4 +147,34 @@ public interface AnalyticsEventsStorage {
      * @param status the {@link AnalyticsEvent.Status} value to set
      */
     public void setEventStatus(Uri eventUri, int status);
+
+    /**
+     * Sets the status of all of the {@link AnalyticsEvent}s with the given {@link Uri}s in one transaction.
+     * @param eventUris the list of {@link android.net.Uri}s of the {@link AnalyticsEvent}s to set the status
+     * @param status the {@link AnalyticsEvent.Status} value to set
+     */
+    public void setEventStatus(List<Uri> eventUris, int status);
+
+    /**
+     * Sets the status of all of the {@link AnalyticsEvent}s with the given row IDs in one transaction.
+     * @param eventIds the row IDs of the {@link AnalyticsEvent}s to set the status
+     * @param status the {@link AnalyticsEvent.Status} value to set
+     */
+    public void setEventStatus(long[] eventIds, int status);
+
+    /**
+     * Adds one to the number of times the server has rejected the {@link AnalyticsEvent} with the given row ID
+     * when it was sent on its own.
+     * @param eventId the row ID of the {@link AnalyticsEvent}
+     * @return the new number of rejected attempts, or -1 if the {@link AnalyticsEvent} could not be found.
+     */
+    public int incrementRejectedAttempts(long eventId);
+
+    /**
+     * Sets the status of every {@link AnalyticsEvent} that currently has the status <code>fromStatus</code>.
+     * @param fromStatus the {@link AnalyticsEvent.Status} value of the events to update
+     * @param toStatus the {@link AnalyticsEvent.Status} value to set
+     * @return the number of {@link AnalyticsEvent}s that were updated
+     */
+    public int setStatusWhere(int fromStatus, int toStatus);
 }
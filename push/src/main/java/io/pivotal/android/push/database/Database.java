@@ -7,6 +7,7 @@ import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.net.Uri;
 
+import java.util.LinkedList;
 import java.util.List;
 
 import io.pivotal.android.push.model.analytics.AnalyticsEvent;
@@ -14,10 +15,12 @@ import io.pivotal.android.push.util.Logger;
 
 public class Database extends SQLiteOpenHelper {
 
-    public static final int DATABASE_VERSION = 3;
+    public static final int DATABASE_VERSION = 7;
     public static final String DATABASE_FILENAME = "io.pivotal.android.push.events.db";
     public static final String AUTHORITY = "io.pivotal.android.push.providers.EventsDatabase";
     public static final String EVENTS_TABLE_NAME = "events";
+    public static final String EVENT_ATTRIBUTES_TABLE_NAME = "event_attributes";
+    public static final String EVENTS_VIEW_NAME = "events_view";
     public static final Uri EVENTS_CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/" + EVENTS_TABLE_NAME);
     private final int databaseVersion;
 
@@ -28,12 +31,20 @@ public class Database extends SQLiteOpenHelper {
 
     @Override
     public void onCreate(final SQLiteDatabase db) {
-        final String[] createTableStatements = new String[] {
-            AnalyticsEvent.getCreateTableSqlStatement(databaseVersion)
-        };
+        final List<String> createTableStatements = new LinkedList<>();
+        createTableStatements.add(AnalyticsEvent.getCreateTableSqlStatement(databaseVersion));
+        if (databaseVersion >= 5) {
+            createTableStatements.add(AnalyticsEvent.getCreateAttributesTableSqlStatement());
+        }
         for (final String sql : createTableStatements) {
             db.execSQL(sql);
         }
+        for (final String sql : AnalyticsEvent.getCreateIndexSqlStatements(databaseVersion)) {
+            db.execSQL(sql);
+        }
+        if (databaseVersion >= 5) {
+            db.execSQL(AnalyticsEvent.getCreateEventsViewSqlStatement());
+        }
     }
 
     @Override
@@ -68,9 +79,8 @@ public class Database extends SQLiteOpenHelper {
     }
 
     private void recreateDatabase(SQLiteDatabase db) {
-        final String[] dropTableStatements = new String[] {
-                AnalyticsEvent.getDropTableSqlStatement()
-        };
+        final List<String> dropTableStatements = new LinkedList<>(AnalyticsEvent.getDropAttributesSqlStatements());
+        dropTableStatements.add(AnalyticsEvent.getDropTableSqlStatement());
         for (final String dropTableStatement : dropTableStatements) {
             db.execSQL(dropTableStatement);
         }
@@ -3,7 +3,11 @@ package io.pivotal.android.push.database;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
+import android.provider.BaseColumns;
+import android.util.SparseIntArray;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -12,28 +16,127 @@ import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 
 public class DatabaseAnalyticsEventsStorage implements AnalyticsEventsStorage {
 
+	private final EventEvictor eventEvictor;
+
 	public DatabaseAnalyticsEventsStorage() {
+		this(null);
+	}
+
+	// Uses the given evictor instead of the one configured for the database
+	public DatabaseAnalyticsEventsStorage(EventEvictor eventEvictor) {
+		this.eventEvictor = eventEvictor;
 	}
 
+	// Events that are dropped as duplicates of stored events are not counted
 	@Override
 	public Uri saveEvent(AnalyticsEvent event) {
-		final ContentValues contentValues = event.getContentValues(Database.DATABASE_VERSION);
-		final Uri uri = DatabaseWrapper.insert(Database.EVENTS_CONTENT_URI, contentValues);
+		final boolean[] isInserted = new boolean[1];
+		final Uri uri = DatabaseWrapper.insertEvent(event, isInserted);
+		if (uri != null && isInserted[0]) {
+			AnalyticsEventCounts.eventAdded(event.getStatus());
+		}
 		return uri;
 	}
 
+	@Override
+	public List<Uri> saveEvents(List<AnalyticsEvent> events) {
+		final boolean[] isInserted = new boolean[events.size()];
+		final List<Uri> uris = DatabaseWrapper.insertEvents(events, isInserted);
+		if (uris != null) {
+			int i = 0;
+			for (final AnalyticsEvent event : events) {
+				if (isInserted[i]) {
+					AnalyticsEventCounts.eventAdded(event.getStatus());
+				}
+				i += 1;
+			}
+		}
+		return uris;
+	}
+
+	// Only the row IDs are selected so that the filtered queries can be answered from the covering indexes alone.
+	private static final String[] ID_PROJECTION = new String[] { BaseColumns._ID };
+
 	@Override
 	public List<Uri> getEventUris() {
-        return getGeneralQuery(null, null, null, null);
+        return getGeneralQuery(ID_PROJECTION, null, null, null);
 	}
 
 	public List<Uri> getEventUrisWithStatus(int status) {
-        return getGeneralQuery(null, "status = ?", new String[] { String.valueOf(status) }, null);
+        return getGeneralQuery(ID_PROJECTION, "status = ?", new String[] { String.valueOf(status) }, null);
+	}
+
+	@Override
+	public long[] getEventIdsWithStatus(int status) {
+		Cursor cursor = null;
+		try {
+			cursor = DatabaseWrapper.query(Database.EVENTS_CONTENT_URI, ID_PROJECTION, "status = ?", new String[] { String.valueOf(status) }, BaseColumns._ID);
+			return getEventIdsFromCursor(cursor);
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+	}
+
+	// An estimate of the number of bytes each event takes up in the JSON request body: the length of each
+	// serialized field plus a fixed allowance for the field names, quotes and separators.
+	private static final int JSON_OVERHEAD_PER_EVENT = 180;
+	private static final String ESTIMATED_SIZE_EXPRESSION = "(" +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.RECEIPT_ID + "), 0) + " +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.EVENT_TYPE + "), 0) + " +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.EVENT_TIME + "), 0) + " +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.DEVICE_UUID + "), 0) + " +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.GEOFENCE_ID + "), 0) + " +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.LOCATION_ID + "), 0) + " +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.SDK_VERSION + "), 0) + " +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.PLATFORM_TYPE + "), 0) + " +
+			"IFNULL(LENGTH(" + AnalyticsEvent.Columns.PLATFORM_UUID + "), 0) + " +
+			JSON_OVERHEAD_PER_EVENT + ")";
+	private static final String[] PAGE_PROJECTION = new String[] { BaseColumns._ID, ESTIMATED_SIZE_EXPRESSION };
+
+	@Override
+	public long[] getEventIdsPage(int[] statuses, long afterRowId, int maxEvents, long maxBytes) {
+		if (statuses == null || statuses.length == 0 || maxEvents <= 0) {
+			return new long[0];
+		}
+
+		final StringBuilder selection = new StringBuilder(AnalyticsEvent.Columns.STATUS + " IN (");
+		final String[] selectionArgs = new String[statuses.length + 1];
+		for (int i = 0; i < statuses.length; i += 1) {
+			selection.append(i > 0 ? ",?" : "?");
+			selectionArgs[i] = String.valueOf(statuses[i]);
+		}
+		selection.append(") AND " + BaseColumns._ID + " > ?");
+		selectionArgs[statuses.length] = String.valueOf(afterRowId);
+
+		Cursor cursor = null;
+		try {
+			cursor = DatabaseWrapper.query(Database.EVENTS_CONTENT_URI, PAGE_PROJECTION, selection.toString(), selectionArgs, null, BaseColumns._ID, String.valueOf(maxEvents));
+			if (cursor == null) {
+				return new long[0];
+			}
+			final long[] ids = new long[cursor.getCount()];
+			int numberOfIds = 0;
+			long pageSizeInBytes = 0;
+			for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+				pageSizeInBytes += cursor.getLong(1);
+				if (numberOfIds > 0 && pageSizeInBytes > maxBytes) {
+					break;
+				}
+				ids[numberOfIds++] = cursor.getLong(0);
+			}
+			return numberOfIds == ids.length ? ids : Arrays.copyOf(ids, numberOfIds);
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
 	}
 
 	@Override
 	public List<Uri> getEventUrisWithType(String eventType) {
-		return getGeneralQuery(null, "eventType = ?", new String[] { eventType }, null);
+		return getGeneralQuery(ID_PROJECTION, "eventType = ?", new String[] { eventType }, null);
 	}
 
 	private List<Uri> getGeneralQuery(String[] projection, String selection, String[] selectionArgs, String sortOrder) {
@@ -48,6 +151,18 @@ public class DatabaseAnalyticsEventsStorage implements AnalyticsEventsStorage {
 		}
 	}
 
+	private static long[] getEventIdsFromCursor(final Cursor cursor) {
+		if (cursor == null) {
+			return new long[0];
+		}
+		final long[] ids = new long[cursor.getCount()];
+		int i = 0;
+		for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+			ids[i++] = cursor.getLong(0);
+		}
+		return ids;
+	}
+
 	private List<Uri> getEventUrisFromCursor(final Cursor cursor) {
 		final List<Uri> uris = new LinkedList<>();
 		if (cursor != null) {
@@ -62,19 +177,20 @@ public class DatabaseAnalyticsEventsStorage implements AnalyticsEventsStorage {
 
 	@Override
 	public int getNumberOfEvents() {
-		Cursor cursor = null;
-		try {
-			cursor = DatabaseWrapper.query(Database.EVENTS_CONTENT_URI, null, null, null, null);
-			if (cursor != null) {
-				cursor.moveToFirst();
-				return cursor.getCount();
-			}
-		} finally {
-			if (cursor != null) {
-				cursor.close();
-			}
-		}
-		return 0;
+		return AnalyticsEventCounts.getTotal();
+	}
+
+	@Override
+	public int countByStatus(int status) {
+		return AnalyticsEventCounts.getCount(status);
+	}
+
+	/**
+	 * Gets the number of events that have been dropped since the process started because an event with the
+	 * same dedup key was already stored.
+	 */
+	public long getNumberOfSuppressedDuplicates() {
+		return AnalyticsEventCounts.getNumberOfSuppressedDuplicates();
 	}
 
 	@Override
@@ -97,23 +213,127 @@ public class DatabaseAnalyticsEventsStorage implements AnalyticsEventsStorage {
 		}
 	}
 
+	@Override
+	public void readEvents(List<Uri> eventUris, EventCallback callback) throws IOException {
+		if (eventUris == null || eventUris.isEmpty()) {
+			return;
+		}
+		readEvents(DatabaseWrapper.getIds(eventUris), callback);
+	}
+
+	@Override
+	public void readEvents(long[] eventIds, EventCallback callback) throws IOException {
+		if (eventIds == null || eventIds.length == 0) {
+			return;
+		}
+		// The IDs are sorted so that the events are read in row ID order across all of the chunks
+		final long[] sortedIds = Arrays.copyOf(eventIds, eventIds.length);
+		Arrays.sort(sortedIds);
+		for (final String idList : DatabaseWrapper.getIdLists(sortedIds)) {
+			Cursor cursor = null;
+			try {
+				final String selection = BaseColumns._ID + " IN (" + idList + ")";
+				cursor = DatabaseWrapper.query(Database.EVENTS_CONTENT_URI, null, selection, null, BaseColumns._ID);
+				if (cursor != null) {
+					for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+						callback.onEvent(new AnalyticsEvent(cursor));
+					}
+				}
+			} finally {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+		}
+	}
+
 	@Override
 	public void deleteEvents(List<Uri> eventUris) {
-		DatabaseWrapper.delete(eventUris, null, null);
+		deleteEvents(DatabaseWrapper.getIds(eventUris));
+	}
+
+	@Override
+	public void deleteEvents(long[] eventIds) {
+		final SparseIntArray deletedStatusCounts = new SparseIntArray();
+		boolean isDeleted = false;
+		try {
+			DatabaseWrapper.deleteEvents(eventIds, deletedStatusCounts);
+			isDeleted = true;
+		} finally {
+			if (isDeleted) {
+				AnalyticsEventCounts.eventsRemoved(deletedStatusCounts);
+			} else {
+				AnalyticsEventCounts.invalidate();
+			}
+		}
+	}
+
+	@Override
+	public int evictEvents(int maxEvents) {
+		final EventEvictor evictor = eventEvictor != null ? eventEvictor : DatabaseWrapper.getEventEvictor();
+		if (evictor == null || maxEvents <= 0) {
+			return 0;
+		}
+		return evictor.evict(maxEvents, System.currentTimeMillis() / 1000L);
 	}
 
 	@Override
 	public void reset() {
         DatabaseWrapper.delete(Database.EVENTS_CONTENT_URI, null, null);
+        AnalyticsEventCounts.clear();
 	}
 
 	@Override
 	public void setEventStatus(Uri eventUri, int status) {
-		final ContentValues values = new ContentValues();
-		values.put(AnalyticsEvent.Columns.STATUS, status);
-		final int numberOfRowsUpdated = DatabaseWrapper.update(eventUri, values, null, null);
+		final SparseIntArray previousStatusCounts = new SparseIntArray();
+		final int numberOfRowsUpdated = DatabaseWrapper.updateEventStatus(eventUri, status, previousStatusCounts);
+		statusesChanged(numberOfRowsUpdated, previousStatusCounts, status);
 		if (numberOfRowsUpdated == 0) {
 			throw new IllegalArgumentException("Could not find event with Uri " + eventUri.getPath());
 		}
 	}
+
+	@Override
+	public void setEventStatus(List<Uri> eventUris, int status) {
+		if (eventUris == null || eventUris.isEmpty()) {
+			return;
+		}
+		setEventStatus(DatabaseWrapper.getIds(eventUris), status);
+	}
+
+	@Override
+	public void setEventStatus(long[] eventIds, int status) {
+		final ContentValues values = new ContentValues();
+		values.put(AnalyticsEvent.Columns.STATUS, status);
+		final SparseIntArray previousStatusCounts = new SparseIntArray();
+		final int numberOfRowsUpdated = DatabaseWrapper.updateEvents(eventIds, values, previousStatusCounts);
+		statusesChanged(numberOfRowsUpdated, previousStatusCounts, status);
+	}
+
+	// A failed update is rolled back, so its effect on the counts is not known
+	private static void statusesChanged(int numberOfRowsUpdated, SparseIntArray previousStatusCounts, int status) {
+		if (numberOfRowsUpdated >= 0) {
+			AnalyticsEventCounts.eventsMoved(previousStatusCounts, status);
+		} else {
+			AnalyticsEventCounts.invalidate();
+		}
+	}
+
+	@Override
+	public int incrementRejectedAttempts(long eventId) {
+		return DatabaseWrapper.incrementRejectedAttempts(eventId);
+	}
+
+	@Override
+	public int setStatusWhere(int fromStatus, int toStatus) {
+		final ContentValues values = new ContentValues();
+		values.put(AnalyticsEvent.Columns.STATUS, toStatus);
+		final int numberOfRowsUpdated = DatabaseWrapper.update(Database.EVENTS_CONTENT_URI, values, AnalyticsEvent.Columns.STATUS + " = ?", new String[] { String.valueOf(fromStatus) });
+		if (numberOfRowsUpdated > 0) {
+			AnalyticsEventCounts.eventsMoved(fromStatus, toStatus, numberOfRowsUpdated);
+		} else if (numberOfRowsUpdated < 0) {
+			AnalyticsEventCounts.invalidate();
+		}
+		return Math.max(numberOfRowsUpdated, 0);
+	}
 }
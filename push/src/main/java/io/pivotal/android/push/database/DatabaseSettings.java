@@ -0,0 +1,138 @@
+package io.pivotal.android.push.database;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+
+import io.pivotal.android.push.util.Logger;
+
+/**
+ * Connection settings for the events database.  All of the settings are opt-in and are read from
+ * <code>meta-data</code> elements in the application's manifest:
+ *
+ * <ul>
+ *     <li><code>io.pivotal.android.push.DatabaseWriteAheadLogging</code> - set to true to open the
+ *     database in write-ahead logging (WAL) mode, so that the sender can read events while new events are
+ *     being written.</li>
+ *     <li><code>io.pivotal.android.push.DatabaseSynchronous</code> - the SQLite synchronous level:
+ *     OFF, NORMAL or FULL.  NORMAL is safe in WAL mode and avoids an fsync on every commit.</li>
+ *     <li><code>io.pivotal.android.push.DatabaseWalAutoCheckpoint</code> - the number of pages the
+ *     write-ahead log may grow to before SQLite checkpoints it automatically.  The log is also checkpointed
+ *     whenever the database becomes idle (see {@link DatabaseWrapper#checkpoint()}).</li>
+ * </ul>
+ *
+ * The maximum size of the database does not cover the write-ahead log, so automatic checkpoints are never
+ * turned off: values of 0, or above {@link #MAX_WAL_AUTO_CHECKPOINT}, are replaced by
+ * {@link #MAX_WAL_AUTO_CHECKPOINT}.  This keeps the log below about 4 MB with the default page size.
+ */
+public class DatabaseSettings {
+
+    public static final String WRITE_AHEAD_LOGGING_META_DATA = "io.pivotal.android.push.DatabaseWriteAheadLogging";
+    public static final String SYNCHRONOUS_META_DATA = "io.pivotal.android.push.DatabaseSynchronous";
+    public static final String WAL_AUTO_CHECKPOINT_META_DATA = "io.pivotal.android.push.DatabaseWalAutoCheckpoint";
+
+    public static final String SYNCHRONOUS_OFF = "OFF";
+    public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+    public static final String SYNCHRONOUS_FULL = "FULL";
+
+    // The SQLite default
+    public static final int MAX_WAL_AUTO_CHECKPOINT = 1000;
+
+    private static final int DEFAULT_WAL_AUTO_CHECKPOINT = -1;
+
+    private final boolean isWriteAheadLoggingEnabled;
+    private final String synchronous;
+    private final int walAutoCheckpoint;
+
+    public DatabaseSettings(boolean isWriteAheadLoggingEnabled, String synchronous, int walAutoCheckpoint) {
+        verifyArguments(synchronous);
+        this.isWriteAheadLoggingEnabled = isWriteAheadLoggingEnabled;
+        this.synchronous = synchronous != null ? synchronous.toUpperCase() : null;
+        if (walAutoCheckpoint == 0 || walAutoCheckpoint > MAX_WAL_AUTO_CHECKPOINT) {
+            this.walAutoCheckpoint = MAX_WAL_AUTO_CHECKPOINT;
+        } else {
+            this.walAutoCheckpoint = walAutoCheckpoint;
+        }
+    }
+
+    private void verifyArguments(String synchronous) {
+        if (synchronous != null &&
+                !SYNCHRONOUS_OFF.equalsIgnoreCase(synchronous) &&
+                !SYNCHRONOUS_NORMAL.equalsIgnoreCase(synchronous) &&
+                !SYNCHRONOUS_FULL.equalsIgnoreCase(synchronous)) {
+            throw new IllegalArgumentException("synchronous must be one of OFF, NORMAL or FULL");
+        }
+    }
+
+    public static DatabaseSettings getDefaultSettings() {
+        return new DatabaseSettings(false, null, DEFAULT_WAL_AUTO_CHECKPOINT);
+    }
+
+    public static DatabaseSettings fromMetaData(Bundle metaData) {
+        if (metaData == null) {
+            return getDefaultSettings();
+        }
+        final boolean isWriteAheadLoggingEnabled = metaData.getBoolean(WRITE_AHEAD_LOGGING_META_DATA, false);
+        final String synchronous = metaData.getString(SYNCHRONOUS_META_DATA);
+        final int walAutoCheckpoint = metaData.getInt(WAL_AUTO_CHECKPOINT_META_DATA, DEFAULT_WAL_AUTO_CHECKPOINT);
+        return new DatabaseSettings(isWriteAheadLoggingEnabled, synchronous, walAutoCheckpoint);
+    }
+
+    public static DatabaseSettings fromContext(Context context) {
+        return fromMetaData(getMetaData(context));
+    }
+
+    // Returns the meta-data of the application, or null if it can not be read.
+    /* package */ static Bundle getMetaData(Context context) {
+        try {
+            final PackageManager manager = context.getPackageManager();
+            final ApplicationInfo applicationInfo = manager.getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            if (applicationInfo != null) {
+                return applicationInfo.metaData;
+            }
+        } catch (Exception e) {
+            Logger.ex("Could not read the database settings from the application meta-data", e);
+        }
+        return null;
+    }
+
+    public boolean isWriteAheadLoggingEnabled() {
+        return isWriteAheadLoggingEnabled;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public int getWalAutoCheckpoint() {
+        return walAutoCheckpoint;
+    }
+
+    /**
+     * Applies these settings to the given database.  Settings that were not given leave the SQLite
+     * defaults in place.
+     *
+     * @param database The database to configure.  It must not be inside a transaction.
+     */
+    public void apply(SQLiteDatabase database) {
+        if (isWriteAheadLoggingEnabled) {
+            if (!database.enableWriteAheadLogging()) {
+                Logger.w("Could not enable write-ahead logging on the events database.");
+            }
+        }
+        if (synchronous != null) {
+            database.execSQL("PRAGMA synchronous = " + synchronous + ";");
+        }
+        if (isWriteAheadLoggingEnabled && walAutoCheckpoint >= 0) {
+            DatabaseUtils.longForQuery(database, "PRAGMA wal_autocheckpoint = " + walAutoCheckpoint + ";", null);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WAL: " + isWriteAheadLoggingEnabled + ", synchronous: " + (synchronous != null ? synchronous : "default") + ", WAL auto-checkpoint: " + (walAutoCheckpoint >= 0 ? walAutoCheckpoint : "default");
+    }
+}
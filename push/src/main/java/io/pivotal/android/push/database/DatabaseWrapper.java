@@ -4,6 +4,7 @@ import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteCursor;
 import android.database.sqlite.SQLiteCursorDriver;
@@ -13,23 +14,33 @@ import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteQuery;
 import android.net.Uri;
+import android.provider.BaseColumns;
+import android.util.SparseIntArray;
 
+import java.io.File;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import io.pivotal.android.push.analytics.AnalyticsMetricsRecorder;
 import io.pivotal.android.push.database.urihelpers.DatabaseUriHelper;
 import io.pivotal.android.push.database.urihelpers.DeleteParams;
 import io.pivotal.android.push.database.urihelpers.QueryParams;
 import io.pivotal.android.push.database.urihelpers.UpdateParams;
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
 import io.pivotal.android.push.util.DebugUtil;
 import io.pivotal.android.push.util.Logger;
 
 public class DatabaseWrapper {
 
     private static final int MAX_DATABASE_SIZE_RELEASE = 1024 * 1024; // 1 MB
-    private static final int MAX_DATABASE_SIZE_DEBUG = 32 * 1024; // 32 kB
+    private static final int MAX_DATABASE_SIZE_DEBUG = 128 * 1024; // 128 kB, well above the ~36 kB used by the empty schema
+    private static final int MAX_IDS_PER_STATEMENT = 500;
     private static final Object lock = new Object();
     private static SQLiteDatabase database;
+    private static AnalyticsEventStatements eventStatements;
+    private static DatabaseSettings settings;
+    private static EventEvictor eventEvictor;
 
     private static SQLiteDatabase getDatabase() {
         synchronized (lock) {
@@ -37,6 +48,12 @@ public class DatabaseWrapper {
         }
     }
 
+    private static AnalyticsEventStatements getEventStatements() {
+        synchronized (lock) {
+            return eventStatements;
+        }
+    }
+
     // Returns 'true' if the database instance was initialized.
     // Returns 'false' if the database instance was already initialized.
     public static boolean createDatabaseInstance(Context context) {
@@ -45,6 +62,8 @@ public class DatabaseWrapper {
                 final DebugCursorFactory factory = new DebugCursorFactory();
                 final Database databaseHelper = new Database(context, factory, Database.DATABASE_VERSION);
                 database = databaseHelper.getWritableDatabase();
+                settings = DatabaseSettings.fromContext(context);
+                settings.apply(database);
 
                 final long maxDatabaseSize;
                 if (DebugUtil.getInstance(context).isDebuggable()) {
@@ -53,7 +72,17 @@ public class DatabaseWrapper {
                     maxDatabaseSize = MAX_DATABASE_SIZE_RELEASE;
                 }
                 database.setMaximumSize(maxDatabaseSize);
-                Logger.fd("Database has been initialized for package '%s' with maximum size %d kB.", context.getPackageName(), maxDatabaseSize / 1024);
+                eventStatements = new AnalyticsEventStatements(database);
+                eventEvictor = EventEvictor.fromMetaData(DatabaseSettings.getMetaData(context), maxDatabaseSize);
+                Logger.fd("Database has been initialized for package '%s' with maximum size %d kB (%s).", context.getPackageName(), maxDatabaseSize / 1024, settings);
+
+                AnalyticsEventCounts.invalidate();
+                try {
+                    AnalyticsEventCounts.reconcile();
+                } catch (SQLException e) {
+                    // The counts stay stale and are read again the next time that they are needed
+                    Logger.ex("Could not count the events in the database", e);
+                }
                 return true;
             } else {
                 return false;
@@ -61,16 +90,59 @@ public class DatabaseWrapper {
         }
     }
 
+    /**
+     * Copies the contents of the write-ahead log back into the database file, without waiting for any readers or
+     * writers.  Does nothing if the database is not in write-ahead logging mode.  Meant to be called when the
+     * database is idle so that the log does not need to be checkpointed in the middle of a burst of writes.
+     */
+    public static void checkpoint() {
+        final SQLiteDatabase db;
+        synchronized (lock) {
+            if (database == null || settings == null || !settings.isWriteAheadLoggingEnabled()) {
+                return;
+            }
+            db = database;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE);", null);
+            if (cursor != null && cursor.moveToFirst()) {
+                Logger.fd("Database checkpoint copied %d of %d pages from the write-ahead log.", cursor.getInt(2), cursor.getInt(1));
+            }
+        } catch (SQLException e) {
+            Logger.ex("Could not checkpoint the database", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     // Only used by unit tests
     public static void removeDatabaseInstance() {
         synchronized (lock) {
+            if (eventStatements != null) {
+                eventStatements.close();
+                eventStatements = null;
+            }
             database = null;
+            settings = null;
+            eventEvictor = null;
         }
+        AnalyticsEventCounts.invalidate();
     }
 
     public static Cursor query(final Uri uri, final String[] projection, final String whereClause, final String[] whereArgs, final String sortOrder) {
+        return query(uri, projection, whereClause, whereArgs, null, sortOrder);
+    }
+
+    public static Cursor query(final Uri uri, final String[] projection, final String whereClause, final String[] whereArgs, final String groupBy, final String sortOrder) {
+        return query(uri, projection, whereClause, whereArgs, groupBy, sortOrder, null);
+    }
+
+    public static Cursor query(final Uri uri, final String[] projection, final String whereClause, final String[] whereArgs, final String groupBy, final String sortOrder, final String limit) {
         final QueryParams queryParams = DatabaseUriHelper.getUriHelper(uri).getQueryParams(uri, projection, whereClause, whereArgs, sortOrder);
-        return getDatabase().query(DatabaseUriHelper.getUriHelper(uri).getDefaultTableName(), queryParams.projection, queryParams.whereClause, queryParams.whereArgs, null, null, queryParams.sortOrder);
+        return getDatabase().query(DatabaseUriHelper.getUriHelper(uri).getQueryTableName(), queryParams.projection, queryParams.whereClause, queryParams.whereArgs, groupBy, null, queryParams.sortOrder, limit);
     }
 
     public static int update(Uri uri, ContentValues values, String whereClause, String[] whereArgs) {
@@ -90,7 +162,114 @@ public class DatabaseWrapper {
 
     private static int tryUpdate(Uri uri, ContentValues values, String whereClause, String[] whereArgs) {
         final UpdateParams updateParams = DatabaseUriHelper.getUriHelper(uri).getUpdateParams(uri, whereClause, whereArgs);
-        return getDatabase().update(DatabaseUriHelper.getUriHelper(uri).getDefaultTableName(), values, updateParams.whereClause, updateParams.whereArgs);
+        final String tableName = DatabaseUriHelper.getUriHelper(uri).getDefaultTableName();
+        return getDatabase().update(tableName, getTableValues(tableName, values), updateParams.whereClause, updateParams.whereArgs);
+    }
+
+    /**
+     * Applies the same values to all of the given rows inside a single transaction. The rows are
+     * addressed with "_id IN (...)" clauses so that a large batch only costs a handful of statements.
+     *
+     * @param uris   The URIs of the rows to update.  They must all belong to the same table.
+     * @param values The values to set on every row.
+     * @return the number of rows updated, or -1 if the update failed.
+     */
+    public static int update(final List<Uri> uris, final ContentValues values) {
+        if (uris == null || uris.isEmpty()) {
+            return 0;
+        }
+        final String tableName = DatabaseUriHelper.getUriHelper(uris.get(0)).getDefaultTableName();
+        return update(tableName, getIds(uris), values);
+    }
+
+    /**
+     * Applies the same values to all of the given events inside a single transaction.
+     *
+     * @param ids    The row IDs of the events to update.
+     * @param values The values to set on every event.
+     * @return the number of rows updated, or -1 if the update failed.
+     */
+    public static int updateEvents(final long[] ids, final ContentValues values) {
+        return updateEvents(ids, values, null);
+    }
+
+    /**
+     * Applies the same values to all of the given events inside a single transaction.
+     *
+     * @param ids                  The row IDs of the events to update.
+     * @param values               The values to set on every event.
+     * @param previousStatusCounts If not null, receives the number of updated events in each status, as they were
+     *                             before the update.
+     * @return the number of rows updated, or -1 if the update failed.
+     */
+    public static int updateEvents(final long[] ids, final ContentValues values, final SparseIntArray previousStatusCounts) {
+        if (ids == null || ids.length == 0) {
+            return 0;
+        }
+        return update(Database.EVENTS_TABLE_NAME, ids, values, previousStatusCounts);
+    }
+
+    private static int update(final String tableName, final long[] ids, final ContentValues values) {
+        return update(tableName, ids, values, null);
+    }
+
+    private static int update(final String tableName, final long[] ids, final ContentValues values, final SparseIntArray previousStatusCounts) {
+        final int[] numberOfRowsUpdated = new int[] { 0 };
+        final Runnable updateRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                final ContentValues tableValues = getTableValues(tableName, values);
+                for (final String idList : getIdLists(ids)) {
+                    if (previousStatusCounts != null) {
+                        addStatusCounts(idList, previousStatusCounts);
+                    }
+                    numberOfRowsUpdated[0] += getDatabase().update(tableName, tableValues, BaseColumns._ID + " IN (" + idList + ")", null);
+                }
+            }
+        };
+
+        try {
+            runInTransaction(updateRunnable);
+            return numberOfRowsUpdated[0];
+        } catch (SQLException e) {
+            Logger.ex("Caught error upon updating into table " + tableName, e);
+        }
+        return -1;
+    }
+
+    // Returns the row IDs of the given URIs.
+    /* package */ static long[] getIds(final List<Uri> uris) {
+        final long[] ids = new long[uris.size()];
+        int i = 0;
+        for (final Uri uri : uris) {
+            ids[i++] = ContentUris.parseId(uri);
+        }
+        return ids;
+    }
+
+    // Returns the given row IDs as comma-separated lists, suitable for "_id IN (...)" clauses.  Each list holds
+    // at most MAX_IDS_PER_STATEMENT IDs.
+    /* package */ static List<String> getIdLists(final long[] ids) {
+        final List<String> idLists = new LinkedList<>();
+        final StringBuilder sb = new StringBuilder();
+        int idsInList = 0;
+        for (final long id : ids) {
+            if (idsInList > 0) {
+                sb.append(',');
+            }
+            sb.append(id);
+            idsInList += 1;
+            if (idsInList >= MAX_IDS_PER_STATEMENT) {
+                idLists.add(sb.toString());
+                sb.setLength(0);
+                idsInList = 0;
+            }
+        }
+        if (idsInList > 0) {
+            idLists.add(sb.toString());
+        }
+        return idLists;
     }
 
     public static int delete(Uri uri, String whereClause, String[] whereArgs) {
@@ -111,15 +290,159 @@ public class DatabaseWrapper {
         runInTransaction(deleteRunnable);
     }
 
+    /**
+     * Deletes the given events with the compiled delete statement, inside a single transaction.
+     *
+     * @param eventUris The URIs of the events to delete.
+     */
+    public static void deleteEvents(final List<Uri> eventUris) {
+        deleteEvents(getIds(eventUris));
+    }
+
+    /**
+     * Deletes the given events with the compiled delete statement, inside a single transaction.
+     *
+     * @param ids The row IDs of the events to delete.
+     */
+    public static void deleteEvents(final long[] ids) {
+        deleteEvents(ids, null);
+    }
+
+    /**
+     * Deletes the given events with the compiled delete statement, inside a single transaction.
+     *
+     * @param ids                 The row IDs of the events to delete.
+     * @param deletedStatusCounts If not null, receives the number of deleted events in each status.
+     */
+    public static void deleteEvents(final long[] ids, final SparseIntArray deletedStatusCounts) {
+        final AnalyticsEventStatements statements = getEventStatements();
+        final Runnable deleteRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                if (deletedStatusCounts != null) {
+                    for (final String idList : getIdLists(ids)) {
+                        addStatusCounts(idList, deletedStatusCounts);
+                    }
+                }
+                for (final long id : ids) {
+                    statements.delete(id);
+                }
+            }
+        };
+        runInTransaction(deleteRunnable);
+    }
+
+    /**
+     * Sets the status of the given event with the compiled update statement.
+     *
+     * @return the number of rows updated, or -1 if the update failed.
+     */
+    public static int updateEventStatus(final Uri eventUri, final int status) {
+        try {
+            return getEventStatements().updateStatus(ContentUris.parseId(eventUri), status);
+        } catch (SQLException e) {
+            Logger.ex("Caught error upon updating into table " + Database.EVENTS_TABLE_NAME, e);
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the status of the given event with the compiled update statement, inside a transaction that also
+     * reads the status that the event had before.
+     *
+     * @param previousStatusCounts Receives the previous status of the event, with a count of 1.
+     * @return the number of rows updated, or -1 if the update failed.
+     */
+    public static int updateEventStatus(final Uri eventUri, final int status, final SparseIntArray previousStatusCounts) {
+        final long id = ContentUris.parseId(eventUri);
+        final int[] numberOfRowsUpdated = new int[] { 0 };
+        final Runnable updateRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                addStatusCounts(String.valueOf(id), previousStatusCounts);
+                numberOfRowsUpdated[0] = getEventStatements().updateStatus(id, status);
+            }
+        };
+
+        try {
+            runInTransaction(updateRunnable);
+            return numberOfRowsUpdated[0];
+        } catch (SQLException e) {
+            Logger.ex("Caught error upon updating into table " + Database.EVENTS_TABLE_NAME, e);
+        }
+        return -1;
+    }
+
+    // Adds the number of events in each status, out of the events in the given comma-separated list of row IDs,
+    // to the given counts.  Called inside the transaction that changes the events so that the counts match
+    // exactly what is changed.
+    private static void addStatusCounts(final String idList, final SparseIntArray statusCounts) {
+        final Cursor cursor = getDatabase().rawQuery("SELECT " + AnalyticsEvent.Columns.STATUS + ", COUNT(*) FROM " + Database.EVENTS_TABLE_NAME +
+                " WHERE " + BaseColumns._ID + " IN (" + idList + ") GROUP BY " + AnalyticsEvent.Columns.STATUS, null);
+        try {
+            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                statusCounts.put(cursor.getInt(0), statusCounts.get(cursor.getInt(0), 0) + cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Adds one to the number of times the given event was rejected by the server.
+     *
+     * @return the new number of rejected attempts, or -1 if the event could not be found or updated.
+     */
+    public static int incrementRejectedAttempts(final long id) {
+        final int[] rejectedAttempts = new int[] { -1 };
+        final Runnable incrementRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                final String[] args = new String[] { String.valueOf(id) };
+                getDatabase().execSQL(AnalyticsEvent.getIncrementRejectedAttemptsSqlStatement(), args);
+                final Cursor cursor = getDatabase().rawQuery(AnalyticsEvent.getSelectRejectedAttemptsSqlStatement(), args);
+                try {
+                    if (cursor.moveToFirst()) {
+                        rejectedAttempts[0] = cursor.getInt(0);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        };
+
+        try {
+            runInTransaction(incrementRunnable);
+        } catch (SQLException e) {
+            Logger.ex("Caught error upon updating into table " + Database.EVENTS_TABLE_NAME, e);
+            return -1;
+        }
+        return rejectedAttempts[0];
+    }
+
     private static void runInTransaction(Runnable runnable) {
-        SQLiteDatabase db = getDatabase();
+        final SQLiteDatabase db = getDatabase();
+        final AnalyticsEventStatements statements = getEventStatements();
+        final boolean isOutermostTransaction = statements != null && statements.transactionStarted();
 
-        db.beginTransaction();
+        boolean isCommitted = false;
         try {
-            runnable.run();
-            db.setTransactionSuccessful();
+            db.beginTransaction();
+            try {
+                runnable.run();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            isCommitted = true;
         } finally {
-            db.endTransaction();
+            if (isOutermostTransaction) {
+                // Any attributes added during the transaction are only shared with other threads once they are committed
+                statements.transactionEnded(isCommitted);
+            }
         }
     }
 
@@ -144,11 +467,181 @@ public class DatabaseWrapper {
         return null;
     }
 
+    /**
+     * Inserts the given event with the compiled insert statement.  If an event with the same dedup key is already
+     * stored then the given event is dropped and the URI of the stored event is returned instead.
+     *
+     * @return the URI of the new event, or null if it could not be inserted.
+     */
+    public static Uri insertEvent(final AnalyticsEvent event) {
+        return insertEvent(event, null);
+    }
+
+    /**
+     * Inserts the given event, as {@link #insertEvent(AnalyticsEvent)} does.
+     *
+     * @param isInserted if not null then its first element is set to true if the event was inserted, or to false if
+     * it was dropped as a duplicate of a stored event.
+     * @return the URI of the new event, or null if it could not be inserted.
+     */
+    public static Uri insertEvent(final AnalyticsEvent event, final boolean[] isInserted) {
+        try {
+            return tryInsertEvent(event, isInserted);
+        } catch (SQLiteFullException e) {
+            Logger.w("Note: database is full. Cleaning up");
+            if (cleanup()) {
+                return tryInsertEvent(event, isInserted);
+            }
+        } catch (SQLiteException e) {
+            if (e.getMessage() != null && e.getMessage().contains("cannot commit")) {
+                Logger.w("Note: database is full. Cleaning up");
+                if (cleanup()) {
+                    return tryInsertEvent(event, isInserted);
+                }
+            } else {
+                Logger.ex("Caught error upon inserting into table " + Database.EVENTS_TABLE_NAME, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inserts the given events with the compiled insert statement, inside a single transaction.
+     *
+     * @return the URIs of the new events, or null if they could not be inserted.  Either all of the events are
+     * inserted or none are.  An event that duplicates a stored event is dropped and the URI of the stored event
+     * takes its place in the list.
+     */
+    public static List<Uri> insertEvents(final List<AnalyticsEvent> events) {
+        return insertEvents(events, null);
+    }
+
+    /**
+     * Inserts the given events, as {@link #insertEvents(List)} does.
+     *
+     * @param isInserted if not null then it must be at least as long as the list of events.  Each element is set
+     * to true if the event at the same index was inserted, or to false if it was dropped as a duplicate.
+     * @return the URIs of the new events, or null if they could not be inserted.
+     */
+    public static List<Uri> insertEvents(final List<AnalyticsEvent> events, final boolean[] isInserted) {
+        try {
+            return tryInsertEvents(events, isInserted);
+        } catch (SQLiteFullException e) {
+            Logger.w("Note: database is full. Cleaning up");
+            if (cleanup()) {
+                return tryInsertEvents(events, isInserted);
+            }
+        } catch (SQLiteException e) {
+            if (e.getMessage() != null && e.getMessage().contains("cannot commit")) {
+                Logger.w("Note: database is full. Cleaning up");
+                if (cleanup()) {
+                    return tryInsertEvents(events, isInserted);
+                }
+            } else {
+                Logger.ex("Caught error upon inserting into table " + Database.EVENTS_TABLE_NAME, e);
+            }
+        }
+        return null;
+    }
+
+    private static List<Uri> tryInsertEvents(final List<AnalyticsEvent> events, final boolean[] isInserted) {
+        final long start = System.nanoTime();
+        final List<Uri> uris = new LinkedList<>();
+        final int[] numberOfDuplicates = new int[] { 0 };
+        final Runnable insertRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                final AnalyticsEventStatements statements = getEventStatements();
+                int i = 0;
+                for (final AnalyticsEvent event : events) {
+                    final int numberOfDuplicatesBefore = numberOfDuplicates[0];
+                    final long rowId = insertOrFindDuplicate(statements, event, numberOfDuplicates);
+                    if (rowId < 0) {
+                        throw new SQLiteException("Could not insert event " + event);
+                    }
+                    if (isInserted != null) {
+                        isInserted[i] = numberOfDuplicates[0] == numberOfDuplicatesBefore;
+                    }
+                    uris.add(ContentUris.withAppendedId(Database.EVENTS_CONTENT_URI, rowId));
+                    i += 1;
+                }
+            }
+        };
+        runInTransaction(insertRunnable);
+        duplicatesSuppressed(numberOfDuplicates[0]);
+        AnalyticsMetricsRecorder.eventsSaved(events.size() - numberOfDuplicates[0], System.nanoTime() - start);
+        return uris;
+    }
+
+    private static Uri tryInsertEvent(final AnalyticsEvent event, final boolean[] isInserted) {
+        final long start = System.nanoTime();
+        final int[] numberOfDuplicates = new int[] { 0 };
+        final long rowId = insertOrFindDuplicate(getEventStatements(), event, numberOfDuplicates);
+        if (rowId < 0) {
+            return null;
+        }
+        if (isInserted != null) {
+            isInserted[0] = numberOfDuplicates[0] == 0;
+        }
+        duplicatesSuppressed(numberOfDuplicates[0]);
+        AnalyticsMetricsRecorder.eventsSaved(1 - numberOfDuplicates[0], System.nanoTime() - start);
+        return ContentUris.withAppendedId(Database.EVENTS_CONTENT_URI, rowId);
+    }
+
+    // Returns the row ID of the new event, or of the stored event that it duplicates, or -1 if it could not be inserted.
+    private static long insertOrFindDuplicate(final AnalyticsEventStatements statements, final AnalyticsEvent event, final int[] numberOfDuplicates) {
+        final long rowId = statements.insert(event);
+        if (rowId >= 0) {
+            return rowId;
+        }
+        final long duplicateId = statements.getDuplicateId(event);
+        if (duplicateId >= 0) {
+            numberOfDuplicates[0] += 1;
+        }
+        return duplicateId;
+    }
+
+    private static void duplicatesSuppressed(final int numberOfDuplicates) {
+        if (numberOfDuplicates > 0) {
+            AnalyticsEventCounts.duplicatesSuppressed(numberOfDuplicates);
+            AnalyticsMetricsRecorder.duplicatesSuppressed(numberOfDuplicates);
+            Logger.fd("Suppressed %d duplicate analytics event(s).", numberOfDuplicates);
+        }
+    }
+
     private static Uri tryInsert(final Uri uri, final ContentValues values) {
-        long rowId = getDatabase().insertOrThrow(DatabaseUriHelper.getUriHelper(uri).getDefaultTableName(), null, values);
+        final String tableName = DatabaseUriHelper.getUriHelper(uri).getDefaultTableName();
+        long rowId = getDatabase().insertOrThrow(tableName, null, getTableValues(tableName, values));
         return ContentUris.withAppendedId(uri, rowId);
     }
 
+    // The events table stores the key of the event's attributes instead of the attribute columns themselves.  Any
+    // attribute columns in the given values are replaced by that key; attribute columns that are missing are taken
+    // to be null.
+    private static ContentValues getTableValues(final String tableName, final ContentValues values) {
+        if (!Database.EVENTS_TABLE_NAME.equals(tableName)) {
+            return values;
+        }
+        boolean hasAttributes = false;
+        for (final String column : AnalyticsEvent.ATTRIBUTE_COLUMNS) {
+            hasAttributes |= values.containsKey(column);
+        }
+        if (!hasAttributes) {
+            return values;
+        }
+        final ContentValues tableValues = new ContentValues(values);
+        final long attributesId = getEventStatements().getAttributesId(values.getAsString(AnalyticsEvent.Columns.DEVICE_UUID),
+                values.getAsString(AnalyticsEvent.Columns.SDK_VERSION),
+                values.getAsString(AnalyticsEvent.Columns.PLATFORM_TYPE),
+                values.getAsString(AnalyticsEvent.Columns.PLATFORM_UUID));
+        for (final String column : AnalyticsEvent.ATTRIBUTE_COLUMNS) {
+            tableValues.remove(column);
+        }
+        tableValues.put(AnalyticsEvent.Columns.ATTRIBUTES_ID, attributesId);
+        return tableValues;
+    }
+
     private static boolean cleanup() {
         boolean largestTableCleanUp = cleanupLargestTable();
         return largestTableCleanUp;
@@ -173,6 +666,48 @@ public class DatabaseWrapper {
         return largestTableName;
     }
 
+    // Returns the evictor configured for the database, or null if the database has not been initialized.
+    public static EventEvictor getEventEvictor() {
+        synchronized (lock) {
+            return eventEvictor;
+        }
+    }
+
+    // Returns 'true' if the database instance has been initialized in this process.
+    public static boolean hasDatabaseInstance() {
+        return getDatabase() != null;
+    }
+
+    /**
+     * Returns the size of the database file and its write-ahead log, if there is one.
+     */
+    public static long getFileSizeInBytes() {
+        final SQLiteDatabase db = getDatabase();
+        if (db == null || db.getPath() == null) {
+            return 0;
+        }
+        return new File(db.getPath()).length() + new File(db.getPath() + "-wal").length();
+    }
+
+    /**
+     * Returns the number of bytes used by the pages of the database that hold data.  Unlike the size of the
+     * file, this goes down when rows are deleted.
+     */
+    public static long getUsedSizeInBytes() {
+        final SQLiteDatabase db = getDatabase();
+        if (db == null) {
+            return 0;
+        }
+        try {
+            final long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count;", null);
+            final long freePageCount = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count;", null);
+            return (pageCount - freePageCount) * db.getPageSize();
+        } catch (SQLException e) {
+            Logger.w(e);
+            return 0;
+        }
+    }
+
     public static int getNumberOfRowsInTable(String tableName) {
         String rowCountQuery = "SELECT COUNT(ROWID) FROM " + tableName;
         Cursor c1 = null;
@@ -216,6 +751,7 @@ public class DatabaseWrapper {
                 c1.close();
             }
         }
+        AnalyticsEventCounts.invalidate();
         Logger.i("Database cleanup removed " + rowsDeleted + " rows from table " + tableName);
         return true;
     }
@@ -0,0 +1,181 @@
+package io.pivotal.android.push.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.os.Bundle;
+import android.provider.BaseColumns;
+import android.util.SparseIntArray;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import io.pivotal.android.push.analytics.AnalyticsEventLogger;
+import io.pivotal.android.push.analytics.AnalyticsMetricsRecorder;
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+import io.pivotal.android.push.util.Logger;
+
+/**
+ * Removes events from the events database according to a list of {@link EvictionPolicy} objects.
+ *
+ * Each call to {@link #evict} removes at most a small batch of events, so that the database can be pruned
+ * a little at a time while it is idle instead of all at once when it becomes full.  Within a policy, the
+ * events with the lowest event type priority are evicted first, and then the oldest.  Events that are
+ * currently being posted are never evicted.
+ */
+public class EventEvictor {
+
+    public static final String MAX_EVENT_AGE_META_DATA = "io.pivotal.android.push.AnalyticsMaxEventAgeSeconds";
+    public static final String MAX_EVENTS_META_DATA = "io.pivotal.android.push.AnalyticsMaxEvents";
+    public static final String MAX_SIZE_META_DATA = "io.pivotal.android.push.AnalyticsMaxDatabaseSizeBytes";
+
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    public static final int DEFAULT_PRIORITY = 1;
+
+    private final List<EvictionPolicy> policies;
+    private final Map<String, Integer> eventTypePriorities;
+    private final String orderBy;
+
+    public EventEvictor(List<EvictionPolicy> policies, Map<String, Integer> eventTypePriorities) {
+        if (policies == null) {
+            throw new IllegalArgumentException("policies may not be null");
+        }
+        if (eventTypePriorities == null) {
+            throw new IllegalArgumentException("eventTypePriorities may not be null");
+        }
+        this.policies = new LinkedList<>(policies);
+        this.eventTypePriorities = new HashMap<>(eventTypePriorities);
+        this.orderBy = getOrderBy(this.eventTypePriorities);
+    }
+
+    /**
+     * Creates the evictor for the events database.  All of the policies are opt-in, and are set with the
+     * <code>io.pivotal.android.push.AnalyticsMaxEventAgeSeconds</code>,
+     * <code>io.pivotal.android.push.AnalyticsMaxEvents</code> and
+     * <code>io.pivotal.android.push.AnalyticsMaxDatabaseSizeBytes</code> meta-data in the application's manifest.
+     * The size is measured over the whole database, including the pages used by the empty tables and indexes
+     * (about 36 kB), and is capped at the maximum size of the database.
+     *
+     * @param metaData             the application meta-data.  May be null.
+     * @param maximumDatabaseSize  the maximum size of the database, in bytes
+     */
+    public static EventEvictor fromMetaData(Bundle metaData, long maximumDatabaseSize) {
+        final List<EvictionPolicy> policies = new LinkedList<>();
+        long maxSizeInBytes = 0;
+        if (metaData != null) {
+            final int maxEventAgeInSeconds = metaData.getInt(MAX_EVENT_AGE_META_DATA, 0);
+            if (maxEventAgeInSeconds > 0) {
+                policies.add(new MaxAgeEvictionPolicy(maxEventAgeInSeconds));
+            }
+            final int maxEvents = metaData.getInt(MAX_EVENTS_META_DATA, 0);
+            if (maxEvents > 0) {
+                policies.add(new MaxEventsEvictionPolicy(maxEvents));
+            }
+            final int configuredMaxSizeInBytes = metaData.getInt(MAX_SIZE_META_DATA, 0);
+            if (configuredMaxSizeInBytes > 0) {
+                maxSizeInBytes = Math.min(configuredMaxSizeInBytes, maximumDatabaseSize);
+            }
+        }
+        if (maxSizeInBytes > 0) {
+            policies.add(new MaxSizeEvictionPolicy(maxSizeInBytes));
+        }
+        return new EventEvictor(policies, getDefaultEventTypePriorities());
+    }
+
+    /**
+     * @return the default event type priorities.  Heartbeats are evicted first and opened-notification
+     * events are evicted last.
+     */
+    public static Map<String, Integer> getDefaultEventTypePriorities() {
+        final Map<String, Integer> priorities = new HashMap<>();
+        priorities.put(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_HEARTBEAT, 0);
+        priorities.put(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_RECEIVED, DEFAULT_PRIORITY);
+        priorities.put(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_GEOFENCE_LOCATION_TRIGGERED, 2);
+        priorities.put(AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_OPENED, 3);
+        return priorities;
+    }
+
+    public List<EvictionPolicy> getPolicies() {
+        return Collections.unmodifiableList(policies);
+    }
+
+    /**
+     * Evicts the events selected by the policies, in the order that the policies were given.
+     *
+     * @param maxEvents     the most events to evict in this call
+     * @param nowInSeconds  the current time, in seconds since the epoch
+     * @return the number of events that were evicted
+     */
+    public int evict(int maxEvents, long nowInSeconds) {
+        int numberOfEvictedEvents = 0;
+        for (final EvictionPolicy policy : policies) {
+            final int remaining = maxEvents - numberOfEvictedEvents;
+            if (remaining <= 0) {
+                break;
+            }
+
+            final EvictionPolicy.EvictionParams params = policy.getEvictionParams(AnalyticsEventCounts.getTotal(), DatabaseWrapper.getUsedSizeInBytes(), nowInSeconds);
+            if (params == null || params.numberOfEvents <= 0) {
+                continue;
+            }
+
+            final long[] ids = selectEvents(params, Math.min(params.numberOfEvents, remaining));
+            if (ids.length > 0) {
+                final SparseIntArray deletedStatusCounts = new SparseIntArray();
+                DatabaseWrapper.deleteEvents(ids, deletedStatusCounts);
+                AnalyticsEventCounts.eventsRemoved(deletedStatusCounts);
+                AnalyticsMetricsRecorder.eventsEvicted(ids.length);
+                numberOfEvictedEvents += ids.length;
+                Logger.fd("EventEvictor: evicted %d event(s) because of policy '%s'.", ids.length, policy);
+            }
+        }
+        return numberOfEvictedEvents;
+    }
+
+    private long[] selectEvents(EvictionPolicy.EvictionParams params, int limit) {
+        String whereClause = AnalyticsEvent.Columns.STATUS + " != " + AnalyticsEvent.Status.POSTING;
+        if (params.whereClause != null) {
+            whereClause = "(" + params.whereClause + ") AND " + whereClause;
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = DatabaseWrapper.query(Database.EVENTS_CONTENT_URI, new String[] { BaseColumns._ID }, whereClause, params.whereArgs, null, orderBy, String.valueOf(limit));
+            if (cursor == null) {
+                return new long[0];
+            }
+            final long[] ids = new long[cursor.getCount()];
+            int i = 0;
+            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                ids[i++] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static String getOrderBy(Map<String, Integer> eventTypePriorities) {
+        if (eventTypePriorities.isEmpty()) {
+            return BaseColumns._ID;
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append("CASE ");
+        sb.append(AnalyticsEvent.Columns.EVENT_TYPE);
+        for (final Map.Entry<String, Integer> entry : eventTypePriorities.entrySet()) {
+            sb.append(" WHEN ");
+            sb.append(DatabaseUtils.sqlEscapeString(entry.getKey()));
+            sb.append(" THEN ");
+            sb.append(entry.getValue());
+        }
+        sb.append(" ELSE ");
+        sb.append(DEFAULT_PRIORITY);
+        sb.append(" END, ");
+        sb.append(BaseColumns._ID);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package io.pivotal.android.push.database;
+
+/**
+ * Decides which analytics events should be removed from the events database before it fills up.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Describes the events that a policy wants to evict.  Only events that match the where clause are
+     * evicted, at most <code>numberOfEvents</code> of them, lowest priority and oldest first.
+     */
+    public class EvictionParams {
+        public String whereClause;
+        public String[] whereArgs;
+        public int numberOfEvents;
+    }
+
+    /**
+     * @param numberOfEvents     the number of events currently in the database
+     * @param sizeInBytes        the number of bytes currently used by the database
+     * @param nowInSeconds       the current time, in seconds since the epoch
+     * @return the events to evict, or null if the database is within this policy
+     */
+    public EvictionParams getEvictionParams(int numberOfEvents, long sizeInBytes, long nowInSeconds);
+}
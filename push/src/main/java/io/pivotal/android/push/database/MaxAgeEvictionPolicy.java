@@ -0,0 +1,32 @@
+package io.pivotal.android.push.database;
+
+import io.pivotal.android.push.model.analytics.AnalyticsEvent;
+
+/**
+ * Evicts every event that is older than the given age.
+ */
+public class MaxAgeEvictionPolicy implements EvictionPolicy {
+
+    private final long maxAgeInSeconds;
+
+    public MaxAgeEvictionPolicy(long maxAgeInSeconds) {
+        if (maxAgeInSeconds <= 0) {
+            throw new IllegalArgumentException("maxAgeInSeconds must be greater than zero");
+        }
+        this.maxAgeInSeconds = maxAgeInSeconds;
+    }
+
+    @Override
+    public EvictionParams getEvictionParams(int numberOfEvents, long sizeInBytes, long nowInSeconds) {
+        final EvictionParams params = new EvictionParams();
+        params.whereClause = AnalyticsEvent.Columns.EVENT_TIME + " < ?";
+        params.whereArgs = new String[] { String.valueOf(nowInSeconds - maxAgeInSeconds) };
+        params.numberOfEvents = Integer.MAX_VALUE;
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return "max age " + maxAgeInSeconds + " s";
+    }
+}
@@ -0,0 +1,31 @@
+package io.pivotal.android.push.database;
+
+/**
+ * Evicts events once there are more than the given number of events in the database.
+ */
+public class MaxEventsEvictionPolicy implements EvictionPolicy {
+
+    private final int maxEvents;
+
+    public MaxEventsEvictionPolicy(int maxEvents) {
+        if (maxEvents <= 0) {
+            throw new IllegalArgumentException("maxEvents must be greater than zero");
+        }
+        this.maxEvents = maxEvents;
+    }
+
+    @Override
+    public EvictionParams getEvictionParams(int numberOfEvents, long sizeInBytes, long nowInSeconds) {
+        if (numberOfEvents <= maxEvents) {
+            return null;
+        }
+        final EvictionParams params = new EvictionParams();
+        params.numberOfEvents = numberOfEvents - maxEvents;
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return "max " + maxEvents + " events";
+    }
+}
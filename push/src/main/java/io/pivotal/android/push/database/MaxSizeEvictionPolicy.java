@@ -0,0 +1,34 @@
+package io.pivotal.android.push.database;
+
+/**
+ * Evicts events once the database uses more than the given number of bytes.  The number of events to
+ * evict is estimated from the average size of an event.
+ */
+public class MaxSizeEvictionPolicy implements EvictionPolicy {
+
+    private final long maxSizeInBytes;
+
+    public MaxSizeEvictionPolicy(long maxSizeInBytes) {
+        if (maxSizeInBytes <= 0) {
+            throw new IllegalArgumentException("maxSizeInBytes must be greater than zero");
+        }
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    @Override
+    public EvictionParams getEvictionParams(int numberOfEvents, long sizeInBytes, long nowInSeconds) {
+        if (sizeInBytes <= maxSizeInBytes || numberOfEvents <= 0) {
+            return null;
+        }
+        final long averageEventSizeInBytes = Math.max(sizeInBytes / numberOfEvents, 1L);
+        final long excessSizeInBytes = sizeInBytes - maxSizeInBytes;
+        final EvictionParams params = new EvictionParams();
+        params.numberOfEvents = (int) Math.min((excessSizeInBytes + averageEventSizeInBytes - 1) / averageEventSizeInBytes, numberOfEvents);
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return "max " + maxSizeInBytes / 1024 + " kB";
+    }
+}
@@ -2,6 +2,7 @@ package io.pivotal.android.push.model.analytics;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.provider.BaseColumns;
@@ -13,9 +14,12 @@ import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
+import io.pivotal.android.push.analytics.AnalyticsEventLogger;
 import io.pivotal.android.push.database.Database;
 
 public class AnalyticsEvent implements Parcelable {
@@ -31,13 +35,28 @@ public class AnalyticsEvent implements Parcelable {
         public static final String SDK_VERSION = "sdkVersion";
         public static final String PLATFORM_TYPE = "platformType";
         public static final String PLATFORM_UUID = "platformUuid";
-    }
+        public static final String ATTRIBUTES_ID = "attributesId";
+        public static final String DEDUP_KEY = "dedupKey";
+        public static final String REJECTED_ATTEMPTS = "rejectedAttempts";
+    }
+
+    /**
+     * The columns that are the same for nearly every event on a device.  From database version 5 they are stored
+     * once in the attributes table and each event row only holds the key of its attributes.
+     */
+    public static final String[] ATTRIBUTE_COLUMNS = new String[] {
+            Columns.DEVICE_UUID,
+            Columns.SDK_VERSION,
+            Columns.PLATFORM_TYPE,
+            Columns.PLATFORM_UUID
+    };
 
     public static class Status {
         public static final int NOT_POSTED = 0;
         public static final int POSTING = 1;
         public static final int POSTED = 2;
         public static final int POSTING_ERROR = 3;
+        public static final int QUARANTINED = 4; // Rejected by the server too many times.  Never sent again.
     }
 
     public static String statusString(int status) {
@@ -50,6 +69,8 @@ public class AnalyticsEvent implements Parcelable {
                 return "Posted";
             case Status.POSTING_ERROR:
                 return "Error";
+            case Status.QUARANTINED:
+                return "Quarantined";
         }
         return "?";
     }
@@ -179,7 +200,7 @@ public class AnalyticsEvent implements Parcelable {
     }
 
     public void setStatus(int status) {
-        if (status != Status.NOT_POSTED && status != Status.POSTING && status != Status.POSTED && status != Status.POSTING_ERROR) {
+        if (status != Status.NOT_POSTED && status != Status.POSTING && status != Status.POSTED && status != Status.POSTING_ERROR && status != Status.QUARANTINED) {
             throw new IllegalArgumentException("Illegal event status: " + status);
         }
         this.status = status;
@@ -347,12 +368,25 @@ public class AnalyticsEvent implements Parcelable {
 
     // Database helpers
 
+    private static final String INDEX_STATUS = "events_status_index";
+    private static final String INDEX_EVENT_TYPE = "events_event_type_index";
+    private static final String INDEX_EVENT_TIME = "events_event_time_index";
+    private static final String INDEX_DEDUP_KEY = "events_dedup_key_index";
+    private static final String VERSION_3_TABLE_NAME = "events_v3";
+    private static final String VERSION_4_TABLE_NAME = "events_v4";
+
+    // From database version 5 the attribute columns are included as they appear in the events view.  DatabaseWrapper
+    // replaces them with the key of the matching row in the attributes table before writing to the events table.
     public ContentValues getContentValues(int databaseVersion) {
         // NOTE - do not save the 'id' field to the ContentValues. Let the database
         // figure out the 'id' itself.
         final ContentValues cv = new ContentValues();
         cv.put(Columns.RECEIPT_ID, getReceiptId());
-        cv.put(Columns.EVENT_TIME, getEventTime());
+        if (databaseVersion >= 4) {
+            cv.put(Columns.EVENT_TIME, getEventTimeInSeconds());
+        } else {
+            cv.put(Columns.EVENT_TIME, getEventTime());
+        }
         cv.put(Columns.EVENT_TYPE, getEventType());
         cv.put(Columns.DEVICE_UUID, getDeviceUuid());
         cv.put(Columns.GEOFENCE_ID, getGeofenceId());
@@ -368,14 +402,113 @@ public class AnalyticsEvent implements Parcelable {
             cv.put(Columns.PLATFORM_UUID, getPlatformUuid());
         }
 
+        if (databaseVersion >= 6) {
+            cv.put(Columns.DEDUP_KEY, getDedupKey());
+        }
+
         return cv;
     }
 
+    // The columns written by the compiled insert statement, in the order of the bound arguments.
+    private static final String[] INSERT_COLUMNS = new String[] {
+            Columns.RECEIPT_ID,
+            Columns.EVENT_TYPE,
+            Columns.EVENT_TIME,
+            Columns.GEOFENCE_ID,
+            Columns.LOCATION_ID,
+            Columns.ATTRIBUTES_ID,
+            Columns.DEDUP_KEY,
+            Columns.STATUS
+    };
+
+    // Events with the same dedup key as a stored event are ignored instead of inserted.
+    public static String getInsertSqlStatement() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("INSERT OR IGNORE INTO '");
+        sb.append(Database.EVENTS_TABLE_NAME);
+        sb.append("' (");
+        for (int i = 0; i < INSERT_COLUMNS.length; i += 1) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('\'');
+            sb.append(INSERT_COLUMNS[i]);
+            sb.append('\'');
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < INSERT_COLUMNS.length; i += 1) {
+            sb.append(i > 0 ? ", ?" : "?");
+        }
+        sb.append(");");
+        return sb.toString();
+    }
+
+    // Binds the fields of this event to the statement returned by getInsertSqlStatement.  The attribute
+    // columns are not bound directly; the key of their row in the attributes table is bound instead.
+    public void bindInsertArguments(SQLiteStatement statement, long attributesId) {
+        statement.clearBindings();
+        bindString(statement, 1, getReceiptId());
+        bindString(statement, 2, getEventType());
+        final Long eventTimeInSeconds = getEventTimeInSeconds();
+        if (eventTimeInSeconds != null) {
+            statement.bindLong(3, eventTimeInSeconds);
+        }
+        bindString(statement, 4, getGeofenceId());
+        bindString(statement, 5, getLocationId());
+        statement.bindLong(6, attributesId);
+        bindString(statement, 7, getDedupKey());
+        statement.bindLong(8, getStatus());
+    }
+
+    // The event types that are logged at most once per push notification.  A redelivered notification, or an app
+    // that reports the same notification as opened twice, would otherwise store and send the same event again.
+    private static final Set<String> DEDUPLICATED_EVENT_TYPES = new HashSet<>(Arrays.asList(
+            AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_RECEIVED,
+            AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_PUSH_NOTIFICATION_OPENED,
+            AnalyticsEventLogger.PCF_PUSH_EVENT_TYPE_HEARTBEAT));
+
+    /**
+     * Gets the key that identifies duplicates of this event, made up of the event type, receipt ID, geofence ID
+     * and location ID.  Only one event with a given key is stored.
+     *
+     * @return the key, or null if this event may be stored more than once (e.g. geofence events, or events
+     * without a receipt ID).
+     */
+    public String getDedupKey() {
+        if (receiptId == null || !DEDUPLICATED_EVENT_TYPES.contains(eventType)) {
+            return null;
+        }
+        return eventType + '|' + receiptId + '|' + (geofenceId != null ? geofenceId : "") + '|' + (locationId != null ? locationId : "");
+    }
+
+    // Arguments that are left unbound after clearBindings are NULL.
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        }
+    }
+
+    // Returns the event time as the number of seconds since the epoch, or null if the event time is not a number.
+    private Long getEventTimeInSeconds() {
+        if (eventTime == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventTime);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     public static String getCreateTableSqlStatement(int databaseVersion) {
+        return getCreateTableSqlStatement(Database.EVENTS_TABLE_NAME, databaseVersion);
+    }
+
+    private static String getCreateTableSqlStatement(String tableName, int databaseVersion) {
         final StringBuilder sb = new StringBuilder();
         sb.append("CREATE TABLE IF NOT EXISTS ");
         sb.append('\'');
-        sb.append(Database.EVENTS_TABLE_NAME);
+        sb.append(tableName);
         sb.append("\' ('");
         sb.append(BaseColumns._ID);
         sb.append("' INTEGER PRIMARY KEY AUTOINCREMENT, '");
@@ -384,59 +517,197 @@ public class AnalyticsEvent implements Parcelable {
         sb.append(Columns.EVENT_TYPE);
         sb.append("' TEXT, '");
         sb.append(Columns.EVENT_TIME);
-        sb.append("' TEXT, '");
-        sb.append(Columns.DEVICE_UUID);
-        sb.append("' TEXT, '");
+        if (databaseVersion >= 4) {
+            sb.append("' INTEGER, '");
+        } else {
+            sb.append("' TEXT, '");
+        }
+        if (databaseVersion < 5) {
+            sb.append(Columns.DEVICE_UUID);
+            sb.append("' TEXT, '");
+        }
         sb.append(Columns.GEOFENCE_ID);
         sb.append("' TEXT, '");
         sb.append(Columns.LOCATION_ID);
         sb.append("' TEXT, '");
-        if (databaseVersion >= 2) {
-            sb.append(Columns.SDK_VERSION);
-            sb.append("' TEXT, '");
-        }
-        if (databaseVersion >= 3) {
-            sb.append(Columns.PLATFORM_TYPE);
-            sb.append("' TEXT, '");
-            sb.append(Columns.PLATFORM_UUID);
-            sb.append("' TEXT, '");
+        if (databaseVersion >= 5) {
+            sb.append(Columns.ATTRIBUTES_ID);
+            sb.append("' INTEGER, '");
+            if (databaseVersion >= 6) {
+                sb.append(Columns.DEDUP_KEY);
+                sb.append("' TEXT, '");
+            }
+            if (databaseVersion >= 7) {
+                sb.append(Columns.REJECTED_ATTEMPTS);
+                sb.append("' INTEGER NOT NULL DEFAULT 0, '");
+            }
+        } else {
+            if (databaseVersion >= 2) {
+                sb.append(Columns.SDK_VERSION);
+                sb.append("' TEXT, '");
+            }
+            if (databaseVersion >= 3) {
+                sb.append(Columns.PLATFORM_TYPE);
+                sb.append("' TEXT, '");
+                sb.append(Columns.PLATFORM_UUID);
+                sb.append("' TEXT, '");
+            }
         }
         sb.append(Columns.STATUS);
         sb.append("' INT);");
         return sb.toString();
     }
 
+    // The outbox queries filter on status and eventType, and age-based queries filter on eventTime.
+    public static List<String> getCreateIndexSqlStatements(int databaseVersion) {
+        final List<String> statements = new LinkedList<>();
+        if (databaseVersion >= 4) {
+            statements.add("CREATE INDEX IF NOT EXISTS '" + INDEX_STATUS + "' ON '" + Database.EVENTS_TABLE_NAME + "' ('" + Columns.STATUS + "', '" + BaseColumns._ID + "');");
+            statements.add("CREATE INDEX IF NOT EXISTS '" + INDEX_EVENT_TYPE + "' ON '" + Database.EVENTS_TABLE_NAME + "' ('" + Columns.EVENT_TYPE + "');");
+            statements.add("CREATE INDEX IF NOT EXISTS '" + INDEX_EVENT_TIME + "' ON '" + Database.EVENTS_TABLE_NAME + "' ('" + Columns.EVENT_TIME + "');");
+        }
+        if (databaseVersion >= 6) {
+            statements.add(getCreateDedupKeyIndexSqlStatement());
+        }
+        return statements;
+    }
+
+    // SQLite treats NULLs as distinct in a unique index, so events without a dedup key never conflict.
+    private static String getCreateDedupKeyIndexSqlStatement() {
+        return "CREATE UNIQUE INDEX IF NOT EXISTS '" + INDEX_DEDUP_KEY + "' ON '" + Database.EVENTS_TABLE_NAME + "' ('" + Columns.DEDUP_KEY + "');";
+    }
+
+    public static String getSelectIdByDedupKeySqlStatement() {
+        return "SELECT " + BaseColumns._ID + " FROM '" + Database.EVENTS_TABLE_NAME + "' WHERE " + Columns.DEDUP_KEY + " = ?;";
+    }
+
+    // The number of rejected attempts is kept in the events table only.  It is not part of the event itself.
+    public static String getIncrementRejectedAttemptsSqlStatement() {
+        return "UPDATE '" + Database.EVENTS_TABLE_NAME + "' SET " + Columns.REJECTED_ATTEMPTS + " = " + Columns.REJECTED_ATTEMPTS + " + 1 WHERE " + BaseColumns._ID + " = ?;";
+    }
+
+    public static String getSelectRejectedAttemptsSqlStatement() {
+        return "SELECT " + Columns.REJECTED_ATTEMPTS + " FROM '" + Database.EVENTS_TABLE_NAME + "' WHERE " + BaseColumns._ID + " = ?;";
+    }
+
     public static String getDropTableSqlStatement() {
         return "DROP TABLE IF EXISTS '" + Database.EVENTS_TABLE_NAME + "';";
     }
 
-    public static List<String> getDatabaseMigrationCommands(int oldVersion, int newVersion) {
-
-        final List<String> upgradeStatements = new LinkedList<>();
+    // Each distinct combination of attribute values is stored once.  There are very few rows (usually one per
+    // SDK version the app has shipped with) so the table does not need an index.
+    public static String getCreateAttributesTableSqlStatement() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("CREATE TABLE IF NOT EXISTS '");
+        sb.append(Database.EVENT_ATTRIBUTES_TABLE_NAME);
+        sb.append("' ('");
+        sb.append(BaseColumns._ID);
+        sb.append("' INTEGER PRIMARY KEY AUTOINCREMENT");
+        for (final String column : ATTRIBUTE_COLUMNS) {
+            sb.append(", '");
+            sb.append(column);
+            sb.append("' TEXT");
+        }
+        sb.append(");");
+        return sb.toString();
+    }
 
-        if (oldVersion > newVersion) {
-            return null;
+    // Reading through the view rehydrates the attribute columns, so events read back the same as before version 5.
+    public static String getCreateEventsViewSqlStatement() {
+        return "CREATE VIEW IF NOT EXISTS '" + Database.EVENTS_VIEW_NAME + "' AS SELECT " +
+                "e." + BaseColumns._ID + " AS " + BaseColumns._ID + ", " +
+                "e." + Columns.RECEIPT_ID + " AS " + Columns.RECEIPT_ID + ", " +
+                "e." + Columns.EVENT_TYPE + " AS " + Columns.EVENT_TYPE + ", " +
+                "e." + Columns.EVENT_TIME + " AS " + Columns.EVENT_TIME + ", " +
+                "a." + Columns.DEVICE_UUID + " AS " + Columns.DEVICE_UUID + ", " +
+                "e." + Columns.GEOFENCE_ID + " AS " + Columns.GEOFENCE_ID + ", " +
+                "e." + Columns.LOCATION_ID + " AS " + Columns.LOCATION_ID + ", " +
+                "a." + Columns.SDK_VERSION + " AS " + Columns.SDK_VERSION + ", " +
+                "a." + Columns.PLATFORM_TYPE + " AS " + Columns.PLATFORM_TYPE + ", " +
+                "a." + Columns.PLATFORM_UUID + " AS " + Columns.PLATFORM_UUID + ", " +
+                "e." + Columns.STATUS + " AS " + Columns.STATUS +
+                " FROM '" + Database.EVENTS_TABLE_NAME + "' e LEFT JOIN '" + Database.EVENT_ATTRIBUTES_TABLE_NAME + "' a ON e." + Columns.ATTRIBUTES_ID + " = a." + BaseColumns._ID + ";";
+    }
 
-        } else if (oldVersion == newVersion) {
-            return upgradeStatements;
+    public static List<String> getDropAttributesSqlStatements() {
+        return Arrays.asList("DROP VIEW IF EXISTS '" + Database.EVENTS_VIEW_NAME + "';",
+                "DROP TABLE IF EXISTS '" + Database.EVENT_ATTRIBUTES_TABLE_NAME + "';");
+    }
 
-        } else if (oldVersion == 1 && newVersion == 2) {
+    // Uses IS instead of = so that NULL attribute values match each other.
+    public static String getSelectAttributesIdSqlStatement() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("SELECT ");
+        sb.append(BaseColumns._ID);
+        sb.append(" FROM '");
+        sb.append(Database.EVENT_ATTRIBUTES_TABLE_NAME);
+        sb.append("' WHERE ");
+        for (int i = 0; i < ATTRIBUTE_COLUMNS.length; i += 1) {
+            if (i > 0) {
+                sb.append(" AND ");
+            }
+            sb.append(ATTRIBUTE_COLUMNS[i]);
+            sb.append(" IS ?");
+        }
+        sb.append(" LIMIT 1;");
+        return sb.toString();
+    }
 
-            upgradeStatements.addAll(AnalyticsEvent.getMigrateVersion1ToVersion2Statement());
+    public static String getInsertAttributesSqlStatement() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("INSERT INTO '");
+        sb.append(Database.EVENT_ATTRIBUTES_TABLE_NAME);
+        sb.append("' (");
+        for (int i = 0; i < ATTRIBUTE_COLUMNS.length; i += 1) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('\'');
+            sb.append(ATTRIBUTE_COLUMNS[i]);
+            sb.append('\'');
+        }
+        sb.append(") VALUES (?, ?, ?, ?);");
+        return sb.toString();
+    }
 
-        } else if (oldVersion == 2 && newVersion == 3) {
+    public static List<String> getDatabaseMigrationCommands(int oldVersion, int newVersion) {
 
-            upgradeStatements.addAll(AnalyticsEvent.getMigrateVersion2ToVersion3Statement());
+        final List<String> upgradeStatements = new LinkedList<>();
 
-        } else if (oldVersion == 1 && newVersion == 3) {
+        if (oldVersion > newVersion) {
+            return null;
+        }
 
-            upgradeStatements.addAll(AnalyticsEvent.getMigrateVersion1ToVersion2Statement());
-            upgradeStatements.addAll(AnalyticsEvent.getMigrateVersion2ToVersion3Statement());
+        for (int version = oldVersion; version < newVersion; version += 1) {
+            final List<String> statements = getMigrateStatements(version);
+            if (statements == null) {
+                return null;
+            }
+            upgradeStatements.addAll(statements);
         }
 
         return upgradeStatements;
     }
 
+    // Returns the statements that migrate the events table from the given version to the next version.
+    private static List<String> getMigrateStatements(int fromVersion) {
+        switch (fromVersion) {
+            case 1:
+                return AnalyticsEvent.getMigrateVersion1ToVersion2Statement();
+            case 2:
+                return AnalyticsEvent.getMigrateVersion2ToVersion3Statement();
+            case 3:
+                return AnalyticsEvent.getMigrateVersion3ToVersion4Statement();
+            case 4:
+                return AnalyticsEvent.getMigrateVersion4ToVersion5Statement();
+            case 5:
+                return AnalyticsEvent.getMigrateVersion5ToVersion6Statement();
+            case 6:
+                return AnalyticsEvent.getMigrateVersion6ToVersion7Statement();
+        }
+        return null;
+    }
+
     private static List<String> getMigrateVersion1ToVersion2Statement() {
         return Arrays.asList("ALTER TABLE '" + Database.EVENTS_TABLE_NAME + "' " + "ADD COLUMN '" + Columns.SDK_VERSION + "' TEXT;");
     }
@@ -446,6 +717,60 @@ public class AnalyticsEvent implements Parcelable {
                 "ALTER TABLE '" + Database.EVENTS_TABLE_NAME + "' " + "ADD COLUMN '" + Columns.PLATFORM_UUID + "' TEXT;");
     }
 
+    // SQLite can not change the type of a column, so the table is rebuilt in order to store eventTime as an INTEGER.
+    private static List<String> getMigrateVersion3ToVersion4Statement() {
+        final String columns = "'" + BaseColumns._ID + "', '" + Columns.RECEIPT_ID + "', '" + Columns.EVENT_TYPE + "', '" + Columns.EVENT_TIME + "', '" +
+                Columns.DEVICE_UUID + "', '" + Columns.GEOFENCE_ID + "', '" + Columns.LOCATION_ID + "', '" + Columns.SDK_VERSION + "', '" +
+                Columns.PLATFORM_TYPE + "', '" + Columns.PLATFORM_UUID + "', '" + Columns.STATUS + "'";
+        final String selectedColumns = "\"" + BaseColumns._ID + "\", \"" + Columns.RECEIPT_ID + "\", \"" + Columns.EVENT_TYPE + "\", CAST(\"" + Columns.EVENT_TIME + "\" AS INTEGER), \"" +
+                Columns.DEVICE_UUID + "\", \"" + Columns.GEOFENCE_ID + "\", \"" + Columns.LOCATION_ID + "\", \"" + Columns.SDK_VERSION + "\", \"" +
+                Columns.PLATFORM_TYPE + "\", \"" + Columns.PLATFORM_UUID + "\", \"" + Columns.STATUS + "\"";
+
+        final List<String> statements = new LinkedList<>();
+        statements.add("ALTER TABLE '" + Database.EVENTS_TABLE_NAME + "' RENAME TO '" + VERSION_3_TABLE_NAME + "';");
+        statements.add(getCreateTableSqlStatement(Database.EVENTS_TABLE_NAME, 4));
+        statements.add("INSERT INTO '" + Database.EVENTS_TABLE_NAME + "' (" + columns + ") SELECT " + selectedColumns + " FROM '" + VERSION_3_TABLE_NAME + "';");
+        statements.add("DROP TABLE '" + VERSION_3_TABLE_NAME + "';");
+        statements.addAll(getCreateIndexSqlStatements(4));
+        return statements;
+    }
+
+    // Moves the attribute columns into the attributes table, one row per distinct combination, and rebuilds the
+    // events table to refer to them by key.  The old table's indexes are dropped along with it, so they are created again.
+    private static List<String> getMigrateVersion4ToVersion5Statement() {
+        final String attributeColumns = "\"" + Columns.DEVICE_UUID + "\", \"" + Columns.SDK_VERSION + "\", \"" + Columns.PLATFORM_TYPE + "\", \"" + Columns.PLATFORM_UUID + "\"";
+        final String columns = "'" + BaseColumns._ID + "', '" + Columns.RECEIPT_ID + "', '" + Columns.EVENT_TYPE + "', '" + Columns.EVENT_TIME + "', '" +
+                Columns.GEOFENCE_ID + "', '" + Columns.LOCATION_ID + "', '" + Columns.ATTRIBUTES_ID + "', '" + Columns.STATUS + "'";
+        final String selectedColumns = "e." + BaseColumns._ID + ", e." + Columns.RECEIPT_ID + ", e." + Columns.EVENT_TYPE + ", e." + Columns.EVENT_TIME + ", e." +
+                Columns.GEOFENCE_ID + ", e." + Columns.LOCATION_ID + ", " +
+                "(SELECT a." + BaseColumns._ID + " FROM '" + Database.EVENT_ATTRIBUTES_TABLE_NAME + "' a WHERE " +
+                "a." + Columns.DEVICE_UUID + " IS e." + Columns.DEVICE_UUID + " AND " +
+                "a." + Columns.SDK_VERSION + " IS e." + Columns.SDK_VERSION + " AND " +
+                "a." + Columns.PLATFORM_TYPE + " IS e." + Columns.PLATFORM_TYPE + " AND " +
+                "a." + Columns.PLATFORM_UUID + " IS e." + Columns.PLATFORM_UUID + "), e." + Columns.STATUS;
+
+        final List<String> statements = new LinkedList<>();
+        statements.add(getCreateAttributesTableSqlStatement());
+        statements.add("INSERT INTO '" + Database.EVENT_ATTRIBUTES_TABLE_NAME + "' (" + attributeColumns + ") SELECT DISTINCT " + attributeColumns + " FROM '" + Database.EVENTS_TABLE_NAME + "';");
+        statements.add("ALTER TABLE '" + Database.EVENTS_TABLE_NAME + "' RENAME TO '" + VERSION_4_TABLE_NAME + "';");
+        statements.add(getCreateTableSqlStatement(Database.EVENTS_TABLE_NAME, 5));
+        statements.add("INSERT INTO '" + Database.EVENTS_TABLE_NAME + "' (" + columns + ") SELECT " + selectedColumns + " FROM '" + VERSION_4_TABLE_NAME + "' e;");
+        statements.add("DROP TABLE '" + VERSION_4_TABLE_NAME + "';");
+        statements.addAll(getCreateIndexSqlStatements(5));
+        statements.add(getCreateEventsViewSqlStatement());
+        return statements;
+    }
+
+    // Events that are already stored are left without a dedup key, so they can not conflict with each other.
+    private static List<String> getMigrateVersion5ToVersion6Statement() {
+        return Arrays.asList("ALTER TABLE '" + Database.EVENTS_TABLE_NAME + "' " + "ADD COLUMN '" + Columns.DEDUP_KEY + "' TEXT;",
+                getCreateDedupKeyIndexSqlStatement());
+    }
+
+    private static List<String> getMigrateVersion6ToVersion7Statement() {
+        return Arrays.asList("ALTER TABLE '" + Database.EVENTS_TABLE_NAME + "' " + "ADD COLUMN '" + Columns.REJECTED_ATTEMPTS + "' INTEGER NOT NULL DEFAULT 0;");
+    }
+
     public static int getRowIdFromCursor(final Cursor cursor) {
         final int idColumn = cursor.getColumnIndex(BaseColumns._ID);
         if (idColumn < 0) {
@@ -7,7 +7,7 @@ import java.util.List;
 
 public class AnalyticsEventList {
 
-    private static final String EVENTS = "events";
+    public static final String EVENTS = "events";
 
     @SerializedName(EVENTS)
     private List<AnalyticsEvent> events;
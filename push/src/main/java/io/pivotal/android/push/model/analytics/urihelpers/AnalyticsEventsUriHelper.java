@@ -22,6 +22,12 @@ public class AnalyticsEventsUriHelper implements UriHelper {
 	public String getDefaultTableName() {
 		return Database.EVENTS_TABLE_NAME;
 	}
+
+	// Events are read through the view so that their attribute columns are joined back in
+	@Override
+	public String getQueryTableName() {
+		return Database.EVENTS_VIEW_NAME;
+	}
 	
 	@Override
 	public UriMatcherParams getUriMatcherParams() {
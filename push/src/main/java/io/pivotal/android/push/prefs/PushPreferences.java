@@ -28,6 +28,8 @@ public class PushPreferences {
     protected static final String PROPERTY_ARE_ANALYTICS_ENABLED = "are_analytics_enabled";
     protected static final String PROPERTY_SSL_CERT_VALIDATION_MODE = "ssl_cert_validation_mode";
     protected static final String PROPERTY_PINNED_CERTIFICATE_NAMES = "pinned_certificate_names";
+    protected static final String PROPERTY_ANALYTICS_SEND_FAILURES = "analytics_send_failures";
+    protected static final String PROPERTY_ANALYTICS_NEXT_SEND_TIME = "analytics_next_send_time";
 
     private final Context context;
 
@@ -180,6 +182,22 @@ public class PushPreferences {
         return new ArrayList<>(stringSet);
     }
 
+    public int getAnalyticsSendFailures() {
+        return getSharedPreferences().getInt(PROPERTY_ANALYTICS_SEND_FAILURES, 0);
+    }
+
+    public long getAnalyticsNextSendTime() {
+        return getSharedPreferences().getLong(PROPERTY_ANALYTICS_NEXT_SEND_TIME, 0L);
+    }
+
+    public void setAnalyticsSendBackoff(int numberOfFailures, long nextSendTime) {
+        final SharedPreferences prefs = getSharedPreferences();
+        final SharedPreferences.Editor editor = prefs.edit();
+        editor.putInt(PROPERTY_ANALYTICS_SEND_FAILURES, numberOfFailures);
+        editor.putLong(PROPERTY_ANALYTICS_NEXT_SEND_TIME, nextSendTime);
+        editor.commit();
+    }
+
     SharedPreferences getSharedPreferences() {
         return context.getSharedPreferences(TAG_NAME, Context.MODE_PRIVATE);
     }
@@ -3,6 +3,7 @@ package io.pivotal.android.push.receiver;
 public interface AnalyticsEventsSenderAlarmProvider {
 
     void enableAlarm();
+    void enableAlarm(long delayInMilliseconds); // One trigger after the given delay, with the usual alarm enabled as well
     void disableAlarm();
     boolean isAlarmEnabled();
     void enableAlarmIfDisabled(); // Thread safe way to ensure alarm gets enabled
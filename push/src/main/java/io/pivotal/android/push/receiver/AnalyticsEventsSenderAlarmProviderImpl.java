@@ -3,6 +3,7 @@ package io.pivotal.android.push.receiver;
 import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
+import android.os.Build;
 import android.os.SystemClock;
 
 import java.util.Random;
@@ -23,14 +24,44 @@ public class AnalyticsEventsSenderAlarmProviderImpl implements AnalyticsEventsSe
 
     @Override
     public synchronized void enableAlarm() {
+        setAlarm(getTriggerMillis());
+    }
+
+    // The first trigger of an inexact repeating alarm may be put off by most of its interval, so the retry gets a
+    // one-shot alarm of its own.  The repeating alarm stays enabled in case the retry is missed.
+    @Override
+    public synchronized void enableAlarm(long delayInMilliseconds) {
+        if (!isAlarmEnabled()) {
+            setAlarm(getTriggerMillis());
+        }
+        setRetryAlarm(Math.max(delayInMilliseconds, 0L));
+    }
+
+    private void setAlarm(long triggerMillis) {
         final PendingIntent intent = AnalyticsEventsSenderAlarmReceiver.getPendingIntent(context, PendingIntent.FLAG_UPDATE_CURRENT);
         final AlarmManager alarmManager = getAlarmManager();
-        final long triggerMillis = getTriggerMillis();
         final long intervalMillis = getIntervalMillis();
         Logger.fd("Events sender alarm enabled. Trigger time is in %d ms. Interval is %d ms.", triggerMillis - SystemClock.elapsedRealtime(), intervalMillis);
         alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerMillis, intervalMillis, intent);
     }
 
+    private void setRetryAlarm(long delayInMilliseconds) {
+        final PendingIntent intent = AnalyticsEventsSenderAlarmReceiver.getRetryPendingIntent(context, PendingIntent.FLAG_UPDATE_CURRENT);
+        final AlarmManager alarmManager = getAlarmManager();
+        final long triggerMillis = SystemClock.elapsedRealtime() + delayInMilliseconds;
+        Logger.fd("Events sender retry alarm enabled. Trigger time is in %d ms.", delayInMilliseconds);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            alarmManager.setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerMillis, getRetryWindowMillis(delayInMilliseconds), intent);
+        } else {
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerMillis, intent);
+        }
+    }
+
+    // Lets the system batch the retry with other alarms, without putting it off by more than a quarter of the delay
+    /* package */ static long getRetryWindowMillis(long delayInMilliseconds) {
+        return delayInMilliseconds / 4;
+    }
+
     private long getTriggerMillis() {
         if (DebugUtil.getInstance(context).isDebuggable()) {
             return SystemClock.elapsedRealtime() + 2 * 60 * 1000; // 2 minutes
@@ -58,6 +89,12 @@ public class AnalyticsEventsSenderAlarmProviderImpl implements AnalyticsEventsSe
         final AlarmManager alarmManager = getAlarmManager();
         alarmManager.cancel(intent);
         intent.cancel();
+
+        final PendingIntent retryIntent = AnalyticsEventsSenderAlarmReceiver.getRetryPendingIntent(context, PendingIntent.FLAG_NO_CREATE);
+        if (retryIntent != null) {
+            alarmManager.cancel(retryIntent);
+            retryIntent.cancel();
+        }
     }
 
     @Override
@@ -33,4 +33,10 @@ public class AnalyticsEventsSenderAlarmReceiver extends WakefulBroadcastReceiver
         final Intent alarmReceiverIntent = new Intent(context, AnalyticsEventsSenderAlarmReceiver.class);
         return PendingIntent.getBroadcast(context, 1, alarmReceiverIntent, pendingIntentFlags);
     }
+
+    // Used for the one-shot alarm that retries a failed send, so that it does not replace the repeating alarm
+    public static PendingIntent getRetryPendingIntent(Context context, int pendingIntentFlags) {
+        final Intent alarmReceiverIntent = new Intent(context, AnalyticsEventsSenderAlarmReceiver.class);
+        return PendingIntent.getBroadcast(context, 2, alarmReceiverIntent, pendingIntentFlags);
+    }
 }
@@ -0,0 +1,173 @@
+package io.pivotal.android.push.service;
+
+import android.content.Context;
+
+import io.pivotal.android.push.PushParameters;
+import io.pivotal.android.push.analytics.jobs.JobParams;
+import io.pivotal.android.push.analytics.jobs.JobResultListener;
+import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsApiRequestImpl;
+import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsApiRequestProvider;
+import io.pivotal.android.push.database.AnalyticsEventsStorage;
+import io.pivotal.android.push.database.DatabaseAnalyticsEventsStorage;
+import io.pivotal.android.push.database.DatabaseWrapper;
+import io.pivotal.android.push.prefs.PushPreferences;
+import io.pivotal.android.push.prefs.PushRequestHeaders;
+import io.pivotal.android.push.receiver.AnalyticsEventsSenderAlarmProvider;
+import io.pivotal.android.push.receiver.AnalyticsEventsSenderAlarmProviderImpl;
+import io.pivotal.android.push.util.NetworkWrapper;
+import io.pivotal.android.push.util.NetworkWrapperImpl;
+import io.pivotal.android.push.util.ServiceStarter;
+import io.pivotal.android.push.util.ServiceStarterImpl;
+import io.pivotal.android.push.util.TimeProvider;
+
+/**
+ * Holds the objects that analytics jobs depend on for the life of the process, so that running a job does not
+ * have to build them again.  Each component is created the first time it is needed.
+ *
+ * Unit tests can replace the container with {@link #setInstance}, passing in the fake components they need.
+ * Any component that is passed in as null is created as usual.
+ */
+public class AnalyticsComponents {
+
+    private static AnalyticsComponents instance;
+
+    private final Context context;
+    private TimeProvider timeProvider;
+    private NetworkWrapper networkWrapper;
+    private ServiceStarter serviceStarter;
+    private AnalyticsEventsStorage eventsStorage;
+    private PushPreferences pushPreferences;
+    private PushRequestHeaders pushRequestHeaders;
+    private AnalyticsEventsSenderAlarmProvider alarmProvider;
+    private PCFPushSendAnalyticsApiRequestProvider sendAnalyticsRequestProvider;
+    private boolean isSendAnalyticsRequestProviderFixed;
+    private PushParameters sendAnalyticsRequestParameters;
+
+    public static AnalyticsComponents getInstance(Context context) {
+        synchronized (AnalyticsComponents.class) {
+            if (instance == null) {
+                instance = new AnalyticsComponents(context);
+            }
+            return instance;
+        }
+    }
+
+    // Used by unit tests.  Passing null makes the next call to getInstance create a new container.
+    public static void setInstance(AnalyticsComponents components) {
+        synchronized (AnalyticsComponents.class) {
+            instance = components;
+        }
+    }
+
+    public AnalyticsComponents(Context context) {
+        this(context, null, null, null, null, null, null, null, null);
+    }
+
+    public AnalyticsComponents(Context context,
+                               TimeProvider timeProvider,
+                               NetworkWrapper networkWrapper,
+                               ServiceStarter serviceStarter,
+                               AnalyticsEventsStorage eventsStorage,
+                               PushPreferences pushPreferences,
+                               PushRequestHeaders pushRequestHeaders,
+                               AnalyticsEventsSenderAlarmProvider alarmProvider,
+                               PCFPushSendAnalyticsApiRequestProvider sendAnalyticsRequestProvider) {
+        if (context == null) {
+            throw new IllegalArgumentException("context may not be null");
+        }
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.timeProvider = timeProvider;
+        this.networkWrapper = networkWrapper;
+        this.serviceStarter = serviceStarter;
+        this.eventsStorage = eventsStorage;
+        this.pushPreferences = pushPreferences;
+        this.pushRequestHeaders = pushRequestHeaders;
+        this.alarmProvider = alarmProvider;
+        this.sendAnalyticsRequestProvider = sendAnalyticsRequestProvider;
+        this.isSendAnalyticsRequestProviderFixed = (sendAnalyticsRequestProvider != null);
+    }
+
+    /**
+     * Opens the events database if it is not open yet.
+     *
+     * @return true if the database was opened by this call, i.e. for the first time in this process.
+     */
+    public boolean prepareDatabase() {
+        return DatabaseWrapper.createDatabaseInstance(context);
+    }
+
+    public synchronized PushPreferences getPushPreferences() {
+        if (pushPreferences == null) {
+            pushPreferences = new PushPreferences(context);
+        }
+        return pushPreferences;
+    }
+
+    /**
+     * Gets the parameters for running a job.  Only the listener is new; the components are shared by every job.
+     */
+    public synchronized JobParams getJobParams(Context context, JobResultListener listener) {
+        return new JobParams(context,
+                listener,
+                getTimeProvider(),
+                getNetworkWrapper(),
+                getServiceStarter(),
+                getEventsStorage(),
+                getPushPreferences(),
+                getAlarmProvider(),
+                getSendAnalyticsRequestProvider());
+    }
+
+    private TimeProvider getTimeProvider() {
+        if (timeProvider == null) {
+            timeProvider = new TimeProvider();
+        }
+        return timeProvider;
+    }
+
+    private NetworkWrapper getNetworkWrapper() {
+        if (networkWrapper == null) {
+            networkWrapper = new NetworkWrapperImpl();
+        }
+        return networkWrapper;
+    }
+
+    private ServiceStarter getServiceStarter() {
+        if (serviceStarter == null) {
+            serviceStarter = new ServiceStarterImpl();
+        }
+        return serviceStarter;
+    }
+
+    private AnalyticsEventsStorage getEventsStorage() {
+        if (eventsStorage == null) {
+            eventsStorage = new DatabaseAnalyticsEventsStorage();
+        }
+        return eventsStorage;
+    }
+
+    private PushRequestHeaders getPushRequestHeaders() {
+        if (pushRequestHeaders == null) {
+            pushRequestHeaders = PushRequestHeaders.getInstance(context);
+        }
+        return pushRequestHeaders;
+    }
+
+    private AnalyticsEventsSenderAlarmProvider getAlarmProvider() {
+        if (alarmProvider == null) {
+            alarmProvider = new AnalyticsEventsSenderAlarmProviderImpl(context);
+        }
+        return alarmProvider;
+    }
+
+    // The request is built again only when the application sets new push parameters.
+    private PCFPushSendAnalyticsApiRequestProvider getSendAnalyticsRequestProvider() {
+        final PushParameters parameters = AnalyticsEventService.parameters;
+        if (!isSendAnalyticsRequestProviderFixed && (sendAnalyticsRequestProvider == null || sendAnalyticsRequestParameters != parameters)) {
+            final PCFPushSendAnalyticsApiRequestImpl request = new PCFPushSendAnalyticsApiRequestImpl(context, parameters, getEventsStorage(), getPushRequestHeaders(), getNetworkWrapper(), getTimeProvider());
+            sendAnalyticsRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+            sendAnalyticsRequestParameters = parameters;
+        }
+        return sendAnalyticsRequestProvider;
+    }
+}
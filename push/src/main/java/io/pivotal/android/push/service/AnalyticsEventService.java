@@ -5,38 +5,26 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.ResultReceiver;
 
-import io.pivotal.android.push.prefs.PushPreferences;
 import java.util.List;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.pivotal.android.push.PushParameters;
 import io.pivotal.android.push.analytics.jobs.BaseJob;
 import io.pivotal.android.push.analytics.jobs.EnqueueAnalyticsEventJob;
-import io.pivotal.android.push.analytics.jobs.JobParams;
 import io.pivotal.android.push.analytics.jobs.JobResultListener;
 import io.pivotal.android.push.analytics.jobs.PrepareDatabaseJob;
 import io.pivotal.android.push.analytics.jobs.SendAnalyticsEventsJob;
-import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsApiRequestImpl;
-import io.pivotal.android.push.backend.analytics.PCFPushSendAnalyticsApiRequestProvider;
-import io.pivotal.android.push.database.AnalyticsEventsStorage;
-import io.pivotal.android.push.database.DatabaseAnalyticsEventsStorage;
 import io.pivotal.android.push.database.DatabaseWrapper;
-import io.pivotal.android.push.prefs.Pivotal;
-import io.pivotal.android.push.prefs.PushRequestHeaders;
-import io.pivotal.android.push.receiver.AnalyticsEventsSenderAlarmProvider;
-import io.pivotal.android.push.receiver.AnalyticsEventsSenderAlarmProviderImpl;
 import io.pivotal.android.push.receiver.AnalyticsEventsSenderAlarmReceiver;
 import io.pivotal.android.push.util.Logger;
-import io.pivotal.android.push.util.NetworkWrapper;
-import io.pivotal.android.push.util.NetworkWrapperImpl;
-import io.pivotal.android.push.util.ServiceStarter;
-import io.pivotal.android.push.util.ServiceStarterImpl;
-import io.pivotal.android.push.util.TimeProvider;
 
 public class AnalyticsEventService extends IntentService {
 
     public static final String KEY_RESULT_RECEIVER = "result_receiver";
     public static final String KEY_JOB = "job";
+    // Set on intents whose jobs must not be run in the process by the AnalyticsJobExecutor
+    public static final String KEY_SERVICE_REQUIRED = "service_required";
 
     public static final int NO_RESULT = -1;
     public static final int JOB_INTERRUPTED = 1;
@@ -44,22 +32,10 @@ public class AnalyticsEventService extends IntentService {
 
     // Used by unit tests
     /* package */ static Semaphore semaphore = null;
-    /* package */ static AnalyticsEventsStorage eventsStorage = null;
-    /* package */ static TimeProvider timeProvider;
-    /* package */ static NetworkWrapper networkWrapper = null;
-    /* package */ static ServiceStarter serviceStarter = null;
-    /* package */ static AnalyticsEventsSenderAlarmProvider alarmProvider = null;
-    /* package */ static PCFPushSendAnalyticsApiRequestProvider sendAnalyticsRequestProvider = null;
     /* package */ static List<String> listOfCompletedJobs = null;
-    /* package */ static PushPreferences pushPreferences;
-    /* package */ static PushRequestHeaders pushRequestHeaders;
 
-    static PushParameters parameters;
-
-    // Used by unit tests
-    /* package */ static void setPushPreferences(PushPreferences preferences) {
-        AnalyticsEventService.pushPreferences = preferences;
-    }
+    // Set on the main thread and read by jobs on the service and executor threads
+    static volatile PushParameters parameters;
 
     public static void setPushParameters(PushParameters parameters) {
         AnalyticsEventService.parameters = parameters;
@@ -73,10 +49,19 @@ public class AnalyticsEventService extends IntentService {
         return intent;
     }
 
+    // The number of intents that have been delivered to the service but not handled yet
+    private final AtomicInteger numberOfPendingIntents = new AtomicInteger();
+
     public AnalyticsEventService() {
         super("AnalyticsEventService");
     }
 
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        numberOfPendingIntents.incrementAndGet();
+        return super.onStartCommand(intent, flags, startId);
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
 
@@ -90,53 +75,35 @@ public class AnalyticsEventService extends IntentService {
 
                 if (hasJob(intent)) {
                     final BaseJob job = getJobFromIntent(intent);
-                    if (AnalyticsEventService.pushPreferences == null) {
-                        AnalyticsEventService.pushPreferences = new PushPreferences(this);
-                    }
-                    if (AnalyticsEventService.pushRequestHeaders == null) {
-                        AnalyticsEventService.pushRequestHeaders = PushRequestHeaders.getInstance(this);
-                    }
-                    if (pushPreferences.areAnalyticsEnabled()) {
-                            setupStatics(intent);
-                            runJob(job, resultReceiver);
+                    final AnalyticsComponents components = AnalyticsComponents.getInstance(this);
+                    if (components.getPushPreferences().areAnalyticsEnabled()) {
+                        prepareDatabase(components, job);
+                        runJob(components, job, resultReceiver);
                     } else {
                         sendResult(ANALYTICS_DISABLED, resultReceiver);
                     }
                 }
             }
         } finally {
+            checkpointIfIdle();
             postProcessAfterService(intent);
         }
     }
 
-    private void setupStatics(Intent intent) {
-
-        boolean needToCleanDatabase = false;
-
-        if (AnalyticsEventService.eventsStorage == null) {
-            needToCleanDatabase = setupDatabase();
-        }
-        if (AnalyticsEventService.alarmProvider == null) {
-            AnalyticsEventService.alarmProvider = new AnalyticsEventsSenderAlarmProviderImpl(this);
-        }
-        if (AnalyticsEventService.timeProvider == null) {
-            AnalyticsEventService.timeProvider = new TimeProvider();
-        }
-        if (AnalyticsEventService.networkWrapper == null) {
-            AnalyticsEventService.networkWrapper = new NetworkWrapperImpl();
-        }
-        if (AnalyticsEventService.serviceStarter == null) {
-            AnalyticsEventService.serviceStarter = new ServiceStarterImpl();
-        }
-        if (AnalyticsEventService.sendAnalyticsRequestProvider == null) {
-            final PCFPushSendAnalyticsApiRequestImpl request = new PCFPushSendAnalyticsApiRequestImpl(this, parameters, AnalyticsEventService.eventsStorage, AnalyticsEventService.pushRequestHeaders, AnalyticsEventService.networkWrapper);
-            AnalyticsEventService.sendAnalyticsRequestProvider = new PCFPushSendAnalyticsApiRequestProvider(request);
+    // Once the service has run out of intents to handle, the events database is idle.  Runs on the worker thread,
+    // while the wake lock is still held.
+    private void checkpointIfIdle() {
+        if (numberOfPendingIntents.decrementAndGet() <= 0) {
+            DatabaseWrapper.checkpoint();
         }
+    }
 
-        if (!isIntentForSetup(intent) && needToCleanDatabase) {
+    // The first job to run in the process cleans up the database before it runs.
+    private void prepareDatabase(AnalyticsComponents components, BaseJob referringJob) {
+        final boolean wasDatabaseInstanceCreated = components.prepareDatabase();
+        if (wasDatabaseInstanceCreated && !(referringJob instanceof PrepareDatabaseJob)) {
             Logger.i("Instantiating database.");
-            final BaseJob referringJob = getJobFromIntent(intent);
-            cleanDatabase(referringJob);
+            cleanDatabase(components, referringJob);
         }
     }
 
@@ -148,16 +115,10 @@ public class AnalyticsEventService extends IntentService {
         }
     }
 
-    private boolean setupDatabase() {
-        final boolean wasDatabaseInstanceCreated = DatabaseWrapper.createDatabaseInstance(this);
-        AnalyticsEventService.eventsStorage = new DatabaseAnalyticsEventsStorage();
-        return wasDatabaseInstanceCreated;
-    }
-
-    private void cleanDatabase(final BaseJob referringJob) {
+    private void cleanDatabase(AnalyticsComponents components, final BaseJob referringJob) {
         final boolean canSendEvents = !(referringJob instanceof EnqueueAnalyticsEventJob) && !(referringJob instanceof SendAnalyticsEventsJob);
         final PrepareDatabaseJob job = new PrepareDatabaseJob(canSendEvents);
-        runJob(job, null); // no result receiver used in this hard-coded job
+        runJob(components, job, null); // no result receiver used in this hard-coded job
     }
 
     private ResultReceiver getResultReceiver(Intent intent) {
@@ -170,19 +131,6 @@ public class AnalyticsEventService extends IntentService {
         return resultReceiver;
     }
 
-    private boolean isIntentForSetup(Intent intent) {
-        if (intent == null || !hasJob(intent)) {
-            return false;
-        }
-
-        BaseJob job = getJobFromIntent(intent);
-        if (job == null) {
-            return false;
-        }
-
-        return (job instanceof PrepareDatabaseJob);
-    }
-
     private boolean hasJob(Intent intent) {
         return (getJobFromIntent(intent) != null);
     }
@@ -200,10 +148,16 @@ public class AnalyticsEventService extends IntentService {
         return (BaseJob) o;
     }
 
-    private void runJob(BaseJob job, final ResultReceiver resultReceiver) {
+    private void runJob(AnalyticsComponents components, BaseJob job, final ResultReceiver resultReceiver) {
+        synchronized (AnalyticsJobExecutor.jobLock) {
+            runJobLocked(components, job, resultReceiver);
+        }
+    }
+
+    private void runJobLocked(AnalyticsComponents components, BaseJob job, final ResultReceiver resultReceiver) {
         final Semaphore runJobSemaphore = new Semaphore(0);
 
-        job.run(getJobParams(new JobResultListener() {
+        job.run(components.getJobParams(this, new JobResultListener() {
 
             @Override
             public void onJobComplete(int resultCode) {
@@ -221,18 +175,6 @@ public class AnalyticsEventService extends IntentService {
         }
     }
 
-    private JobParams getJobParams(JobResultListener listener) {
-        return new JobParams(this,
-                listener,
-                AnalyticsEventService.timeProvider,
-                AnalyticsEventService.networkWrapper,
-                AnalyticsEventService.serviceStarter,
-                AnalyticsEventService.eventsStorage,
-                AnalyticsEventService.pushPreferences,
-                AnalyticsEventService.alarmProvider,
-                AnalyticsEventService.sendAnalyticsRequestProvider);
-    }
-
     // Used by unit tests
     private void sendResult(int resultCode, ResultReceiver resultReceiver) {
         if (resultReceiver != null) {
@@ -251,7 +193,7 @@ public class AnalyticsEventService extends IntentService {
 
         try {
 
-            cleanupStatics();
+            AnalyticsEventService.listOfCompletedJobs = null;
 
             // If unit tests are running then release them so that they can continue
             if (AnalyticsEventService.semaphore != null) {
@@ -268,14 +210,4 @@ public class AnalyticsEventService extends IntentService {
             }
         }
     }
-
-    private void cleanupStatics() {
-        AnalyticsEventService.eventsStorage = null;
-        AnalyticsEventService.alarmProvider = null;
-        AnalyticsEventService.networkWrapper = null;
-        AnalyticsEventService.serviceStarter = null;
-        AnalyticsEventService.pushPreferences = null;
-        AnalyticsEventService.sendAnalyticsRequestProvider = null;
-        AnalyticsEventService.listOfCompletedJobs = null;
-    }
 }
@@ -0,0 +1,161 @@
+package io.pivotal.android.push.service;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import io.pivotal.android.push.analytics.jobs.BaseJob;
+import io.pivotal.android.push.analytics.jobs.EnqueueAnalyticsEventJob;
+import io.pivotal.android.push.analytics.jobs.JobResultListener;
+import io.pivotal.android.push.analytics.jobs.PrepareDatabaseJob;
+import io.pivotal.android.push.analytics.jobs.SendAnalyticsEventsJob;
+import io.pivotal.android.push.database.DatabaseWrapper;
+import io.pivotal.android.push.util.Logger;
+
+/**
+ * Runs analytics jobs on a background thread in the application process, without parcelling them into an
+ * {@link Intent} and delivering them to the {@link AnalyticsEventService}.
+ *
+ * Jobs are run one at a time, in the order they were submitted, and never at the same time as a job that is
+ * being run by the {@link AnalyticsEventService}.  The service is still used for wakeups from the
+ * {@link io.pivotal.android.push.receiver.AnalyticsEventsSenderAlarmReceiver}, since it needs to hold a wake lock
+ * while the job runs, and for intents marked with {@link AnalyticsEventService#KEY_SERVICE_REQUIRED}, such as the
+ * flushes made while a component is being torn down.  The executor's thread does not keep the process alive, so
+ * a job queued here could be lost if the process were killed before it ran.
+ *
+ * In-process jobs can be turned off by setting the "io.pivotal.android.push.AnalyticsInProcessJobsEnabled"
+ * meta-data to false in the application manifest.
+ */
+public class AnalyticsJobExecutor {
+
+    public static final String IN_PROCESS_JOBS_ENABLED_META_DATA = "io.pivotal.android.push.AnalyticsInProcessJobsEnabled";
+
+    // Held while any analytics job runs, by the executor or by the service, so that two jobs never run at once.
+    /* package */ static final Object jobLock = new Object();
+
+    private static AnalyticsJobExecutor instance;
+
+    private final Context context;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Gets the executor for the application, or null if in-process jobs are turned off.
+     */
+    public static AnalyticsJobExecutor getInstance(Context context) {
+        synchronized (AnalyticsJobExecutor.class) {
+            if (instance == null && isEnabled(context)) {
+                instance = new AnalyticsJobExecutor(context);
+            }
+            return instance;
+        }
+    }
+
+    private static boolean isEnabled(Context context) {
+        try {
+            final Bundle metaData = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA).metaData;
+            return metaData == null || metaData.getBoolean(IN_PROCESS_JOBS_ENABLED_META_DATA, true);
+        } catch (Exception e) {
+            Logger.ex("Could not read the in-process jobs setting from the application meta-data", e);
+            return true;
+        }
+    }
+
+    /* package */ AnalyticsJobExecutor(Context context) {
+        verifyArguments(context);
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(1, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "AnalyticsJobExecutor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private void verifyArguments(Context context) {
+        if (context == null) {
+            throw new IllegalArgumentException("context may not be null");
+        }
+    }
+
+    /**
+     * Runs the job carried by the given intent, if the intent is meant for the {@link AnalyticsEventService}.
+     *
+     * @return true if the job was accepted.  Otherwise the intent should be delivered to the service as usual.
+     */
+    public boolean execute(Intent intent) {
+        if (intent == null || intent.getComponent() == null || !AnalyticsEventService.class.getName().equals(intent.getComponent().getClassName())) {
+            return false;
+        }
+        if (intent.hasExtra(AnalyticsEventService.KEY_RESULT_RECEIVER) || intent.getBooleanExtra(AnalyticsEventService.KEY_SERVICE_REQUIRED, false) || !intent.hasExtra(AnalyticsEventService.KEY_JOB)) {
+            return false;
+        }
+        final Object job = intent.getParcelableExtra(AnalyticsEventService.KEY_JOB);
+        if (!(job instanceof BaseJob)) {
+            return false;
+        }
+        execute((BaseJob) job);
+        return true;
+    }
+
+    public void execute(final BaseJob job) {
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    runJob(job);
+                } catch (Exception e) {
+                    Logger.ex("Could not run job '" + job + "'.", e);
+                }
+                if (executor.getQueue().isEmpty()) {
+                    DatabaseWrapper.checkpoint();
+                }
+            }
+        });
+    }
+
+    private void runJob(BaseJob job) {
+        final AnalyticsComponents components = AnalyticsComponents.getInstance(context);
+        if (!components.getPushPreferences().areAnalyticsEnabled()) {
+            Logger.i("Ignoring job '" + job + "' since Analytics have been disabled.");
+            return;
+        }
+
+        synchronized (jobLock) {
+            final boolean needToCleanDatabase = components.prepareDatabase();
+            if (needToCleanDatabase && !(job instanceof PrepareDatabaseJob)) {
+                Logger.i("Instantiating database.");
+                final boolean canSendEvents = !(job instanceof EnqueueAnalyticsEventJob) && !(job instanceof SendAnalyticsEventsJob);
+                runJob(new PrepareDatabaseJob(canSendEvents), components);
+            }
+            runJob(job, components);
+        }
+    }
+
+    // Jobs report their result through a listener, possibly from another thread, so wait for it here.
+    private void runJob(BaseJob job, AnalyticsComponents components) {
+        final Semaphore runJobSemaphore = new Semaphore(0);
+        job.run(components.getJobParams(context, new JobResultListener() {
+
+            @Override
+            public void onJobComplete(int resultCode) {
+                runJobSemaphore.release();
+            }
+        }));
+        try {
+            runJobSemaphore.acquire();
+        } catch (InterruptedException e) {
+            Logger.ex("Got interrupted while trying to run job '" + job + "'.", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Hands out the sockets of another socket factory and records in {@link TlsHandshakeMetrics} whether their
+ * handshakes were full or resumed.  A resumed handshake reuses a session that was created before the socket was.
+ */
+/* package */ class HandshakeMeteringSSLSocketFactory extends SSLSocketFactory {
+
+    private final SSLSocketFactory delegate;
+
+    /* package */ HandshakeMeteringSSLSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    /* package */ SSLSocketFactory getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return meter(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return meter(delegate.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return meter(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return meter(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return meter(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return meter(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private static Socket meter(Socket socket) {
+        if (socket instanceof SSLSocket) {
+            final long startTime = System.currentTimeMillis();
+            ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+
+                @Override
+                public void handshakeCompleted(HandshakeCompletedEvent event) {
+                    final SSLSession session = event.getSession();
+                    final boolean isResumed = session != null && session.getCreationTime() < startTime;
+                    TlsHandshakeMetrics.handshakeCompleted(isResumed, System.currentTimeMillis() - startTime);
+                    Logger.d("TLS handshake with " + (session != null ? session.getPeerHost() : null) + (isResumed ? " resumed a session." : " created a new session."));
+                }
+            });
+        }
+        return socket;
+    }
+}
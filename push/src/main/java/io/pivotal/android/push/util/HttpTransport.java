@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens the connections to the PCF Push server and decides what happens to them once a request is finished.
+ */
+public interface HttpTransport {
+
+    HttpURLConnection openConnection(URL url) throws IOException;
+
+    /**
+     * Called once the response to a request has been handled.  The connection may not be used after it has
+     * been released.
+     */
+    void releaseConnection(HttpURLConnection urlConnection);
+
+    /**
+     * Called instead of {@link #releaseConnection} when a request fails part of the way through, which leaves the
+     * connection in an unknown state.  The connection may not be used after it has been aborted.
+     */
+    void abortConnection(HttpURLConnection urlConnection);
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Keeps the sockets to the PCF Push server open between requests.
+ *
+ * HttpURLConnection puts a socket back into the process-wide connection pool once the response body has been
+ * read to the end and closed, and the next request to the same server picks it up again instead of making a new
+ * TCP connection and TLS handshake.  Calling {@link HttpURLConnection#disconnect()} closes the socket instead, so
+ * this transport only does that when the rest of the response is too big to be worth reading, or when the
+ * request failed before its response was handled.
+ */
+public class KeepAliveHttpTransport implements HttpTransport {
+
+    // Responses with more unread data than this are cheaper to throw away than to read
+    private static final int MAX_BYTES_TO_DRAIN = 64 * 1024;
+
+    private static final KeepAliveHttpTransport instance = new KeepAliveHttpTransport();
+
+    public static KeepAliveHttpTransport getInstance() {
+        return instance;
+    }
+
+    @Override
+    public HttpURLConnection openConnection(URL url) throws IOException {
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    @Override
+    public void releaseConnection(HttpURLConnection urlConnection) {
+        if (urlConnection == null) {
+            return;
+        }
+        try {
+            if (!drainResponse(urlConnection)) {
+                urlConnection.disconnect();
+            }
+        } catch (Exception e) {
+            Logger.d("Could not keep the connection to " + urlConnection.getURL() + " open: " + e);
+            urlConnection.disconnect();
+        }
+    }
+
+    @Override
+    public void abortConnection(HttpURLConnection urlConnection) {
+        if (urlConnection != null) {
+            urlConnection.disconnect();
+        }
+    }
+
+    // Reads and closes whatever is left of the response body.  Returns false if there was too much left to read.
+    private static boolean drainResponse(HttpURLConnection urlConnection) throws IOException {
+        final InputStream inputStream = getResponseStream(urlConnection);
+        if (inputStream == null) {
+            return true;
+        }
+        try {
+            final byte[] buffer = new byte[4096];
+            int totalBytesRead = 0;
+            while (totalBytesRead <= MAX_BYTES_TO_DRAIN) {
+                final int numberBytesRead = inputStream.read(buffer);
+                if (numberBytesRead < 0) {
+                    return true;
+                }
+                totalBytesRead += numberBytesRead;
+            }
+            return false;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static InputStream getResponseStream(HttpURLConnection urlConnection) throws IOException {
+        if (urlConnection.getResponseCode() >= 400) {
+            return urlConnection.getErrorStream();
+        }
+        return urlConnection.getInputStream();
+    }
+}
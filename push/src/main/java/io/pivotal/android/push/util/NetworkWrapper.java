@@ -14,4 +14,8 @@ public interface NetworkWrapper {
     boolean isNetworkAvailable(Context context);
 
     HttpURLConnection getHttpURLConnection(URL url) throws IOException;
+
+    void releaseHttpURLConnection(HttpURLConnection urlConnection);
+
+    void abortHttpURLConnection(HttpURLConnection urlConnection);
 }
@@ -11,6 +11,19 @@ import java.net.URL;
 
 public class NetworkWrapperImpl implements NetworkWrapper {
 
+    private final HttpTransport transport;
+
+    public NetworkWrapperImpl() {
+        this(KeepAliveHttpTransport.getInstance());
+    }
+
+    public NetworkWrapperImpl(HttpTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport may not be null");
+        }
+        this.transport = transport;
+    }
+
     @Override
     public boolean isNetworkAvailable(Context context) {
         return NetworkUtil.getInstance(context).isNetworkAvailable();
@@ -18,7 +31,16 @@ public class NetworkWrapperImpl implements NetworkWrapper {
 
     @Override
     public HttpURLConnection getHttpURLConnection(URL url) throws IOException {
-        return (HttpURLConnection) url.openConnection();
+        return transport.openConnection(url);
     }
 
+    @Override
+    public void releaseHttpURLConnection(HttpURLConnection urlConnection) {
+        transport.releaseConnection(urlConnection);
+    }
+
+    @Override
+    public void abortHttpURLConnection(HttpURLConnection urlConnection) {
+        transport.abortConnection(urlConnection);
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import static java.util.Collections.list;
+
+/**
+ * Trusts a server only if its certificate chain is valid for the pinned certificates and the server's own
+ * certificate has the public key of one of them.  Public keys are compared by the SHA-256 hashes of their
+ * encoded SubjectPublicKeyInfo, which are worked out once when the trust manager is made.
+ */
+/* package */ class PinnedCertificateTrustManager implements X509TrustManager {
+
+    private final List<X509TrustManager> trustManagers = new ArrayList<>();
+    private final List<byte[]> pins = new ArrayList<>();
+
+    /* package */ PinnedCertificateTrustManager(KeyStore keyStore) throws GeneralSecurityException {
+        final TrustManagerFactory trustMgrFactory = TrustManagerFactory.getInstance("X509");
+        trustMgrFactory.init(keyStore);
+        for (final TrustManager trustManager : trustMgrFactory.getTrustManagers()) {
+            if (trustManager instanceof X509TrustManager) {
+                trustManagers.add((X509TrustManager) trustManager);
+            }
+        }
+
+        for (final String alias : list(keyStore.aliases())) {
+            final Certificate certificate = keyStore.getCertificate(alias);
+            if (certificate != null) {
+                pins.add(getPin(certificate.getPublicKey()));
+            }
+        }
+    }
+
+    /* package */ static byte[] getPin(PublicKey publicKey) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded());
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {}
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        if (chain == null) {
+            throw new IllegalArgumentException("checkServerTrusted: X509Certificate array is null");
+        }
+
+        if (!(chain.length > 0)) {
+            throw new IllegalArgumentException("checkServerTrusted: X509Certificate is empty");
+        }
+
+        if (!(authType != null && authType.contains("RSA"))) {
+            throw new CertificateException("checkServerTrusted: AuthType is not RSA.  AuthType: " + authType);
+        }
+
+        for (final X509TrustManager trustManager : trustManagers) {
+            trustManager.checkServerTrusted(chain, authType);
+        }
+
+        final byte[] remotePin;
+        try {
+            remotePin = getPin(chain[0].getPublicKey());
+        } catch (NoSuchAlgorithmException e) {
+            throw new CertificateException(e);
+        }
+
+        // Every pin is compared in full so that the time taken does not give away how close a key came to matching
+        boolean foundMatchingCertificate = false;
+        for (final byte[] pin : pins) {
+            foundMatchingCertificate |= isEqualInConstantTime(pin, remotePin);
+        }
+
+        // Pin it!
+        if (!foundMatchingCertificate) {
+            throw new CertificateException("The server's certificate has not been authenticated.");
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+    }
+
+    private static boolean isEqualInConstantTime(byte[] a, byte[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        int difference = 0;
+        for (int i = 0; i < a.length; i += 1) {
+            difference |= a[i] ^ b[i];
+        }
+        return difference == 0;
+    }
+}
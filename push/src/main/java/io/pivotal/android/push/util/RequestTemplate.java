@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+
+import io.pivotal.android.push.PushParameters;
+import io.pivotal.android.push.prefs.Pivotal;
+import io.pivotal.android.push.receiver.CustomSslProvider;
+
+/**
+ * The parts of a request to the PCF Push server that only depend on the server, credentials and SSL settings in
+ * the push parameters: the endpoint URLs, the Authorization header, the custom request headers and the SSL
+ * socket factory and hostname verifier.  A template is built the first time that it is needed and used for
+ * every request until those settings change.  The other push parameters, such as the tags and the device
+ * alias, do not affect the template.  The SSL settings are only worked out once the template is first applied
+ * to an HTTPS connection.
+ */
+public class RequestTemplate {
+
+    // Ignore differences between given hostname and certificate hostname
+    private static final HostnameVerifier TRUST_ALL_HOSTNAME_VERIFIER = new HostnameVerifier() {
+        public boolean verify(String hostname, SSLSession session) { return true; }
+    };
+
+    private static List<Object> cachedFingerprint;
+    private static RequestTemplate cachedTemplate;
+
+    private final Context context;
+    private final PushParameters parameters;
+    private final String serviceUrl;
+    private final String authorizationValue;
+    private final Map<String, String> requestHeaders;
+    private final URL registrationUrl;
+    private final URL analyticsUrl;
+    private boolean isTrustResolved;
+    private SSLSocketFactory sslSocketFactory;
+    private HostnameVerifier hostnameVerifier;
+
+    public static RequestTemplate getInstance(Context context, PushParameters parameters) {
+        final List<Object> fingerprint = getFingerprint(parameters);
+        synchronized (RequestTemplate.class) {
+            if (cachedTemplate == null || !fingerprint.equals(cachedFingerprint)) {
+                cachedTemplate = new RequestTemplate(context, parameters);
+                cachedFingerprint = fingerprint;
+            }
+            return cachedTemplate;
+        }
+    }
+
+    // Used by unit tests
+    /* package */ static synchronized void reset() {
+        cachedTemplate = null;
+        cachedFingerprint = null;
+    }
+
+    // The push parameters that the template is built from
+    private static List<Object> getFingerprint(PushParameters parameters) {
+        final List<String> pinnedSslCertificateNames = parameters.getPinnedSslCertificateNames();
+        final Map<String, String> requestHeaders = parameters.getRequestHeaders();
+        return Arrays.<Object>asList(
+                parameters.getPlatformUuid(),
+                parameters.getPlatformSecret(),
+                parameters.getServiceUrl(),
+                parameters.getSslCertValidationMode(),
+                pinnedSslCertificateNames != null ? new ArrayList<>(pinnedSslCertificateNames) : null,
+                requestHeaders != null ? new HashMap<>(requestHeaders) : null);
+    }
+
+    private RequestTemplate(Context context, PushParameters parameters) {
+        // Templates outlive the requests, so they must not hold on to an activity
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.parameters = parameters;
+        serviceUrl = parameters.getServiceUrl();
+        authorizationValue = ApiRequestImpl.getBasicAuthorizationValue(parameters);
+
+        final Map<String, String> requestHeaders = parameters.getRequestHeaders();
+        if (requestHeaders != null && !requestHeaders.isEmpty()) {
+            this.requestHeaders = Collections.unmodifiableMap(new HashMap<>(requestHeaders));
+        } else {
+            this.requestHeaders = Collections.emptyMap();
+        }
+
+        registrationUrl = getUrl(Const.PCF_PUSH_REGISTRATION_REQUEST_ENDPOINT);
+        analyticsUrl = getUrl(Const.PCF_PUSH_ANALYTICS_REQUEST_ENDPOINT);
+    }
+
+    private synchronized void resolveTrust() throws GeneralSecurityException, IOException, IllegalAccessException, InstantiationException {
+        if (isTrustResolved) {
+            return;
+        }
+
+        final Pivotal.SslCertValidationMode sslCertValidationMode = parameters.getSslCertValidationMode();
+        if (sslCertValidationMode == Pivotal.SslCertValidationMode.TRUST_ALL) {
+            sslSocketFactory = SslSocketFactoryCache.getTrustAllSocketFactory();
+            hostnameVerifier = TRUST_ALL_HOSTNAME_VERIFIER;
+            Logger.w("Note: We trust all SSL certifications in PCF Push.");
+
+        } else if (sslCertValidationMode == Pivotal.SslCertValidationMode.PINNED && parameters.getPinnedSslCertificateNames() != null && parameters.getPinnedSslCertificateNames().size() > 0) {
+            sslSocketFactory = SslSocketFactoryCache.getPinnedSocketFactory(context, parameters.getPinnedSslCertificateNames());
+            Logger.w("Note: Authenticating certificate in PCF Push.");
+
+        } else if (sslCertValidationMode == Pivotal.SslCertValidationMode.CALLBACK) {
+            Logger.w("Note: Using a custom callback for SSL authentication in PCF Push.");
+
+            final Class<? extends CustomSslProvider> customSslProviderClass = ApiRequestImpl.getCustomSslProviderClass(context);
+            final CustomSslProvider customSslProvider = customSslProviderClass.newInstance();
+            sslSocketFactory = customSslProvider.getSSLSocketFactory();
+            hostnameVerifier = customSslProvider.getHostnameVerifier();
+
+        } else {
+            Logger.w("Note: Using system default SSL authentication in PCF Push.");
+        }
+
+        isTrustResolved = true;
+    }
+
+    private URL getUrl(String endpoint) {
+        try {
+            return new URL(serviceUrl + "/" + endpoint);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    public String getAuthorizationValue() {
+        return authorizationValue;
+    }
+
+    public URL getRegistrationUrl() throws MalformedURLException {
+        if (registrationUrl == null) {
+            throw new MalformedURLException("Invalid service URL: " + serviceUrl);
+        }
+        return registrationUrl;
+    }
+
+    public URL getDeviceRegistrationUrl(String pcfPushDeviceRegistrationId) throws MalformedURLException {
+        return new URL(serviceUrl + "/" + Const.PCF_PUSH_REGISTRATION_REQUEST_ENDPOINT + "/" + pcfPushDeviceRegistrationId);
+    }
+
+    public URL getAnalyticsUrl() throws MalformedURLException {
+        if (analyticsUrl == null) {
+            throw new MalformedURLException("Invalid service URL: " + serviceUrl);
+        }
+        return analyticsUrl;
+    }
+
+    public String getServiceUrl() {
+        return serviceUrl;
+    }
+
+    /**
+     * Adds the custom request headers to the given connection and, for HTTPS connections, sets up its
+     * SSL socket factory and hostname verifier.
+     */
+    public void apply(HttpURLConnection urlConnection) throws GeneralSecurityException, IOException, IllegalAccessException, InstantiationException {
+        for (final Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+            urlConnection.addRequestProperty(entry.getKey(), entry.getValue());
+        }
+
+        if (urlConnection instanceof HttpsURLConnection) {
+            final HttpsURLConnection httpsURLConnection = (HttpsURLConnection) urlConnection;
+            resolveTrust();
+            if (sslSocketFactory != null) {
+                httpsURLConnection.setSSLSocketFactory(sslSocketFactory);
+            }
+            if (hostnameVerifier != null) {
+                httpsURLConnection.setHostnameVerifier(hostnameVerifier);
+            }
+        }
+    }
+}
@@ -4,10 +4,17 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 
+import io.pivotal.android.push.service.AnalyticsJobExecutor;
+
 public class ServiceStarterImpl implements ServiceStarter {
 
+    // Analytics jobs are run in this process when possible, which saves parcelling the job and a trip through the system server.
     @Override
     public ComponentName startService(Context context, Intent service) {
+        final AnalyticsJobExecutor executor = AnalyticsJobExecutor.getInstance(context);
+        if (executor != null && executor.execute(service)) {
+            return service.getComponent();
+        }
         return context.startService(service);
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Keeps the SSL socket factories for the TRUST_ALL and PINNED certificate validation modes for the life of the
+ * process, so that the pinned certificates are read from the assets and the SSL contexts are set up only the
+ * first time that they are needed.  Handing the same socket factory to every connection also lets
+ * HttpURLConnection reuse its pooled HTTPS connections.
+ *
+ * Each SSL context keeps a bounded cache of the TLS sessions that it has set up, so that new connections to a
+ * server it has talked to recently can resume a session with an abbreviated handshake.  Sessions are never
+ * shared between contexts, so a session is only resumed under the same trust settings that it was set up with.
+ *
+ * A pinned socket factory is only cached once every one of its certificates has been read.  If any of them can
+ * not be read then an exception is thrown, and the next request tries to read them again.
+ */
+/* package */ class SslSocketFactoryCache {
+
+    private static final int SESSION_CACHE_SIZE = 16;
+    private static final int SESSION_TIMEOUT_IN_SECONDS = 60 * 60;
+
+    private static SSLSocketFactory trustAllSocketFactory;
+
+    // Keyed by the list of pinned certificate names
+    private static final Map<List<String>, SSLSocketFactory> pinnedSocketFactories = new HashMap<>();
+
+    public static synchronized SSLSocketFactory getTrustAllSocketFactory() throws GeneralSecurityException {
+        if (trustAllSocketFactory == null) {
+            // Create a trust manager that does not validate certificate chains
+            final TrustManager[] trustAllCerts = new TrustManager[] {
+                    new X509TrustManager() {
+                        public X509Certificate[] getAcceptedIssuers() {
+                            return new X509Certificate[0];
+                        }
+                        public void checkClientTrusted(X509Certificate[] certs, String authType) {}
+                        public void checkServerTrusted(X509Certificate[] certs, String authType) {}
+                    }};
+
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustAllCerts, null);
+            trustAllSocketFactory = getSocketFactory(sslContext);
+        }
+        return trustAllSocketFactory;
+    }
+
+    public static synchronized SSLSocketFactory getPinnedSocketFactory(Context context, List<String> pinnedCertificateNames) throws GeneralSecurityException, IOException {
+        final List<String> key = new ArrayList<>(pinnedCertificateNames);
+        SSLSocketFactory socketFactory = pinnedSocketFactories.get(key);
+        if (socketFactory == null) {
+            final KeyStore keyStore = getKeyStore(context, key);
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[] { new PinnedCertificateTrustManager(keyStore) }, null);
+            socketFactory = getSocketFactory(sslContext);
+            pinnedSocketFactories.put(key, socketFactory);
+        }
+        return socketFactory;
+    }
+
+    private static SSLSocketFactory getSocketFactory(SSLContext sslContext) {
+        final SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT_IN_SECONDS);
+        }
+        return new HandshakeMeteringSSLSocketFactory(sslContext.getSocketFactory());
+    }
+
+    /* package */ static synchronized void reset() {
+        trustAllSocketFactory = null;
+        pinnedSocketFactories.clear();
+    }
+
+    private static KeyStore getKeyStore(Context context, List<String> pinnedCertificateNames) throws GeneralSecurityException, IOException {
+
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        String keyStoreType = KeyStore.getDefaultType();
+        final KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+        keyStore.load(null, null);
+
+        for (int i = 0; i < pinnedCertificateNames.size(); i += 1) {
+
+            String pinnedCertificateName = pinnedCertificateNames.get(i);
+            InputStream caInput = null;
+            Certificate ca = null;
+
+            try {
+                if (pinnedCertificateName != null) {
+                    caInput = context.getAssets().open(pinnedCertificateName);
+                    ca = cf.generateCertificate(caInput);
+                    Logger.i("Note: We are pinning certificate '" + pinnedCertificateName + "'.");
+                }
+
+            } catch (IOException e1) {
+                Logger.w("WARNING: could not open certificate file '" + pinnedCertificateName + "': " + e1);
+                throw e1;
+
+            } catch (CertificateException e2) {
+                Logger.w("WARNING: could not read certificate file '" + pinnedCertificateName + "': " + e2);
+                throw e2;
+
+            } finally {
+                if (caInput != null) {
+                    caInput.close();
+                }
+            }
+
+            // Create a KeyStore containing our trusted CAs
+            if (ca != null) {
+                keyStore.setCertificateEntry(String.valueOf(i), ca);
+            }
+        }
+
+        return keyStore;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 Pivotal Software, Inc. All rights reserved.
+ */
+package io.pivotal.android.push.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.pivotal.android.push.analytics.Histogram;
+
+/**
+ * Counts the TLS handshakes made by the SDK's requests to the PCF Push server, and how long they took.  A
+ * resumed handshake picks up a session that was set up by an earlier connection and skips the key exchange,
+ * so the share of resumed handshakes shows how well the TLS session cache is working.
+ *
+ * Only the connections in the TRUST_ALL and PINNED certificate validation modes are counted, since the SDK
+ * leaves the socket factories of the other modes to the system and to the application.  The values cover the
+ * life of the process.
+ */
+public class TlsHandshakeMetrics {
+
+    // Milliseconds
+    private static final long[] HANDSHAKE_TIME_BUCKETS = new long[] { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    private static final AtomicLong numberOfFullHandshakes = new AtomicLong();
+    private static final AtomicLong numberOfResumedHandshakes = new AtomicLong();
+    private static final Histogram fullHandshakeTime = new Histogram(HANDSHAKE_TIME_BUCKETS);
+    private static final Histogram resumedHandshakeTime = new Histogram(HANDSHAKE_TIME_BUCKETS);
+
+    /* package */ static void handshakeCompleted(boolean isResumed, long elapsedMillis) {
+        if (isResumed) {
+            numberOfResumedHandshakes.incrementAndGet();
+            resumedHandshakeTime.record(Math.max(elapsedMillis, 0));
+        } else {
+            numberOfFullHandshakes.incrementAndGet();
+            fullHandshakeTime.record(Math.max(elapsedMillis, 0));
+        }
+    }
+
+    public static long getNumberOfFullHandshakes() {
+        return numberOfFullHandshakes.get();
+    }
+
+    public static long getNumberOfResumedHandshakes() {
+        return numberOfResumedHandshakes.get();
+    }
+
+    /**
+     * @return the times of the full handshakes, in milliseconds from the creation of the socket
+     */
+    public static Histogram.Snapshot getFullHandshakeTime() {
+        return fullHandshakeTime.getSnapshot();
+    }
+
+    /**
+     * @return the times of the resumed handshakes, in milliseconds from the creation of the socket
+     */
+    public static Histogram.Snapshot getResumedHandshakeTime() {
+        return resumedHandshakeTime.getSnapshot();
+    }
+
+    // Used by unit tests
+    public static void reset() {
+        numberOfFullHandshakes.set(0);
+        numberOfResumedHandshakes.set(0);
+        fullHandshakeTime.reset();
+        resumedHandshakeTime.reset();
+    }
+}